@@ -0,0 +1,219 @@
+package info.freelibrary.vertx.s3;
+/**
+ * BEGIN GENERATED CODE
+ */
+final public class MessageCodes {
+
+	/**
+	 * Message: The number of bulk delete batches in flight must be at least 1, but was: {}
+	 */
+	public static final String VS3_038 = "VS3-038";
+	/**
+	 * Message: Download of '{}/{}' returned: {} {}
+	 */
+	public static final String VS3_039 = "VS3-039";
+	/**
+	 * Message: Sync {} of '{}/{}' returned: {} {}
+	 */
+	public static final String VS3_036 = "VS3-036";
+	/**
+	 * Message: Copy of '{}/{}' to '{}/{}' failed: {}
+	 */
+	public static final String VS3_037 = "VS3-037";
+	/**
+	 * Message: S3 response contains a timestamp that isn't ISO-8601: {}
+	 */
+	public static final String VS3_034 = "VS3-034";
+	/**
+	 * Message: The number of sync actions in flight must be at least 1, but was: {}
+	 */
+	public static final String VS3_035 = "VS3-035";
+	/**
+	 * Message: A compact bucket list's keys can't take up more than {} bytes
+	 */
+	public static final String VS3_032 = "VS3-032";
+	/**
+	 * Message: A compact bucket list can't hold more than {} storage classes
+	 */
+	public static final String VS3_033 = "VS3-033";
+	/**
+	 * Message: S3 response ended before its XML was complete
+	 */
+	public static final String VS3_030 = "VS3-030";
+	/**
+	 * Message: S3 response contains text outside its root element
+	 */
+	public static final String VS3_031 = "VS3-031";
+	/**
+	 * Message: S3 response contains an unknown entity or character reference: &{};
+	 */
+	public static final String VS3_029 = "VS3-029";
+	/**
+	 * Message: Didn't find expected key: {}
+	 */
+	public static final String VS3_005 = "VS3-005";
+	/**
+	 * Message: Completion of multipart upload '{}' of '{}/{}' failed: {}
+	 */
+	public static final String VS3_049 = "VS3-049";
+	/**
+	 * Message: Running: {}
+	 */
+	public static final String VS3_006 = "VS3-006";
+	/**
+	 * Message: The metadata property name cannot be null.
+	 */
+	public static final String VS3_003 = "VS3-003";
+	/**
+	 * Message: The maximum size of an object in a memory cache must be at least 1 byte, but was: {}
+	 */
+	public static final String VS3_047 = "VS3-047";
+	/**
+	 * Message: Length: {}
+	 */
+	public static final String VS3_004 = "VS3-004";
+	/**
+	 * Message: Cached get of '{}/{}' received {} bytes instead of {}
+	 */
+	public static final String VS3_048 = "VS3-048";
+	/**
+	 * Message: {} request for '{}' returned '{}': {}
+	 */
+	public static final String VS3_001 = "VS3-001";
+	/**
+	 * Message: The maximum age of a cached object's revalidation can't be negative, but was: {}
+	 */
+	public static final String VS3_045 = "VS3-045";
+	/**
+	 * Message: Please supply your own S3 access and secret keys for testing
+	 */
+	public static final String VS3_002 = "VS3-002";
+	/**
+	 * Message: Cached get of '{}/{}' returned: {} {}
+	 */
+	public static final String VS3_046 = "VS3-046";
+	/**
+	 * Message: The number of bytes at the end of an object to get must be at least 1, but was: {}
+	 */
+	public static final String VS3_043 = "VS3-043";
+	/**
+	 * Message: {}
+	 */
+	public static final String VS3_000 = "VS3-000";
+	/**
+	 * Message: The maximum size of an object cache must be at least 1 byte, but was: {}
+	 */
+	public static final String VS3_044 = "VS3-044";
+	/**
+	 * Message: Get of '{}/{}' returned: {} {}
+	 */
+	public static final String VS3_041 = "VS3-041";
+	/**
+	 * Message: A byte range must start at or after byte 0 and end at or after its start, but was: {}-{}
+	 */
+	public static final String VS3_042 = "VS3-042";
+	/**
+	 * Message: Download of '{}/{}' received a range that ended at byte {} instead of {}
+	 */
+	public static final String VS3_040 = "VS3-040";
+	/**
+	 * Message: Test GIF '{}/{}' successfully removed
+	 */
+	public static final String VS3_016 = "VS3-016";
+	/**
+	 * Message: Unexpected status code: {} {}
+	 */
+	public static final String VS3_017 = "VS3-017";
+	/**
+	 * Message: Failed to throw exception on non-existent profile
+	 */
+	public static final String VS3_014 = "VS3-014";
+	/**
+	 * Message: Test GIF stored successfully as: {}/{}
+	 */
+	public static final String VS3_015 = "VS3-015";
+	/**
+	 * Message: AWS credentials profile found: {}
+	 */
+	public static final String VS3_012 = "VS3-012";
+	/**
+	 * Message: Output from container tests: {}
+	 */
+	public static final String VS3_013 = "VS3-013";
+	/**
+	 * Message: No AWS credentials were provided
+	 */
+	public static final String VS3_010 = "VS3-010";
+	/**
+	 * Message: No AWS credentials file found: {}
+	 */
+	public static final String VS3_011 = "VS3-011";
+	/**
+	 * Message: Streamed payload of '{}/{}' is longer than its promised length of {} bytes
+	 */
+	public static final String VS3_050 = "VS3-050";
+	/**
+	 * Message: Streamed payload of '{}/{}' ended after {} of its promised {} bytes
+	 */
+	public static final String VS3_051 = "VS3-051";
+	/**
+	 * Message: Setting AWS credentials requires at least an access key and a secret key
+	 */
+	public static final String VS3_009 = "VS3-009";
+	/**
+	 * Message: Expected algorithm not found: {}
+	 */
+	public static final String VS3_007 = "VS3-007";
+	/**
+	 * Message: Invalid key exception: {}
+	 */
+	public static final String VS3_008 = "VS3-008";
+	/**
+	 * Message: The maximum number of keys in a listing page must be between 1 and {}, but was: {}
+	 */
+	public static final String VS3_027 = "VS3-027";
+	/**
+	 * Message: S3 response contains unexpected markup: <{}>
+	 */
+	public static final String VS3_028 = "VS3-028";
+	/**
+	 * Message: Listing of bucket '{}' returned: {} {}
+	 */
+	public static final String VS3_025 = "VS3-025";
+	/**
+	 * Message: The number of listing shards read at once must be at least 1, but was: {}
+	 */
+	public static final String VS3_026 = "VS3-026";
+	/**
+	 * Message: Abort of multipart upload '{}' returned: {} {}
+	 */
+	public static final String VS3_023 = "VS3-023";
+	/**
+	 * Message: The number of upload parts in flight must be at least 1, but was: {}
+	 */
+	public static final String VS3_024 = "VS3-024";
+	/**
+	 * Message: S3 response did not contain an upload ID for '{}/{}'
+	 */
+	public static final String VS3_021 = "VS3-021";
+	/**
+	 * Message: Multipart upload for '{}/{}' exceeds the maximum of {} parts
+	 */
+	public static final String VS3_022 = "VS3-022";
+	/**
+	 * Message: Aborting multipart upload '{}' for '{}/{}'
+	 */
+	public static final String VS3_020 = "VS3-020";
+	/**
+	 * Message: Upload part size must be at least {} bytes, but was: {}
+	 */
+	public static final String VS3_018 = "VS3-018";
+	/**
+	 * Message: Starting multipart upload '{}' for '{}/{}'
+	 */
+	public static final String VS3_019 = "VS3-019";
+
+	private MessageCodes() {
+		super();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,163 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import info.freelibrary.util.I18nRuntimeException;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * A signer for the chunks of an AWS V4 streaming (<code>aws-chunked</code>) payload. Each chunk's signature is
+ * seeded with the signature of the chunk before it, the first chunk being seeded with the signature of the request's
+ * headers. This lets a payload be sent as it arrives instead of being hashed in full before the request is sent.
+ */
+final class AwsChunkSigner {
+
+    /** The x-amz-content-sha256 value used for a streaming payload */
+    static final String STREAMING_PAYLOAD = "STREAMING-AWS4-HMAC-SHA256-PAYLOAD";
+
+    /** The content encoding of a streaming payload */
+    static final String AWS_CHUNKED = "aws-chunked";
+
+    /** The header that holds the length of the payload before it's encoded into chunks */
+    static final String X_AMZ_DECODED_CONTENT_LENGTH = "x-amz-decoded-content-length";
+
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256-PAYLOAD";
+
+    private static final String SHA256 = "SHA-256";
+
+    private static final String SIGNATURE = "Signature=";
+
+    private static final String CHUNK_SIGNATURE = ";chunk-signature=";
+
+    private static final String CRLF = "\r\n";
+
+    private static final char EOL = '\n';
+
+    private static final char SLASH = '/';
+
+    /** The length of a hex-encoded signature */
+    private static final int SIGNATURE_LENGTH = 64;
+
+    /** The length of the date at the start of a V4 timestamp */
+    private static final int DATE_LENGTH = 8;
+
+    /** The length of the framing around each chunk, not counting the chunk's hex-encoded size */
+    private static final int CHUNK_OVERHEAD = CHUNK_SIGNATURE.length() + SIGNATURE_LENGTH + CRLF.length() * 2;
+
+    /** The approximate size of a chunk's string to sign */
+    private static final int STRING_TO_SIGN_SIZE = 256;
+
+    private final String myAuthorization;
+
+    private final String myTimestamp;
+
+    private final String myScope;
+
+    private final Mac myMac;
+
+    private final MessageDigest myDigest;
+
+    /** The signature of the previous chunk, or the seed signature if no chunk has been signed yet */
+    private String mySignature;
+
+    /**
+     * Creates a new chunk signer.
+     *
+     * @param aSigningKey The V4 signing key for the date of the timestamp
+     * @param aTimestamp The timestamp used to sign the request's headers
+     * @param aAuthorization The authorization value from the signing of the request's headers
+     */
+    AwsChunkSigner(final SecretKeySpec aSigningKey, final String aTimestamp, final String aAuthorization) {
+        myAuthorization = aAuthorization;
+        myTimestamp = aTimestamp;
+        myScope = aTimestamp.substring(0, DATE_LENGTH) + SLASH + AwsV4Signature.REGION + SLASH +
+                AwsV4Signature.SERVICE + SLASH + SigningKeyCache.TERMINATOR;
+        mySignature = aAuthorization.substring(aAuthorization.lastIndexOf(SIGNATURE) + SIGNATURE.length());
+
+        try {
+            myMac = Mac.getInstance(SigningKeyCache.HMAC_SHA256);
+            myMac.init(aSigningKey);
+            myDigest = MessageDigest.getInstance(SHA256);
+        } catch (final NoSuchAlgorithmException | InvalidKeyException details) {
+            throw new I18nRuntimeException(details);
+        }
+    }
+
+    /**
+     * Gets the authorization value from the signing of the request's headers.
+     *
+     * @return The request's authorization value
+     */
+    String getAuthorization() {
+        return myAuthorization;
+    }
+
+    /**
+     * Signs the next chunk of the payload.
+     *
+     * @param aChunk A chunk of the payload; an empty buffer is used for the final chunk
+     * @return The chunk's signature
+     */
+    String sign(final Buffer aChunk) {
+        final String chunkHash = AwsV4Signature.hashToHex(SigningWorkspace.digest(myDigest, aChunk));
+        final StringBuilder toSign = new StringBuilder(STRING_TO_SIGN_SIZE).append(ALGORITHM).append(EOL)
+                .append(myTimestamp).append(EOL).append(myScope).append(EOL).append(mySignature).append(EOL)
+                .append(AwsV4Signature.EMPTY_PAYLOAD_HASH).append(EOL).append(chunkHash);
+
+        mySignature = AwsV4Signature.hashToHex(myMac.doFinal(toSign.toString().getBytes(StandardCharsets.UTF_8)));
+
+        return mySignature;
+    }
+
+    /**
+     * Signs the next chunk of the payload and wraps it in its <code>aws-chunked</code> framing.
+     *
+     * @param aChunk A chunk of the payload; an empty buffer is used for the final chunk
+     * @return The encoded chunk
+     */
+    Buffer encode(final Buffer aChunk) {
+        final String size = Integer.toHexString(aChunk.length());
+        final Buffer chunk = Buffer.buffer(size.length() + CHUNK_OVERHEAD + aChunk.length());
+
+        chunk.appendString(size).appendString(CHUNK_SIGNATURE).appendString(sign(aChunk)).appendString(CRLF);
+        return chunk.appendBuffer(aChunk).appendString(CRLF);
+    }
+
+    /**
+     * Gets the length of a payload once it's been encoded into signed chunks of the supplied size.
+     *
+     * @param aLength The length of the payload
+     * @param aChunkSize The size of all but the last of the payload's chunks
+     * @return The length of the encoded payload, including the final empty chunk
+     */
+    static long getEncodedLength(final long aLength, final int aChunkSize) {
+        final long fullChunks = aLength / aChunkSize;
+        final int remainder = (int) (aLength % aChunkSize);
+
+        long length = fullChunks * getChunkLength(aChunkSize) + getChunkLength(0);
+
+        if (remainder > 0) {
+            length += getChunkLength(remainder);
+        }
+
+        return length;
+    }
+
+    /**
+     * Gets the length of a single chunk once it's been encoded.
+     *
+     * @param aChunkSize The size of the chunk
+     * @return The length of the encoded chunk
+     */
+    private static long getChunkLength(final int aChunkSize) {
+        return Integer.toHexString(aChunkSize).length() + CHUNK_OVERHEAD + aChunkSize;
+    }
+}
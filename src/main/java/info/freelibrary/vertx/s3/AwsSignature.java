@@ -2,6 +2,7 @@
 package info.freelibrary.vertx.s3;
 
 import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
 
 /**
  * An AWS authentication signature.
@@ -21,4 +22,20 @@ public interface AwsSignature {
      */
     String getAuthorization(MultiMap aHeaders, String aMethod, String aBucket, String aKey, byte[] aPayload);
 
+    /**
+     * Gets the authentication value from the signature for a payload that's held in a buffer. By default, this copies
+     * the payload into a byte array; signatures that can read the buffer directly should override it.
+     *
+     * @param aHeaders Headers for a request being sent to S3
+     * @param aMethod The method of the request being sent to S3
+     * @param aBucket A S3 bucket
+     * @param aKey The key of an S3 object
+     * @param aPayload The payload to be signed
+     * @return The authentication string
+     */
+    default String getAuthorization(final MultiMap aHeaders, final String aMethod, final String aBucket,
+            final String aKey, final Buffer aPayload) {
+        return getAuthorization(aHeaders, aMethod, aBucket, aKey, aPayload == null ? null : aPayload.getBytes());
+    }
+
 }
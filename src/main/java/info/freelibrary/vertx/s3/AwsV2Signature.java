@@ -10,8 +10,10 @@ import java.util.Base64;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.StringJoiner;
+import java.util.TreeMap;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -22,6 +24,7 @@ import info.freelibrary.util.LoggerFactory;
 import info.freelibrary.util.StringUtils;
 
 import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpHeaders;
 
 /**
@@ -44,8 +47,8 @@ public class AwsV2Signature implements AwsSignature {
     /** The date format used for timestamping S3 requests */
     private static final String DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
 
-    /** Prefix for the AWS user metadata keys */
-    private static final String AWS_NAME_PREFIX = "x-amz-meta-";
+    /** The prefix of the Amazon headers that are signed */
+    private static final String AMZ_PREFIX = "x-amz-";
 
     /** Hash-based message authentication code used for signing AWS requests */
     private static final String HASH_CODE = "HmacSHA1";
@@ -56,6 +59,11 @@ public class AwsV2Signature implements AwsSignature {
     /** Colon, which is used as a header delimiter **/
     private static final String COLON = ":";
 
+    private static final String COMMA = ",";
+
+    /** The sub-resource of a bucket that deletes many objects, which is part of the signed resource */
+    private static final String DELETE_SUBRESOURCE = "?delete";
+
     private static final String EMPTY = "";
 
     private final AwsCredentials myCredentials;
@@ -69,6 +77,23 @@ public class AwsV2Signature implements AwsSignature {
         myCredentials = aCredentials;
     }
 
+    /**
+     * Gets the authentication value from the signature. A V2 signature doesn't cover the payload, so the payload
+     * isn't copied out of its buffer.
+     *
+     * @param aHeaders Headers for a request being sent to S3
+     * @param aMethod The method of the request being sent to S3
+     * @param aBucket A S3 bucket
+     * @param aKey The key of an S3 object
+     * @param aPayload The payload to be signed
+     * @return The authentication string
+     */
+    @Override
+    public String getAuthorization(final MultiMap aHeaders, final String aMethod, final String aBucket,
+            final String aKey, final Buffer aPayload) {
+        return getAuthorization(aHeaders, aMethod, aBucket, aKey, (byte[]) null);
+    }
+
     /**
      * Set the S3 object for which the signature should be created.
      *
@@ -79,9 +104,10 @@ public class AwsV2Signature implements AwsSignature {
     public String getAuthorization(final MultiMap aHeaders, final String aMethod, final String aBucket,
             final String aKey, final byte[] aPayload) {
         final String xamzdate = new SimpleDateFormat(DATE_FORMAT, Locale.US).format(new Date());
+        final Map<String, String> amzHeaders = new TreeMap<>();
         final StringJoiner signedHeaders = new StringJoiner(EOL, EMPTY, EOL);
         final StringBuilder toSign = new StringBuilder();
-        final String key = aKey.charAt(0) == '?' ? EMPTY : aKey;
+        final String key = aKey.charAt(0) == '?' && !DELETE_SUBRESOURCE.equals(aKey) ? EMPTY : aKey;
         final Iterator<Entry<String, String>> iterator;
 
         // Default values for content-type and content-md5 are empty strings
@@ -89,24 +115,21 @@ public class AwsV2Signature implements AwsSignature {
         String contentMD5 = EMPTY;
 
         aHeaders.add("X-Amz-Date", xamzdate);
-        signedHeaders.add("x-amz-date:" + xamzdate);
 
         if (myCredentials != null && myCredentials.hasSessionToken()) {
-            final String sessionToken = myCredentials.getSessionToken();
-
-            aHeaders.add("X-Amz-Security-Token", sessionToken);
-            signedHeaders.add("x-amz-security-token:" + sessionToken);
+            aHeaders.add("X-Amz-Security-Token", myCredentials.getSessionToken());
         }
 
-        // If we have any user metadata set, add it to the signed headers
+        // All the x-amz- headers, like user metadata and a copy source, are signed in the order of their names
         iterator = aHeaders.iterator();
 
         while (iterator.hasNext()) {
             final Entry<String, String> entry = iterator.next();
             final String headerKey = entry.getKey();
 
-            if (headerKey.startsWith(AWS_NAME_PREFIX)) {
-                signedHeaders.add(headerKey + COLON + entry.getValue());
+            if (headerKey.regionMatches(true, 0, AMZ_PREFIX, 0, AMZ_PREFIX.length())) {
+                amzHeaders.merge(headerKey.toLowerCase(Locale.US), entry.getValue().trim(), (first, next) -> first +
+                        COMMA + next);
             } else if (headerKey.equalsIgnoreCase(HttpHeaders.CONTENT_MD5.toString())) {
                 contentMD5 = entry.getValue();
             } else if (headerKey.equalsIgnoreCase(HttpHeaders.CONTENT_TYPE.toString())) {
@@ -114,6 +137,8 @@ public class AwsV2Signature implements AwsSignature {
             }
         }
 
+        amzHeaders.forEach((name, value) -> signedHeaders.add(name + COLON + value));
+
         // Create the authorization string to sign
         toSign.append(aMethod).append(EOL).append(contentMD5).append(EOL).append(contentType).append(EOL).append(EOL);
         toSign.append(signedHeaders).append(PATH_SEP).append(aBucket).append(PATH_SEP).append(key);
@@ -2,44 +2,48 @@
 package info.freelibrary.vertx.s3;
 
 import java.net.URI;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
-import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
-import java.util.Iterator;
-import java.util.Map.Entry;
-
-import info.freelibrary.util.I18nRuntimeException;
+import java.util.concurrent.atomic.AtomicReference;
 
+import io.netty.buffer.Unpooled;
 import io.vertx.core.MultiMap;
-import io.vertx.core.http.HttpHeaders;
-import uk.co.lucasweb.aws.v4.signer.HttpRequest;
-import uk.co.lucasweb.aws.v4.signer.Signer;
+import io.vertx.core.buffer.Buffer;
 
 public class AwsV4Signature implements AwsSignature {
 
+    /** The region used in the signature's credential scope */
+    static final String REGION = "us-east-1";
+
+    /** The service used in the signature's credential scope */
+    static final String SERVICE = "s3";
+
+    /** The SHA-256 hash of an empty payload */
+    static final String EMPTY_PAYLOAD_HASH = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+
     private static final String DATE_TIME_FORMAT = "yyyyMMdd'T'HHmmss'Z'";
 
     /** The date format used for timestamping requests */
     private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern(DATE_TIME_FORMAT)
             .withZone(ZoneOffset.UTC);
 
-    private static final String DIGEST_ALGORITHM = "SHA-256";
-
-    private static final String HOST = "Host";
+    private static final String EMPTY = "";
 
-    private static final String X_AMZ_DATE = "X-Amz-Date";
+    /** The most recently formatted timestamp */
+    private static final AtomicReference<Timestamp> TIMESTAMP = new AtomicReference<>(new Timestamp(-1, EMPTY));
 
-    private static final String X_AMZ_CONTENT_SHA256 = "x-amz-content-sha256";
+    /** The signer that does the actual signing */
+    private final RequestSigner mySigner;
 
-    /** Prefix for the AWS user metadata keys */
-    private static final String AWS_NAME_PREFIX = "x-amz-meta-";
+    /** The name of the S3 host */
+    private final String myHost;
 
-    private final AwsCredentials myCredentials;
+    /** The raw path of the request being signed */
+    private final String myPath;
 
-    private final URI myHost;
+    /** The raw query string of the request being signed, or null if it doesn't have one */
+    private final String myQuery;
 
     /**
      * Creates a new AWS v4 signature. It must be used within 15 minutes of its creation.
@@ -48,8 +52,7 @@ public class AwsV4Signature implements AwsSignature {
      * @param aCredentials An AWS credentials
      */
     public AwsV4Signature(final URI aHost, final AwsCredentials aCredentials) {
-        myCredentials = aCredentials;
-        myHost = aHost;
+        this(aHost, aCredentials, new SigningKeyCache());
     }
 
     /**
@@ -60,56 +63,83 @@ public class AwsV4Signature implements AwsSignature {
      * @param aSessionToken An S3 token session
      */
     public AwsV4Signature(final URI aHost, final AwsCredentials aCredentials, final String aSessionToken) {
-        myCredentials = aCredentials;
+        this(aHost, aCredentials, new SigningKeyCache());
+    }
+
+    /**
+     * Creates a new AWS v4 signature that gets its signing key from the supplied cache. It must be used within 15
+     * minutes of its creation.
+     *
+     * @param aHost An S3 host
+     * @param aCredentials An AWS credentials
+     * @param aSigningKeys A cache of signing keys
+     */
+    AwsV4Signature(final URI aHost, final AwsCredentials aCredentials, final SigningKeyCache aSigningKeys) {
+        this(aHost.getHost(), aHost.getRawPath(), aHost.getRawQuery(), aCredentials, aSigningKeys);
+    }
+
+    /**
+     * Creates a new AWS v4 signature from the already separated parts of a request's URI, so that the URI doesn't
+     * need to be parsed again. It must be used within 15 minutes of its creation.
+     *
+     * @param aHost The name of an S3 host
+     * @param aPath The raw path of the request
+     * @param aQuery The raw query string of the request, or null if it doesn't have one
+     * @param aCredentials An AWS credentials
+     * @param aSigningKeys A cache of signing keys
+     */
+    AwsV4Signature(final String aHost, final String aPath, final String aQuery, final AwsCredentials aCredentials,
+            final SigningKeyCache aSigningKeys) {
+        mySigner = new RequestSigner(aCredentials, aSigningKeys);
         myHost = aHost;
+        myPath = aPath;
+        myQuery = aQuery;
     }
 
     @Override
     public String getAuthorization(final MultiMap aHeaders, final String aMethod, final String aBucket,
             final String aKey, final byte[] aPayload) {
-        try {
-            final LocalDateTime localDateTime = LocalDateTime.ofInstant(Instant.now(), ZoneOffset.UTC);
-            final String timestamp = localDateTime.format(DATE_TIME_FORMATTER);
-            final HttpRequest request = new HttpRequest(aMethod, myHost);
-            final Signer.Builder signer = Signer.builder().awsCredentials(myCredentials);
-            final MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
-            final String sha256Hex = hashToHex(digest.digest(aPayload));
-            final Iterator<Entry<String, String>> iterator;
-
-            if (myCredentials != null && myCredentials.hasSessionToken()) {
-                final String sessionToken = myCredentials.getSessionToken();
-
-                aHeaders.add("X-Amz-Security-Token", sessionToken);
-                signer.header("x-amz-security-token", sessionToken);
-            }
-
-            // If we have any user metadata set, add it to the signed headers
-            iterator = aHeaders.iterator();
-
-            while (iterator.hasNext()) {
-                final Entry<String, String> entry = iterator.next();
-                final String headerKey = entry.getKey();
-
-                if (headerKey.startsWith(AWS_NAME_PREFIX)) {
-                    signer.header(headerKey, entry.getValue());
-                } else if (headerKey.equalsIgnoreCase(HttpHeaders.CONTENT_MD5.toString())) {
-                    signer.header(headerKey, entry.getValue());
-                } else if (headerKey.equalsIgnoreCase(HttpHeaders.CONTENT_TYPE.toString())) {
-                    signer.header(headerKey, entry.getValue());
-                }
-            }
-
-            signer.header(HOST, myHost.getHost());
-            aHeaders.add(HOST, myHost.getHost());
-            signer.header(X_AMZ_DATE, timestamp);
-            aHeaders.add(X_AMZ_DATE, timestamp);
-            signer.header(X_AMZ_CONTENT_SHA256, sha256Hex);
-            aHeaders.add(X_AMZ_CONTENT_SHA256, sha256Hex);
-
-            return signer.buildS3(request, sha256Hex).getSignature();
-        } catch (final NoSuchAlgorithmException details) {
-            throw new I18nRuntimeException(details);
+        return getAuthorization(aHeaders, aMethod, aBucket, aKey, Buffer.buffer(Unpooled.wrappedBuffer(aPayload)));
+    }
+
+    @Override
+    public String getAuthorization(final MultiMap aHeaders, final String aMethod, final String aBucket,
+            final String aKey, final Buffer aPayload) {
+        return mySigner.signV4(aMethod, myHost, myPath, myQuery, aHeaders, aPayload);
+    }
+
+    /**
+     * Signs a request's headers, adding the headers that the signature requires.
+     *
+     * @param aHeaders Headers for a request being sent to S3
+     * @param aMethod The method of the request being sent to S3
+     * @param aContentSha256 The value of the request's x-amz-content-sha256 header
+     * @param aTimestamp The request's timestamp
+     * @return The authorization string
+     */
+    String sign(final MultiMap aHeaders, final String aMethod, final String aContentSha256,
+            final String aTimestamp) {
+        return mySigner.sign(aMethod, myHost, myPath, myQuery, aHeaders, aContentSha256, aTimestamp);
+    }
+
+    /**
+     * Gets a timestamp for the current time. The formatted timestamp is cached for the second it represents, so
+     * requests signed in the same second share it.
+     *
+     * @return A V4 timestamp
+     */
+    static String getTimestamp() {
+        final long second = System.currentTimeMillis() / 1000;
+        final Timestamp timestamp = TIMESTAMP.get();
+
+        if (timestamp.mySecond == second) {
+            return timestamp.myValue;
         }
+
+        final Timestamp next = new Timestamp(second, DATE_TIME_FORMATTER.format(Instant.ofEpochSecond(second)));
+
+        TIMESTAMP.set(next);
+        return next.myValue;
     }
 
     /**
@@ -118,19 +148,22 @@ public class AwsV4Signature implements AwsSignature {
      * @param aEncodedHash A hash to be converted into hex format
      * @return The supplied hash in hex format
      */
-    private String hashToHex(final byte[] aEncodedHash) {
-        final StringBuilder hexString = new StringBuilder();
+    static String hashToHex(final byte[] aEncodedHash) {
+        return SigningWorkspace.get().toHex(aEncodedHash);
+    }
 
-        for (int index = 0; index < aEncodedHash.length; index++) {
-            final String hex = Integer.toHexString(0xff & aEncodedHash[index]);
+    /**
+     * A formatted timestamp and the second it represents.
+     */
+    private static final class Timestamp {
 
-            if (hex.length() == 1) {
-                hexString.append('0');
-            }
+        private final long mySecond;
 
-            hexString.append(hex);
-        }
+        private final String myValue;
 
-        return hexString.toString();
+        private Timestamp(final long aSecond, final String aValue) {
+            mySecond = aSecond;
+            myValue = aValue;
+        }
     }
 }
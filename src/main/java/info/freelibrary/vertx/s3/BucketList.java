@@ -2,40 +2,79 @@
 package info.freelibrary.vertx.s3;
 
 import java.io.IOException;
-import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Spliterator;
 import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Collectors;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
 
 /**
- * A listing of objects in an S3 bucket.
+ * A listing of objects in an S3 bucket. A listing can be held compactly, in columns of primitive arrays rather than
+ * as an object per entry, which makes it practical to keep listings of millions of objects in memory; the objects of
+ * a compact listing are read-only views of its columns.
+ * <p>
+ * S3 lists keys in the order of their UTF-8 bytes, so keys are looked up with a binary search rather than a scan of
+ * the listing. A listing whose keys aren't in that order, like one collected from a listing's shards as they arrived,
+ * is instead looked up with a hash index of its keys, which is built on its first lookup. A hash index can also be
+ * requested for a sorted listing (see {@link #setKeyIndexed(boolean)}), trading memory for faster lookups. The lazily
+ * built order check and index are safe to build from more than one thread, though they may then be built twice.
+ * </p>
  */
+@SuppressWarnings("PMD.TooManyMethods")
 public class BucketList implements Iterable<ListObject> {
 
-    private List<ListObject> myList;
+    private final List<ListObject> myList;
+
+    private final List<String> myCommonPrefixes;
+
+    private final boolean hasNextPage;
+
+    private final String myContinuationToken;
+
+    /** Whether the listing's keys are in S3's order, or null if that hasn't been checked yet */
+    private volatile Boolean isInKeyOrder;
+
+    /** The index positions of the listing's keys, or null if the index hasn't been built yet */
+    private volatile Map<String, Integer> myKeyIndex;
+
+    private volatile boolean hasKeyIndex;
 
     /**
-     * Creates a new listing of S3 objects.
+     * Creates a new listing of S3 objects. The response is parsed straight from its UTF-8 bytes, without first being
+     * converted into a string.
      *
      * @param aBuffer The XML response from an S3 list request
      * @throws IOException If there is trouble reading the XML response
      */
     public BucketList(final Buffer aBuffer) throws IOException {
-        this(aBuffer.toString(StandardCharsets.UTF_8));
+        this(aBuffer, false);
+    }
+
+    /**
+     * Creates a new listing of S3 objects, which is optionally held in compact form.
+     *
+     * @param aBuffer The XML response from an S3 list request
+     * @param aCompact Whether the listing is held in compact form
+     * @throws IOException If there is trouble reading the XML response
+     */
+    public BucketList(final Buffer aBuffer, final boolean aCompact) throws IOException {
+        this(aBuffer, aCompact ? new CompactObjectList() : null);
     }
 
     /**
@@ -45,22 +84,100 @@ public class BucketList implements Iterable<ListObject> {
      * @throws IOException If there is trouble reading the XML response
      */
     public BucketList(final String aString) throws IOException {
-        final SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
+        this(parse(aString));
+    }
 
-        saxParserFactory.setNamespaceAware(true);
+    /**
+     * Creates a new listing of S3 objects from a parsed list response.
+     *
+     * @param aHandler A handler that has parsed an S3 list response
+     */
+    BucketList(final ObjectListHandler aHandler) {
+        this(aHandler.getList(), aHandler.getCommonPrefixes(), aHandler.isTruncated(), aHandler.getContinuationToken());
+    }
 
-        try {
-            final SAXParser saxParser = saxParserFactory.newSAXParser();
-            final XMLReader xmlReader = saxParser.getXMLReader();
-            final ObjectListHandler s3ListHandler = new ObjectListHandler();
+    /**
+     * Creates a new listing of S3 objects, parsing its objects into a compact list if one is supplied.
+     *
+     * @param aBuffer The XML response from an S3 list request
+     * @param aCompactList A compact list for the listing's objects, or null if they're kept as they're parsed
+     * @throws IOException If there is trouble reading the XML response
+     */
+    private BucketList(final Buffer aBuffer, final CompactObjectList aCompactList) throws IOException {
+        this(parse(aBuffer, aCompactList), aCompactList);
+    }
 
-            xmlReader.setContentHandler(s3ListHandler);
-            xmlReader.parse(new InputSource(new StringReader(aString)));
+    /**
+     * Creates a new listing of S3 objects from a parsed list response whose objects may be in a compact list.
+     *
+     * @param aHandler A handler that has parsed an S3 list response
+     * @param aCompactList The compact list the handler passed its objects to, or null if the handler kept them
+     */
+    private BucketList(final ObjectListHandler aHandler, final CompactObjectList aCompactList) {
+        this(aCompactList != null ? aCompactList.trimToSize() : aHandler.getList(), aHandler.getCommonPrefixes(),
+                aHandler.isTruncated(), aHandler.getContinuationToken());
+    }
 
-            myList = Collections.unmodifiableList(s3ListHandler.getList());
-        } catch (final ParserConfigurationException | SAXException details) {
-            throw new IOException(details);
+    /**
+     * Creates a new listing of S3 objects.
+     *
+     * @param aObjects The listing's objects
+     * @param aCommonPrefixes The listing's common prefixes
+     * @param aTruncated Whether S3 has more objects to list
+     * @param aToken The token to request the next page of the listing, or null if it isn't truncated
+     */
+    private BucketList(final List<ListObject> aObjects, final List<String> aCommonPrefixes, final boolean aTruncated,
+            final String aToken) {
+        // A compact list can't be changed, so it doesn't need wrapping, which would hide it from indexOfKey()
+        myList = aObjects instanceof CompactObjectList ? aObjects : Collections.unmodifiableList(aObjects);
+        myCommonPrefixes = Collections.unmodifiableList(aCommonPrefixes);
+        hasNextPage = aTruncated;
+        myContinuationToken = aToken;
+    }
+
+    /**
+     * Reads all the objects of a listing's stream into a single bucket list, which is optionally held in compact
+     * form. In compact form, a listing of millions of objects (see {@link S3Client#listObjects(String)}) takes a few
+     * dozen bytes per object plus the length of its key.
+     *
+     * @param aStream A stream of the objects in a listing
+     * @param aCompact Whether the bucket list is held in compact form
+     * @param aHandler A handler for the bucket list once the stream has ended
+     */
+    public static void collect(final ReadStream<ListObject> aStream, final boolean aCompact,
+            final Handler<AsyncResult<BucketList>> aHandler) {
+        final CompactObjectList compactList = aCompact ? new CompactObjectList() : null;
+        final List<ListObject> objects = aCompact ? compactList : new ArrayList<>();
+
+        aStream.exceptionHandler(error -> aHandler.handle(Future.failedFuture(error)));
+        aStream.endHandler(end -> aHandler.handle(Future.succeededFuture(new BucketList(aCompact ? compactList
+                .trimToSize() : objects, Collections.emptyList(), false, null))));
+        aStream.handler(aCompact ? compactList::append : objects::add);
+    }
+
+    /**
+     * Gets a copy of this bucket list in compact form.
+     *
+     * @return A compact copy of the bucket list, or the bucket list itself if it's already compact
+     */
+    public BucketList toCompact() {
+        if (isCompact()) {
+            return this;
         }
+
+        final CompactObjectList compactList = new CompactObjectList();
+
+        myList.forEach(compactList::append);
+        return new BucketList(compactList.trimToSize(), myCommonPrefixes, hasNextPage, myContinuationToken);
+    }
+
+    /**
+     * Checks whether the bucket list is held in compact form.
+     *
+     * @return True if the bucket list's objects are read-only views of a compact list; else, false
+     */
+    public boolean isCompact() {
+        return myList instanceof CompactObjectList;
     }
 
     /**
@@ -85,21 +202,118 @@ public class BucketList implements Iterable<ListObject> {
     }
 
     /**
-     * Gets the index position of the S3 object that has the supplied key.
+     * Gets the index position of the S3 object that has the supplied key. The key is found with a binary search of
+     * a sorted listing, or with a hash index of the listing's keys if it's unsorted or indexed.
      *
      * @param aKey An S3 object key
-     * @return The index position of the S3 object with the supplied key
+     * @return The index position of the S3 object with the supplied key, or -1 if there's no such object
      */
     public int indexOfKey(final String aKey) {
         Objects.requireNonNull(aKey);
 
-        for (int index = 0; index < myList.size(); index++) {
-            if (aKey.equals(myList.get(index).getKey())) {
-                return index;
+        if (!hasKeyIndex && isSorted()) {
+            final IntUnaryOperator comparison = compareTo(aKey);
+            final int index = search(0, position -> comparison.applyAsInt(position) < 0);
+
+            return index < myList.size() && comparison.applyAsInt(index) == 0 ? index : -1;
+        }
+
+        return getKeyIndex().getOrDefault(aKey, -1);
+    }
+
+    /**
+     * Gets the objects whose keys are from the supplied key (inclusive) to the supplied key (exclusive) in the order
+     * S3 lists keys. Neither key needs to be in the listing.
+     *
+     * @param aFromKey The key the range starts at, or null to start at the beginning of the listing
+     * @param aToKey The key the range ends before, or null to end at the end of the listing
+     * @return A read-only list of the objects in the range, which is a view of a sorted listing
+     */
+    public List<ListObject> subList(final String aFromKey, final String aToKey) {
+        if (isSorted()) {
+            final int from = aFromKey == null ? 0 : search(0, isBefore(aFromKey));
+            final int to = aToKey == null ? myList.size() : search(from, isBefore(aToKey));
+
+            return myList.subList(from, to);
+        }
+
+        return Collections.unmodifiableList(myList.stream().filter(object -> isInRange(object.getKey(), aFromKey,
+                aToKey)).collect(Collectors.toList()));
+    }
+
+    /**
+     * Gets the objects whose keys start with the supplied prefix.
+     *
+     * @param aPrefix A key prefix
+     * @return A read-only list of the objects whose keys start with the prefix, which is a view of a sorted listing
+     */
+    public List<ListObject> subList(final String aPrefix) {
+        Objects.requireNonNull(aPrefix);
+
+        if (isSorted()) {
+            final int from = search(0, isBefore(aPrefix));
+            final IntPredicate startsWith = startsWith(aPrefix);
+
+            // Keys that start with the prefix sort together, directly after where the prefix would be
+            return myList.subList(from, search(from, startsWith));
+        }
+
+        return Collections.unmodifiableList(myList.stream().filter(object -> object.getKey().startsWith(aPrefix))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Checks whether the listing's keys are in the order S3 lists keys, which a single page, or a collected listing
+     * that wasn't sharded, always is.
+     *
+     * @return True if the listing's keys are sorted; else, false
+     */
+    public boolean isSorted() {
+        Boolean sorted = isInKeyOrder;
+
+        if (sorted == null) {
+            final int size = myList.size();
+            int index = 1;
+
+            if (isCompact()) {
+                final CompactObjectList compactList = (CompactObjectList) myList;
+
+                while (index < size && compactList.compareKeys(index - 1, index) <= 0) {
+                    index += 1;
+                }
+            } else {
+                while (index < size && ListQuery.compareKeys(myList.get(index - 1).getKey(), myList.get(index)
+                        .getKey()) <= 0) {
+                    index += 1;
+                }
             }
+
+            sorted = index >= size;
+            isInKeyOrder = sorted;
         }
 
-        return -1;
+        return sorted;
+    }
+
+    /**
+     * Sets whether keys are looked up with a hash index, which is built on the next lookup, instead of a binary
+     * search. An unsorted listing is always looked up with a hash index.
+     *
+     * @param aIndexed Whether keys are looked up with a hash index
+     * @return The bucket list
+     */
+    public BucketList setKeyIndexed(final boolean aIndexed) {
+        hasKeyIndex = aIndexed;
+        return this;
+    }
+
+    /**
+     * Checks whether keys are looked up with a hash index.
+     *
+     * @return True if keys are looked up with a hash index; else, false
+     */
+    public boolean isKeyIndexed() {
+        return hasKeyIndex || !isSorted();
     }
 
     /**
@@ -126,6 +340,36 @@ public class BucketList implements Iterable<ListObject> {
         myList.forEach(aEvent);
     }
 
+    /**
+     * Gets the prefixes that groups of keys share up to the delimiter of the listing. Each of these stands in for all
+     * the keys that start with it, which aren't included in the list's objects. A listing without a delimiter has no
+     * common prefixes.
+     *
+     * @return The common prefixes of the listing
+     */
+    public List<String> getCommonPrefixes() {
+        return myCommonPrefixes;
+    }
+
+    /**
+     * Checks whether S3 has more objects to list than are in this bucket list. When it does, the rest of the objects
+     * can be requested using the list's continuation token.
+     *
+     * @return True if the bucket list is one page of a longer listing; else, false
+     */
+    public boolean isTruncated() {
+        return hasNextPage;
+    }
+
+    /**
+     * Gets the token S3 supplied to request the next page of a truncated listing.
+     *
+     * @return The continuation token, or null if the bucket list isn't truncated
+     */
+    public String getContinuationToken() {
+        return myContinuationToken;
+    }
+
     /**
      * Gets the size of the bucket list.
      *
@@ -135,6 +379,151 @@ public class BucketList implements Iterable<ListObject> {
         return myList.size();
     }
 
+    /**
+     * Parses an S3 list response from its bytes.
+     *
+     * @param aBuffer The XML response from an S3 list request
+     * @param aCompactList A compact list to pass the response's objects to, or null to keep them in the handler
+     * @return A handler that has parsed the response
+     * @throws IOException If there is trouble reading the XML response
+     */
+    private static ObjectListHandler parse(final Buffer aBuffer, final CompactObjectList aCompactList)
+            throws IOException {
+        final ObjectListHandler handler = aCompactList != null ? new ObjectListHandler(aCompactList::append)
+                : new ObjectListHandler();
+
+        final IncrementalXmlParser parser = new IncrementalXmlParser(handler);
+
+        try {
+            parser.parse(aBuffer);
+            parser.end();
+        } catch (final SAXException details) {
+            throw new IOException(details);
+        }
+
+        return handler;
+    }
+
+    /**
+     * Parses an S3 list response from a string.
+     *
+     * @param aString The XML response from an S3 list request
+     * @return A handler that has parsed the response
+     * @throws IOException If there is trouble reading the XML response
+     */
+    private static ObjectListHandler parse(final String aString) throws IOException {
+        final ObjectListHandler handler = new ObjectListHandler();
+
+        SaxParsers.parse(aString, handler);
+        return handler;
+    }
+
+    /**
+     * Gets the hash index of the listing's keys, building it if it hasn't been built yet.
+     *
+     * @return The index positions of the listing's keys
+     */
+    private Map<String, Integer> getKeyIndex() {
+        Map<String, Integer> keyIndex = myKeyIndex;
+
+        if (keyIndex == null) {
+            final int size = myList.size();
+
+            keyIndex = new HashMap<>(Math.max(16, (int) (size / 0.75f) + 1));
+
+            for (int index = 0; index < size; index++) {
+                keyIndex.putIfAbsent(myList.get(index).getKey(), index);
+            }
+
+            myKeyIndex = keyIndex;
+        }
+
+        return keyIndex;
+    }
+
+    /**
+     * Finds the first index position, at or after the supplied one, that doesn't pass the supplied test. Index
+     * positions that pass the test must all come before those that don't.
+     *
+     * @param aFrom The index position to start searching from
+     * @param aTest A test of an index position
+     * @return The first index position that doesn't pass the test, or the size of the listing if they all do
+     */
+    private int search(final int aFrom, final IntPredicate aTest) {
+        int low = aFrom;
+        int high = myList.size();
+
+        while (low < high) {
+            final int middle = low + high >>> 1;
+
+            if (aTest.test(middle)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Checks whether a key is in a range of keys.
+     *
+     * @param aKey An S3 object key
+     * @param aFromKey The key the range starts at, or null if it starts at the beginning
+     * @param aToKey The key the range ends before, or null if it has no end
+     * @return True if the key is in the range; else, false
+     */
+    private static boolean isInRange(final String aKey, final String aFromKey, final String aToKey) {
+        return (aFromKey == null || ListQuery.compareKeys(aKey, aFromKey) >= 0) && (aToKey == null || ListQuery
+                .compareKeys(aKey, aToKey) < 0);
+    }
+
+    /**
+     * Gets a comparison of the key at an index position with the supplied key.
+     *
+     * @param aKey An S3 object key
+     * @return A comparison of the key at an index position with the supplied key
+     */
+    private IntUnaryOperator compareTo(final String aKey) {
+        if (isCompact()) {
+            final CompactObjectList compactList = (CompactObjectList) myList;
+            final byte[] key = aKey.getBytes(StandardCharsets.UTF_8);
+
+            return index -> compactList.compareKey(index, key);
+        }
+
+        return index -> ListQuery.compareKeys(myList.get(index).getKey(), aKey);
+    }
+
+    /**
+     * Gets a test of whether the key at an index position sorts before the supplied key.
+     *
+     * @param aKey An S3 object key
+     * @return A test of whether the key at an index position sorts before the supplied key
+     */
+    private IntPredicate isBefore(final String aKey) {
+        final IntUnaryOperator comparison = compareTo(aKey);
+        return index -> comparison.applyAsInt(index) < 0;
+    }
+
+    /**
+     * Gets a test of whether the key at an index position starts with the supplied prefix.
+     *
+     * @param aPrefix A key prefix
+     * @return A test of whether the key at an index position starts with the prefix
+     */
+    private IntPredicate startsWith(final String aPrefix) {
+        if (isCompact()) {
+            final CompactObjectList compactList = (CompactObjectList) myList;
+            final byte[] prefix = aPrefix.getBytes(StandardCharsets.UTF_8);
+
+            return index -> compactList.startsWith(index, prefix);
+        }
+
+        return index -> myList.get(index).getKey().startsWith(aPrefix);
+    }
+
     /**
      * Converts the bucket list into an array of {@link ListObject}s.
      *
@@ -0,0 +1,817 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import info.freelibrary.util.I18nRuntimeException;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.http.HttpClientResponse;
+
+/**
+ * A sync of a local directory, or of a prefix of another bucket, to a prefix of an S3 bucket. A sync walks its source
+ * and lists its target side by side, both in the order S3 lists keys, and merges them in a single pass: a source with
+ * no matching object in the target is uploaded (or copied, from another bucket), a source whose object has changed is
+ * uploaded again, and, optionally, an object with no matching source is deleted. This takes one listing of the target
+ * and only the transfers that are needed, instead of a HEAD request for every key.
+ * <p>
+ * An object has changed if its size differs from its source's. If both have an MD5 ETag, they're compared; a local
+ * file's MD5 digest is only computed when checksums are turned on (see {@link #setChecksums(boolean)}). Otherwise,
+ * an object has changed if its source was modified after it was last updated.
+ * </p>
+ */
+public class BucketSync {
+
+    /** The default number of actions a sync has in flight at one time */
+    public static final int DEFAULT_CONCURRENCY = 8;
+
+    /** The number of local files that are walked at one time */
+    private static final int WALK_BATCH_SIZE = 1000;
+
+    private static final String MD5 = "MD5";
+
+    private static final char QUOTE = '"';
+
+    private static final char HYPHEN = '-';
+
+    /** The length of an MD5 ETag, including its quotation marks */
+    private static final int DIGEST_ETAG_LENGTH = 34;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The start of the body of an error response */
+    private static final String ERROR = "<Error>";
+
+    private final Vertx myVertx;
+
+    private final S3Client myClient;
+
+    private final String myBucket;
+
+    private String myPrefix = "";
+
+    private int myConcurrency = DEFAULT_CONCURRENCY;
+
+    private boolean hasDeletions;
+
+    private boolean hasDigestChecks;
+
+    private boolean isPlanning;
+
+    private Handler<SyncAction> myActionHandler;
+
+    /**
+     * Creates a new sync to an S3 bucket.
+     *
+     * @param aVertx A Vert.x instance to walk local directories with
+     * @param aClient The client through which the bucket is listed and changed
+     * @param aBucket The S3 bucket that's synced to
+     */
+    public BucketSync(final Vertx aVertx, final S3Client aClient, final String aBucket) {
+        myVertx = aVertx;
+        myClient = aClient;
+        myBucket = aBucket;
+    }
+
+    /**
+     * Sets the prefix of the synced keys in the bucket. A source's key, relative to its directory or prefix, is
+     * appended to the prefix; the prefix should usually end with a slash.
+     *
+     * @param aPrefix A prefix of keys in the bucket
+     * @return The sync
+     */
+    public BucketSync setPrefix(final String aPrefix) {
+        myPrefix = aPrefix == null ? "" : aPrefix;
+        return this;
+    }
+
+    /**
+     * Gets the prefix of the synced keys in the bucket.
+     *
+     * @return The prefix, which is empty if the whole bucket is synced
+     */
+    public String getPrefix() {
+        return myPrefix;
+    }
+
+    /**
+     * Sets the number of actions the sync has in flight at one time. The source and the target are only read as far
+     * ahead as the actions in flight allow.
+     *
+     * @param aConcurrency The number of actions in flight at one time
+     * @return The sync
+     * @throws ConfigurationException If the supplied number is less than one
+     */
+    public BucketSync setConcurrency(final int aConcurrency) {
+        if (aConcurrency < 1) {
+            throw new ConfigurationException(MessageCodes.VS3_035, aConcurrency);
+        }
+
+        myConcurrency = aConcurrency;
+        return this;
+    }
+
+    /**
+     * Gets the number of actions the sync has in flight at one time.
+     *
+     * @return The number of actions in flight at one time
+     */
+    public int getConcurrency() {
+        return myConcurrency;
+    }
+
+    /**
+     * Sets whether objects in the target that are no longer in the source are deleted.
+     *
+     * @param aDeleting Whether objects that aren't in the source are deleted
+     * @return The sync
+     */
+    public BucketSync setDeleting(final boolean aDeleting) {
+        hasDeletions = aDeleting;
+        return this;
+    }
+
+    /**
+     * Checks whether objects in the target that are no longer in the source are deleted.
+     *
+     * @return True if objects that aren't in the source are deleted; else, false
+     */
+    public boolean isDeleting() {
+        return hasDeletions;
+    }
+
+    /**
+     * Sets whether a local file whose size matches its object is compared with the object's MD5 ETag, rather than by
+     * when it was modified. The file has to be read to compute its digest, but isn't uploaded unless it has changed.
+     *
+     * @param aChecksums Whether local files are compared by their MD5 digests
+     * @return The sync
+     */
+    public BucketSync setChecksums(final boolean aChecksums) {
+        hasDigestChecks = aChecksums;
+        return this;
+    }
+
+    /**
+     * Checks whether local files are compared by their MD5 digests.
+     *
+     * @return True if local files are compared by their MD5 digests; else, false
+     */
+    public boolean hasChecksums() {
+        return hasDigestChecks;
+    }
+
+    /**
+     * Sets whether the sync only finds the actions it would take, passing them to the action handler without taking
+     * them.
+     *
+     * @param aDryRun Whether the sync's actions aren't taken
+     * @return The sync
+     */
+    public BucketSync setDryRun(final boolean aDryRun) {
+        isPlanning = aDryRun;
+        return this;
+    }
+
+    /**
+     * Checks whether the sync only finds the actions it would take.
+     *
+     * @return True if the sync's actions aren't taken; else, false
+     */
+    public boolean isDryRun() {
+        return isPlanning;
+    }
+
+    /**
+     * Sets a handler that's passed each of the sync's actions once it's been taken.
+     *
+     * @param aHandler A handler for the sync's actions
+     * @return The sync
+     */
+    public BucketSync actionHandler(final Handler<SyncAction> aHandler) {
+        myActionHandler = aHandler;
+        return this;
+    }
+
+    /**
+     * Syncs the files below a local directory to the bucket.
+     *
+     * @param aDirectory A local directory
+     * @param aHandler A handler that's notified once the sync has finished, or once one of its actions has failed
+     */
+    public void sync(final Path aDirectory, final Handler<AsyncResult<Void>> aHandler) {
+        final Context context = myVertx.getOrCreateContext();
+        final LocalFileWalker walker = new LocalFileWalker(aDirectory);
+
+        new Merge(context, handler -> context.<Iterator<ListObject>>executeBlocking(promise -> {
+            final List<ListObject> batch = new ArrayList<>(WALK_BATCH_SIZE);
+
+            while (batch.size() < WALK_BATCH_SIZE && walker.hasNext()) {
+                batch.add(walker.next());
+            }
+
+            promise.complete(batch.iterator());
+        }, false, handler), new ListingCursor(myClient, myBucket, myPrefix), aDirectory, null, null, aHandler)
+                .start();
+    }
+
+    /**
+     * Syncs the objects under a prefix of another bucket to this sync's bucket, copying them within S3.
+     *
+     * @param aSourceBucket The bucket to copy objects from
+     * @param aSourcePrefix The prefix of the objects to copy (optional)
+     * @param aHandler A handler that's notified once the sync has finished, or once one of its actions has failed
+     */
+    public void sync(final String aSourceBucket, final String aSourcePrefix,
+            final Handler<AsyncResult<Void>> aHandler) {
+        final String sourcePrefix = aSourcePrefix == null ? "" : aSourcePrefix;
+
+        new Merge(myVertx.getOrCreateContext(), new ListingCursor(myClient, aSourceBucket, sourcePrefix),
+                new ListingCursor(myClient, myBucket, myPrefix), null, aSourceBucket, sourcePrefix, aHandler).start();
+    }
+
+    /**
+     * Syncs a source to the bucket, reading the source and the target's listing through the supplied cursors.
+     *
+     * @param aSource A cursor over the source, with keys relative to its directory or prefix
+     * @param aTarget A cursor over the target's listing, with keys relative to the sync's prefix
+     * @param aDirectory The local directory that's synced, or null if another bucket is synced
+     * @param aHandler A handler that's notified once the sync has finished
+     */
+    void sync(final Cursor aSource, final Cursor aTarget, final Path aDirectory,
+            final Handler<AsyncResult<Void>> aHandler) {
+        new Merge(myVertx.getOrCreateContext(), aSource, aTarget, aDirectory, null, null, aHandler).start();
+    }
+
+    /**
+     * Checks whether an object has changed since it was synced from its source.
+     *
+     * @param aSource The source of an object
+     * @param aTarget The object in the target bucket
+     * @return True if the object is out of date with its source; else, false
+     */
+    static boolean isChanged(final ListObject aSource, final ListObject aTarget) {
+        if (aSource.getSize() != aTarget.getSize()) {
+            return true;
+        } else if (isDigest(aSource.getETag()) && isDigest(aTarget.getETag())) {
+            return !aSource.getETag().equalsIgnoreCase(aTarget.getETag());
+        } else {
+            return aSource.getLastUpdated() != null && aTarget.getLastUpdated() != null && aSource.getLastUpdated()
+                    .isAfter(aTarget.getLastUpdated());
+        }
+    }
+
+    /**
+     * Checks whether an ETag is the MD5 digest of its object's contents, which it isn't for an object that was
+     * uploaded in parts.
+     *
+     * @param aETag An ETag, which may be null
+     * @return True if the ETag is an MD5 digest; else, false
+     */
+    private static boolean isDigest(final String aETag) {
+        return aETag != null && aETag.length() == DIGEST_ETAG_LENGTH && aETag.charAt(0) == QUOTE && aETag.indexOf(
+                HYPHEN) == -1;
+    }
+
+    /**
+     * Computes the MD5 ETag of a local file.
+     *
+     * @param aFile A local file
+     * @return The file's MD5 digest as an ETag
+     * @throws IOException If the file can't be read
+     */
+    private static String getETag(final Path aFile) throws IOException {
+        final MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance(MD5);
+        } catch (final NoSuchAlgorithmException details) {
+            throw new I18nRuntimeException(details);
+        }
+
+        final byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (InputStream input = Files.newInputStream(aFile)) {
+            for (int count = input.read(buffer); count != -1; count = input.read(buffer)) {
+                digest.update(buffer, 0, count);
+            }
+        }
+
+        final byte[] bytes = digest.digest();
+        final char[] etag = new char[DIGEST_ETAG_LENGTH];
+
+        etag[0] = QUOTE;
+        etag[etag.length - 1] = QUOTE;
+
+        for (int index = 0; index < bytes.length; index++) {
+            etag[index * 2 + 1] = HEX_DIGITS[bytes[index] >> 4 & 0xF];
+            etag[index * 2 + 2] = HEX_DIGITS[bytes[index] & 0xF];
+        }
+
+        return new String(etag);
+    }
+
+    /**
+     * A reader of one side of a sync, in the order S3 lists keys, a batch at a time.
+     */
+    @FunctionalInterface
+    interface Cursor {
+
+        /**
+         * Reads the next batch of objects.
+         *
+         * @param aHandler A handler for the next batch, which is empty once there are no more objects
+         */
+        void next(Handler<AsyncResult<Iterator<ListObject>>> aHandler);
+    }
+
+    /**
+     * A cursor over the pages of a bucket's listing. The keys of the listed objects are made relative to the prefix
+     * of the listing.
+     */
+    private static final class ListingCursor implements Cursor {
+
+        private final S3Client myClient;
+
+        private final String myBucket;
+
+        private final String myPrefix;
+
+        private final ListQuery myQuery;
+
+        private String myToken;
+
+        private boolean hasEnded;
+
+        /**
+         * Creates a new cursor over a bucket's listing.
+         *
+         * @param aClient The client through which the bucket is listed
+         * @param aBucket An S3 bucket
+         * @param aPrefix The prefix of the listing, which may be empty
+         */
+        private ListingCursor(final S3Client aClient, final String aBucket, final String aPrefix) {
+            myClient = aClient;
+            myBucket = aBucket;
+            myPrefix = aPrefix;
+            myQuery = new ListQuery(aPrefix.isEmpty() ? null : aPrefix);
+        }
+
+        @Override
+        public void next(final Handler<AsyncResult<Iterator<ListObject>>> aHandler) {
+            if (hasEnded) {
+                aHandler.handle(Future.succeededFuture(Collections.emptyIterator()));
+            } else {
+                ObjectListStream.requestPage(myClient, myBucket, myQuery, myToken, null, page -> {
+                    if (page.failed()) {
+                        aHandler.handle(Future.failedFuture(page.cause()));
+                    } else {
+                        final BucketList bucketList = page.result();
+
+                        myToken = bucketList.getContinuationToken();
+                        hasEnded = !bucketList.isTruncated();
+                        bucketList.forEach(object -> object.setKey(object.getKey().substring(myPrefix.length())));
+
+                        // A page of a listing that continues can be empty, so it's skipped
+                        if (bucketList.isEmpty() && !hasEnded) {
+                            next(aHandler);
+                        } else {
+                            aHandler.handle(Future.succeededFuture(bucketList.iterator()));
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * A single run of a sync, which merges its source with its target and takes the actions that are needed.
+     */
+    @SuppressWarnings({ "PMD.TooManyMethods", "PMD.TooManyFields" })
+    private final class Merge {
+
+        private final Context myContext;
+
+        private final Cursor mySource;
+
+        private final Cursor myTarget;
+
+        /** The local directory that's synced, or null if another bucket is synced */
+        private final Path myDirectory;
+
+        private final String mySourceBucket;
+
+        private final String mySourcePrefix;
+
+        private final Handler<AsyncResult<Void>> myHandler;
+
+        private Iterator<ListObject> mySourceBatch = Collections.emptyIterator();
+
+        private Iterator<ListObject> myTargetBatch = Collections.emptyIterator();
+
+        private ListObject mySourceHead;
+
+        private ListObject myTargetHead;
+
+        private boolean hasSourceEnded;
+
+        private boolean hasTargetEnded;
+
+        private boolean isReading;
+
+        private boolean isMerging;
+
+        private boolean isFinished;
+
+        private int myActionCount;
+
+        /**
+         * Creates a new run of the sync.
+         *
+         * @param aContext The context the run's callbacks are handled on
+         * @param aSource A cursor over the source
+         * @param aTarget A cursor over the target's listing
+         * @param aDirectory The local directory that's synced, or null if another bucket is synced
+         * @param aSourceBucket The bucket that's synced, or null if a local directory is synced
+         * @param aSourcePrefix The prefix of the bucket that's synced, or null if a local directory is synced
+         * @param aHandler A handler that's notified once the run has finished
+         */
+        private Merge(final Context aContext, final Cursor aSource, final Cursor aTarget, final Path aDirectory,
+                final String aSourceBucket, final String aSourcePrefix, final Handler<AsyncResult<Void>> aHandler) {
+            myContext = aContext;
+            mySource = aSource;
+            myTarget = aTarget;
+            myDirectory = aDirectory;
+            mySourceBucket = aSourceBucket;
+            mySourcePrefix = aSourcePrefix;
+            myHandler = aHandler;
+        }
+
+        /**
+         * Starts the run on its context.
+         */
+        private void start() {
+            myContext.runOnContext(start -> merge());
+        }
+
+        /**
+         * Merges the source with the target, starting actions until as many as are allowed are in flight or one side
+         * needs to read its next batch.
+         */
+        private void merge() {
+            if (isMerging) {
+                return;
+            }
+
+            isMerging = true;
+
+            while (!isReading && myActionCount < myConcurrency && hasHeads()) {
+                if (mySourceHead == null && myTargetHead == null) {
+                    if (myActionCount == 0) {
+                        finish(null);
+                    }
+
+                    break;
+                }
+
+                mergeHeads();
+            }
+
+            isMerging = false;
+        }
+
+        /**
+         * Makes sure that each side that hasn't ended has its next object at hand, reading the next batch of a side
+         * that has run out.
+         *
+         * @return True if the next objects of both sides are at hand; else, false, if a batch is still being read
+         */
+        private boolean hasHeads() {
+            while (mySourceHead == null && !hasSourceEnded && !isFinished) {
+                if (mySourceBatch.hasNext()) {
+                    mySourceHead = mySourceBatch.next();
+                } else if (read(true)) {
+                    return false;
+                }
+            }
+
+            while (myTargetHead == null && !hasTargetEnded && !isFinished) {
+                if (myTargetBatch.hasNext()) {
+                    myTargetHead = myTargetBatch.next();
+                } else if (read(false)) {
+                    return false;
+                }
+            }
+
+            return !isFinished;
+        }
+
+        /**
+         * Compares the next objects of the two sides, starting the action that's needed for the one that comes first
+         * or for both if they have the same key.
+         */
+        private void mergeHeads() {
+            final int order;
+
+            if (mySourceHead == null) {
+                order = 1;
+            } else if (myTargetHead == null) {
+                order = -1;
+            } else {
+                order = ListQuery.compareKeys(mySourceHead.getKey(), myTargetHead.getKey());
+            }
+
+            if (order < 0) {
+                start(mySourceHead);
+                mySourceHead = null;
+            } else if (order > 0) {
+                if (hasDeletions) {
+                    start(new SyncAction(SyncAction.Type.DELETE, myPrefix + myTargetHead.getKey(), null, null, null,
+                            null));
+                }
+
+                myTargetHead = null;
+            } else {
+                if (isVerifiable(mySourceHead, myTargetHead)) {
+                    verify(mySourceHead, myTargetHead);
+                } else if (isChanged(mySourceHead, myTargetHead)) {
+                    start(mySourceHead);
+                }
+
+                mySourceHead = null;
+                myTargetHead = null;
+            }
+        }
+
+        /**
+         * Checks whether a local file should be compared with its object by digest, rather than by when it was
+         * modified. Files whose sizes differ from their objects' are always uploaded, so they aren't read.
+         *
+         * @param aSource A local file
+         * @param aTarget The file's object in the target bucket
+         * @return True if the file's digest should be computed; else, false
+         */
+        private boolean isVerifiable(final ListObject aSource, final ListObject aTarget) {
+            return myDirectory != null && hasDigestChecks && aSource.getSize() == aTarget.getSize() && isDigest(
+                    aTarget.getETag());
+        }
+
+        /**
+         * Reads the next batch of one of the sides.
+         *
+         * @param aSource Whether the source is read, rather than the target
+         * @return True if the batch is still being read; else, false, if it was read straight away
+         */
+        private boolean read(final boolean aSource) {
+            isReading = true;
+
+            (aSource ? mySource : myTarget).next(batch -> {
+                isReading = false;
+
+                if (batch.failed()) {
+                    finish(batch.cause());
+                } else {
+                    final Iterator<ListObject> objects = batch.result();
+
+                    if (aSource) {
+                        mySourceBatch = objects;
+                        hasSourceEnded = !objects.hasNext();
+                    } else {
+                        myTargetBatch = objects;
+                        hasTargetEnded = !objects.hasNext();
+                    }
+
+                    merge();
+                }
+            });
+
+            return isReading;
+        }
+
+        /**
+         * Computes the MD5 digest of a local file whose size matches its object, uploading the file if its digest
+         * doesn't match the object's ETag.
+         *
+         * @param aSource A local file
+         * @param aTarget The file's object in the target bucket
+         */
+        private void verify(final ListObject aSource, final ListObject aTarget) {
+            myActionCount += 1;
+
+            myContext.<String>executeBlocking(promise -> digest(aSource, promise), false, etag -> verified(aSource,
+                    aTarget, etag));
+        }
+
+        /**
+         * Computes the ETag of a local file. This reads the whole file, so it's run from a worker thread.
+         *
+         * @param aSource A local file
+         * @param aPromise A promise of the file's ETag
+         */
+        private void digest(final ListObject aSource, final Promise<String> aPromise) {
+            try {
+                aPromise.complete(getETag(myDirectory.resolve(aSource.getKey())));
+            } catch (final IOException details) {
+                aPromise.fail(details);
+            }
+        }
+
+        /**
+         * Starts an upload of a local file if its ETag differs from that of its object, or else continues the merge.
+         *
+         * @param aSource A local file
+         * @param aTarget The file's object in the target bucket
+         * @param aETag The result of computing the file's ETag
+         */
+        private void verified(final ListObject aSource, final ListObject aTarget, final AsyncResult<String> aETag) {
+            myActionCount -= 1;
+
+            if (aETag.failed()) {
+                finish(aETag.cause());
+            } else if (!isFinished && isChanged(aSource.setETag(aETag.result()), aTarget)) {
+                start(aSource);
+            } else {
+                merge();
+            }
+        }
+
+        /**
+         * Starts the action that brings a source's object up to date: an upload of a local file or a copy from the
+         * source bucket.
+         *
+         * @param aSource The source of an object
+         */
+        private void start(final ListObject aSource) {
+            final String key = myPrefix + aSource.getKey();
+
+            if (myDirectory != null) {
+                start(new SyncAction(SyncAction.Type.PUT, key, aSource, myDirectory.resolve(aSource.getKey()), null,
+                        null));
+            } else {
+                start(new SyncAction(SyncAction.Type.COPY, key, aSource, null, mySourceBucket, mySourcePrefix +
+                        aSource.getKey()));
+            }
+        }
+
+        /**
+         * Starts an action, or passes it straight to the action handler if this is a dry run.
+         *
+         * @param aAction An action
+         */
+        private void start(final SyncAction aAction) {
+            final Handler<AsyncResult<Void>> handler = result -> complete(aAction, result);
+            final Handler<Throwable> exceptionHandler = error -> handler.handle(Future.failedFuture(error));
+
+            myActionCount += 1;
+
+            if (isPlanning) {
+                complete(aAction, Future.succeededFuture());
+            } else if (aAction.getType() == SyncAction.Type.PUT) {
+                put(aAction, handler);
+            } else if (aAction.getType() == SyncAction.Type.COPY) {
+                final Handler<HttpClientResponse> copyHandler = response -> checkCopy(aAction, response, handler);
+
+                myClient.copy(aAction.getSourceBucket(), aAction.getSourceKey(), myBucket, aAction.getKey(),
+                        copyHandler, exceptionHandler);
+            } else {
+                final Handler<HttpClientResponse> deleteHandler = response -> check(aAction, response,
+                        HTTP.NO_CONTENT, handler);
+
+                myClient.delete(myBucket, aAction.getKey(), deleteHandler, exceptionHandler);
+            }
+        }
+
+        /**
+         * Uploads a local file.
+         *
+         * @param aAction An upload action
+         * @param aHandler A handler for the result of the upload
+         */
+        private void put(final SyncAction aAction, final Handler<AsyncResult<Void>> aHandler) {
+            myContext.owner().fileSystem().open(aAction.getFile().toString(), new OpenOptions().setWrite(false)
+                    .setCreate(false), open -> upload(aAction, open, aHandler));
+        }
+
+        /**
+         * Uploads a local file once it's been opened, closing it once the upload has finished.
+         *
+         * @param aAction An upload action
+         * @param aFile The result of opening the file
+         * @param aHandler A handler for the result of the upload
+         */
+        private void upload(final SyncAction aAction, final AsyncResult<AsyncFile> aFile,
+                final Handler<AsyncResult<Void>> aHandler) {
+            if (aFile.failed()) {
+                aHandler.handle(Future.failedFuture(aFile.cause()));
+            } else {
+                final AsyncFile file = aFile.result();
+                final Handler<HttpClientResponse> putHandler = response -> {
+                    file.close();
+                    check(aAction, response, HTTP.OK, aHandler);
+                };
+
+                myClient.put(myBucket, aAction.getKey(), file, putHandler, error -> {
+                    file.close();
+                    aHandler.handle(Future.failedFuture(error));
+                });
+            }
+        }
+
+        /**
+         * Checks the response to a copy, which can fail after S3 has responded with a 200 OK status.
+         *
+         * @param aAction A copy action
+         * @param aResponse The response to the copy
+         * @param aHandler A handler for the result of the copy
+         */
+        private void checkCopy(final SyncAction aAction, final HttpClientResponse aResponse,
+                final Handler<AsyncResult<Void>> aHandler) {
+            if (aResponse.statusCode() == HTTP.OK) {
+                aResponse.exceptionHandler(error -> aHandler.handle(Future.failedFuture(error)));
+                aResponse.bodyHandler(body -> {
+                    final String result = body.toString();
+
+                    if (result.contains(ERROR)) {
+                        aHandler.handle(Future.failedFuture(new I18nRuntimeException(Constants.BUNDLE_NAME,
+                                MessageCodes.VS3_037, aAction.getSourceBucket(), aAction.getSourceKey(), myBucket,
+                                aAction.getKey(), result)));
+                    } else {
+                        aHandler.handle(Future.succeededFuture());
+                    }
+                });
+            } else {
+                check(aAction, aResponse, HTTP.OK, aHandler);
+            }
+        }
+
+        /**
+         * Checks the response to an action.
+         *
+         * @param aAction An action
+         * @param aResponse The response to the action
+         * @param aStatusCode The status code of a successful response
+         * @param aHandler A handler for the result of the action
+         */
+        private void check(final SyncAction aAction, final HttpClientResponse aResponse, final int aStatusCode,
+                final Handler<AsyncResult<Void>> aHandler) {
+            if (aResponse.statusCode() == aStatusCode) {
+                aHandler.handle(Future.succeededFuture());
+            } else {
+                aHandler.handle(Future.failedFuture(new I18nRuntimeException(Constants.BUNDLE_NAME,
+                        MessageCodes.VS3_036, aAction.getType(), myBucket, aAction.getKey(), aResponse.statusCode(),
+                        aResponse.statusMessage())));
+            }
+        }
+
+        /**
+         * Completes an action, passing it to the action handler and continuing the merge if it succeeded.
+         *
+         * @param aAction An action
+         * @param aResult The result of the action
+         */
+        private void complete(final SyncAction aAction, final AsyncResult<Void> aResult) {
+            myActionCount -= 1;
+
+            if (aResult.failed()) {
+                finish(aResult.cause());
+            } else if (!isFinished) {
+                if (myActionHandler != null) {
+                    myActionHandler.handle(aAction);
+                }
+
+                merge();
+            }
+        }
+
+        /**
+         * Finishes the run, notifying its handler. Only the first failure is passed on; actions that are still in
+         * flight when a run fails are left to finish on their own.
+         *
+         * @param aFailure The cause of the run's failure, or null if it succeeded
+         */
+        private void finish(final Throwable aFailure) {
+            if (!isFinished) {
+                isFinished = true;
+                myHandler.handle(aFailure == null ? Future.succeededFuture() : Future.failedFuture(aFailure));
+            }
+        }
+    }
+}
@@ -0,0 +1,371 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+import info.freelibrary.util.I18nRuntimeException;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.streams.ReadStream;
+
+/**
+ * A delete of many S3 objects, in batches of up to a thousand keys that are each deleted with a single DeleteObjects
+ * request. Keys are read from an iterator or a stream, and several batches are sent at a time. A stream is paused
+ * while a filled batch is waiting to be sent, so only a bounded number of keys are held in memory at any one time.
+ * Batches are sent in quiet mode, so S3 only responds with the keys it couldn't delete; those keys, and the keys of
+ * any batch that failed as a whole, are passed to the delete's handler once all the batches have finished.
+ */
+class BulkDelete {
+
+    /** The maximum number of keys S3 will delete with a single request */
+    static final int MAX_BATCH_SIZE = 1000;
+
+    /** The query that deletes the objects listed in a request's body */
+    private static final String DELETE_QUERY = "?delete";
+
+    /** The start of a request's body, up to its first key */
+    private static final String DELETE_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><Delete><Quiet>true</Quiet>";
+
+    /** The approximate size of each key's entry in a request's body */
+    private static final int KEY_XML_SIZE = 96;
+
+    private static final String MD5 = "MD5";
+
+    /** The client through which the delete's requests are made */
+    private final S3Client myClient;
+
+    /** The S3 bucket from which objects are deleted */
+    private final String myBucket;
+
+    /** The maximum number of batches the delete sends at one time */
+    private final int myConcurrency;
+
+    /** The handler that receives the keys that couldn't be deleted */
+    private final Handler<AsyncResult<List<DeleteError>>> myHandler;
+
+    /** Batches that have been filled but not yet sent */
+    private final Deque<List<String>> myPendingBatches = new ArrayDeque<>();
+
+    /** The keys that couldn't be deleted */
+    private final List<DeleteError> myErrors = new ArrayList<>();
+
+    /** The batch that's currently being filled */
+    private List<String> myBatch = new ArrayList<>(MAX_BATCH_SIZE);
+
+    /** The keys being deleted, if they're read from an iterator */
+    private Iterator<String> myKeys;
+
+    /** The stream being read, if keys are read from a stream */
+    private ReadStream<?> myStream;
+
+    /** The number of batches that are being sent */
+    private int myBatchesInFlight;
+
+    /** Whether the stream has been paused because batches are waiting to be sent */
+    private boolean isPaused;
+
+    /** Whether all the keys have been read */
+    private boolean isEnded;
+
+    /** Whether the delete has finished, successfully or not */
+    private boolean isFinished;
+
+    /**
+     * Creates a new bulk delete.
+     *
+     * @param aClient An S3 client
+     * @param aBucket An S3 bucket
+     * @param aHandler A handler for the keys that couldn't be deleted
+     */
+    BulkDelete(final S3Client aClient, final String aBucket, final Handler<AsyncResult<List<DeleteError>>> aHandler) {
+        myClient = aClient;
+        myBucket = aBucket;
+        myConcurrency = aClient.getDeleteConcurrency();
+        myHandler = aHandler;
+    }
+
+    /**
+     * Starts deleting the supplied keys. Keys are read from the iterator as batches are needed, so it's read by the
+     * threads the delete's responses are handled on.
+     *
+     * @param aKeys The keys to delete
+     */
+    void start(final Iterator<String> aKeys) {
+        synchronized (this) {
+            myKeys = aKeys;
+            fill();
+        }
+    }
+
+    /**
+     * Starts deleting the keys that are read from a stream.
+     *
+     * @param <T> The type of the stream's items
+     * @param aStream A stream of the objects to delete
+     * @param aKeyFunction A function that gets an S3 key from one of the stream's items
+     */
+    <T> void start(final ReadStream<T> aStream, final Function<T, String> aKeyFunction) {
+        myStream = aStream;
+
+        aStream.exceptionHandler(this::fail);
+        aStream.endHandler(end -> end());
+        aStream.handler(item -> add(aKeyFunction.apply(item)));
+    }
+
+    /**
+     * Fills batches from the iterator until as many batches as are allowed are in flight, ending the delete once the
+     * iterator runs out of keys.
+     */
+    private void fill() {
+        while (!isEnded && !isFinished && myBatchesInFlight + myPendingBatches.size() < myConcurrency) {
+            if (myKeys.hasNext()) {
+                add(myKeys.next());
+            } else {
+                end();
+            }
+        }
+    }
+
+    /**
+     * Adds a key to the batch that's being filled, queueing the batch to be sent once it's full.
+     *
+     * @param aKey A key to delete
+     */
+    private void add(final String aKey) {
+        synchronized (this) {
+            if (!isFinished) {
+                myBatch.add(aKey);
+
+                if (myBatch.size() == MAX_BATCH_SIZE) {
+                    myPendingBatches.add(myBatch);
+                    myBatch = new ArrayList<>(MAX_BATCH_SIZE);
+                    sendPendingBatches();
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues the last, partly filled, batch once all the keys have been read.
+     */
+    private void end() {
+        synchronized (this) {
+            isEnded = true;
+
+            if (!myBatch.isEmpty()) {
+                myPendingBatches.add(myBatch);
+                myBatch = new ArrayList<>(0);
+            }
+
+            sendPendingBatches();
+            completeIfDone();
+        }
+    }
+
+    /**
+     * Sends as many pending batches as are allowed, pausing the stream while any batches are still waiting.
+     */
+    private void sendPendingBatches() {
+        while (!isFinished && myBatchesInFlight < myConcurrency && !myPendingBatches.isEmpty()) {
+            send(myPendingBatches.poll());
+        }
+
+        if (myStream != null && !isEnded) {
+            if (!isPaused && !myPendingBatches.isEmpty()) {
+                isPaused = true;
+                myStream.pause();
+            } else if (isPaused && myPendingBatches.isEmpty()) {
+                isPaused = false;
+                myStream.resume();
+            }
+        }
+    }
+
+    /**
+     * Sends a batch of keys to S3 in a single DeleteObjects request.
+     *
+     * @param aBatch A batch of keys
+     */
+    private void send(final List<String> aBatch) {
+        final Buffer body = Buffer.buffer(getDeleteXML(aBatch), StandardCharsets.UTF_8.name());
+        final S3ClientRequest request = myClient.createPostRequest(myBucket, DELETE_QUERY, response -> {
+            if (response.statusCode() == HTTP.OK) {
+                response.bodyHandler(xml -> parse(aBatch, xml));
+            } else {
+                complete(aBatch, String.valueOf(response.statusCode()), response.statusMessage());
+            }
+        });
+
+        myBatchesInFlight += 1;
+
+        request.putHeader(HttpHeaders.CONTENT_MD5, getContentMD5(body));
+        request.putHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(body.length()));
+        request.exceptionHandler(error -> complete(aBatch, error.getClass().getName(), error.getMessage()));
+        request.useV2Signature(myClient.usesV2Signature()).end(body);
+    }
+
+    /**
+     * Reads the keys that couldn't be deleted from the response to a batch.
+     *
+     * @param aBatch A batch of keys
+     * @param aBuffer The XML response from S3
+     */
+    private void parse(final List<String> aBatch, final Buffer aBuffer) {
+        final DeleteResultHandler handler = new DeleteResultHandler();
+
+        try {
+            SaxParsers.parse(aBuffer, handler);
+        } catch (final IOException details) {
+            complete(aBatch, details.getClass().getName(), details.getMessage());
+            return;
+        }
+
+        complete(handler.getErrors());
+    }
+
+    /**
+     * Finishes a batch that failed as a whole, recording each of its keys as an error.
+     *
+     * @param aBatch A batch of keys
+     * @param aCode The code of the batch's error
+     * @param aMessage The message of the batch's error
+     */
+    private void complete(final List<String> aBatch, final String aCode, final String aMessage) {
+        final List<DeleteError> errors = new ArrayList<>(aBatch.size());
+
+        for (final String key : aBatch) {
+            errors.add(new DeleteError(key, aCode, aMessage));
+        }
+
+        complete(errors);
+    }
+
+    /**
+     * Finishes a batch, sending the next pending batch or reading the next keys.
+     *
+     * @param aErrors The keys of the batch that couldn't be deleted
+     */
+    private void complete(final List<DeleteError> aErrors) {
+        synchronized (this) {
+            myBatchesInFlight -= 1;
+            myErrors.addAll(aErrors);
+
+            sendPendingBatches();
+
+            if (myKeys != null) {
+                fill();
+            }
+
+            completeIfDone();
+        }
+    }
+
+    /**
+     * Passes the keys that couldn't be deleted to the delete's handler once all the batches have finished.
+     */
+    private void completeIfDone() {
+        if (isEnded && !isFinished && myBatchesInFlight == 0 && myPendingBatches.isEmpty()) {
+            isFinished = true;
+            myHandler.handle(Future.succeededFuture(myErrors));
+        }
+    }
+
+    /**
+     * Ends the delete with an exception from the stream of keys. Batches that are already in flight still finish,
+     * but their results aren't reported.
+     *
+     * @param aThrowable The cause of the failure
+     */
+    private void fail(final Throwable aThrowable) {
+        synchronized (this) {
+            if (!isFinished) {
+                isFinished = true;
+                myPendingBatches.clear();
+                myHandler.handle(Future.failedFuture(aThrowable));
+            }
+        }
+    }
+
+    /**
+     * Gets the XML body of a request that deletes a batch of keys.
+     *
+     * @param aBatch A batch of keys
+     * @return The XML body of the delete request
+     */
+    static String getDeleteXML(final List<String> aBatch) {
+        final StringBuilder xml = new StringBuilder(DELETE_START.length() + aBatch.size() * KEY_XML_SIZE);
+
+        xml.append(DELETE_START);
+
+        for (final String key : aBatch) {
+            appendEscaped(xml.append("<Object><Key>"), key).append("</Key></Object>");
+        }
+
+        return xml.append("</Delete>").toString();
+    }
+
+    /**
+     * Appends a key to the XML body of a delete request, escaping the characters that XML reserves. A carriage return
+     * is escaped too, since an XML parser would otherwise normalize it into a line feed and the key wouldn't match.
+     *
+     * @param aXML The XML body of a delete request
+     * @param aKey An S3 key
+     * @return The XML body of the delete request
+     */
+    private static StringBuilder appendEscaped(final StringBuilder aXML, final String aKey) {
+        for (int index = 0; index < aKey.length(); index++) {
+            final char character = aKey.charAt(index);
+
+            switch (character) {
+                case '&':
+                    aXML.append("&amp;");
+                    break;
+                case '<':
+                    aXML.append("&lt;");
+                    break;
+                case '>':
+                    aXML.append("&gt;");
+                    break;
+                case '\r':
+                    aXML.append("&#13;");
+                    break;
+                default:
+                    aXML.append(character);
+                    break;
+            }
+        }
+
+        return aXML;
+    }
+
+    /**
+     * Gets the Content-MD5 header that S3 requires of a DeleteObjects request.
+     *
+     * @param aBody The body of a delete request
+     * @return The Base64 encoded MD5 digest of the body
+     */
+    private static String getContentMD5(final Buffer aBody) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance(MD5);
+
+            digest.update(aBody.getByteBuf().nioBuffer());
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (final NoSuchAlgorithmException details) {
+            throw new I18nRuntimeException(details);
+        }
+    }
+}
@@ -0,0 +1,503 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import info.freelibrary.util.I18nRuntimeException;
+
+/**
+ * A list of S3 list objects that's stored in columns of primitive arrays, rather than as an object per entry. Keys
+ * are kept as UTF-8 in one shared byte array, with an array of offsets into it; sizes and timestamps are kept in
+ * arrays of longs; ETags that are MD5 digests, as most are, are kept as 16 bytes each; and storage classes and owners
+ * are kept as indexes into small dictionaries of the distinct values. An entry takes about 40 bytes plus the length
+ * of its key, compared to several hundred as a {@link ListObject}.
+ * <p>
+ * The list's elements are read-only views that read their values from the columns when they're asked for them, so an
+ * element that's only looked at briefly costs little more than its key. Objects are added with
+ * {@link #append(ListObject)}; the list can't otherwise be changed.
+ * </p>
+ */
+final class CompactObjectList extends AbstractList<ListObject> implements RandomAccess {
+
+    /** The number of entries a new list has room for before its columns need to grow */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** The number of bytes a new list has room for per key before its key arena needs to grow */
+    private static final int INITIAL_KEY_LENGTH = 48;
+
+    /** The largest array the JVM reliably allocates */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /** The number of bytes in an MD5 digest */
+    private static final int DIGEST_LENGTH = 16;
+
+    /** The radix of the hex digits in an ETag */
+    private static final int HEX_RADIX = 16;
+
+    /** The number of characters in an MD5 ETag, including its quotation marks */
+    private static final int ETAG_LENGTH = DIGEST_LENGTH * 2 + 2;
+
+    /** The most parts a multipart upload's ETag can count */
+    private static final int MAX_PARTS = Short.MAX_VALUE;
+
+    /** The timestamp of an entry that has no last modified date */
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    /** The most values a byte-sized dictionary index can refer to, since zero stands for no value */
+    private static final int MAX_STORAGE_CLASSES = 255;
+
+    private static final char QUOTE = '"';
+
+    private static final char HYPHEN = '-';
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** The UTF-8 bytes of all the keys, one after another */
+    private byte[] myKeys = new byte[INITIAL_CAPACITY * INITIAL_KEY_LENGTH];
+
+    /** The offset of each entry's key in the key arena, plus the offset at which the next key will go */
+    private int[] myKeyOffsets = new int[INITIAL_CAPACITY + 1];
+
+    private long[] mySizes = new long[INITIAL_CAPACITY];
+
+    /** The last modified dates, as milliseconds since the epoch */
+    private long[] myTimestamps = new long[INITIAL_CAPACITY];
+
+    /** The MD5 digests of the ETags that are MD5 digests */
+    private byte[] myDigests = new byte[INITIAL_CAPACITY * DIGEST_LENGTH];
+
+    /** The number of parts counted by the ETag of a multipart upload, or zero for a plain MD5 ETag */
+    private short[] myParts = new short[INITIAL_CAPACITY];
+
+    /** The ETags that aren't MD5 digests, or that are missing, by the index of their entry */
+    private final Map<Integer, String> myOtherETags = new HashMap<>();
+
+    /** Each entry's index into the storage classes, plus one, or zero if the entry has no storage class */
+    private byte[] myStorageClassIndexes = new byte[INITIAL_CAPACITY];
+
+    private final List<String> myStorageClasses = new ArrayList<>();
+
+    /** Each entry's index into the owners, plus one, or zero if the entry has no owner; null until an owner is added */
+    private int[] myOwnerIndexes;
+
+    /** The owners' canonical user IDs and display names, in pairs */
+    private final List<String> myOwners = new ArrayList<>();
+
+    /** The index of each distinct owner, by its ID and display name */
+    private final Map<List<String>, Integer> myOwnerLookup = new HashMap<>();
+
+    /** The number of entries in the list */
+    private int mySize;
+
+    @Override
+    public ListObject get(final int aIndex) {
+        if (aIndex < 0 || aIndex >= mySize) {
+            throw new IndexOutOfBoundsException(Integer.toString(aIndex));
+        }
+
+        return new View(aIndex);
+    }
+
+    @Override
+    public int size() {
+        return mySize;
+    }
+
+    /**
+     * Adds a copy of the supplied object's values to the end of the list.
+     *
+     * @param aObject An S3 list object
+     * @throws I18nRuntimeException If the list's keys or storage classes have outgrown it
+     */
+    void append(final ListObject aObject) {
+        final byte[] key = aObject.getKey() == null ? new byte[0] : aObject.getKey().getBytes(StandardCharsets.UTF_8);
+        final int keyOffset = myKeyOffsets[mySize];
+
+        if (mySize == mySizes.length) {
+            grow();
+        }
+
+        if (key.length > MAX_ARRAY_SIZE - keyOffset) {
+            throw new I18nRuntimeException(Constants.BUNDLE_NAME, MessageCodes.VS3_032, MAX_ARRAY_SIZE);
+        }
+
+        if (keyOffset + key.length > myKeys.length) {
+            myKeys = Arrays.copyOf(myKeys, (int) Math.min(MAX_ARRAY_SIZE, Math.max(keyOffset + key.length,
+                    myKeys.length + (long) myKeys.length / 2)));
+        }
+
+        System.arraycopy(key, 0, myKeys, keyOffset, key.length);
+        myKeyOffsets[mySize + 1] = keyOffset + key.length;
+        mySizes[mySize] = aObject.getSize();
+        myTimestamps[mySize] = aObject.getLastUpdated() == null ? NO_TIMESTAMP : aObject.getLastUpdated()
+                .toEpochMilli();
+        myStorageClassIndexes[mySize] = (byte) getStorageClassIndex(aObject.getStorageClass());
+
+        setETag(mySize, aObject.getETag());
+
+        if (aObject.getOwnerID() != null || aObject.getOwnerDisplayName() != null) {
+            setOwner(mySize, aObject.getOwnerID(), aObject.getOwnerDisplayName());
+        }
+
+        mySize += 1;
+    }
+
+    /**
+     * Compares an entry's key with the supplied key in the order S3 lists keys, which is the order of their UTF-8
+     * bytes, without decoding the entry's key.
+     *
+     * @param aIndex The index of an entry
+     * @param aKey The UTF-8 bytes of an S3 key
+     * @return A negative number, zero, or a positive number as the entry's key sorts before, with, or after the key
+     */
+    int compareKey(final int aIndex, final byte[] aKey) {
+        return Arrays.compareUnsigned(myKeys, myKeyOffsets[aIndex], myKeyOffsets[aIndex + 1], aKey, 0, aKey.length);
+    }
+
+    /**
+     * Compares the keys of two entries in the order S3 lists keys, without decoding either key.
+     *
+     * @param aIndex The index of an entry
+     * @param aOtherIndex The index of another entry
+     * @return A negative number, zero, or a positive number as the first entry's key sorts before, with, or after the
+     *         other entry's key
+     */
+    int compareKeys(final int aIndex, final int aOtherIndex) {
+        return Arrays.compareUnsigned(myKeys, myKeyOffsets[aIndex], myKeyOffsets[aIndex + 1], myKeys,
+                myKeyOffsets[aOtherIndex], myKeyOffsets[aOtherIndex + 1]);
+    }
+
+    /**
+     * Checks whether an entry's key starts with the supplied prefix, without decoding the entry's key.
+     *
+     * @param aIndex The index of an entry
+     * @param aPrefix The UTF-8 bytes of a prefix
+     * @return True if the entry's key starts with the prefix; else, false
+     */
+    boolean startsWith(final int aIndex, final byte[] aPrefix) {
+        final int start = myKeyOffsets[aIndex];
+
+        return myKeyOffsets[aIndex + 1] - start >= aPrefix.length && Arrays.equals(myKeys, start, start +
+                aPrefix.length, aPrefix, 0, aPrefix.length);
+    }
+
+    /**
+     * Shrinks the list's columns to the number of entries in it, once no more are going to be added.
+     *
+     * @return This list
+     */
+    CompactObjectList trimToSize() {
+        myKeys = Arrays.copyOf(myKeys, myKeyOffsets[mySize]);
+        resize(mySize);
+        return this;
+    }
+
+    /**
+     * Makes room for more entries in each of the columns.
+     */
+    private void grow() {
+        if (mySize >= MAX_ARRAY_SIZE / DIGEST_LENGTH) {
+            throw new I18nRuntimeException(Constants.BUNDLE_NAME, MessageCodes.VS3_032, MAX_ARRAY_SIZE);
+        }
+
+        resize((int) Math.min(MAX_ARRAY_SIZE / DIGEST_LENGTH, mySize + (long) mySize / 2 + 1));
+    }
+
+    /**
+     * Resizes each of the columns, other than the key arena, to the supplied number of entries.
+     *
+     * @param aCapacity A number of entries
+     */
+    private void resize(final int aCapacity) {
+        myKeyOffsets = Arrays.copyOf(myKeyOffsets, aCapacity + 1);
+        mySizes = Arrays.copyOf(mySizes, aCapacity);
+        myTimestamps = Arrays.copyOf(myTimestamps, aCapacity);
+        myDigests = Arrays.copyOf(myDigests, aCapacity * DIGEST_LENGTH);
+        myParts = Arrays.copyOf(myParts, aCapacity);
+        myStorageClassIndexes = Arrays.copyOf(myStorageClassIndexes, aCapacity);
+
+        if (myOwnerIndexes != null) {
+            myOwnerIndexes = Arrays.copyOf(myOwnerIndexes, aCapacity);
+        }
+    }
+
+    /**
+     * Stores an entry's ETag, as a binary digest if it's a quoted MD5 digest in lower case hex, optionally followed
+     * by the part count of a multipart upload.
+     *
+     * @param aIndex The index of an entry
+     * @param aETag The entry's ETag
+     */
+    private void setETag(final int aIndex, final String aETag) {
+        final int parts = getPartCount(aETag);
+
+        if (parts < 0) {
+            myOtherETags.put(aIndex, aETag);
+        } else {
+            for (int index = 0; index < DIGEST_LENGTH; index++) {
+                final int high = Character.digit(aETag.charAt(index * 2 + 1), HEX_RADIX);
+                final int low = Character.digit(aETag.charAt(index * 2 + 2), HEX_RADIX);
+
+                myDigests[aIndex * DIGEST_LENGTH + index] = (byte) (high << 4 | low);
+            }
+
+            myParts[aIndex] = (short) parts;
+        }
+    }
+
+    /**
+     * Gets an entry's ETag.
+     *
+     * @param aIndex The index of an entry
+     * @return The entry's ETag
+     */
+    private String getETag(final int aIndex) {
+        if (myOtherETags.containsKey(aIndex)) {
+            return myOtherETags.get(aIndex);
+        }
+
+        final StringBuilder eTag = new StringBuilder(ETAG_LENGTH + 6).append(QUOTE);
+
+        for (int index = 0; index < DIGEST_LENGTH; index++) {
+            final int value = myDigests[aIndex * DIGEST_LENGTH + index];
+
+            eTag.append(HEX_DIGITS[value >> 4 & 0xF]).append(HEX_DIGITS[value & 0xF]);
+        }
+
+        if (myParts[aIndex] > 0) {
+            eTag.append(HYPHEN).append(myParts[aIndex]);
+        }
+
+        return eTag.append(QUOTE).toString();
+    }
+
+    /**
+     * Gets the number of parts counted by an ETag that can be stored as a binary digest.
+     *
+     * @param aETag An ETag
+     * @return The number of parts, zero for a plain MD5 ETag, or -1 if the ETag can't be stored as a digest
+     */
+    private static int getPartCount(final String aETag) {
+        if (aETag == null || aETag.length() < ETAG_LENGTH || aETag.charAt(0) != QUOTE || aETag.charAt(aETag
+                .length() - 1) != QUOTE) {
+            return -1;
+        }
+
+        for (int index = 1; index <= DIGEST_LENGTH * 2; index++) {
+            final char digit = aETag.charAt(index);
+
+            if ((digit < '0' || digit > '9') && (digit < 'a' || digit > 'f')) {
+                return -1;
+            }
+        }
+
+        if (aETag.length() == ETAG_LENGTH) {
+            return 0;
+        }
+
+        return getMultipartCount(aETag);
+    }
+
+    /**
+     * Gets the number of parts at the end of a multipart upload's ETag.
+     *
+     * @param aETag An ETag that starts with a quoted MD5 digest
+     * @return The number of parts, or -1 if the rest of the ETag isn't a part count this list can store
+     */
+    private static int getMultipartCount(final String aETag) {
+        final String count = aETag.substring(ETAG_LENGTH, aETag.length() - 1);
+
+        if (aETag.charAt(ETAG_LENGTH - 1) != HYPHEN || count.isEmpty() || count.charAt(0) == '0') {
+            return -1;
+        }
+
+        int parts = 0;
+
+        for (int index = 0; index < count.length(); index++) {
+            final char digit = count.charAt(index);
+
+            if (digit < '0' || digit > '9') {
+                return -1;
+            }
+
+            parts = parts * 10 + digit - '0';
+
+            if (parts > MAX_PARTS) {
+                return -1;
+            }
+        }
+
+        return parts;
+    }
+
+    /**
+     * Gets the dictionary index of a storage class, adding the storage class to the dictionary if it's new.
+     *
+     * @param aStorageClass A storage class
+     * @return The storage class's index plus one, or zero if there's no storage class
+     * @throws I18nRuntimeException If the list already has as many storage classes as it can hold
+     */
+    private int getStorageClassIndex(final String aStorageClass) {
+        if (aStorageClass == null) {
+            return 0;
+        }
+
+        final int index = myStorageClasses.indexOf(aStorageClass);
+
+        if (index != -1) {
+            return index + 1;
+        }
+
+        if (myStorageClasses.size() == MAX_STORAGE_CLASSES) {
+            throw new I18nRuntimeException(Constants.BUNDLE_NAME, MessageCodes.VS3_033, MAX_STORAGE_CLASSES);
+        }
+
+        myStorageClasses.add(aStorageClass);
+        return myStorageClasses.size();
+    }
+
+    /**
+     * Stores an entry's owner, adding the owner to the dictionary of owners if it's new.
+     *
+     * @param aIndex The index of an entry
+     * @param aID The owner's canonical user ID
+     * @param aDisplayName The owner's display name
+     */
+    private void setOwner(final int aIndex, final String aID, final String aDisplayName) {
+        final List<String> owner = Arrays.asList(aID, aDisplayName);
+        final Integer ownerIndex = myOwnerLookup.computeIfAbsent(owner, key -> {
+            myOwners.addAll(owner);
+            return myOwners.size() / 2;
+        });
+
+        if (myOwnerIndexes == null) {
+            myOwnerIndexes = new int[mySizes.length];
+        }
+
+        myOwnerIndexes[aIndex] = ownerIndex;
+    }
+
+    /**
+     * Gets one of the values of an entry's owner.
+     *
+     * @param aIndex The index of an entry
+     * @param aValue Zero for the owner's ID, or one for their display name
+     * @return The value, or null if the entry has no owner
+     */
+    private String getOwnerValue(final int aIndex, final int aValue) {
+        if (myOwnerIndexes == null || myOwnerIndexes[aIndex] == 0) {
+            return null;
+        }
+
+        return myOwners.get((myOwnerIndexes[aIndex] - 1) * 2 + aValue);
+    }
+
+    /**
+     * A read-only view of an entry in the list.
+     */
+    private final class View extends ListObject {
+
+        private final int myIndex;
+
+        /**
+         * Creates a view of an entry in the list.
+         *
+         * @param aIndex The index of the entry
+         */
+        private View(final int aIndex) {
+            super();
+            myIndex = aIndex;
+        }
+
+        @Override
+        public String getKey() {
+            final int start = myKeyOffsets[myIndex];
+            return new String(myKeys, start, myKeyOffsets[myIndex + 1] - start, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String getETag() {
+            return CompactObjectList.this.getETag(myIndex);
+        }
+
+        @Override
+        public Instant getLastUpdated() {
+            final long timestamp = myTimestamps[myIndex];
+            return timestamp == NO_TIMESTAMP ? null : Instant.ofEpochMilli(timestamp);
+        }
+
+        @Override
+        public long getSize() {
+            return mySizes[myIndex];
+        }
+
+        @Override
+        public String getStorageClass() {
+            final int index = myStorageClassIndexes[myIndex] & 0xFF;
+            return index == 0 ? null : myStorageClasses.get(index - 1);
+        }
+
+        @Override
+        public String getOwnerID() {
+            return getOwnerValue(myIndex, 0);
+        }
+
+        @Override
+        public String getOwnerDisplayName() {
+            return getOwnerValue(myIndex, 1);
+        }
+
+        @Override
+        public ListObject setKey(final String aKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ListObject setETag(final String aETag) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ListObject setLastUpdated(final CharSequence aLastUpdated) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ListObject setLastUpdated(final Instant aLastUpdated) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ListObject setSize(final CharSequence aSize) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ListObject setSize(final long aSize) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ListObject setStorageClass(final String aStorageClass) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ListObject setOwnerID(final String aOwnerID) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ListObject setOwnerDisplayName(final String aDisplayName) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
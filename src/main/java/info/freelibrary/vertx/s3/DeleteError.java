@@ -0,0 +1,61 @@
+
+package info.freelibrary.vertx.s3;
+
+/**
+ * A key that a bulk delete couldn't delete, with the reason S3 gave for the failure. If a whole batch of keys failed,
+ * each of its keys has the HTTP status of the batch's response as its code or, if the batch couldn't be sent, the
+ * name of the exception that stopped it.
+ */
+public class DeleteError {
+
+    private final String myKey;
+
+    private final String myCode;
+
+    private final String myMessage;
+
+    /**
+     * Creates a new delete error.
+     *
+     * @param aKey The S3 key that couldn't be deleted
+     * @param aCode The error's code
+     * @param aMessage The error's message
+     */
+    DeleteError(final String aKey, final String aCode, final String aMessage) {
+        myKey = aKey;
+        myCode = aCode;
+        myMessage = aMessage;
+    }
+
+    /**
+     * Gets the S3 key that couldn't be deleted.
+     *
+     * @return The S3 key that couldn't be deleted
+     */
+    public String getKey() {
+        return myKey;
+    }
+
+    /**
+     * Gets the error's code, like <code>AccessDenied</code>.
+     *
+     * @return The error's code
+     */
+    public String getCode() {
+        return myCode;
+    }
+
+    /**
+     * Gets the error's message.
+     *
+     * @return The error's message
+     */
+    public String getMessage() {
+        return myMessage;
+    }
+
+    @Override
+    public String toString() {
+        return myKey + ": " + myCode + " " + myMessage;
+    }
+}
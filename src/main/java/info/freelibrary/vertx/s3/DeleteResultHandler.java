@@ -0,0 +1,89 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A SAX handler for S3's DeleteResult response. Bulk deletes are sent in quiet mode, so the response only lists the
+ * keys that couldn't be deleted.
+ */
+class DeleteResultHandler extends DefaultHandler {
+
+    /** The element name for a key that couldn't be deleted */
+    private static final String ERROR = "Error";
+
+    /** The element name for an error's key */
+    private static final String KEY = "Key";
+
+    /** The element name for an error's code */
+    private static final String CODE = "Code";
+
+    /** The element name for an error's message */
+    private static final String MESSAGE = "Message";
+
+    /** The errors that have been parsed */
+    private final List<DeleteError> myErrors = new ArrayList<>();
+
+    /** Temporary storage for characters parsed through SAX */
+    @SuppressWarnings("PMD.AvoidStringBufferField")
+    private final StringBuilder myValue = new StringBuilder();
+
+    /** Whether the parser is currently inside an error element */
+    private boolean isError;
+
+    private String myKey;
+
+    private String myCode;
+
+    private String myMessage;
+
+    @Override
+    public void characters(final char[] aCharArray, final int aStart, final int aLength) throws SAXException {
+        if (isError) {
+            myValue.append(aCharArray, aStart, aLength);
+        }
+    }
+
+    @Override
+    public void startElement(final String aURI, final String aLocalName, final String aQName,
+            final Attributes aAttributes) throws SAXException {
+        if (ERROR.equals(aLocalName)) {
+            isError = true;
+            myKey = null;
+            myCode = null;
+            myMessage = null;
+        }
+
+        myValue.setLength(0);
+    }
+
+    @Override
+    public void endElement(final String aURI, final String aLocalName, final String aQName) throws SAXException {
+        if (isError) {
+            if (KEY.equals(aLocalName)) {
+                myKey = myValue.toString();
+            } else if (CODE.equals(aLocalName)) {
+                myCode = myValue.toString();
+            } else if (MESSAGE.equals(aLocalName)) {
+                myMessage = myValue.toString();
+            } else if (ERROR.equals(aLocalName)) {
+                myErrors.add(new DeleteError(myKey, myCode, myMessage));
+                isError = false;
+            }
+        }
+    }
+
+    /**
+     * Gets the keys that couldn't be deleted.
+     *
+     * @return The errors in the parsed response
+     */
+    public List<DeleteError> getErrors() {
+        return myErrors;
+    }
+}
@@ -0,0 +1,222 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+import io.vertx.core.http.HttpHeaders;
+
+/**
+ * Options for a get or head of an S3 object. A byte range gets only part of an object, which S3 returns with a
+ * <code>206 Partial Content</code>. The conditional options make a request depend on the object's ETag or last
+ * modified date: an object that still matches a cached copy's ETag, or that hasn't been modified since the copy was
+ * made, is answered with a <code>304 Not Modified</code> and no body, and an object that no longer matches the
+ * expected ETag, or that has been modified since a date, is answered with a <code>412 Precondition Failed</code>.
+ */
+public class GetOptions {
+
+    /** The unit of a byte range */
+    private static final String BYTES = "bytes=";
+
+    private static final char HYPHEN = '-';
+
+    /** The format of an HTTP date, like <code>Wed, 21 Oct 2015 07:28:00 GMT</code> */
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'",
+            Locale.US).withZone(ZoneOffset.UTC);
+
+    private String myRange;
+
+    private String myIfMatch;
+
+    private String myIfNoneMatch;
+
+    private Instant myIfModifiedSince;
+
+    private Instant myIfUnmodifiedSince;
+
+    /**
+     * Sets a range of bytes to get, from a start byte up to and including an end byte. An end past the end of the
+     * object gets the rest of the object.
+     *
+     * @param aStart The offset of the first byte to get
+     * @param aEnd The offset of the last byte to get
+     * @return The get options
+     * @throws ConfigurationException If the start is negative or after the end
+     */
+    public GetOptions setRange(final long aStart, final long aEnd) {
+        if (aStart < 0 || aEnd < aStart) {
+            throw new ConfigurationException(MessageCodes.VS3_042, aStart, aEnd);
+        }
+
+        myRange = BYTES + aStart + HYPHEN + aEnd;
+        return this;
+    }
+
+    /**
+     * Sets a range of bytes to get, from a start byte to the end of the object.
+     *
+     * @param aStart The offset of the first byte to get
+     * @return The get options
+     * @throws ConfigurationException If the start is negative
+     */
+    public GetOptions setRange(final long aStart) {
+        if (aStart < 0) {
+            throw new ConfigurationException(MessageCodes.VS3_042, aStart, "");
+        }
+
+        myRange = BYTES + aStart + HYPHEN;
+        return this;
+    }
+
+    /**
+     * Sets a number of bytes to get from the end of the object. An object that's smaller is got as a whole.
+     *
+     * @param aCount The number of bytes to get from the end of the object
+     * @return The get options
+     * @throws ConfigurationException If the number of bytes is less than one
+     */
+    public GetOptions setLastBytes(final long aCount) {
+        if (aCount < 1) {
+            throw new ConfigurationException(MessageCodes.VS3_043, aCount);
+        }
+
+        myRange = BYTES + HYPHEN + aCount;
+        return this;
+    }
+
+    /**
+     * Gets the range of bytes to get, as the value of a <code>Range</code> header.
+     *
+     * @return The range, like <code>bytes=0-1023</code>, or null if the whole object is got
+     */
+    public String getRange() {
+        return myRange;
+    }
+
+    /**
+     * Sets an ETag that the object must match; if it doesn't, S3 responds with a
+     * <code>412 Precondition Failed</code>.
+     *
+     * @param aETag An ETag, including its quotes
+     * @return The get options
+     */
+    public GetOptions setIfMatch(final String aETag) {
+        myIfMatch = aETag;
+        return this;
+    }
+
+    /**
+     * Gets the ETag that the object must match.
+     *
+     * @return The ETag, or null if the object's ETag isn't checked
+     */
+    public String getIfMatch() {
+        return myIfMatch;
+    }
+
+    /**
+     * Sets an ETag that the object must not match; if it does, S3 responds with a <code>304 Not Modified</code>.
+     * This revalidates a cached copy of the object.
+     *
+     * @param aETag An ETag, including its quotes
+     * @return The get options
+     */
+    public GetOptions setIfNoneMatch(final String aETag) {
+        myIfNoneMatch = aETag;
+        return this;
+    }
+
+    /**
+     * Gets the ETag that the object must not match.
+     *
+     * @return The ETag, or null if the object's ETag isn't checked
+     */
+    public String getIfNoneMatch() {
+        return myIfNoneMatch;
+    }
+
+    /**
+     * Sets a time since which the object must have been modified; if it hasn't, S3 responds with a
+     * <code>304 Not Modified</code>. HTTP dates are only precise to the second, so the time is truncated.
+     *
+     * @param aInstant A point in time
+     * @return The get options
+     */
+    public GetOptions setIfModifiedSince(final Instant aInstant) {
+        myIfModifiedSince = aInstant;
+        return this;
+    }
+
+    /**
+     * Gets the time since which the object must have been modified.
+     *
+     * @return The time, or null if the object's last modified date isn't checked
+     */
+    public Instant getIfModifiedSince() {
+        return myIfModifiedSince;
+    }
+
+    /**
+     * Sets a time since which the object must not have been modified; if it has, S3 responds with a
+     * <code>412 Precondition Failed</code>. HTTP dates are only precise to the second, so the time is truncated.
+     *
+     * @param aInstant A point in time
+     * @return The get options
+     */
+    public GetOptions setIfUnmodifiedSince(final Instant aInstant) {
+        myIfUnmodifiedSince = aInstant;
+        return this;
+    }
+
+    /**
+     * Gets the time since which the object must not have been modified.
+     *
+     * @return The time, or null if the object's last modified date isn't checked
+     */
+    public Instant getIfUnmodifiedSince() {
+        return myIfUnmodifiedSince;
+    }
+
+    /**
+     * Adds the headers of the options that are set to a request. They're added before the request is signed, so
+     * they're covered by its signature.
+     *
+     * @param aRequest A get or head request
+     * @return The request
+     */
+    S3ClientRequest addHeaders(final S3ClientRequest aRequest) {
+        if (myRange != null) {
+            aRequest.putHeader(HTTP.RANGE, myRange);
+        }
+
+        if (myIfMatch != null) {
+            aRequest.putHeader(HttpHeaders.IF_MATCH, myIfMatch);
+        }
+
+        if (myIfNoneMatch != null) {
+            aRequest.putHeader(HttpHeaders.IF_NONE_MATCH, myIfNoneMatch);
+        }
+
+        if (myIfModifiedSince != null) {
+            aRequest.putHeader(HttpHeaders.IF_MODIFIED_SINCE, toHttpDate(myIfModifiedSince));
+        }
+
+        if (myIfUnmodifiedSince != null) {
+            aRequest.putHeader(HTTP.IF_UNMODIFIED_SINCE, toHttpDate(myIfUnmodifiedSince));
+        }
+
+        return aRequest;
+    }
+
+    /**
+     * Formats a point in time as an HTTP date.
+     *
+     * @param aInstant A point in time
+     * @return An HTTP date, like <code>Wed, 21 Oct 2015 07:28:00 GMT</code>
+     */
+    static String toHttpDate(final Instant aInstant) {
+        return HTTP_DATE.format(aInstant);
+    }
+}
@@ -9,6 +9,18 @@ public final class HTTP {
     /** OK HTTP response code */
     public static final int OK = 200;
 
+    /** Partial Content HTTP response code */
+    public static final int PARTIAL_CONTENT = 206;
+
+    /** Not Modified HTTP response code */
+    public static final int NOT_MODIFIED = 304;
+
+    /** Precondition Failed HTTP response code */
+    public static final int PRECONDITION_FAILED = 412;
+
+    /** Range Not Satisfiable HTTP response code */
+    public static final int RANGE_NOT_SATISFIABLE = 416;
+
     /** Not Found HTTP response code */
     public static final int NOT_FOUND = 404;
 
@@ -18,9 +30,18 @@ public final class HTTP {
     /** Forbidden HTTP response code */
     public static final int FORBIDDEN = 403;
 
+    /** Internal Server Error HTTP response code */
+    public static final int INTERNAL_SERVER_ERROR = 500;
+
     /** Content-Length HTTP header */
     public static final String CONTENT_LENGTH = "Content-Length";
 
+    /** Range HTTP header */
+    public static final String RANGE = "Range";
+
+    /** If-Unmodified-Since HTTP header */
+    public static final String IF_UNMODIFIED_SINCE = "If-Unmodified-Since";
+
     /** HTTP GET request */
     public static final String GET = "GET";
 
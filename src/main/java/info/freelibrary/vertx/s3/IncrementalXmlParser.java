@@ -0,0 +1,441 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * A non-blocking XML parser that's fed an S3 response a chunk at a time, as the chunks arrive, and passes SAX events
+ * to a content handler as soon as each piece of markup is complete. Only the bytes of the current element's text, or
+ * of the current tag, are held between chunks, and they're decoded from UTF-8 in one go, so a character that's split
+ * across two chunks is decoded correctly.
+ * <p>
+ * This isn't a general purpose XML parser; it reads the simple documents S3 returns. Element names are passed on as
+ * both the local and the qualified name, minus any namespace prefix, with an empty namespace URI and no attributes.
+ * Comments, processing instructions and CDATA sections are understood, but a document type declaration isn't allowed,
+ * so no external entities are ever resolved.
+ * </p>
+ */
+class IncrementalXmlParser {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IncrementalXmlParser.class, Constants.BUNDLE_NAME);
+
+    /** The attributes that are passed with every start tag */
+    private static final Attributes NO_ATTRIBUTES = new AttributesImpl();
+
+    /** The namespace URI that's passed with every element */
+    private static final String NO_NAMESPACE = "";
+
+    /** The starting size of the byte buffer, which is enough for most of S3's tags and values */
+    private static final int BUFFER_SIZE = 256;
+
+    private static final byte LESS_THAN = '<';
+
+    private static final byte GREATER_THAN = '>';
+
+    private static final byte SLASH = '/';
+
+    private static final byte EXCLAMATION = '!';
+
+    private static final byte QUESTION = '?';
+
+    private static final byte HYPHEN = '-';
+
+    private static final byte BRACKET = ']';
+
+    private static final byte DOUBLE_QUOTE = '"';
+
+    private static final byte SINGLE_QUOTE = '\'';
+
+    /** The start of a comment, after the less-than sign */
+    private static final String COMMENT = "!--";
+
+    /** The start of a CDATA section, after the less-than sign */
+    private static final String CDATA = "![CDATA[";
+
+    /** The names of the elements that are open, innermost first */
+    private final Deque<String> myElements = new ArrayDeque<>();
+
+    private final ContentHandler myHandler;
+
+    /** The bytes of the text or markup that's being read */
+    private byte[] myBytes = new byte[BUFFER_SIZE];
+
+    /** The number of bytes of text or markup that have been read */
+    private int myLength;
+
+    /** Whether markup, rather than text, is being read */
+    private boolean isMarkup;
+
+    /** The quotation mark of an attribute value that's being read, or zero if none is */
+    private byte myQuote;
+
+    /** Whether the handler has been told the document has started */
+    private boolean isStarted;
+
+    /** Whether the document's root element has been read */
+    private boolean hasRoot;
+
+    /**
+     * Creates a new incremental XML parser.
+     *
+     * @param aHandler A handler for the parsed document's content
+     */
+    IncrementalXmlParser(final ContentHandler aHandler) {
+        myHandler = aHandler;
+    }
+
+    /**
+     * Parses the next chunk of the document.
+     *
+     * @param aChunk A chunk of the document
+     * @throws SAXException If the document isn't well-formed or the handler fails
+     */
+    void parse(final Buffer aChunk) throws SAXException {
+        final int length = aChunk.length();
+
+        if (!isStarted) {
+            isStarted = true;
+            myHandler.startDocument();
+        }
+
+        for (int index = 0; index < length; index++) {
+            final byte nextByte = aChunk.getByte(index);
+
+            if (isMarkup) {
+                if (nextByte == GREATER_THAN && myQuote == 0 && isMarkupComplete()) {
+                    handleMarkup();
+                    isMarkup = false;
+                    myLength = 0;
+                } else {
+                    if (isTag() && (nextByte == DOUBLE_QUOTE || nextByte == SINGLE_QUOTE)) {
+                        updateQuote(nextByte);
+                    }
+
+                    append(nextByte);
+                }
+            } else if (nextByte == LESS_THAN) {
+                handleText();
+                isMarkup = true;
+                myLength = 0;
+            } else {
+                append(nextByte);
+            }
+        }
+    }
+
+    /**
+     * Ends the document once all its chunks have been parsed.
+     *
+     * @throws SAXException If the document is incomplete or the handler fails
+     */
+    void end() throws SAXException {
+        if (isMarkup || !hasRoot || !myElements.isEmpty()) {
+            throw new SAXException(LOGGER.getMessage(MessageCodes.VS3_030));
+        }
+
+        handleText();
+        myHandler.endDocument();
+    }
+
+    /**
+     * Adds a byte to the text or markup that's being read.
+     *
+     * @param aByte A byte of text or markup
+     */
+    private void append(final byte aByte) {
+        if (myLength == myBytes.length) {
+            myBytes = Arrays.copyOf(myBytes, myLength * 2);
+        }
+
+        myBytes[myLength++] = aByte;
+    }
+
+    /**
+     * Tracks whether an attribute value is being read, so a greater-than sign inside one doesn't end its tag.
+     *
+     * @param aQuote A quotation mark inside a tag
+     */
+    private void updateQuote(final byte aQuote) {
+        if (myQuote == 0) {
+            myQuote = aQuote;
+        } else if (myQuote == aQuote) {
+            myQuote = 0;
+        }
+    }
+
+    /**
+     * Checks whether the markup that's being read is a start or end tag.
+     *
+     * @return True if the markup is a tag; else, false
+     */
+    private boolean isTag() {
+        return myLength > 0 && myBytes[0] != EXCLAMATION && myBytes[0] != QUESTION;
+    }
+
+    /**
+     * Checks whether a greater-than sign ends the markup that's being read, rather than being part of it.
+     *
+     * @return True if the markup is complete; else, false
+     */
+    private boolean isMarkupComplete() {
+        if (startsWith(COMMENT)) {
+            return myLength >= COMMENT.length() + 2 && endsWith(HYPHEN);
+        } else if (startsWith(CDATA)) {
+            return myLength >= CDATA.length() + 2 && endsWith(BRACKET);
+        } else if (myLength > 0 && myBytes[0] == QUESTION) {
+            return myLength >= 2 && myBytes[myLength - 1] == QUESTION;
+        } else {
+            return true;
+        }
+    }
+
+    /**
+     * Passes a complete piece of markup to the handler.
+     *
+     * @throws SAXException If the markup isn't allowed where it is or the handler fails
+     */
+    private void handleMarkup() throws SAXException {
+        if (myLength == 0) {
+            throw new SAXException(LOGGER.getMessage(MessageCodes.VS3_028, NO_NAMESPACE));
+        } else if (startsWith(CDATA)) {
+            handleCharacters(new String(myBytes, CDATA.length(), myLength - CDATA.length() - 2,
+                    StandardCharsets.UTF_8));
+        } else if (myBytes[0] == EXCLAMATION && !startsWith(COMMENT)) {
+            // A document type declaration could define entities, so it's refused rather than skipped
+            throw new SAXException(LOGGER.getMessage(MessageCodes.VS3_028, decode(0)));
+        } else if (myBytes[0] == SLASH) {
+            handleEndTag(decode(1).trim());
+        } else if (isTag()) {
+            handleStartTag();
+        }
+    }
+
+    /**
+     * Passes the start of an element to the handler, and its end too if the element is empty.
+     *
+     * @throws SAXException If the tag isn't allowed where it is or the handler fails
+     */
+    private void handleStartTag() throws SAXException {
+        final boolean isEmpty = myBytes[myLength - 1] == SLASH;
+        final String tag = decode(0);
+        final String name = getName(tag, isEmpty ? tag.length() - 1 : tag.length());
+
+        if (name.isEmpty() || hasRoot && myElements.isEmpty()) {
+            throw new SAXException(LOGGER.getMessage(MessageCodes.VS3_028, tag));
+        }
+
+        hasRoot = true;
+        myElements.push(name);
+        myHandler.startElement(NO_NAMESPACE, name, name, NO_ATTRIBUTES);
+
+        if (isEmpty) {
+            handleEndTag(name);
+        }
+    }
+
+    /**
+     * Passes the end of an element to the handler.
+     *
+     * @param aTag The name in the end tag
+     * @throws SAXException If the tag doesn't end the innermost open element or the handler fails
+     */
+    private void handleEndTag(final String aTag) throws SAXException {
+        final String name = getName(aTag, aTag.length());
+
+        if (myElements.isEmpty() || !myElements.peek().equals(name)) {
+            throw new SAXException(LOGGER.getMessage(MessageCodes.VS3_028, "/" + aTag));
+        }
+
+        myElements.pop();
+        myHandler.endElement(NO_NAMESPACE, name, name);
+    }
+
+    /**
+     * Passes the text that's been read to the handler, replacing its entity and character references. Whitespace
+     * outside the root element is skipped.
+     *
+     * @throws SAXException If the text isn't allowed where it is or the handler fails
+     */
+    private void handleText() throws SAXException {
+        if (myLength == 0) {
+            return;
+        }
+
+        if (myElements.isEmpty()) {
+            if (!isWhitespace()) {
+                throw new SAXException(LOGGER.getMessage(MessageCodes.VS3_031));
+            }
+        } else {
+            final String text = decode(0);
+
+            handleCharacters(text.indexOf('&') == -1 ? text : unescape(text));
+        }
+    }
+
+    /**
+     * Passes characters inside the root element to the handler.
+     *
+     * @param aText The characters of a text node or CDATA section
+     * @throws SAXException If the characters are outside the root element or the handler fails
+     */
+    private void handleCharacters(final String aText) throws SAXException {
+        if (myElements.isEmpty()) {
+            throw new SAXException(LOGGER.getMessage(MessageCodes.VS3_031));
+        }
+
+        myHandler.characters(aText.toCharArray(), 0, aText.length());
+    }
+
+    /**
+     * Replaces the entity and character references in a piece of text.
+     *
+     * @param aText A piece of text that contains at least one ampersand
+     * @return The text with its references replaced
+     * @throws SAXException If the text contains an unknown entity or malformed reference
+     */
+    private static String unescape(final String aText) throws SAXException {
+        final StringBuilder text = new StringBuilder(aText.length());
+
+        int start = 0;
+        int ampersand = aText.indexOf('&');
+
+        while (ampersand != -1) {
+            final int semicolon = aText.indexOf(';', ampersand);
+
+            if (semicolon == -1) {
+                throw new SAXException(LOGGER.getMessage(MessageCodes.VS3_029, aText.substring(ampersand + 1)));
+            }
+
+            text.append(aText, start, ampersand);
+            appendReference(text, aText.substring(ampersand + 1, semicolon));
+            start = semicolon + 1;
+            ampersand = aText.indexOf('&', start);
+        }
+
+        return text.append(aText, start, aText.length()).toString();
+    }
+
+    /**
+     * Appends the character an entity or character reference stands for.
+     *
+     * @param aText The text to append to
+     * @param aReference The reference, without its ampersand and semicolon
+     * @throws SAXException If the entity is unknown or the character reference is malformed
+     */
+    private static void appendReference(final StringBuilder aText, final String aReference) throws SAXException {
+        switch (aReference) {
+            case "lt":
+                aText.append('<');
+                break;
+            case "gt":
+                aText.append('>');
+                break;
+            case "amp":
+                aText.append('&');
+                break;
+            case "quot":
+                aText.append('"');
+                break;
+            case "apos":
+                aText.append('\'');
+                break;
+            default:
+                try {
+                    if (aReference.startsWith("#x")) {
+                        aText.appendCodePoint(Integer.parseInt(aReference.substring(2), 16));
+                    } else if (!aReference.isEmpty() && aReference.charAt(0) == '#') {
+                        aText.appendCodePoint(Integer.parseInt(aReference.substring(1)));
+                    } else {
+                        throw new SAXException(LOGGER.getMessage(MessageCodes.VS3_029, aReference));
+                    }
+                } catch (final IllegalArgumentException details) {
+                    throw new SAXException(LOGGER.getMessage(MessageCodes.VS3_029, aReference), details);
+                }
+        }
+    }
+
+    /**
+     * Gets the name of an element from a tag, without any namespace prefix.
+     *
+     * @param aTag The contents of a tag, after its slash in the case of an end tag
+     * @param aEnd The end of the tag's contents, before any trailing slash
+     * @return The element's name
+     */
+    private static String getName(final String aTag, final int aEnd) {
+        int end = 0;
+
+        while (end < aEnd && !Character.isWhitespace(aTag.charAt(end))) {
+            end += 1;
+        }
+
+        return aTag.substring(aTag.lastIndexOf(':', end - 1) + 1, end);
+    }
+
+    /**
+     * Checks whether the markup that's being read starts with the supplied ASCII text.
+     *
+     * @param aStart The start of a kind of markup
+     * @return True if the markup starts with the supplied text; else, false
+     */
+    private boolean startsWith(final String aStart) {
+        if (myLength < aStart.length()) {
+            return false;
+        }
+
+        for (int index = 0; index < aStart.length(); index++) {
+            if (myBytes[index] != aStart.charAt(index)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks whether the markup that's being read ends with two of the supplied byte.
+     *
+     * @param aByte The byte that's repeated at the end of a kind of markup
+     * @return True if the markup's last two bytes are the supplied byte; else, false
+     */
+    private boolean endsWith(final byte aByte) {
+        return myBytes[myLength - 1] == aByte && myBytes[myLength - 2] == aByte;
+    }
+
+    /**
+     * Checks whether the text that's been read is all whitespace.
+     *
+     * @return True if the text is all whitespace; else, false
+     */
+    private boolean isWhitespace() {
+        for (int index = 0; index < myLength; index++) {
+            if (!Character.isWhitespace(myBytes[index])) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Decodes the text or markup that's been read from UTF-8.
+     *
+     * @param aStart The index of the first byte to decode
+     * @return The decoded text or markup
+     */
+    private String decode(final int aStart) {
+        return new String(myBytes, aStart, myLength - aStart, StandardCharsets.UTF_8);
+    }
+}
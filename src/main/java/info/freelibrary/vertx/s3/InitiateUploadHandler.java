@@ -0,0 +1,49 @@
+
+package info.freelibrary.vertx.s3;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A SAX handler for S3's InitiateMultipartUploadResult response.
+ */
+class InitiateUploadHandler extends DefaultHandler {
+
+    /** The element name for the multipart upload ID. */
+    private static final String UPLOAD_ID = "UploadId";
+
+    /** Temporary storage for characters parsed through SAX */
+    private final StringBuilder myValue = new StringBuilder();
+
+    /** Whether the parser is currently inside the upload ID element */
+    private boolean isUploadId;
+
+    @Override
+    public void characters(final char[] aCharArray, final int aStart, final int aLength) throws SAXException {
+        if (isUploadId) {
+            myValue.append(aCharArray, aStart, aLength);
+        }
+    }
+
+    @Override
+    public void startElement(final String aURI, final String aLocalName, final String aQName,
+            final Attributes aAttributes) throws SAXException {
+        isUploadId = UPLOAD_ID.equals(aLocalName);
+    }
+
+    @Override
+    public void endElement(final String aURI, final String aLocalName, final String aQName) throws SAXException {
+        isUploadId = false;
+    }
+
+    /**
+     * Gets the upload ID from the parsed response.
+     *
+     * @return The upload ID or null if one wasn't found
+     */
+    public String getUploadId() {
+        return myValue.length() == 0 ? null : myValue.toString().trim();
+    }
+
+}
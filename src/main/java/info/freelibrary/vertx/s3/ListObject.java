@@ -2,32 +2,32 @@
 package info.freelibrary.vertx.s3;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.time.Instant;
-import java.util.TimeZone;
 
 /**
  * An S3 list object.
  */
 public class ListObject {
 
-    private static final SimpleDateFormat DATE = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-
     private String myKey;
 
     private Instant myLastUpdated;
 
     private String myETag;
 
-    private int mySize;
+    private long mySize;
 
     private String myStorageClass;
 
+    private String myOwnerID;
+
+    private String myOwnerDisplayName;
+
     /**
      * Creates a new S3 list object.
      */
     public ListObject() {
-        DATE.setTimeZone(TimeZone.getTimeZone("UTC"));
+        // This is intentionally left empty
     }
 
     /**
@@ -70,14 +70,25 @@ public class ListObject {
         return myETag;
     }
 
+    /**
+     * Sets last updated date.
+     *
+     * @param aLastUpdated A last updated date, as an ISO-8601 timestamp
+     * @return The list object
+     * @throws ParseException If the last updated date isn't an ISO-8601 timestamp
+     */
+    public ListObject setLastUpdated(final CharSequence aLastUpdated) throws ParseException {
+        return setLastUpdated(Instant.ofEpochMilli(Timestamps.parse(aLastUpdated)));
+    }
+
     /**
      * Sets last updated date.
      *
      * @param aLastUpdated A last updated date
      * @return The list object
      */
-    public ListObject setLastUpdated(final String aLastUpdated) throws ParseException {
-        myLastUpdated = DATE.parse(aLastUpdated).toInstant();
+    public ListObject setLastUpdated(final Instant aLastUpdated) {
+        myLastUpdated = aLastUpdated;
         return this;
     }
 
@@ -90,23 +101,34 @@ public class ListObject {
         return myLastUpdated;
     }
 
+    /**
+     * Sets the object size
+     *
+     * @param aSize A object size, in decimal digits
+     * @return The list object
+     * @throws NumberFormatException If the object size isn't a number
+     */
+    public ListObject setSize(final CharSequence aSize) {
+        return setSize(Long.parseLong(aSize.toString()));
+    }
+
     /**
      * Sets the object size
      *
      * @param aSize A object size
      * @return The list object
      */
-    public ListObject setSize(final String aSize) {
-        mySize = Integer.parseInt(aSize);
+    public ListObject setSize(final long aSize) {
+        mySize = aSize;
         return this;
     }
 
     /**
-     * Gets the object size.
+     * Gets the object size, which can be larger than the largest <code>int</code> for objects over 2 GB.
      *
      * @return The object size
      */
-    public int getSize() {
+    public long getSize() {
         return mySize;
     }
 
@@ -129,4 +151,46 @@ public class ListObject {
     public String getStorageClass() {
         return myStorageClass;
     }
+
+    /**
+     * Sets the canonical user ID of the object's owner.
+     *
+     * @param aOwnerID An owner's canonical user ID
+     * @return The list object
+     */
+    public ListObject setOwnerID(final String aOwnerID) {
+        myOwnerID = aOwnerID;
+        return this;
+    }
+
+    /**
+     * Gets the canonical user ID of the object's owner. Owners are only included in a listing that's requested with
+     * {@link ListOptions#setFetchOwner(boolean)}.
+     *
+     * @return The owner's canonical user ID, or null if the owner wasn't listed
+     */
+    public String getOwnerID() {
+        return myOwnerID;
+    }
+
+    /**
+     * Sets the display name of the object's owner.
+     *
+     * @param aDisplayName An owner's display name
+     * @return The list object
+     */
+    public ListObject setOwnerDisplayName(final String aDisplayName) {
+        myOwnerDisplayName = aDisplayName;
+        return this;
+    }
+
+    /**
+     * Gets the display name of the object's owner. Owners are only included in a listing that's requested with
+     * {@link ListOptions#setFetchOwner(boolean)}.
+     *
+     * @return The owner's display name, or null if the owner wasn't listed
+     */
+    public String getOwnerDisplayName() {
+        return myOwnerDisplayName;
+    }
 }
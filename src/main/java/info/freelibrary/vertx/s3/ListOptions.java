@@ -0,0 +1,151 @@
+
+package info.freelibrary.vertx.s3;
+
+/**
+ * Options for an S3 bucket listing. A listing with a delimiter groups the keys that share a prefix up to the
+ * delimiter into a single common prefix, so a hierarchical keyspace can be browsed one level at a time instead of
+ * listing every object below a prefix.
+ */
+public class ListOptions {
+
+    /** The most keys S3 returns in one page of a listing */
+    public static final int MAX_KEYS = 1000;
+
+    private String myPrefix;
+
+    private String myDelimiter;
+
+    private String myStartAfter;
+
+    private String myContinuationToken;
+
+    private int myMaxKeys;
+
+    private boolean hasOwners;
+
+    /**
+     * Sets a prefix to limit which objects are listed.
+     *
+     * @param aPrefix A prefix
+     * @return The list options
+     */
+    public ListOptions setPrefix(final String aPrefix) {
+        myPrefix = aPrefix;
+        return this;
+    }
+
+    /**
+     * Gets the prefix that limits which objects are listed.
+     *
+     * @return The prefix, or null if the listing isn't limited by a prefix
+     */
+    public String getPrefix() {
+        return myPrefix;
+    }
+
+    /**
+     * Sets a delimiter to group keys by. Keys that share a prefix up to the first delimiter after the listing's
+     * prefix are returned as one of the listing's common prefixes, rather than as objects.
+     *
+     * @param aDelimiter A delimiter, e.g. a slash
+     * @return The list options
+     */
+    public ListOptions setDelimiter(final String aDelimiter) {
+        myDelimiter = aDelimiter;
+        return this;
+    }
+
+    /**
+     * Gets the delimiter that keys are grouped by.
+     *
+     * @return The delimiter, or null if keys aren't grouped
+     */
+    public String getDelimiter() {
+        return myDelimiter;
+    }
+
+    /**
+     * Sets a key after which the listing starts. This is ignored when a continuation token is also set.
+     *
+     * @param aKey An S3 key, which doesn't need to exist in the bucket
+     * @return The list options
+     */
+    public ListOptions setStartAfter(final String aKey) {
+        myStartAfter = aKey;
+        return this;
+    }
+
+    /**
+     * Gets the key after which the listing starts.
+     *
+     * @return The key, or null if the listing starts at the beginning
+     */
+    public String getStartAfter() {
+        return myStartAfter;
+    }
+
+    /**
+     * Sets the token, from a previous page of the listing, that continues the listing where that page ended.
+     *
+     * @param aToken A continuation token (see {@link BucketList#getContinuationToken()})
+     * @return The list options
+     */
+    public ListOptions setContinuationToken(final String aToken) {
+        myContinuationToken = aToken;
+        return this;
+    }
+
+    /**
+     * Gets the token that continues the listing where a previous page ended.
+     *
+     * @return The continuation token, or null if the listing starts from its first page
+     */
+    public String getContinuationToken() {
+        return myContinuationToken;
+    }
+
+    /**
+     * Sets the most keys that are returned in a page of the listing. Common prefixes count towards the limit.
+     *
+     * @param aMaxKeys The most keys returned in a page, from 1 to {@link #MAX_KEYS}
+     * @return The list options
+     * @throws ConfigurationException If the supplied number is outside the allowed range
+     */
+    public ListOptions setMaxKeys(final int aMaxKeys) {
+        if (aMaxKeys < 1 || aMaxKeys > MAX_KEYS) {
+            throw new ConfigurationException(MessageCodes.VS3_027, MAX_KEYS, aMaxKeys);
+        }
+
+        myMaxKeys = aMaxKeys;
+        return this;
+    }
+
+    /**
+     * Gets the most keys that are returned in a page of the listing.
+     *
+     * @return The most keys returned in a page, or zero if S3's default of {@link #MAX_KEYS} is used
+     */
+    public int getMaxKeys() {
+        return myMaxKeys;
+    }
+
+    /**
+     * Sets whether the owner of each object is included in the listing.
+     *
+     * @param aFetchOwner Whether the objects' owners are listed
+     * @return The list options
+     */
+    public ListOptions setFetchOwner(final boolean aFetchOwner) {
+        hasOwners = aFetchOwner;
+        return this;
+    }
+
+    /**
+     * Checks whether the owner of each object is included in the listing.
+     *
+     * @return True if the objects' owners are listed; else, false
+     */
+    public boolean isFetchingOwner() {
+        return hasOwners;
+    }
+}
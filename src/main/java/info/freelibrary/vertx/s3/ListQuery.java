@@ -0,0 +1,193 @@
+
+package info.freelibrary.vertx.s3;
+
+/**
+ * The parameters of a bucket listing. Besides the parameters S3 is sent, a query can have a last key, after which the
+ * listing is cut short; together with S3's <code>start-after</code> parameter this limits a listing to a range of
+ * keys, which is how a listing is split into shards that can be read at the same time.
+ */
+final class ListQuery {
+
+    /** The query used to request a page of a listing */
+    private static final String LIST_QUERY = "?list-type=2";
+
+    /** The query parameter that limits a listing to keys with a prefix */
+    private static final String PREFIX_PARAM = "&prefix=";
+
+    /** The query parameter that groups keys that share a prefix up to a delimiter */
+    private static final String DELIMITER_PARAM = "&delimiter=";
+
+    /** The query parameter that starts a listing after a key */
+    private static final String START_AFTER_PARAM = "&start-after=";
+
+    /** The query parameter that continues a listing from the end of the previous page */
+    private static final String TOKEN_PARAM = "&continuation-token=";
+
+    /** The query parameter that limits the number of keys in a page */
+    private static final String MAX_KEYS_PARAM = "&max-keys=";
+
+    /** The query parameter that includes the owner of each object in a listing */
+    private static final String FETCH_OWNER_PARAM = "&fetch-owner=true";
+
+    /** The first of the UTF-16 surrogates, which sort after characters S3 treats as smaller */
+    private static final char MIN_SURROGATE = Character.MIN_SURROGATE;
+
+    /** The offset that moves surrogates above the rest of the Basic Multilingual Plane */
+    private static final int SURROGATE_SHIFT = 0x2000;
+
+    /** The offset that moves the characters above the surrogates below them */
+    private static final int BMP_SHIFT = 0x800;
+
+    /** The first character that's above the surrogates */
+    private static final char MIN_ABOVE_SURROGATES = '\uE000';
+
+    private final String myPrefix;
+
+    private final String myDelimiter;
+
+    private final String myStartAfter;
+
+    private final String myLastKey;
+
+    /** The token that continues a listing from a previous page, if the listing doesn't start at its beginning */
+    private final String myFirstToken;
+
+    private final int myMaxKeys;
+
+    private final boolean hasOwners;
+
+    /**
+     * Creates a new list query.
+     *
+     * @param aPrefix A prefix to limit which objects are listed (optional)
+     * @param aDelimiter A delimiter to group keys by (optional)
+     * @param aStartAfter A key after which the listing starts (optional)
+     * @param aLastKey The last key that's included in the listing (optional)
+     */
+    ListQuery(final String aPrefix, final String aDelimiter, final String aStartAfter, final String aLastKey) {
+        myPrefix = aPrefix;
+        myDelimiter = aDelimiter;
+        myStartAfter = aStartAfter;
+        myLastKey = aLastKey;
+        myFirstToken = null;
+        myMaxKeys = 0;
+        hasOwners = false;
+    }
+
+    /**
+     * Creates a new list query from a listing's options.
+     *
+     * @param aOptions The options of a listing
+     */
+    ListQuery(final ListOptions aOptions) {
+        myPrefix = aOptions.getPrefix();
+        myDelimiter = aOptions.getDelimiter();
+        myStartAfter = aOptions.getStartAfter();
+        myLastKey = null;
+        myFirstToken = aOptions.getContinuationToken();
+        myMaxKeys = aOptions.getMaxKeys();
+        hasOwners = aOptions.isFetchingOwner();
+    }
+
+    /**
+     * Creates a new list query.
+     *
+     * @param aPrefix A prefix to limit which objects are listed (optional)
+     */
+    ListQuery(final String aPrefix) {
+        this(aPrefix, null, null, null);
+    }
+
+    /**
+     * Gets the prefix that limits which objects are listed.
+     *
+     * @return The prefix, or null if the listing isn't limited by a prefix
+     */
+    String getPrefix() {
+        return myPrefix;
+    }
+
+    /**
+     * Checks whether the supplied key comes after the last key of the listing.
+     *
+     * @param aKey An S3 key
+     * @return True if the listing has a last key and the supplied key comes after it; else, false
+     */
+    boolean isPastEnd(final String aKey) {
+        return myLastKey != null && compareKeys(aKey, myLastKey) > 0;
+    }
+
+    /**
+     * Gets the query string that requests a page of the listing.
+     *
+     * @param aToken The continuation token of the page to request, or null for the first page
+     * @return A query string, starting with a question mark
+     */
+    String toQueryString(final String aToken) {
+        final StringBuilder query = new StringBuilder(LIST_QUERY);
+        final String token = aToken != null ? aToken : myFirstToken;
+
+        if (myPrefix != null) {
+            query.append(PREFIX_PARAM).append(RequestSigner.encode(myPrefix));
+        }
+
+        if (myDelimiter != null) {
+            query.append(DELIMITER_PARAM).append(RequestSigner.encode(myDelimiter));
+        }
+
+        if (myMaxKeys > 0) {
+            query.append(MAX_KEYS_PARAM).append(myMaxKeys);
+        }
+
+        if (hasOwners) {
+            query.append(FETCH_OWNER_PARAM);
+        }
+
+        // S3 ignores start-after once it's given a continuation token
+        if (token != null) {
+            query.append(TOKEN_PARAM).append(RequestSigner.encode(token));
+        } else if (myStartAfter != null) {
+            query.append(START_AFTER_PARAM).append(RequestSigner.encode(myStartAfter));
+        }
+
+        return query.toString();
+    }
+
+    /**
+     * Compares two keys in the order S3 lists them, which is the order of their UTF-8 bytes. This is the same as the
+     * order of their code points; it differs from the order of Java's <code>String.compareTo()</code> only when one
+     * of the characters being compared is a surrogate and the other is above the surrogates.
+     *
+     * @param aFirstKey An S3 key
+     * @param aSecondKey Another S3 key
+     * @return A negative number, zero, or a positive number as the first key sorts before, with, or after the second
+     */
+    static int compareKeys(final String aFirstKey, final String aSecondKey) {
+        final int length = Math.min(aFirstKey.length(), aSecondKey.length());
+
+        for (int index = 0; index < length; index++) {
+            final char first = aFirstKey.charAt(index);
+            final char second = aSecondKey.charAt(index);
+
+            if (first != second) {
+                if (first >= MIN_SURROGATE && second >= MIN_SURROGATE) {
+                    return toCodePointOrder(first) - toCodePointOrder(second);
+                }
+
+                return first - second;
+            }
+        }
+
+        return aFirstKey.length() - aSecondKey.length();
+    }
+
+    /**
+     * Maps a character at or above the first surrogate to a value that sorts in code point order.
+     *
+     * @param aChar A character at or above the first surrogate
+     * @return A value that sorts in code point order
+     */
+    private static int toCodePointOrder(final char aChar) {
+        return aChar >= MIN_ABOVE_SURROGATES ? aChar - BMP_SHIFT : aChar + SURROGATE_SHIFT;
+    }
+}
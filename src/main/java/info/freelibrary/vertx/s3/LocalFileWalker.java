@@ -0,0 +1,142 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import info.freelibrary.util.I18nRuntimeException;
+
+/**
+ * A walk of the files below a local directory in the order S3 lists keys, so that the walk can be merged with a
+ * listing in a single pass. Each file is described by a list object whose key is the file's path relative to the
+ * directory, with slashes between its names, and whose size and last updated date are those of the file. Only one
+ * directory is read at a time, so a walk of millions of files never holds more than the entries of the directories
+ * it's in. The walk reads the file system, so it should be run from a worker thread.
+ */
+final class LocalFileWalker implements Iterator<ListObject> {
+
+    private static final char SLASH = '/';
+
+    private final Path myDirectory;
+
+    /** The sorted entries of each of the directories the walk is in, innermost last */
+    private final Deque<Iterator<Entry>> myEntries = new ArrayDeque<>();
+
+    /** The next file of the walk, or null if it hasn't been found yet */
+    private ListObject myNext;
+
+    private boolean isStarted;
+
+    /**
+     * Creates a new walk of the files below the supplied directory. The directory isn't read until the walk starts.
+     *
+     * @param aDirectory A local directory
+     */
+    LocalFileWalker(final Path aDirectory) {
+        myDirectory = aDirectory;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!isStarted) {
+            isStarted = true;
+            myEntries.push(readDirectory(myDirectory, ""));
+        }
+
+        while (myNext == null && !myEntries.isEmpty()) {
+            final Iterator<Entry> entries = myEntries.peek();
+
+            if (entries.hasNext()) {
+                final Entry entry = entries.next();
+
+                if (entry.isDirectory) {
+                    myEntries.push(readDirectory(myDirectory.resolve(entry.myKey), entry.myKey));
+                } else {
+                    myNext = new ListObject().setKey(entry.myKey).setSize(entry.myAttributes.size()).setLastUpdated(
+                            entry.myAttributes.lastModifiedTime().toInstant());
+                }
+            } else {
+                myEntries.pop();
+            }
+        }
+
+        return myNext != null;
+    }
+
+    @Override
+    public ListObject next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        final ListObject next = myNext;
+
+        myNext = null;
+        return next;
+    }
+
+    /**
+     * Reads the regular files and directories in a directory, sorting them in the order S3 lists keys. A directory's
+     * key ends with a slash, which places it where the keys of its files fall among the keys of its siblings.
+     *
+     * @param aDirectory A directory to read
+     * @param aPrefix The key of the directory, which is the prefix of the keys of its entries
+     * @return The directory's sorted entries
+     * @throws I18nRuntimeException If the directory can't be read
+     */
+    private static Iterator<Entry> readDirectory(final Path aDirectory, final String aPrefix) {
+        final List<Entry> entries = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(aDirectory)) {
+            for (final Path path : stream) {
+                final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                final String key = aPrefix + path.getFileName().toString();
+
+                if (attributes.isDirectory()) {
+                    entries.add(new Entry(key + SLASH, attributes, true));
+                } else if (attributes.isRegularFile()) {
+                    entries.add(new Entry(key, attributes, false));
+                }
+            }
+        } catch (final IOException details) {
+            throw new I18nRuntimeException(details);
+        }
+
+        entries.sort((first, second) -> ListQuery.compareKeys(first.myKey, second.myKey));
+        return entries.iterator();
+    }
+
+    /**
+     * A regular file or directory in a directory that's being walked.
+     */
+    private static final class Entry {
+
+        private final String myKey;
+
+        private final BasicFileAttributes myAttributes;
+
+        private final boolean isDirectory;
+
+        /**
+         * Creates a new entry.
+         *
+         * @param aKey The entry's path relative to the walked directory, ending with a slash if it's a directory
+         * @param aAttributes The entry's attributes
+         * @param aDirectory Whether the entry is a directory
+         */
+        private Entry(final String aKey, final BasicFileAttributes aAttributes, final boolean aDirectory) {
+            myKey = aKey;
+            myAttributes = aAttributes;
+            isDirectory = aDirectory;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import info.freelibrary.util.I18nRuntimeException;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.shareddata.Shareable;
+
+/**
+ * A read-through cache of small S3 objects in memory outside of the Java heap. Each cached object's body is held in a
+ * pooled, direct <code>ByteBuf</code>, so a cache of several gigabytes adds nothing to the heap for the garbage
+ * collector to scan, and an object that's sent to an <code>HttpServerResponse</code> is written to the socket from
+ * that buffer without being copied. Objects are revalidated with an <code>If-None-Match</code> on their ETags, like
+ * those of an {@link ObjectCache}, unless they were revalidated within the cache's maximum age.
+ * <p>
+ * The cache holds no more than its maximum size of objects, evicting the least recently used objects once it's full.
+ * Objects larger than the cache's maximum object size aren't cached; they're read from S3 each time. A cached
+ * object's buffer is reference counted: the cache holds one reference and each send holds another until the object
+ * has been written, so an object that's evicted while it's being sent is only freed once the send has finished.
+ * </p>
+ * <p>
+ * The cache is thread-safe and {@link Shareable}, so a single cache can be shared by all the verticles in a JVM by
+ * putting it in a local map of Vert.x's shared data. It should be cleared when it's no longer needed, so its memory
+ * is returned to the pool.
+ * </p>
+ */
+public class MemoryObjectCache implements Shareable {
+
+    /** The default maximum size of a cached object */
+    public static final int DEFAULT_MAX_OBJECT_SIZE = 256 * 1024;
+
+    private static final char SLASH = '/';
+
+    /** The allocator of the buffers that hold cached objects */
+    private static final ByteBufAllocator ALLOCATOR = PooledByteBufAllocator.DEFAULT;
+
+    private final S3Client myClient;
+
+    private final long myMaxSize;
+
+    /** The cached objects, by bucket and key, in the order in which they were last used */
+    private final Map<String, Entry> myEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The total size of the cached objects */
+    private long mySize;
+
+    private int myMaxObjectSize = DEFAULT_MAX_OBJECT_SIZE;
+
+    private long myMaxAge;
+
+    /**
+     * Creates a new cache of S3 objects in off-heap memory.
+     *
+     * @param aClient The client through which objects are read from S3
+     * @param aMaxSize The maximum number of bytes of objects that are cached
+     * @throws ConfigurationException If the maximum size is less than one
+     */
+    public MemoryObjectCache(final S3Client aClient, final long aMaxSize) {
+        if (aMaxSize < 1) {
+            throw new ConfigurationException(MessageCodes.VS3_044, aMaxSize);
+        }
+
+        myClient = aClient;
+        myMaxSize = aMaxSize;
+    }
+
+    /**
+     * Sets the maximum size of an object that's cached. Larger objects are read from S3 each time they're read.
+     *
+     * @param aMaxObjectSize The maximum size of a cached object, in bytes
+     * @return The object cache
+     * @throws ConfigurationException If the maximum object size is less than one
+     */
+    public MemoryObjectCache setMaxObjectSize(final int aMaxObjectSize) {
+        if (aMaxObjectSize < 1) {
+            throw new ConfigurationException(MessageCodes.VS3_047, aMaxObjectSize);
+        }
+
+        myMaxObjectSize = aMaxObjectSize;
+        return this;
+    }
+
+    /**
+     * Gets the maximum size of an object that's cached.
+     *
+     * @return The maximum size of a cached object, in bytes
+     */
+    public int getMaxObjectSize() {
+        return myMaxObjectSize;
+    }
+
+    /**
+     * Sets how long a cached object is served after it has been revalidated before it's revalidated again. By
+     * default, a cached object is revalidated every time it's read.
+     *
+     * @param aMaxAge The maximum age of a revalidation, in milliseconds
+     * @return The object cache
+     * @throws ConfigurationException If the maximum age is negative
+     */
+    public MemoryObjectCache setMaxAge(final long aMaxAge) {
+        if (aMaxAge < 0) {
+            throw new ConfigurationException(MessageCodes.VS3_045, aMaxAge);
+        }
+
+        myMaxAge = aMaxAge;
+        return this;
+    }
+
+    /**
+     * Gets how long a cached object is served after it has been revalidated.
+     *
+     * @return The maximum age of a revalidation, in milliseconds
+     */
+    public long getMaxAge() {
+        return myMaxAge;
+    }
+
+    /**
+     * Gets the maximum number of bytes of objects that are cached.
+     *
+     * @return The maximum size of the cache
+     */
+    public long getMaxSize() {
+        return myMaxSize;
+    }
+
+    /**
+     * Gets the number of bytes of objects that are cached.
+     *
+     * @return The size of the cache
+     */
+    public long getSize() {
+        synchronized (this) {
+            return mySize;
+        }
+    }
+
+    /**
+     * Gets the number of objects that are cached.
+     *
+     * @return The number of cached objects
+     */
+    public int getObjectCount() {
+        synchronized (this) {
+            return myEntries.size();
+        }
+    }
+
+    /**
+     * Sends an object to an HTTP response, reading it through the cache. A cached object is written from its
+     * off-heap buffer without being copied, and an object that's too large to cache is piped from S3. The response
+     * is given the object's ETag and, if it doesn't have its own, the object's content type. If the object can't be
+     * read, nothing is sent and the response is left for the handler to deal with.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aResponse A response to which the object is sent
+     * @param aHandler A handler that's notified once the object has been sent or couldn't be read
+     */
+    public void send(final String aBucket, final String aKey, final HttpServerResponse aResponse,
+            final Handler<AsyncResult<Void>> aHandler) {
+        final Promise<Void> promise = Promise.promise();
+        final Handler<HttpClientResponse> uncachedHandler = response -> S3Client.pipe(aBucket, aKey, response,
+                aResponse, promise);
+
+        promise.future().onComplete(aHandler);
+        acquire(aBucket, aKey, entry -> send(entry, aResponse, promise), uncachedHandler, promise::tryFail);
+    }
+
+    /**
+     * Gets an object, reading it through the cache. The object's body is copied onto the heap, since the returned
+     * buffer can outlive the object's time in the cache.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aHandler A handler for the object's body
+     */
+    public void get(final String aBucket, final String aKey, final Handler<AsyncResult<Buffer>> aHandler) {
+        final Promise<Buffer> promise = Promise.promise();
+        final Handler<Entry> cachedHandler = entry -> {
+            final byte[] body = new byte[entry.myBody.readableBytes()];
+
+            entry.myBody.getBytes(entry.myBody.readerIndex(), body);
+            entry.myBody.release();
+            promise.tryComplete(Buffer.buffer(body));
+        };
+        final Handler<HttpClientResponse> uncachedHandler = response -> {
+            if (response.statusCode() == HTTP.OK) {
+                response.exceptionHandler(promise::tryFail).bodyHandler(promise::tryComplete);
+            } else {
+                promise.tryFail(new I18nRuntimeException(Constants.BUNDLE_NAME, MessageCodes.VS3_046, aBucket, aKey,
+                        response.statusCode(), response.statusMessage()));
+            }
+        };
+
+        promise.future().onComplete(aHandler);
+        acquire(aBucket, aKey, cachedHandler, uncachedHandler, promise::tryFail);
+    }
+
+    /**
+     * Removes an object from the cache, so it's read from S3 again the next time it's read.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     */
+    public void invalidate(final String aBucket, final String aKey) {
+        synchronized (this) {
+            final Entry entry = myEntries.remove(aBucket + SLASH + aKey);
+
+            if (entry != null) {
+                remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Removes all the objects from the cache, returning their memory to the pool once any sends of them finish.
+     */
+    public void clear() {
+        synchronized (this) {
+            for (final Entry entry : myEntries.values()) {
+                remove(entry);
+            }
+
+            myEntries.clear();
+        }
+    }
+
+    /**
+     * Gets the buffer that holds a cached object's body, without taking a reference to it. Like a read, this counts
+     * as a use of the object.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @return The object's buffer, or null if the object isn't cached
+     */
+    ByteBuf getBuffer(final String aBucket, final String aKey) {
+        synchronized (this) {
+            final Entry entry = myEntries.get(aBucket + SLASH + aKey);
+
+            return entry == null ? null : entry.myBody;
+        }
+    }
+
+    /**
+     * Acquires a reference to a cached object, reading it from S3 first if it isn't cached or needs to be
+     * revalidated. The reference must be released once the object has been used.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aCachedHandler A handler for a cached object, which must release it
+     * @param aUncachedHandler A handler for a response from S3 with an object that couldn't be cached
+     * @param aErrorHandler A handler for a request to S3 that failed
+     */
+    private void acquire(final String aBucket, final String aKey, final Handler<Entry> aCachedHandler,
+            final Handler<HttpClientResponse> aUncachedHandler, final Handler<Throwable> aErrorHandler) {
+        final String id = aBucket + SLASH + aKey;
+        final Entry entry;
+        final boolean isFresh;
+
+        synchronized (this) {
+            entry = myEntries.get(id);
+            isFresh = entry != null && System.currentTimeMillis() - entry.myValidationTime < myMaxAge;
+
+            if (entry != null) {
+                // The object is held while it's revalidated, so it isn't freed before the response arrives
+                entry.myBody.retain();
+            }
+        }
+
+        if (isFresh) {
+            aCachedHandler.handle(entry);
+        } else {
+            revalidate(aBucket, aKey, entry, aCachedHandler, aUncachedHandler, aErrorHandler);
+        }
+    }
+
+    /**
+     * Reads an object from S3 or, if it's cached, revalidates it.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aEntry The object's held entry, or null if it isn't cached
+     * @param aCachedHandler A handler for a cached object, which must release it
+     * @param aUncachedHandler A handler for a response from S3 with an object that couldn't be cached
+     * @param aErrorHandler A handler for a request to S3 that failed
+     */
+    private void revalidate(final String aBucket, final String aKey, final Entry aEntry,
+            final Handler<Entry> aCachedHandler, final Handler<HttpClientResponse> aUncachedHandler,
+            final Handler<Throwable> aErrorHandler) {
+        final GetOptions options = new GetOptions();
+        final Handler<Throwable> errorHandler = error -> {
+            if (aEntry != null) {
+                aEntry.myBody.release();
+            }
+
+            aErrorHandler.handle(error);
+        };
+        final Handler<HttpClientResponse> responseHandler = response -> {
+            if (response.statusCode() == HTTP.NOT_MODIFIED && aEntry != null) {
+                synchronized (this) {
+                    aEntry.myValidationTime = System.currentTimeMillis();
+                }
+
+                aCachedHandler.handle(aEntry);
+            } else {
+                if (aEntry != null) {
+                    aEntry.myBody.release();
+                }
+
+                receive(aBucket, aKey, response, aCachedHandler, aUncachedHandler, aErrorHandler);
+            }
+        };
+
+        if (aEntry != null) {
+            options.setIfNoneMatch(aEntry.myETag);
+        }
+
+        myClient.get(aBucket, aKey, options, responseHandler, errorHandler);
+    }
+
+    /**
+     * Receives an object from S3, reading it into an off-heap buffer and caching it if it's small enough.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aResponse The response from S3
+     * @param aCachedHandler A handler for a cached object, which must release it
+     * @param aUncachedHandler A handler for a response from S3 with an object that couldn't be cached
+     * @param aErrorHandler A handler for a response that failed while it was being read
+     */
+    private void receive(final String aBucket, final String aKey, final HttpClientResponse aResponse,
+            final Handler<Entry> aCachedHandler,
+            final Handler<HttpClientResponse> aUncachedHandler, final Handler<Throwable> aErrorHandler) {
+        final long size = RangedDownload.getObjectSize(aResponse.getHeader(HttpHeaders.CONTENT_LENGTH));
+        final int statusCode = aResponse.statusCode();
+
+        if (statusCode != HTTP.OK || size < 0 || size > myMaxObjectSize) {
+            // A cached copy of an object that's gone, or whose new version won't be cached, is out of date
+            if (statusCode == HTTP.OK || statusCode == HTTP.NOT_FOUND) {
+                invalidate(aBucket, aKey);
+            }
+
+            aUncachedHandler.handle(aResponse);
+        } else {
+            final ByteBuf body = ALLOCATOR.directBuffer((int) size, (int) size);
+            final Entry entry = new Entry(body, aResponse.getHeader(HttpHeaders.ETAG), aResponse.getHeader(
+                    HttpHeaders.CONTENT_TYPE));
+
+            aResponse.handler(data -> body.writeBytes(data.getByteBuf()));
+            aResponse.exceptionHandler(error -> {
+                body.release();
+                aErrorHandler.handle(error);
+            });
+            aResponse.endHandler(end -> {
+                if (body.readableBytes() == size) {
+                    // The caller's reference is taken before the object is stored, so it can't be evicted first
+                    body.retain();
+                    store(aBucket + SLASH + aKey, entry);
+                    aCachedHandler.handle(entry);
+                } else {
+                    body.release();
+                    aErrorHandler.handle(new I18nRuntimeException(Constants.BUNDLE_NAME, MessageCodes.VS3_048,
+                            aBucket, aKey, body.readableBytes(), size));
+                }
+            });
+        }
+    }
+
+    /**
+     * Sends a cached object to an HTTP response, releasing it once it has been written.
+     *
+     * @param aEntry A cached object
+     * @param aResponse A response to which the object is sent
+     * @param aPromise A promise that the object will be sent
+     */
+    private static void send(final Entry aEntry, final HttpServerResponse aResponse, final Promise<Void> aPromise) {
+        if (aEntry.myETag != null) {
+            aResponse.putHeader(HttpHeaders.ETAG, aEntry.myETag);
+        }
+
+        if (aEntry.myContentType != null && !aResponse.headers().contains(HttpHeaders.CONTENT_TYPE)) {
+            aResponse.putHeader(HttpHeaders.CONTENT_TYPE, aEntry.myContentType);
+        }
+
+        // The buffer is wrapped rather than copied, and Vert.x won't release it, so it's released once it's written
+        aResponse.end(Buffer.buffer(aEntry.myBody.duplicate()), end -> {
+            aEntry.myBody.release();
+            aPromise.handle(end);
+        });
+    }
+
+    /**
+     * Stores a new cached object, replacing the object's old entry and evicting other objects if the cache is full.
+     *
+     * @param aID The object's bucket and key
+     * @param aEntry The object's new entry
+     */
+    private void store(final String aID, final Entry aEntry) {
+        synchronized (this) {
+            final Entry oldEntry = myEntries.put(aID, aEntry);
+            final Iterator<Entry> iterator;
+
+            if (oldEntry != null) {
+                remove(oldEntry);
+            }
+
+            mySize += aEntry.myBody.capacity();
+            iterator = myEntries.values().iterator();
+
+            while (mySize > myMaxSize && iterator.hasNext()) {
+                final Entry entry = iterator.next();
+
+                iterator.remove();
+                remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Removes an entry that has been taken out of the index, releasing the cache's reference to its buffer.
+     *
+     * @param aEntry A cached object
+     */
+    private void remove(final Entry aEntry) {
+        mySize -= aEntry.myBody.capacity();
+        aEntry.myBody.release();
+    }
+
+    /**
+     * An object in the cache.
+     */
+    private static final class Entry {
+
+        /** The object's body, in an off-heap buffer */
+        private final ByteBuf myBody;
+
+        private final String myETag;
+
+        private final String myContentType;
+
+        /** When the object was last read or revalidated */
+        private long myValidationTime = System.currentTimeMillis();
+
+        private Entry(final ByteBuf aBody, final String aETag, final String aContentType) {
+            myBody = aBody;
+            myETag = aETag;
+            myContentType = aContentType;
+        }
+    }
+}
@@ -0,0 +1,536 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import info.freelibrary.util.I18nRuntimeException;
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+import info.freelibrary.util.StringUtils;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.streams.ReadStream;
+
+/**
+ * An upload of a stream of data to S3. Data is read from the stream in parts of the client's configured part size.
+ * If the stream ends before the first part has been filled, the data is sent in a single PUT request; otherwise, an
+ * S3 multipart upload is created and the parts are sent, several at a time, as they're read. The number of parts in
+ * flight is limited both per upload and across all the uploads of the client. The stream is paused while a filled
+ * part is waiting to be sent so that only a bounded number of parts are held in memory at any one time.
+ */
+@SuppressWarnings({ "PMD.TooManyFields", "PMD.TooManyMethods" })
+class MultipartUpload {
+
+    /** The maximum number of parts that S3 will accept in a multipart upload */
+    static final int MAX_PART_COUNT = 10_000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MultipartUpload.class, Constants.BUNDLE_NAME);
+
+    /** The query used to create a new multipart upload */
+    private static final String UPLOADS_QUERY = "?uploads";
+
+    /** The query used to upload a single part */
+    private static final String PART_QUERY = "?partNumber={}&uploadId={}";
+
+    /** The query used to complete or abort a multipart upload */
+    private static final String UPLOAD_ID_QUERY = "?uploadId={}";
+
+    /** The start of the body of an error response */
+    private static final String ERROR = "<Error>";
+
+    /** The approximate size of each part's entry in the XML that completes an upload */
+    private static final int COMPLETION_XML_SIZE = 96;
+
+    /** The capacity a part's buffer starts with, before it grows toward the part size as it's filled */
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    /** The client through which the upload's requests are made */
+    private final S3Client myClient;
+
+    /** The S3 bucket to which the data is uploaded */
+    private final String myBucket;
+
+    /** The S3 key of the uploaded object */
+    private final String myKey;
+
+    /** Optional user metadata to set on the uploaded object */
+    private final UserMetadata myMetadata;
+
+    /** The size of the upload's parts */
+    private final int myPartSize;
+
+    /** The maximum number of parts the upload sends at one time */
+    private final int myPartConcurrency;
+
+    /** The client-wide limit on the number of parts in flight */
+    private final PartPermits myPermits;
+
+    /** The handler that receives the final response of the upload */
+    private final Handler<HttpClientResponse> myHandler;
+
+    /** The handler that receives any exception thrown during the upload */
+    private final Handler<Throwable> myExceptionHandler;
+
+    /** Parts that have been read but not yet sent */
+    private final Deque<Part> myPendingParts = new ArrayDeque<>();
+
+    /** The ETags of the uploaded parts, in part number order */
+    private final List<String> myETags = new ArrayList<>();
+
+    /** The stream being uploaded */
+    private ReadStream<Buffer> myStream;
+
+    /** The part that's currently being filled from the stream */
+    private Buffer myBuffer;
+
+    /** The capacity of the buffer of the part that's currently being filled */
+    private int myBufferCapacity;
+
+    /** The S3 multipart upload ID */
+    private String myUploadId;
+
+    /** The number of parts that have been read from the stream */
+    private int myPartCount;
+
+    /** The number of parts that are being sent or are waiting for a client-wide permit to be sent */
+    private int myPartsInFlight;
+
+    /** Whether the stream has been paused because parts are waiting to be sent */
+    private boolean isPaused;
+
+    /** Whether the request to create the multipart upload has been sent */
+    private boolean isCreated;
+
+    /** Whether the end of the stream has been reached */
+    private boolean isEnded;
+
+    /** Whether the upload has finished, successfully or not */
+    private boolean isFinished;
+
+    /**
+     * Creates a new upload.
+     *
+     * @param aClient An S3 client
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aMetadata User metadata to set on the uploaded object (optional)
+     * @param aHandler A response handler for the upload
+     * @param aExceptionHandler An exception handler for the upload
+     */
+    MultipartUpload(final S3Client aClient, final String aBucket, final String aKey, final UserMetadata aMetadata,
+            final Handler<HttpClientResponse> aHandler, final Handler<Throwable> aExceptionHandler) {
+        myClient = aClient;
+        myBucket = aBucket;
+        myKey = aKey;
+        myMetadata = aMetadata;
+        myPartSize = aClient.getPartSize();
+        myPartConcurrency = aClient.getPartConcurrency();
+        myPermits = aClient.getPartPermits();
+        myHandler = aHandler;
+        myExceptionHandler = aExceptionHandler;
+        myBuffer = newBuffer();
+    }
+
+    /**
+     * Starts uploading the data from the supplied stream.
+     *
+     * @param aStream A stream of data to upload
+     */
+    void upload(final ReadStream<Buffer> aStream) {
+        myStream = aStream;
+
+        aStream.exceptionHandler(this::fail);
+        aStream.endHandler(end -> handleEnd());
+        aStream.handler(this::handleData);
+    }
+
+    /**
+     * Splits the data read from the stream into parts.
+     *
+     * @param aData Data read from the stream
+     */
+    private void handleData(final Buffer aData) {
+        if (isFinished) {
+            return;
+        }
+
+        final int length = aData.length();
+
+        int offset = 0;
+
+        while (offset < length && !isFinished) {
+            final int count = Math.min(myPartSize - myBuffer.length(), length - offset);
+
+            reserve(count);
+            myBuffer.appendBuffer(aData, offset, count);
+            offset += count;
+
+            if (myBuffer.length() == myPartSize) {
+                queuePart(myBuffer);
+                myBuffer = newBuffer();
+            }
+        }
+    }
+
+    /**
+     * Creates the buffer of a new part. It starts small, so a stream that ends soon after doesn't hold a whole part's
+     * worth of memory, and grows toward the part size as it's filled.
+     *
+     * @return An empty buffer for a part
+     */
+    private Buffer newBuffer() {
+        myBufferCapacity = Math.min(myPartSize, INITIAL_BUFFER_SIZE);
+        return Buffer.buffer(myBufferCapacity);
+    }
+
+    /**
+     * Makes room in the current part's buffer for more data, doubling its capacity, up to the part size, when it's
+     * too small. The buffer is replaced rather than left to grow on its own since its own growth can overshoot the
+     * part size.
+     *
+     * @param aCount The number of bytes about to be added to the part
+     */
+    private void reserve(final int aCount) {
+        final int length = myBuffer.length() + aCount;
+
+        if (length > myBufferCapacity) {
+            myBufferCapacity = (int) Math.min(myPartSize, Math.max(length, myBufferCapacity * 2L));
+            myBuffer = Buffer.buffer(myBufferCapacity).appendBuffer(myBuffer);
+        }
+    }
+
+    /**
+     * Sends the data that's left once the end of the stream has been reached.
+     */
+    private void handleEnd() {
+        if (isFinished) {
+            return;
+        }
+
+        isEnded = true;
+
+        if (myPartCount == 0) {
+            putObject(myBuffer);
+        } else {
+            if (myBuffer.length() > 0) {
+                queuePart(myBuffer);
+            }
+
+            completeIfDone();
+        }
+    }
+
+    /**
+     * Queues a filled part for upload, pausing the stream if the part can't be sent right away.
+     *
+     * @param aBuffer The contents of a part
+     */
+    private void queuePart(final Buffer aBuffer) {
+        if (++myPartCount > MAX_PART_COUNT) {
+            fail(new I18nRuntimeException(Constants.BUNDLE_NAME, MessageCodes.VS3_022, myBucket, myKey,
+                    MAX_PART_COUNT));
+            return;
+        }
+
+        myPendingParts.add(new Part(myPartCount, aBuffer));
+
+        if (!isCreated) {
+            createUpload();
+        } else {
+            sendParts();
+        }
+
+        if (!myPendingParts.isEmpty() && !isPaused && !isEnded) {
+            isPaused = true;
+            myStream.pause();
+        }
+    }
+
+    /**
+     * Sends as many of the pending parts as the in-flight limit allows, resuming the stream if all the pending parts
+     * have been sent.
+     */
+    private void sendParts() {
+        while (myUploadId != null && !isFinished && myPartsInFlight < myPartConcurrency &&
+                !myPendingParts.isEmpty()) {
+            final Part part = myPendingParts.poll();
+
+            myPartsInFlight += 1;
+            myPermits.acquire(permit -> sendPart(part));
+        }
+
+        if (myPendingParts.isEmpty() && isPaused && !isFinished) {
+            isPaused = false;
+            myStream.resume();
+        }
+    }
+
+    /**
+     * Uploads the whole object in a single PUT request; this is used when the stream ends before a part is filled.
+     *
+     * @param aBuffer The contents of the object
+     */
+    private void putObject(final Buffer aBuffer) {
+        final S3ClientRequest request = myClient.createPutRequest(myBucket, myKey, this::finish);
+
+        if (myMetadata != null) {
+            request.setUserMetadata(myMetadata);
+        }
+
+        request.putHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(aBuffer.length()));
+        request.exceptionHandler(this::fail).useV2Signature(myClient.usesV2Signature()).end(aBuffer);
+    }
+
+    /**
+     * Creates a new S3 multipart upload.
+     */
+    private void createUpload() {
+        final S3ClientRequest request;
+
+        isCreated = true;
+        request = myClient.createPostRequest(myBucket, myKey + UPLOADS_QUERY, response -> {
+            if (response.statusCode() == HTTP.OK) {
+                response.exceptionHandler(this::fail);
+                response.bodyHandler(body -> {
+                    try {
+                        myUploadId = parseUploadId(body);
+                        LOGGER.debug(MessageCodes.VS3_019, myUploadId, myBucket, myKey);
+                        sendParts();
+                        completeIfDone();
+                    } catch (final IOException details) {
+                        fail(details);
+                    }
+                });
+            } else {
+                finish(response);
+            }
+        });
+
+        if (myMetadata != null) {
+            request.setUserMetadata(myMetadata);
+        }
+
+        request.exceptionHandler(this::fail).useV2Signature(myClient.usesV2Signature()).end();
+    }
+
+    /**
+     * Uploads a single part once a client-wide permit to do so has been acquired.
+     *
+     * @param aPart A part to upload
+     */
+    private void sendPart(final Part aPart) {
+        if (isFinished) {
+            release(aPart);
+            return;
+        }
+
+        final String query = StringUtils.format(PART_QUERY, Integer.toString(aPart.myNumber), myUploadId);
+        final S3ClientRequest request = myClient.createPutRequest(myBucket, myKey + query, response -> {
+            release(aPart);
+
+            if (response.statusCode() == HTTP.OK) {
+                setETag(aPart.myNumber, response.getHeader(HttpHeaders.ETAG));
+                sendParts();
+                completeIfDone();
+            } else {
+                abort();
+                finish(response);
+            }
+        });
+
+        request.putHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(aPart.myBuffer.length()));
+        request.exceptionHandler(error -> {
+            release(aPart);
+            fail(error);
+        }).useV2Signature(myClient.usesV2Signature()).end(aPart.myBuffer);
+    }
+
+    /**
+     * Gives back the client-wide permit that was used to send a part.
+     *
+     * @param aPart A part that has finished being sent
+     */
+    private void release(final Part aPart) {
+        if (!aPart.isReleased) {
+            aPart.isReleased = true;
+            myPartsInFlight -= 1;
+            myPermits.release();
+        }
+    }
+
+    /**
+     * Completes the multipart upload once all its parts have been uploaded.
+     */
+    private void completeIfDone() {
+        if (isEnded && !isFinished && myUploadId != null && myPartsInFlight == 0 && myPendingParts.isEmpty()) {
+            final String query = StringUtils.format(UPLOAD_ID_QUERY, myUploadId);
+            final Buffer body = Buffer.buffer(getCompletionXML(), StandardCharsets.UTF_8.name());
+            final S3ClientRequest request = myClient.createPostRequest(myBucket, myKey + query, this::checkCompletion);
+
+            request.putHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(body.length()));
+            request.exceptionHandler(this::fail).useV2Signature(myClient.usesV2Signature()).end(body);
+        }
+    }
+
+    /**
+     * Checks the response to the request that completes the multipart upload. S3 can fail the completion after it
+     * has sent a <code>200 OK</code>, in which case the response's body is an error rather than the result of the
+     * upload; when this happens, the upload is aborted and ended with an exception.
+     *
+     * @param aResponse The response to the completion request
+     */
+    private void checkCompletion(final HttpClientResponse aResponse) {
+        if (aResponse.statusCode() == HTTP.OK) {
+            aResponse.exceptionHandler(this::fail);
+            aResponse.bodyHandler(body -> {
+                final String result = body.toString(StandardCharsets.UTF_8);
+
+                if (result.contains(ERROR)) {
+                    fail(new I18nRuntimeException(Constants.BUNDLE_NAME, MessageCodes.VS3_049, myUploadId, myBucket,
+                            myKey, result));
+                } else {
+                    finish(aResponse);
+                }
+            });
+        } else {
+            abort();
+            finish(aResponse);
+        }
+    }
+
+    /**
+     * Aborts the multipart upload so S3 can discard the parts that have already been uploaded.
+     */
+    private void abort() {
+        if (myUploadId != null) {
+            final String query = StringUtils.format(UPLOAD_ID_QUERY, myUploadId);
+
+            LOGGER.debug(MessageCodes.VS3_020, myUploadId, myBucket, myKey);
+
+            myClient.createDeleteRequest(myBucket, myKey + query, response -> {
+                if (response.statusCode() != HTTP.NO_CONTENT) {
+                    LOGGER.warn(MessageCodes.VS3_023, myUploadId, response.statusCode(), response.statusMessage());
+                }
+            }).exceptionHandler(error -> LOGGER.error(error, error.getMessage())).useV2Signature(myClient
+                    .usesV2Signature()).end();
+        }
+    }
+
+    /**
+     * Passes the final response of the upload to the upload's response handler.
+     *
+     * @param aResponse The final response of the upload
+     */
+    private void finish(final HttpClientResponse aResponse) {
+        if (!isFinished) {
+            isFinished = true;
+            discardParts();
+            myHandler.handle(aResponse);
+        }
+    }
+
+    /**
+     * Ends the upload with an exception, aborting the multipart upload if one has been created.
+     *
+     * @param aThrowable The cause of the failure
+     */
+    private void fail(final Throwable aThrowable) {
+        if (!isFinished) {
+            isFinished = true;
+            abort();
+            discardParts();
+            myExceptionHandler.handle(aThrowable);
+        }
+    }
+
+    /**
+     * Drops the parts that are waiting to be sent once the upload has finished, and resumes the stream if it was
+     * paused for them so that it can run to its end; the data it still sends is ignored. Parts that are waiting for a
+     * client-wide permit give it back as soon as they get it.
+     */
+    private void discardParts() {
+        myPendingParts.clear();
+        myBuffer = Buffer.buffer(0);
+
+        if (isPaused) {
+            isPaused = false;
+            myStream.resume();
+        }
+    }
+
+    /**
+     * Records the ETag of an uploaded part.
+     *
+     * @param aPartNumber A part number
+     * @param aETag The ETag S3 returned for the part
+     */
+    private void setETag(final int aPartNumber, final String aETag) {
+        while (myETags.size() < aPartNumber) {
+            myETags.add(null);
+        }
+
+        myETags.set(aPartNumber - 1, aETag);
+    }
+
+    /**
+     * Gets the XML body of the request that completes the multipart upload.
+     *
+     * @return The XML body of the completion request
+     */
+    private String getCompletionXML() {
+        final StringBuilder xml = new StringBuilder(COMPLETION_XML_SIZE * (myETags.size() + 1));
+
+        xml.append("<CompleteMultipartUpload>");
+
+        for (int index = 0; index < myETags.size(); index++) {
+            xml.append("<Part><PartNumber>").append(index + 1).append("</PartNumber><ETag>");
+            xml.append(myETags.get(index)).append("</ETag></Part>");
+        }
+
+        return xml.append("</CompleteMultipartUpload>").toString();
+    }
+
+    /**
+     * Gets the upload ID from S3's response to a request to create a multipart upload.
+     *
+     * @param aBuffer The XML response from S3
+     * @return The multipart upload ID
+     * @throws IOException If there is trouble reading the response or it doesn't contain an upload ID
+     */
+    private String parseUploadId(final Buffer aBuffer) throws IOException {
+        final InitiateUploadHandler handler = new InitiateUploadHandler();
+
+        SaxParsers.parse(aBuffer, handler);
+
+        if (handler.getUploadId() == null) {
+            throw new IOException(LOGGER.getMessage(MessageCodes.VS3_021, myBucket, myKey));
+        }
+
+        return handler.getUploadId();
+    }
+
+    /**
+     * A numbered part of a multipart upload.
+     */
+    private static final class Part {
+
+        private final int myNumber;
+
+        private final Buffer myBuffer;
+
+        private boolean isReleased;
+
+        private Part(final int aNumber, final Buffer aBuffer) {
+            myNumber = aNumber;
+            myBuffer = aBuffer;
+        }
+    }
+}
@@ -0,0 +1,530 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import info.freelibrary.util.I18nRuntimeException;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.FileSystem;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerResponse;
+
+/**
+ * A read-through cache of S3 objects on local disk. An object that isn't cached is downloaded into a file in the
+ * cache's directory as it's read; an object that's cached is revalidated with an <code>If-None-Match</code> on its
+ * ETag, so S3 only sends it again if it has changed, and a <code>304 Not Modified</code> is served from the file.
+ * Objects that were revalidated within the cache's maximum age are served without asking S3 at all (see
+ * {@link #setMaxAge(long)}). Cached objects can be sent to an <code>HttpServerResponse</code> with
+ * <code>sendFile</code>, so their bodies are copied from disk to the socket by the OS rather than through the heap.
+ * <p>
+ * The cache holds no more than its maximum size of objects; once it's full, the least recently used objects are
+ * evicted. An object that's being read isn't evicted, or deleted if it's replaced, until its read has finished, and
+ * concurrent reads of an object that isn't cached share a single download. The cache's index is kept in memory, so a
+ * new cache starts empty; the files of a previous cache in the same directory are deleted when it's created.
+ * </p>
+ */
+public class ObjectCache {
+
+    /** The extension of the cache's files */
+    private static final String EXTENSION = ".cached";
+
+    /** The pattern of the names of the cache's files */
+    private static final String FILE_PATTERN = ".*\\" + EXTENSION;
+
+    private static final char SLASH = '/';
+
+    private final Vertx myVertx;
+
+    private final S3Client myClient;
+
+    private final String myDirectory;
+
+    private final long myMaxSize;
+
+    /** The cached objects, by bucket and key, in the order in which they were last used */
+    private final Map<String, Entry> myEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The handlers waiting on the objects that are being downloaded or revalidated, by bucket and key */
+    private final Map<String, List<Handler<AsyncResult<Entry>>>> myLoads = new HashMap<>();
+
+    /** The total size of the cached objects */
+    private long mySize;
+
+    private long myMaxAge;
+
+    /**
+     * Creates a new cache of S3 objects in the supplied directory, which is created if it doesn't exist. The
+     * directory should only be used by the cache: any files left in it by a previous cache are deleted.
+     *
+     * @param aVertx A Vert.x instance to read and write the cache's files with
+     * @param aClient The client through which objects are read from S3
+     * @param aDirectory A local directory in which to cache objects
+     * @param aMaxSize The maximum number of bytes of objects that are cached
+     * @throws ConfigurationException If the maximum size is less than one
+     */
+    public ObjectCache(final Vertx aVertx, final S3Client aClient, final String aDirectory, final long aMaxSize) {
+        if (aMaxSize < 1) {
+            throw new ConfigurationException(MessageCodes.VS3_044, aMaxSize);
+        }
+
+        final FileSystem fileSystem = aVertx.fileSystem();
+
+        myVertx = aVertx;
+        myClient = aClient;
+        myDirectory = aDirectory;
+        myMaxSize = aMaxSize;
+
+        fileSystem.mkdirsBlocking(aDirectory);
+
+        for (final String path : fileSystem.readDirBlocking(aDirectory, FILE_PATTERN)) {
+            fileSystem.deleteBlocking(path);
+        }
+    }
+
+    /**
+     * Sets how long a cached object is served after it has been revalidated before it's revalidated again. By
+     * default, a cached object is revalidated every time it's read, so a changed object is never served; a longer
+     * maximum age saves requests to S3 at the cost of serving an object for up to that long after it has changed.
+     *
+     * @param aMaxAge The maximum age of a revalidation, in milliseconds
+     * @return The object cache
+     * @throws ConfigurationException If the maximum age is negative
+     */
+    public ObjectCache setMaxAge(final long aMaxAge) {
+        if (aMaxAge < 0) {
+            throw new ConfigurationException(MessageCodes.VS3_045, aMaxAge);
+        }
+
+        myMaxAge = aMaxAge;
+        return this;
+    }
+
+    /**
+     * Gets how long a cached object is served after it has been revalidated.
+     *
+     * @return The maximum age of a revalidation, in milliseconds
+     */
+    public long getMaxAge() {
+        return myMaxAge;
+    }
+
+    /**
+     * Gets the maximum number of bytes of objects that are cached.
+     *
+     * @return The maximum size of the cache
+     */
+    public long getMaxSize() {
+        return myMaxSize;
+    }
+
+    /**
+     * Gets the number of bytes of objects that are cached.
+     *
+     * @return The size of the cache
+     */
+    public long getSize() {
+        synchronized (this) {
+            return mySize;
+        }
+    }
+
+    /**
+     * Gets the number of objects that are cached.
+     *
+     * @return The number of cached objects
+     */
+    public int getObjectCount() {
+        synchronized (this) {
+            return myEntries.size();
+        }
+    }
+
+    /**
+     * Sends an object to an HTTP response with <code>sendFile</code>, reading it through the cache. The response is
+     * given the object's ETag and, if it doesn't have its own, the object's content type. If the object can't be
+     * read, nothing is sent and the response is left for the handler to deal with.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aResponse A response to which the object is sent
+     * @param aHandler A handler that's notified once the object has been sent or couldn't be read
+     */
+    public void send(final String aBucket, final String aKey, final HttpServerResponse aResponse,
+            final Handler<AsyncResult<Void>> aHandler) {
+        acquire(aBucket, aKey, acquisition -> {
+            if (acquisition.succeeded()) {
+                final Entry entry = acquisition.result();
+
+                if (entry.myETag != null) {
+                    aResponse.putHeader(HttpHeaders.ETAG, entry.myETag);
+                }
+
+                if (entry.myContentType != null && !aResponse.headers().contains(HttpHeaders.CONTENT_TYPE)) {
+                    aResponse.putHeader(HttpHeaders.CONTENT_TYPE, entry.myContentType);
+                }
+
+                aResponse.sendFile(entry.myPath, send -> {
+                    release(entry);
+                    aHandler.handle(send);
+                });
+            } else {
+                aHandler.handle(Future.failedFuture(acquisition.cause()));
+            }
+        });
+    }
+
+    /**
+     * Gets an object, reading it through the cache.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aHandler A handler for the object's body
+     */
+    public void get(final String aBucket, final String aKey, final Handler<AsyncResult<Buffer>> aHandler) {
+        acquire(aBucket, aKey, acquisition -> {
+            if (acquisition.succeeded()) {
+                final Entry entry = acquisition.result();
+
+                myVertx.fileSystem().readFile(entry.myPath, read -> {
+                    release(entry);
+                    aHandler.handle(read);
+                });
+            } else {
+                aHandler.handle(Future.failedFuture(acquisition.cause()));
+            }
+        });
+    }
+
+    /**
+     * Removes an object from the cache, so it's downloaded again the next time it's read.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     */
+    public void invalidate(final String aBucket, final String aKey) {
+        synchronized (this) {
+            final Entry entry = myEntries.remove(aBucket + SLASH + aKey);
+
+            if (entry != null) {
+                remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Acquires the cached file of an object, downloading or revalidating it first if needed. The file is kept until
+     * it's released, even if the object is evicted or replaced in the meantime.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aHandler A handler for the object's cache entry
+     */
+    private void acquire(final String aBucket, final String aKey, final Handler<AsyncResult<Entry>> aHandler) {
+        final String id = aBucket + SLASH + aKey;
+        final Entry entry;
+        final boolean isLoading;
+
+        synchronized (this) {
+            final List<Handler<AsyncResult<Entry>>> waiters = myLoads.get(id);
+
+            if (waiters != null) {
+                waiters.add(aHandler);
+                return;
+            }
+
+            entry = myEntries.get(id);
+            isLoading = entry == null || System.currentTimeMillis() - entry.myValidationTime >= myMaxAge;
+
+            if (isLoading) {
+                final List<Handler<AsyncResult<Entry>>> handlers = new ArrayList<>();
+
+                handlers.add(aHandler);
+                myLoads.put(id, handlers);
+            }
+
+            if (entry != null) {
+                // An entry that's revalidated is held too, so it can't be deleted before the response arrives
+                entry.myUserCount += 1;
+            }
+        }
+
+        // The load is recorded above, so other reads of the object wait on it, but it's started outside the lock
+        if (isLoading) {
+            load(aBucket, aKey, id, entry);
+        } else {
+            aHandler.handle(Future.succeededFuture(entry));
+        }
+    }
+
+    /**
+     * Downloads an object or, if it's already cached, revalidates it.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aID The object's bucket and key
+     * @param aEntry The object's cache entry, or null if it isn't cached
+     */
+    private void load(final String aBucket, final String aKey, final String aID, final Entry aEntry) {
+        final Handler<Throwable> errorHandler = error -> complete(aID, aEntry, Future.failedFuture(error));
+        final GetOptions options = new GetOptions();
+
+        if (aEntry != null) {
+            options.setIfNoneMatch(aEntry.myETag);
+        }
+
+        myClient.get(aBucket, aKey, options, response -> receive(aBucket, aKey, aID, aEntry, response), errorHandler);
+    }
+
+    /**
+     * Receives S3's response to a download or revalidation, writing the object into a new file if it was sent.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aID The object's bucket and key
+     * @param aEntry The object's cache entry, or null if it wasn't cached
+     * @param aResponse The response from S3
+     */
+    private void receive(final String aBucket, final String aKey, final String aID, final Entry aEntry,
+            final HttpClientResponse aResponse) {
+        final int status = aResponse.statusCode();
+
+        if (status == HTTP.NOT_MODIFIED && aEntry != null) {
+            revalidate(aID, aEntry);
+        } else if (status == HTTP.OK) {
+            final String path = myDirectory + File.separatorChar + UUID.randomUUID() + EXTENSION;
+            final Entry entry = new Entry(path, aResponse.getHeader(HttpHeaders.ETAG), aResponse.getHeader(
+                    HttpHeaders.CONTENT_TYPE));
+            final Promise<Entry> promise = Promise.promise();
+
+            promise.future().onComplete(write -> complete(aID, aEntry, write));
+            aResponse.pause();
+            write(aResponse, entry, promise);
+        } else {
+            if (status == HTTP.NOT_FOUND) {
+                invalidate(aBucket, aKey);
+            }
+
+            complete(aID, aEntry, Future.failedFuture(new I18nRuntimeException(Constants.BUNDLE_NAME,
+                    MessageCodes.VS3_046, aBucket, aKey, status, aResponse.statusMessage())));
+        }
+    }
+
+    /**
+     * Writes the body of a response into a new cache file, getting the file's size once it has been written.
+     *
+     * @param aResponse A paused response with an object's body
+     * @param aEntry The new cache entry for the object
+     * @param aPromise A promise that the entry's file will be written
+     */
+    private void write(final HttpClientResponse aResponse, final Entry aEntry, final Promise<Entry> aPromise) {
+        final FileSystem fileSystem = myVertx.fileSystem();
+        final Promise<Void> failure = Promise.promise();
+
+        // A response that fails while its file is being opened isn't piped yet, so its failure is kept until then
+        aResponse.exceptionHandler(failure::tryFail);
+        fileSystem.open(aEntry.myPath, new OpenOptions().setCreateNew(true).setWrite(true), open -> {
+            if (open.failed()) {
+                aResponse.resume();
+                aPromise.fail(open.cause());
+            } else if (failure.future().failed()) {
+                open.result().close(close -> fileSystem.delete(aEntry.myPath, delete -> aPromise.fail(failure.future()
+                        .cause())));
+            } else {
+                aResponse.pipeTo(open.result(), pipe -> {
+                    if (pipe.failed()) {
+                        fileSystem.delete(aEntry.myPath, delete -> aPromise.fail(pipe.cause()));
+                    } else {
+                        fileSystem.props(aEntry.myPath, props -> {
+                            if (props.failed()) {
+                                fileSystem.delete(aEntry.myPath, delete -> aPromise.fail(props.cause()));
+                            } else {
+                                aEntry.mySize = props.result().size();
+                                aPromise.complete(aEntry);
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Completes a revalidation that found the cached object unchanged, passing its entry to the handlers that were
+     * waiting on it. The revalidation's hold on the entry is passed on to the first of the handlers.
+     *
+     * @param aID The object's bucket and key
+     * @param aEntry The object's cache entry
+     */
+    private void revalidate(final String aID, final Entry aEntry) {
+        final List<Handler<AsyncResult<Entry>>> handlers;
+
+        synchronized (this) {
+            handlers = myLoads.remove(aID);
+            aEntry.myValidationTime = System.currentTimeMillis();
+            aEntry.myUserCount += handlers.size() - 1;
+        }
+
+        handle(handlers, Future.succeededFuture(aEntry));
+    }
+
+    /**
+     * Completes a download, passing its result to the handlers that were waiting on it. A new entry replaces the
+     * object's old one and is held for each of the handlers.
+     *
+     * @param aID The object's bucket and key
+     * @param aOldEntry The object's cache entry before it was downloaded, or null if it wasn't cached
+     * @param aResult The object's new cache entry or the cause of the failure
+     */
+    private void complete(final String aID, final Entry aOldEntry, final AsyncResult<Entry> aResult) {
+        final List<Handler<AsyncResult<Entry>>> handlers;
+
+        synchronized (this) {
+            handlers = myLoads.remove(aID);
+
+            if (aOldEntry != null) {
+                release(aOldEntry);
+            }
+
+            if (aResult.succeeded()) {
+                final Entry entry = aResult.result();
+
+                entry.myUserCount = handlers.size();
+                store(aID, entry);
+            }
+        }
+
+        handle(handlers, aResult);
+    }
+
+    /**
+     * Passes the result of a download or revalidation to the handlers that were waiting on it.
+     *
+     * @param aHandlers The handlers waiting on an object
+     * @param aResult The object's cache entry or the cause of the failure
+     */
+    private static void handle(final List<Handler<AsyncResult<Entry>>> aHandlers, final AsyncResult<Entry> aResult) {
+        for (final Handler<AsyncResult<Entry>> handler : aHandlers) {
+            handler.handle(aResult);
+        }
+    }
+
+    /**
+     * Stores a new cache entry, replacing the object's old one and evicting other objects if the cache is full.
+     *
+     * @param aID The object's bucket and key
+     * @param aEntry The object's new cache entry
+     */
+    private void store(final String aID, final Entry aEntry) {
+        final Entry oldEntry = myEntries.put(aID, aEntry);
+
+        if (oldEntry != null) {
+            remove(oldEntry);
+        }
+
+        mySize += aEntry.mySize;
+        evict();
+    }
+
+    /**
+     * Releases a hold on a cache entry, evicting objects if the cache is still over its maximum size.
+     *
+     * @param aEntry A cache entry
+     */
+    private void release(final Entry aEntry) {
+        synchronized (this) {
+            aEntry.myUserCount -= 1;
+
+            if (aEntry.isRemoved) {
+                deleteIfUnused(aEntry);
+            } else {
+                evict();
+            }
+        }
+    }
+
+    /**
+     * Evicts the least recently used objects that aren't being read until the cache is no larger than its maximum
+     * size.
+     */
+    private void evict() {
+        final Iterator<Entry> iterator = myEntries.values().iterator();
+
+        while (mySize > myMaxSize && iterator.hasNext()) {
+            final Entry entry = iterator.next();
+
+            if (entry.myUserCount == 0) {
+                iterator.remove();
+                remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Removes an entry that has been taken out of the index, deleting its file once it's no longer being read.
+     *
+     * @param aEntry A cache entry
+     */
+    private void remove(final Entry aEntry) {
+        mySize -= aEntry.mySize;
+        aEntry.isRemoved = true;
+        deleteIfUnused(aEntry);
+    }
+
+    /**
+     * Deletes the file of a removed entry if it's not being read.
+     *
+     * @param aEntry A removed cache entry
+     */
+    private void deleteIfUnused(final Entry aEntry) {
+        if (aEntry.myUserCount == 0) {
+            myVertx.fileSystem().delete(aEntry.myPath, delete -> {
+                // A file that couldn't be deleted is deleted along with the rest when the next cache is created
+            });
+        }
+    }
+
+    /**
+     * An object in the cache.
+     */
+    private static final class Entry {
+
+        /** The path of the file that holds the object's body */
+        private final String myPath;
+
+        private final String myETag;
+
+        private final String myContentType;
+
+        private long mySize;
+
+        /** When the object was last downloaded or revalidated */
+        private long myValidationTime = System.currentTimeMillis();
+
+        /** The number of reads of the object's file that haven't finished */
+        private int myUserCount;
+
+        /** Whether the entry has been evicted, replaced, or invalidated */
+        private boolean isRemoved;
+
+        private Entry(final String aPath, final String aETag, final String aContentType) {
+            myPath = aPath;
+            myETag = aETag;
+            myContentType = aContentType;
+        }
+    }
+}
@@ -9,6 +9,8 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import io.vertx.core.Handler;
+
 /**
  * A SAX handler for S3's ObjectList response.
  */
@@ -32,9 +34,30 @@ class ObjectListHandler extends DefaultHandler {
     /** The element name for the S3 object's ETag. */
     private static final String ETAG = "ETag";
 
+    /** The element name for whether there are more results than the list contains. */
+    private static final String IS_TRUNCATED = "IsTruncated";
+
+    /** The element name for the token used to get the next page of results. */
+    private static final String NEXT_CONTINUATION_TOKEN = "NextContinuationToken";
+
+    /** The element name for a group of keys that share a prefix up to the listing's delimiter. */
+    private static final String COMMON_PREFIXES = "CommonPrefixes";
+
+    /** The element name for a prefix. */
+    private static final String PREFIX = "Prefix";
+
+    /** The element name for the canonical user ID of an S3 object's owner. */
+    private static final String ID = "ID";
+
+    /** The element name for the display name of an S3 object's owner. */
+    private static final String DISPLAY_NAME = "DisplayName";
+
     /** The S3 list in a Java {@link List}. */
     private final List<ListObject> myList = new ArrayList<>();
 
+    /** The prefixes shared by groups of keys, when the listing has a delimiter */
+    private final List<String> myCommonPrefixes = new ArrayList<>();
+
     /** Temporary storage for characters parsed through SAX */
     private final StringBuilder myValue = new StringBuilder();
 
@@ -44,6 +67,35 @@ class ObjectListHandler extends DefaultHandler {
     /** The last element encountered while parsing S3 output */
     private String myCurrentElement;
 
+    /** Whether there are more results than the list contains */
+    private boolean hasNextPage;
+
+    /** The token used to get the next page of results */
+    private String myContinuationToken;
+
+    /** Whether a common prefix is being parsed, as opposed to the prefix of the listing itself */
+    private boolean isCommonPrefix;
+
+    /** A handler that's passed each object as soon as it's parsed, or null if the objects are kept in the list */
+    private final Handler<ListObject> myObjectHandler;
+
+    /**
+     * Creates a handler that keeps the parsed objects in its list.
+     */
+    ObjectListHandler() {
+        this(null);
+    }
+
+    /**
+     * Creates a handler that passes each object on as soon as it's parsed, rather than keeping it in its list.
+     *
+     * @param aObjectHandler A handler for the parsed objects, or null to keep them in the list
+     */
+    ObjectListHandler(final Handler<ListObject> aObjectHandler) {
+        super();
+        myObjectHandler = aObjectHandler;
+    }
+
     @Override
     public void characters(final char[] aCharArray, final int aStart, final int aLength) throws SAXException {
         switch (myCurrentElement) {
@@ -52,6 +104,11 @@ class ObjectListHandler extends DefaultHandler {
             case SIZE:
             case STORAGE_CLASS:
             case LAST_MODIFIED:
+            case IS_TRUNCATED:
+            case NEXT_CONTINUATION_TOKEN:
+            case PREFIX:
+            case ID:
+            case DISPLAY_NAME:
                 myValue.append(aCharArray, aStart, aLength);
             default:
                 // ignore everything else
@@ -65,11 +122,19 @@ class ObjectListHandler extends DefaultHandler {
             case CONTENTS:
                 myListObject = new ListObject();
                 break;
+            case COMMON_PREFIXES:
+                isCommonPrefix = true;
+                break;
             case KEY:
             case ETAG:
             case SIZE:
             case STORAGE_CLASS:
             case LAST_MODIFIED:
+            case IS_TRUNCATED:
+            case NEXT_CONTINUATION_TOKEN:
+            case PREFIX:
+            case ID:
+            case DISPLAY_NAME:
                 myValue.delete(0, myValue.length());
             default:
                 // ignore everything else
@@ -82,7 +147,12 @@ class ObjectListHandler extends DefaultHandler {
     public void endElement(final String aURI, final String aLocalName, final String aQName) throws SAXException {
         switch (aLocalName) {
             case CONTENTS:
-                myList.add(myListObject);
+                if (myObjectHandler != null) {
+                    myObjectHandler.handle(myListObject);
+                } else {
+                    myList.add(myListObject);
+                }
+
                 break;
             case KEY:
                 myListObject.setKey(getValue());
@@ -91,18 +161,44 @@ class ObjectListHandler extends DefaultHandler {
                 myListObject.setETag(getValue());
                 break;
             case SIZE:
-                myListObject.setSize(getValue());
+                // Sizes and timestamps are parsed straight from the collected characters, without making strings
+                myListObject.setSize(myValue);
+                myValue.delete(0, myValue.length());
                 break;
             case STORAGE_CLASS:
                 myListObject.setStorageClass(getValue());
                 break;
             case LAST_MODIFIED:
                 try {
-                    myListObject.setLastUpdated(getValue());
+                    myListObject.setLastUpdated(myValue);
                 } catch (final ParseException details) {
                     throw new SAXException(details);
                 }
 
+                myValue.delete(0, myValue.length());
+                break;
+            case IS_TRUNCATED:
+                hasNextPage = Boolean.parseBoolean(getValue());
+                break;
+            case NEXT_CONTINUATION_TOKEN:
+                myContinuationToken = getValue();
+                break;
+            case COMMON_PREFIXES:
+                isCommonPrefix = false;
+                break;
+            case ID:
+                myListObject.setOwnerID(getValue());
+                break;
+            case DISPLAY_NAME:
+                myListObject.setOwnerDisplayName(getValue());
+                break;
+            case PREFIX:
+                if (isCommonPrefix) {
+                    myCommonPrefixes.add(getValue());
+                } else {
+                    myValue.delete(0, myValue.length());
+                }
+
                 break;
             default:
                 myValue.delete(0, myValue.length());
@@ -118,6 +214,33 @@ class ObjectListHandler extends DefaultHandler {
         return myList;
     }
 
+    /**
+     * Gets the prefixes shared by groups of keys, when the listing has a delimiter.
+     *
+     * @return The common prefixes
+     */
+    public List<String> getCommonPrefixes() {
+        return myCommonPrefixes;
+    }
+
+    /**
+     * Gets whether there are more results than the list contains.
+     *
+     * @return True if the list is truncated; else, false
+     */
+    public boolean isTruncated() {
+        return hasNextPage;
+    }
+
+    /**
+     * Gets the token used to get the next page of results.
+     *
+     * @return The continuation token, or null if the list isn't truncated
+     */
+    public String getContinuationToken() {
+        return myContinuationToken;
+    }
+
     /**
      * Gets the current element's text value.
      *
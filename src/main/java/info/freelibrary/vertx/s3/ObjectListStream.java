@@ -0,0 +1,398 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.xml.sax.SAXException;
+
+import info.freelibrary.util.I18nRuntimeException;
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.streams.ReadStream;
+
+/**
+ * A stream of the objects in an S3 bucket. The bucket is listed a page at a time, each page being requested with the
+ * continuation token of the page before it, until S3 reports that the listing is no longer truncated. The next page
+ * is requested while the current one is being read, but no more than that, so a listing of any size is read with at
+ * most two pages held in memory. A paused stream stops requesting pages once it's a page ahead of its reader. Each
+ * page is parsed as its response arrives, and its objects are passed on as soon as they're parsed, rather than once
+ * the whole page has been received.
+ */
+class ObjectListStream implements ReadStream<ListObject> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ObjectListStream.class, Constants.BUNDLE_NAME);
+
+    /** Requests a page of the listing, using the continuation token of the page before it */
+    private final PageRequester myPageRequester;
+
+    /** The parameters of the listing, which can cut it short of the end of the bucket */
+    private final ListQuery myQuery;
+
+    /** The objects that have been received but not yet read */
+    private final Deque<ListObject> myObjects = new ArrayDeque<>();
+
+    private Handler<ListObject> myHandler;
+
+    private Handler<Void> myEndHandler;
+
+    private Handler<Throwable> myExceptionHandler;
+
+    /** The token used to request the next page, or null if the first page hasn't been requested yet */
+    private String myToken;
+
+    /** The number of objects that can be passed to the stream's handler before it has to wait for more demand */
+    private long myDemand = Long.MAX_VALUE;
+
+    /** The number of objects in the last page that was received */
+    private int myPageSize;
+
+    /** The number of objects that have been received from the page that's being read */
+    private int myPageCount;
+
+    /** Whether a page request is in progress */
+    private boolean isRequesting;
+
+    /** Whether S3 has more pages of the listing */
+    private boolean hasMorePages = true;
+
+    /** Whether an object has been received that's past the last key of the listing */
+    private boolean isPastLastKey;
+
+    /** Whether the stream has ended, successfully or not */
+    private boolean isEnded;
+
+    /** Whether objects are being passed to the stream's handler */
+    private boolean isDelivering;
+
+    /**
+     * Creates a stream of the objects in an S3 bucket.
+     *
+     * @param aClient The client through which the listing is requested
+     * @param aBucket An S3 bucket
+     * @param aQuery The parameters of the listing
+     */
+    ObjectListStream(final S3Client aClient, final String aBucket, final ListQuery aQuery) {
+        this((token, objectHandler, pageHandler) -> requestPage(aClient, aBucket, aQuery, token, objectHandler,
+                pageHandler), aQuery);
+    }
+
+    /**
+     * Creates a stream of objects from the pages supplied by a page requester.
+     *
+     * @param aPageRequester A requester of pages that's passed the continuation token of the page to request
+     * @param aQuery The parameters of the listing
+     */
+    ObjectListStream(final PageRequester aPageRequester, final ListQuery aQuery) {
+        myPageRequester = aPageRequester;
+        myQuery = aQuery;
+    }
+
+    @Override
+    public ObjectListStream exceptionHandler(final Handler<Throwable> aHandler) {
+        myExceptionHandler = aHandler;
+        return this;
+    }
+
+    @Override
+    public ObjectListStream handler(final Handler<ListObject> aHandler) {
+        myHandler = aHandler;
+
+        if (aHandler != null) {
+            deliver();
+        }
+
+        return this;
+    }
+
+    @Override
+    public ObjectListStream pause() {
+        myDemand = 0;
+        return this;
+    }
+
+    @Override
+    public ObjectListStream resume() {
+        return fetch(Long.MAX_VALUE);
+    }
+
+    @Override
+    public ObjectListStream fetch(final long aAmount) {
+        if (aAmount > 0) {
+            myDemand += aAmount;
+
+            // Demand that overflows is treated as unbounded
+            if (myDemand < 0) {
+                myDemand = Long.MAX_VALUE;
+            }
+
+            deliver();
+        }
+
+        return this;
+    }
+
+    @Override
+    public ObjectListStream endHandler(final Handler<Void> aEndHandler) {
+        myEndHandler = aEndHandler;
+        return this;
+    }
+
+    /**
+     * Passes as many of the received objects to the stream's handler as there's demand for, then requests the next
+     * page or ends the stream.
+     */
+    private void deliver() {
+        if (isDelivering || isEnded || myHandler == null) {
+            return;
+        }
+
+        isDelivering = true;
+
+        try {
+            while (myDemand > 0 && !myObjects.isEmpty() && !isEnded) {
+                if (myDemand != Long.MAX_VALUE) {
+                    myDemand -= 1;
+                }
+
+                myHandler.handle(myObjects.poll());
+            }
+        } finally {
+            isDelivering = false;
+        }
+
+        if (!isEnded) {
+            if (myObjects.isEmpty() && !hasMorePages && !isRequesting) {
+                end();
+            } else {
+                requestNextPage();
+            }
+        }
+    }
+
+    /**
+     * Requests the next page of the listing if there is one and no more than a page of objects is waiting to be read.
+     */
+    private void requestNextPage() {
+        if (hasMorePages && !isRequesting && myObjects.size() <= myPageSize) {
+            isRequesting = true;
+            myPageCount = 0;
+            myPageRequester.request(myToken, this::handleObject, this::handlePage);
+        }
+    }
+
+    /**
+     * Adds an object to the objects waiting to be read as soon as it's been parsed from its page.
+     *
+     * @param aObject An object from the page that's being read
+     */
+    private void handleObject(final ListObject aObject) {
+        if (addObject(aObject)) {
+            deliver();
+        }
+    }
+
+    /**
+     * Adds an object to the objects waiting to be read, unless it's past the last key of the listing.
+     *
+     * @param aObject An object from the page that's being read
+     * @return True if the object was added; else, false
+     */
+    private boolean addObject(final ListObject aObject) {
+        if (isEnded || isPastLastKey) {
+            return false;
+        }
+
+        myPageCount += 1;
+
+        if (myQuery.isPastEnd(aObject.getKey())) {
+            isPastLastKey = true;
+            return false;
+        }
+
+        return myObjects.add(aObject);
+    }
+
+    /**
+     * Finishes reading a page of the listing, adding any of its objects that weren't passed on as they were parsed.
+     *
+     * @param aResult The result of a page request
+     */
+    private void handlePage(final AsyncResult<BucketList> aResult) {
+        isRequesting = false;
+
+        if (isEnded) {
+            return;
+        }
+
+        if (aResult.failed()) {
+            fail(aResult.cause());
+        } else {
+            final BucketList page = aResult.result();
+
+            page.forEach(this::addObject);
+
+            myPageSize = myPageCount;
+            myToken = page.getContinuationToken();
+
+            // A truncated page without a token can't be continued, so it's treated as the last page
+            hasMorePages = page.isTruncated() && myToken != null && !isPastLastKey;
+
+            deliver();
+        }
+    }
+
+    /**
+     * Ends the stream once all its objects have been read.
+     */
+    private void end() {
+        isEnded = true;
+
+        if (myEndHandler != null) {
+            myEndHandler.handle(null);
+        }
+    }
+
+    /**
+     * Ends the stream with an exception.
+     *
+     * @param aThrowable The cause of the failure
+     */
+    private void fail(final Throwable aThrowable) {
+        isEnded = true;
+        myObjects.clear();
+
+        if (myExceptionHandler != null) {
+            myExceptionHandler.handle(aThrowable);
+        } else {
+            LOGGER.error(aThrowable, aThrowable.getMessage());
+        }
+    }
+
+    /**
+     * Requests a page of a bucket's listing. The page is parsed as its response arrives.
+     *
+     * @param aClient The client through which the page is requested
+     * @param aBucket An S3 bucket
+     * @param aQuery The parameters of the listing
+     * @param aToken The continuation token of the page to request, or null for the first page
+     * @param aObjectHandler A handler that's passed each of the page's objects as soon as it's parsed, or null to
+     *        keep the objects in the page
+     * @param aHandler A handler for the requested page
+     */
+    static void requestPage(final S3Client aClient, final String aBucket, final ListQuery aQuery,
+            final String aToken, final Handler<ListObject> aObjectHandler,
+            final Handler<AsyncResult<BucketList>> aHandler) {
+        aClient.createGetRequest(aBucket, aQuery.toQueryString(aToken), response -> {
+            if (response.statusCode() == HTTP.OK) {
+                new PageReader(aObjectHandler, aHandler).read(response);
+            } else {
+                aHandler.handle(Future.failedFuture(new I18nRuntimeException(Constants.BUNDLE_NAME,
+                        MessageCodes.VS3_025, aBucket, response.statusCode(), response.statusMessage())));
+            }
+        }).exceptionHandler(error -> aHandler.handle(Future.failedFuture(error))).useV2Signature(aClient
+                .usesV2Signature()).end();
+    }
+
+    /**
+     * A requester of the pages of a listing.
+     */
+    @FunctionalInterface
+    interface PageRequester {
+
+        /**
+         * Requests a page of a listing.
+         *
+         * @param aToken The continuation token of the page to request, or null for the first page
+         * @param aObjectHandler A handler that can be passed the page's objects as soon as they're parsed
+         * @param aPageHandler A handler for the page once it's been read, which holds any objects that weren't
+         *        passed to the object handler
+         */
+        void request(String aToken, Handler<ListObject> aObjectHandler, Handler<AsyncResult<BucketList>> aPageHandler);
+    }
+
+    /**
+     * A reader of a page's response that parses it a chunk at a time, as the chunks arrive.
+     */
+    private static final class PageReader {
+
+        private final ObjectListHandler myListHandler;
+
+        private final IncrementalXmlParser myParser;
+
+        private final Handler<AsyncResult<BucketList>> myHandler;
+
+        /** Whether the page has been read, successfully or not */
+        private boolean isDone;
+
+        /**
+         * Creates a reader of a page's response.
+         *
+         * @param aObjectHandler A handler for the page's objects, or null to keep the objects in the page
+         * @param aHandler A handler for the page
+         */
+        private PageReader(final Handler<ListObject> aObjectHandler, final Handler<AsyncResult<BucketList>> aHandler) {
+            myListHandler = new ObjectListHandler(aObjectHandler);
+            myParser = new IncrementalXmlParser(myListHandler);
+            myHandler = aHandler;
+        }
+
+        /**
+         * Starts reading a page's response.
+         *
+         * @param aResponse The response to a page request
+         */
+        private void read(final HttpClientResponse aResponse) {
+            aResponse.exceptionHandler(this::fail).endHandler(end -> handleEnd()).handler(this::handleChunk);
+        }
+
+        /**
+         * Parses a chunk of the page's response.
+         *
+         * @param aChunk A chunk of the response
+         */
+        private void handleChunk(final Buffer aChunk) {
+            if (!isDone) {
+                try {
+                    myParser.parse(aChunk);
+                } catch (final SAXException details) {
+                    fail(new IOException(details));
+                }
+            }
+        }
+
+        /**
+         * Finishes parsing the page once its response has been received.
+         */
+        private void handleEnd() {
+            if (!isDone) {
+                try {
+                    myParser.end();
+                    isDone = true;
+                    myHandler.handle(Future.succeededFuture(new BucketList(myListHandler)));
+                } catch (final SAXException details) {
+                    fail(new IOException(details));
+                }
+            }
+        }
+
+        /**
+         * Fails the page request.
+         *
+         * @param aThrowable The cause of the failure
+         */
+        private void fail(final Throwable aThrowable) {
+            if (!isDone) {
+                isDone = true;
+                myHandler.handle(Future.failedFuture(aThrowable));
+            }
+        }
+    }
+}
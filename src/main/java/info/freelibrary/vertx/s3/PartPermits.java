@@ -0,0 +1,134 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+
+/**
+ * A limit on the number of upload parts an S3 client has in flight at one time. Uploads can run on different event
+ * loops, so permits are handed out under a lock; a handler that has to wait for a permit is run on the context from
+ * which it asked for the permit once one has been released.
+ */
+final class PartPermits {
+
+    /** Handlers that are waiting for a permit */
+    private final Queue<Waiter> myWaiters = new ArrayDeque<>();
+
+    /** The maximum number of permits that can be held at one time */
+    private int myLimit;
+
+    /** The number of permits that are currently available */
+    private int myAvailable;
+
+    /**
+     * Creates a new set of part permits.
+     *
+     * @param aLimit The maximum number of permits that can be held at one time
+     */
+    PartPermits(final int aLimit) {
+        myLimit = aLimit;
+        myAvailable = aLimit;
+    }
+
+    /**
+     * Gets the maximum number of permits that can be held at one time.
+     *
+     * @return The maximum number of permits that can be held at one time
+     */
+    synchronized int getLimit() {
+        return myLimit;
+    }
+
+    /**
+     * Changes the maximum number of permits that can be held at one time. Permits that are already held are not
+     * revoked when the limit is lowered; new permits just aren't handed out until enough of them have been released.
+     *
+     * @param aLimit The maximum number of permits that can be held at one time
+     */
+    void setLimit(final int aLimit) {
+        final Queue<Waiter> granted = new ArrayDeque<>();
+
+        synchronized (this) {
+            myAvailable += aLimit - myLimit;
+            myLimit = aLimit;
+
+            while (myAvailable > 0 && !myWaiters.isEmpty()) {
+                myAvailable -= 1;
+                granted.add(myWaiters.poll());
+            }
+        }
+
+        granted.forEach(Waiter::run);
+    }
+
+    /**
+     * Acquires a permit, calling the supplied handler once one is available. The handler is called right away if a
+     * permit is free.
+     *
+     * @param aHandler A handler to call when the permit has been acquired
+     */
+    void acquire(final Handler<Void> aHandler) {
+        final boolean acquired;
+
+        synchronized (this) {
+            acquired = myAvailable > 0;
+
+            if (acquired) {
+                myAvailable -= 1;
+            } else {
+                myWaiters.add(new Waiter(Vertx.currentContext(), aHandler));
+            }
+        }
+
+        if (acquired) {
+            aHandler.handle(null);
+        }
+    }
+
+    /**
+     * Releases a permit, handing it to the next waiting handler if there is one.
+     */
+    void release() {
+        final Waiter waiter;
+
+        synchronized (this) {
+            if (myAvailable < 0 || myWaiters.isEmpty()) {
+                waiter = null;
+                myAvailable += 1;
+            } else {
+                waiter = myWaiters.poll();
+            }
+        }
+
+        if (waiter != null) {
+            waiter.run();
+        }
+    }
+
+    /**
+     * A handler that's waiting for a permit.
+     */
+    private static final class Waiter {
+
+        private final Context myContext;
+
+        private final Handler<Void> myHandler;
+
+        private Waiter(final Context aContext, final Handler<Void> aHandler) {
+            myContext = aContext;
+            myHandler = aHandler;
+        }
+
+        private void run() {
+            if (myContext == null) {
+                myHandler.handle(null);
+            } else {
+                myContext.runOnContext(myHandler);
+            }
+        }
+    }
+}
@@ -0,0 +1,313 @@
+
+package info.freelibrary.vertx.s3;
+
+import info.freelibrary.util.I18nRuntimeException;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
+
+/**
+ * A download of an S3 object into a file, in byte ranges of the client's part size that are fetched several at a
+ * time. The first range is fetched on its own: its response tells the download how big the object is and pins the
+ * object's ETag. The other ranges are fetched with an <code>If-Match</code> on that ETag, so an object that's replaced
+ * while it's being downloaded fails the download rather than being spliced together from two versions. Each range's
+ * data is written at its offset in the file as it arrives, and the range's response is paused while a write is
+ * pending, so no more than a buffer of each range in flight is held in memory.
+ */
+class RangedDownload {
+
+    /** The unit of the byte ranges that are requested */
+    private static final String BYTES = "bytes=";
+
+    private static final char HYPHEN = '-';
+
+    private static final char SLASH = '/';
+
+    /** The client through which the download's requests are made */
+    private final S3Client myClient;
+
+    /** The S3 bucket of the downloaded object */
+    private final String myBucket;
+
+    /** The S3 key of the downloaded object */
+    private final String myKey;
+
+    /** The file into which the object is downloaded */
+    private final AsyncFile myFile;
+
+    /** The size of the ranges the object is fetched in */
+    private final long myRangeSize;
+
+    /** The maximum number of ranges the download fetches at one time */
+    private final int myConcurrency;
+
+    /** The handler that's notified once the download has finished */
+    private final Handler<AsyncResult<Void>> myHandler;
+
+    /** The ETag of the object, which the ranges after the first must match */
+    private String myETag;
+
+    /** The size of the object, or -1 if it isn't known yet */
+    private long mySize = -1;
+
+    /** The offset of the next range to fetch */
+    private long myNextOffset;
+
+    /** The number of ranges that are being fetched */
+    private int myRangesInFlight;
+
+    /** Whether the download has finished, successfully or not */
+    private boolean isFinished;
+
+    /**
+     * Creates a new download.
+     *
+     * @param aClient An S3 client
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aFile The file into which the object is downloaded
+     * @param aHandler A handler that's notified once the download has finished
+     */
+    RangedDownload(final S3Client aClient, final String aBucket, final String aKey, final AsyncFile aFile,
+            final Handler<AsyncResult<Void>> aHandler) {
+        myClient = aClient;
+        myBucket = aBucket;
+        myKey = aKey;
+        myFile = aFile;
+        myRangeSize = aClient.getPartSize();
+        myConcurrency = aClient.getPartConcurrency();
+        myHandler = aHandler;
+    }
+
+    /**
+     * Starts the download by fetching its first range.
+     */
+    void start() {
+        synchronized (this) {
+            fetch(0, myRangeSize);
+        }
+    }
+
+    /**
+     * Fetches a range of the object.
+     *
+     * @param aStart The offset of the first byte of the range
+     * @param aEnd The offset after the last byte of the range
+     */
+    private void fetch(final long aStart, final long aEnd) {
+        final Range range = new Range(aStart, aEnd);
+        final S3ClientRequest request = myClient.createGetRequest(myBucket, myKey, response -> receive(range,
+                response));
+
+        myRangesInFlight += 1;
+        request.putHeader(HTTP.RANGE, BYTES + aStart + HYPHEN + (aEnd - 1));
+
+        if (myETag != null) {
+            request.putHeader(HttpHeaders.IF_MATCH, myETag);
+        }
+
+        request.exceptionHandler(this::fail).useV2Signature(myClient.usesV2Signature()).end();
+    }
+
+    /**
+     * Fetches as many more ranges as are allowed once the size of the object is known.
+     */
+    private void fetchRanges() {
+        while (!isFinished && myRangesInFlight < myConcurrency && myNextOffset < mySize) {
+            final long end = Math.min(myNextOffset + myRangeSize, mySize);
+
+            fetch(myNextOffset, end);
+            myNextOffset = end;
+        }
+    }
+
+    /**
+     * Receives the response to a range request, writing its data into the file. The response to the first range
+     * also gives the size of the object.
+     *
+     * @param aRange A range of the object
+     * @param aResponse The response to the range's request
+     */
+    private void receive(final Range aRange, final HttpClientResponse aResponse) {
+        final int status = aResponse.statusCode();
+
+        synchronized (this) {
+            if (isFinished) {
+                return;
+            } else if (myETag == null && mySize == -1) {
+                // The first range tells us the size of the object, unless the whole object was sent instead
+                if (status == HTTP.PARTIAL_CONTENT || status == HTTP.RANGE_NOT_SATISFIABLE) {
+                    mySize = getObjectSize(aResponse.getHeader(HttpHeaders.CONTENT_RANGE));
+                } else if (status == HTTP.OK) {
+                    mySize = getObjectSize(aResponse.getHeader(HttpHeaders.CONTENT_LENGTH));
+                    aRange.myEnd = mySize;
+                }
+
+                if (mySize == -1 || status == HTTP.RANGE_NOT_SATISFIABLE && mySize != 0) {
+                    fail(aResponse);
+                    return;
+                }
+
+                myETag = aResponse.getHeader(HttpHeaders.ETAG);
+                aRange.myEnd = Math.min(aRange.myEnd, mySize);
+                myNextOffset = aRange.myEnd;
+                fetchRanges();
+            } else if (status != HTTP.PARTIAL_CONTENT) {
+                fail(aResponse);
+                return;
+            }
+        }
+
+        aResponse.exceptionHandler(this::fail);
+        aResponse.endHandler(end -> end(aRange));
+
+        // An empty object has no range to fetch, so its response's body is an error rather than data
+        if (status != HTTP.RANGE_NOT_SATISFIABLE) {
+            aResponse.handler(data -> write(aRange, aResponse, data));
+        }
+    }
+
+    /**
+     * Writes data from a range's response into the file at the range's current offset, pausing the response until
+     * the data has been written. Once the download has failed, the rest of the response is read but not written.
+     *
+     * @param aRange A range of the object
+     * @param aResponse The response to the range's request
+     * @param aData Data from the response
+     */
+    private void write(final Range aRange, final HttpClientResponse aResponse, final Buffer aData) {
+        synchronized (this) {
+            if (isFinished) {
+                return;
+            }
+        }
+
+        final long position = aRange.myPosition;
+
+        aRange.myPosition += aData.length();
+        aRange.myWriteCount += 1;
+        aResponse.pause();
+
+        myFile.write(aData, position, write -> {
+            aRange.myWriteCount -= 1;
+
+            if (write.failed()) {
+                fail(write.cause());
+            } else {
+                aResponse.resume();
+                completeIfWritten(aRange);
+            }
+        });
+    }
+
+    /**
+     * Ends a range once all of its response has been received.
+     *
+     * @param aRange A range of the object
+     */
+    private void end(final Range aRange) {
+        aRange.isEnded = true;
+        completeIfWritten(aRange);
+    }
+
+    /**
+     * Completes a range once all of its response has been received and written, fetching the next range or
+     * finishing the download.
+     *
+     * @param aRange A range of the object
+     */
+    private void completeIfWritten(final Range aRange) {
+        if (aRange.isEnded && aRange.myWriteCount == 0) {
+            synchronized (this) {
+                if (isFinished) {
+                    return;
+                } else if (aRange.myPosition != aRange.myEnd) {
+                    fail(new I18nRuntimeException(Constants.BUNDLE_NAME, MessageCodes.VS3_040, myBucket, myKey,
+                            aRange.myPosition, aRange.myEnd));
+                    return;
+                }
+
+                myRangesInFlight -= 1;
+                fetchRanges();
+
+                if (myRangesInFlight == 0 && myNextOffset >= mySize) {
+                    isFinished = true;
+                    myFile.flush(myHandler);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ends the download with an unexpected response.
+     *
+     * @param aResponse A response to a range request
+     */
+    private void fail(final HttpClientResponse aResponse) {
+        fail(new I18nRuntimeException(Constants.BUNDLE_NAME, MessageCodes.VS3_039, myBucket, myKey, aResponse
+                .statusCode(), aResponse.statusMessage()));
+    }
+
+    /**
+     * Ends the download with an exception. Ranges that are already in flight still finish, but their data isn't
+     * written.
+     *
+     * @param aThrowable The cause of the failure
+     */
+    private void fail(final Throwable aThrowable) {
+        synchronized (this) {
+            if (!isFinished) {
+                isFinished = true;
+                myHandler.handle(Future.failedFuture(aThrowable));
+            }
+        }
+    }
+
+    /**
+     * Gets the size of an object from the <code>Content-Range</code> of a response to a range request, like
+     * <code>bytes 0-8388607/1073741824</code>, or from the <code>Content-Length</code> of a response with the whole
+     * object.
+     *
+     * @param aHeader A <code>Content-Range</code> or <code>Content-Length</code> header
+     * @return The size of the object, or -1 if the header doesn't give its size
+     */
+    static long getObjectSize(final String aHeader) {
+        if (aHeader == null) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(aHeader.substring(aHeader.lastIndexOf(SLASH) + 1));
+        } catch (final NumberFormatException details) {
+            return -1;
+        }
+    }
+
+    /**
+     * A range of the object that's being fetched.
+     */
+    private static final class Range {
+
+        /** The offset at which the range's next data is written */
+        private long myPosition;
+
+        /** The offset after the last byte of the range */
+        private long myEnd;
+
+        /** The number of the range's writes that haven't finished */
+        private int myWriteCount;
+
+        /** Whether all of the range's response has been received */
+        private boolean isEnded;
+
+        private Range(final long aStart, final long aEnd) {
+            myPosition = aStart;
+            myEnd = aEnd;
+        }
+    }
+}
@@ -0,0 +1,513 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+
+/**
+ * An immutable, thread-safe signer for the requests of an S3 client. It's created once, with the client's
+ * credentials, and shared by all of the client's requests, which supply the parts of themselves that are signed. The
+ * V4 signing keys it derives are cached for as long as they're valid.
+ */
+final class RequestSigner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestSigner.class, Constants.BUNDLE_NAME);
+
+    private static final String HOST = "Host";
+
+    private static final String X_AMZ_DATE = "X-Amz-Date";
+
+    private static final String X_AMZ_CONTENT_SHA256 = "x-amz-content-sha256";
+
+    /** The x-amz-content-sha256 value used when a request's payload isn't signed */
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+
+    /** The prefix of the Amazon headers that are signed */
+    private static final String AMZ_PREFIX = "x-amz-";
+
+    /** The standard headers that are signed when a request has them, so they can't be changed in transit */
+    private static final Set<String> SIGNED_HEADER_NAMES = getSignedHeaderNames();
+
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+
+    private static final String CREDENTIAL = " Credential=";
+
+    private static final String SIGNED_HEADERS = ", SignedHeaders=";
+
+    private static final String SIGNATURE = ", Signature=";
+
+    /** The length of the date at the start of a V4 timestamp */
+    private static final int DATE_LENGTH = 8;
+
+    private static final char EOL = '\n';
+
+    private static final char SLASH = '/';
+
+    private static final String EMPTY = "";
+
+    private static final String COMMA = ",";
+
+    /** The part of the credential scope that follows its date */
+    private static final String SCOPE_SUFFIX = SLASH + AwsV4Signature.REGION + SLASH + AwsV4Signature.SERVICE +
+            SLASH + SigningKeyCache.TERMINATOR;
+
+    /** The ASCII characters that don't need to be URI-encoded */
+    private static final boolean[] UNRESERVED = getUnreserved();
+
+    private static final char[] UPPER_HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /** Extra room for the characters that are added when a value is encoded */
+    private static final int ENCODING_ALLOWANCE = 16;
+
+    private final AwsCredentials myCredentials;
+
+    private final SigningKeyCache mySigningKeys;
+
+    private final AwsV2Signature myV2Signature;
+
+    /**
+     * Creates a new request signer.
+     *
+     * @param aCredentials The credentials that requests are signed with
+     * @param aSigningKeys A cache of V4 signing keys
+     */
+    RequestSigner(final AwsCredentials aCredentials, final SigningKeyCache aSigningKeys) {
+        myCredentials = aCredentials;
+        mySigningKeys = aSigningKeys;
+        myV2Signature = new AwsV2Signature(aCredentials);
+    }
+
+    /**
+     * Gets a signer for the supplied credentials.
+     *
+     * @param aAccessKey An AWS access key
+     * @param aSecretKey An AWS secret key
+     * @param aSessionToken An AWS session token (optional)
+     * @return A request signer, or null if the access or secret key is missing
+     */
+    static RequestSigner getSigner(final String aAccessKey, final String aSecretKey, final String aSessionToken) {
+        if (aAccessKey != null && aSecretKey != null) {
+            if (aSessionToken != null) {
+                return new RequestSigner(new AwsCredentials(aAccessKey, aSecretKey, aSessionToken),
+                        new SigningKeyCache());
+            }
+
+            return new RequestSigner(new AwsCredentials(aAccessKey, aSecretKey), new SigningKeyCache());
+        }
+
+        if (aAccessKey != null || aSecretKey != null) {
+            LOGGER.warn(MessageCodes.VS3_009);
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the credentials that requests are signed with.
+     *
+     * @return The signer's credentials
+     */
+    AwsCredentials getCredentials() {
+        return myCredentials;
+    }
+
+    /**
+     * Gets the authorization value for a request that's signed with a V2 signature.
+     *
+     * @param aMethod The method of the request being sent to S3
+     * @param aHeaders Headers for a request being sent to S3
+     * @param aBucket A S3 bucket
+     * @param aKey The key of an S3 object
+     * @return The authorization string
+     */
+    String signV2(final String aMethod, final MultiMap aHeaders, final String aBucket, final String aKey) {
+        return myV2Signature.getAuthorization(aHeaders, aMethod, aBucket, aKey, (byte[]) null);
+    }
+
+    /**
+     * Gets the authorization value for a request that's signed with a V4 signature. An empty payload is signed with
+     * the constant hash of an empty payload, and a null one is left unsigned.
+     *
+     * @param aMethod The method of the request being sent to S3
+     * @param aHost The name of the host the request is sent to
+     * @param aPath The raw path of the request
+     * @param aQuery The raw query string of the request, or null if it doesn't have one
+     * @param aHeaders Headers for a request being sent to S3
+     * @param aPayload The request's payload, or null if it isn't to be signed
+     * @return The authorization string
+     */
+    String signV4(final String aMethod, final String aHost, final String aPath, final String aQuery,
+            final MultiMap aHeaders, final Buffer aPayload) {
+        final String contentSha256;
+
+        if (aPayload == null) {
+            contentSha256 = UNSIGNED_PAYLOAD;
+        } else if (aPayload.length() == 0) {
+            contentSha256 = AwsV4Signature.EMPTY_PAYLOAD_HASH;
+        } else {
+            contentSha256 = SigningWorkspace.get().sha256Hex(aPayload);
+        }
+
+        return sign(aMethod, aHost, aPath, aQuery, aHeaders, contentSha256, AwsV4Signature.getTimestamp());
+    }
+
+    /**
+     * Signs the headers of a request whose payload is streamed as signed <code>aws-chunked</code> chunks. The
+     * request's headers should already include its content encoding, content length, and decoded content length.
+     *
+     * @param aMethod The method of the request being sent to S3
+     * @param aHost The name of the host the request is sent to
+     * @param aPath The raw path of the request
+     * @param aQuery The raw query string of the request, or null if it doesn't have one
+     * @param aHeaders Headers for a request being sent to S3
+     * @return A signer for the chunks of the request's payload
+     */
+    AwsChunkSigner getChunkSigner(final String aMethod, final String aHost, final String aPath, final String aQuery,
+            final MultiMap aHeaders) {
+        final String timestamp = AwsV4Signature.getTimestamp();
+        final String authorization = sign(aMethod, aHost, aPath, aQuery, aHeaders, AwsChunkSigner.STREAMING_PAYLOAD,
+                timestamp);
+
+        return new AwsChunkSigner(getSigningKey(timestamp), timestamp, authorization);
+    }
+
+    /**
+     * Signs a request's headers, adding the headers that the signature requires. The canonical request and string to
+     * sign are built in the current thread's {@link SigningWorkspace}, so the only objects a signing leaves behind
+     * are the map of signed headers and the strings that end up in the request's headers.
+     *
+     * @param aMethod The method of the request being sent to S3
+     * @param aHost The name of the host the request is sent to
+     * @param aPath The raw path of the request
+     * @param aQuery The raw query string of the request, or null if it doesn't have one
+     * @param aHeaders Headers for a request being sent to S3
+     * @param aContentSha256 The value of the request's x-amz-content-sha256 header
+     * @param aTimestamp The request's timestamp
+     * @return The authorization string
+     */
+    String sign(final String aMethod, final String aHost, final String aPath, final String aQuery,
+            final MultiMap aHeaders, final String aContentSha256, final String aTimestamp) {
+        final Map<String, String> signedHeaders = new TreeMap<>();
+        final SigningWorkspace workspace = SigningWorkspace.get();
+        final Iterator<Entry<String, String>> iterator;
+        final StringBuilder text;
+        final String requestHash;
+        final String signature;
+        final String scope;
+        final String names;
+
+        // All the x-amz- headers, like user metadata and a copy source, are signed along with the content, range and
+        // conditional headers
+        iterator = aHeaders.iterator();
+
+        while (iterator.hasNext()) {
+            final Entry<String, String> entry = iterator.next();
+            final String headerKey = entry.getKey();
+
+            if (headerKey.regionMatches(true, 0, AMZ_PREFIX, 0, AMZ_PREFIX.length()) || SIGNED_HEADER_NAMES.contains(
+                    headerKey)) {
+                addHeader(signedHeaders, headerKey, entry.getValue());
+            }
+        }
+
+        if (myCredentials.hasSessionToken()) {
+            final String sessionToken = myCredentials.getSessionToken();
+
+            aHeaders.add("X-Amz-Security-Token", sessionToken);
+            addHeader(signedHeaders, "x-amz-security-token", sessionToken);
+        }
+
+        addHeader(signedHeaders, HOST, aHost);
+        aHeaders.add(HOST, aHost);
+        addHeader(signedHeaders, X_AMZ_DATE, aTimestamp);
+        aHeaders.add(X_AMZ_DATE, aTimestamp);
+        addHeader(signedHeaders, X_AMZ_CONTENT_SHA256, aContentSha256);
+        aHeaders.add(X_AMZ_CONTENT_SHA256, aContentSha256);
+
+        names = String.join(";", signedHeaders.keySet());
+        scope = aTimestamp.substring(0, DATE_LENGTH) + SCOPE_SUFFIX;
+        text = workspace.getText().append(aMethod).append(EOL);
+
+        appendCanonicalPath(text, aPath);
+        appendCanonicalQuery(text.append(EOL), aQuery);
+        text.append(EOL);
+
+        for (final Entry<String, String> header : signedHeaders.entrySet()) {
+            text.append(header.getKey()).append(':').append(header.getValue()).append(EOL);
+        }
+
+        requestHash = workspace.sha256Hex(text.append(EOL).append(names).append(EOL).append(aContentSha256));
+        signature = workspace.hmacSha256Hex(getSigningKey(aTimestamp), workspace.getText().append(ALGORITHM)
+                .append(EOL).append(aTimestamp).append(EOL).append(scope).append(EOL).append(requestHash));
+
+        return workspace.getText().append(ALGORITHM).append(CREDENTIAL).append(myCredentials.getAccessKey())
+                .append(SLASH).append(scope).append(SIGNED_HEADERS).append(names).append(SIGNATURE).append(signature)
+                .toString();
+    }
+
+    /**
+     * Gets the names of the standard headers that are signed: the content headers, and the range and conditional
+     * headers of a get or head request. Names are compared without regard to case.
+     *
+     * @return The names of the signed headers
+     */
+    private static Set<String> getSignedHeaderNames() {
+        final Set<String> names = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+        names.add(HttpHeaders.CONTENT_ENCODING.toString());
+        names.add(HttpHeaders.CONTENT_MD5.toString());
+        names.add(HttpHeaders.CONTENT_TYPE.toString());
+        names.add(HTTP.RANGE);
+        names.add(HttpHeaders.IF_MATCH.toString());
+        names.add(HttpHeaders.IF_NONE_MATCH.toString());
+        names.add(HttpHeaders.IF_MODIFIED_SINCE.toString());
+        names.add(HTTP.IF_UNMODIFIED_SINCE);
+
+        return names;
+    }
+
+    /**
+     * Gets the lookup table of the ASCII characters that don't need to be URI-encoded.
+     *
+     * @return The unreserved characters, indexed by character
+     */
+    private static boolean[] getUnreserved() {
+        final boolean[] unreserved = new boolean[128];
+
+        for (final char character : "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-._~"
+                .toCharArray()) {
+            unreserved[character] = true;
+        }
+
+        return unreserved;
+    }
+
+    /**
+     * Gets the signing key for the date of the supplied timestamp.
+     *
+     * @param aTimestamp A V4 timestamp
+     * @return The signing key
+     */
+    private SecretKeySpec getSigningKey(final String aTimestamp) {
+        return mySigningKeys.getSigningKey(myCredentials, aTimestamp.substring(0, DATE_LENGTH), AwsV4Signature.REGION,
+                AwsV4Signature.SERVICE);
+    }
+
+    /**
+     * Appends the canonical form of a request's path to the supplied text.
+     *
+     * @param aText The text of a canonical request
+     * @param aPath A raw request path
+     */
+    private static void appendCanonicalPath(final StringBuilder aText, final String aPath) {
+        if (aPath == null || aPath.isEmpty()) {
+            aText.append(SLASH);
+        } else {
+            appendEncoded(aText, aPath, true);
+        }
+    }
+
+    /**
+     * Appends the canonical form of a request's query string, with its parameters sorted by name, to the supplied
+     * text.
+     *
+     * @param aText The text of a canonical request
+     * @param aQuery A raw query string
+     */
+    private static void appendCanonicalQuery(final StringBuilder aText, final String aQuery) {
+        if (aQuery == null || aQuery.isEmpty()) {
+            return;
+        }
+
+        final List<String[]> parameters = new ArrayList<>();
+
+        for (final String parameter : aQuery.split("&")) {
+            final int index = parameter.indexOf('=');
+
+            if (index < 0) {
+                parameters.add(new String[] { parameter, EMPTY });
+            } else {
+                parameters.add(new String[] { parameter.substring(0, index), parameter.substring(index + 1) });
+            }
+        }
+
+        parameters.sort(Comparator.comparing(parameter -> parameter[0]));
+
+        for (int index = 0; index < parameters.size(); index++) {
+            final String[] parameter = parameters.get(index);
+
+            if (index > 0) {
+                aText.append('&');
+            }
+
+            appendEncoded(aText, parameter[0], false);
+            appendEncoded(aText.append('='), parameter[1], false);
+        }
+    }
+
+    /**
+     * Adds a header to the headers being signed, normalizing its name and value. Multiple values for the same header
+     * are joined with commas.
+     *
+     * @param aSignedHeaders The headers being signed
+     * @param aName The header's name
+     * @param aValue The header's value
+     */
+    private static void addHeader(final Map<String, String> aSignedHeaders, final String aName,
+            final String aValue) {
+        aSignedHeaders.merge(aName.toLowerCase(Locale.US), normalize(aValue), (first, next) -> first + COMMA + next);
+    }
+
+    /**
+     * Normalizes a header value as the V4 signature requires: each of its lines is trimmed, runs of spaces are
+     * collapsed, and its lines are joined with commas. Most values are already normalized, so they're returned
+     * as-is.
+     *
+     * @param aValue A header value
+     * @return The normalized header value
+     */
+    private static String normalize(final String aValue) {
+        if (isNormalized(aValue)) {
+            return aValue;
+        }
+
+        final String[] lines = aValue.split("\\n");
+        final StringBuilder value = new StringBuilder(aValue.length());
+
+        for (int index = 0; index < lines.length; index++) {
+            if (index > 0) {
+                value.append(COMMA);
+            }
+
+            value.append(lines[index].trim().replaceAll(" +", " "));
+        }
+
+        return value.toString();
+    }
+
+    /**
+     * Checks whether the supplied header value is already normalized.
+     *
+     * @param aValue A header value
+     * @return True if the value doesn't need to be normalized; else, false
+     */
+    private static boolean isNormalized(final String aValue) {
+        final int length = aValue.length();
+
+        if (length > 0 && (aValue.charAt(0) <= ' ' || aValue.charAt(length - 1) <= ' ')) {
+            return false;
+        }
+
+        for (int index = 0; index < length; index++) {
+            final char character = aValue.charAt(index);
+
+            if (character == '\n' || character == ' ' && aValue.charAt(index - 1) == ' ') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * URI-encodes a query parameter value as the V4 signature requires. Unlike the raw values of a request's path and
+     * query, which may already contain percent-encoded characters, every reserved character of the supplied value is
+     * encoded, including any percent signs.
+     *
+     * @param aValue A query parameter value
+     * @return The encoded value
+     */
+    static String encode(final String aValue) {
+        final StringBuilder encoded = new StringBuilder(aValue.length() + ENCODING_ALLOWANCE);
+
+        appendEncoded(encoded, aValue, false, false);
+        return encoded.toString();
+    }
+
+    /**
+     * URI-encodes a raw path or query component as the V4 signature requires, appending it to the supplied text.
+     * S3 decodes what it receives before canonicalizing it, so characters that are already percent-encoded are kept
+     * as they are rather than encoded a second time.
+     *
+     * @param aText The text of a canonical request
+     * @param aValue A value to encode
+     * @param aPath Whether the value is a path, in which case slashes are left unencoded
+     */
+    private static void appendEncoded(final StringBuilder aText, final String aValue, final boolean aPath) {
+        appendEncoded(aText, aValue, aPath, true);
+    }
+
+    /**
+     * URI-encodes a path or query component, appending it to the supplied text.
+     *
+     * @param aText The text to append to
+     * @param aValue A value to encode
+     * @param aPath Whether the value is a path, in which case slashes are left unencoded
+     * @param aRaw Whether the value is raw, in which case characters that are already encoded are kept as they are
+     */
+    private static void appendEncoded(final StringBuilder aText, final String aValue, final boolean aPath,
+            final boolean aRaw) {
+        for (int index = 0; index < aValue.length(); index++) {
+            final char character = aValue.charAt(index);
+
+            if (character < UNRESERVED.length && UNRESERVED[character] || aPath && character == SLASH) {
+                aText.append(character);
+            } else if (aRaw && isEscape(aValue, index)) {
+                aText.append(character).append(Character.toUpperCase(aValue.charAt(index + 1)))
+                        .append(Character.toUpperCase(aValue.charAt(index + 2)));
+                index += 2;
+            } else if (character < UNRESERVED.length) {
+                appendPercentEncoded(aText, character);
+            } else {
+                final int end = Character.isHighSurrogate(character) && index + 1 < aValue.length() ? index + 2
+                        : index + 1;
+
+                for (final byte value : aValue.substring(index, end).getBytes(StandardCharsets.UTF_8)) {
+                    appendPercentEncoded(aText, value & 0xff);
+                }
+
+                index = end - 1;
+            }
+        }
+    }
+
+    /**
+     * Checks whether the supplied value has a percent-encoded character at the supplied index.
+     *
+     * @param aValue A value
+     * @param aIndex An index in the value
+     * @return True if the value has a percent sign followed by two hex digits at the index; else, false
+     */
+    private static boolean isEscape(final String aValue, final int aIndex) {
+        return aValue.charAt(aIndex) == '%' && aIndex + 2 < aValue.length() && Character.digit(aValue.charAt(
+                aIndex + 1), 16) != -1 && Character.digit(aValue.charAt(aIndex + 2), 16) != -1;
+    }
+
+    /**
+     * Appends the percent-encoded form of a single byte to the supplied text.
+     *
+     * @param aText The text of a canonical request
+     * @param aByte A byte to encode
+     */
+    private static void appendPercentEncoded(final StringBuilder aText, final int aByte) {
+        aText.append('%').append(UPPER_HEX_DIGITS[aByte >> 4]).append(UPPER_HEX_DIGITS[aByte & 0xf]);
+    }
+}
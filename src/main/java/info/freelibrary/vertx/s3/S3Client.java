@@ -5,13 +5,21 @@ import static info.freelibrary.vertx.s3.Constants.PATH_SEP;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import info.freelibrary.util.I18nRuntimeException;
 import info.freelibrary.util.Logger;
 import info.freelibrary.util.LoggerFactory;
 import info.freelibrary.util.StringUtils;
 
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.file.AsyncFile;
@@ -22,39 +30,75 @@ import io.vertx.core.http.HttpClientResponse;
 import io.vertx.core.http.HttpConnection;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpServerFileUpload;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.core.streams.WriteStream;
 
 /**
  * An S3 client implementation used by the S3Pairtree object.
  */
-@SuppressWarnings("PMD.TooManyMethods")
+@SuppressWarnings({ "PMD.TooManyMethods", "PMD.ExcessiveClassLength", "PMD.ExcessivePublicCount" })
 public class S3Client {
 
     /** Default S3 endpoint */
     public static final String DEFAULT_ENDPOINT = "https://s3.amazonaws.com";
 
+    /** The smallest part size S3 accepts for all but the last part of a multipart upload */
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    /** The default part size used when streaming uploads to S3 */
+    public static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+
+    /** The default number of parts a single upload sends at one time */
+    public static final int DEFAULT_PART_CONCURRENCY = 4;
+
+    /** The default number of parts the client sends at one time, across all its uploads */
+    public static final int DEFAULT_MAX_PARTS_IN_FLIGHT = 16;
+
+    /** The default number of shards of a parallel listing that are read at one time */
+    public static final int DEFAULT_LIST_CONCURRENCY = 8;
+
+    /** The default number of batches a bulk delete sends at one time */
+    public static final int DEFAULT_DELETE_CONCURRENCY = 4;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(S3Client.class, Constants.BUNDLE_NAME);
 
     private static final String LIST_CMD = "?list-type=2";
 
     private static final String PREFIX_LIST_CMD = "?list-type=2&prefix=";
 
-    private static final String HTTP = "http";
+    private static final String HTTP_SCHEME = "http";
 
-    /** AWS access key */
-    private final String myAccessKey;
+    /** The header that names the object a PUT request copies */
+    private static final String COPY_SOURCE = "x-amz-copy-source";
 
-    /** AWS secret key */
-    private final String mySecretKey;
-
-    /** S3 session token */
-    private final String mySessionToken;
+    /** The signer shared by the client's requests, or null if the client's requests aren't signed */
+    private final RequestSigner mySigner;
 
     /** HTTP client used to interact with S3 */
     private final HttpClient myHttpClient;
 
+    /** The permits that limit how many upload parts the client has in flight */
+    private final PartPermits myPartPermits = new PartPermits(DEFAULT_MAX_PARTS_IN_FLIGHT);
+
     /** Whether the client uses a V2 signature */
     private boolean hasV2Signature;
 
+    /** Whether the client leaves payloads out of its signatures when connecting over TLS */
+    private boolean hasUnsignedPayload;
+
+    /** The size of the parts that streamed uploads are split into */
+    private int myPartSize = DEFAULT_PART_SIZE;
+
+    /** The number of parts a single upload sends at one time */
+    private int myPartConcurrency = DEFAULT_PART_CONCURRENCY;
+
+    /** The number of shards of a parallel listing that are read at one time */
+    private int myListConcurrency = DEFAULT_LIST_CONCURRENCY;
+
+    /** The number of batches a bulk delete sends at one time */
+    private int myDeleteConcurrency = DEFAULT_DELETE_CONCURRENCY;
+
     /**
      * Creates a new S3 client using system defined AWS credentials and the default S3 endpoint.
      *
@@ -195,15 +239,8 @@ public class S3Client {
      * @param aHttpClient A Vert.x HttpClient to use from the S3Client
      */
     protected S3Client(final AwsCredentials aCredentials, final HttpClient aHttpClient) {
-        if (aCredentials.hasSessionToken()) {
-            mySessionToken = aCredentials.getSessionToken();
-        } else {
-            mySessionToken = null;
-        }
-
-        myAccessKey = aCredentials.getAccessKey();
-        mySecretKey = aCredentials.getSecretKey();
-
+        mySigner = RequestSigner.getSigner(aCredentials.getAccessKey(), aCredentials.getSecretKey(), aCredentials
+                .getSessionToken());
         myHttpClient = aHttpClient;
     }
 
@@ -227,6 +264,161 @@ public class S3Client {
         return hasV2Signature;
     }
 
+    /**
+     * Sets the client to leave request payloads out of its V4 signatures, using <code>UNSIGNED-PAYLOAD</code>, so
+     * that uploads don't have to be hashed before they're sent. This only applies to requests sent over HTTPS, where
+     * TLS protects the payload; requests sent over plain HTTP still have their payloads signed.
+     *
+     * @param aUnsignedPayload Whether to leave request payloads out of the signature
+     * @return The S3 client
+     */
+    public S3Client useUnsignedPayload(final boolean aUnsignedPayload) {
+        hasUnsignedPayload = aUnsignedPayload;
+        return this;
+    }
+
+    /**
+     * Checks to see if the client leaves request payloads out of its signatures when connecting over HTTPS.
+     *
+     * @return True if the client leaves request payloads unsigned; else, false
+     */
+    public boolean usesUnsignedPayload() {
+        return hasUnsignedPayload;
+    }
+
+    /**
+     * Sets the size of the parts that streamed uploads (e.g., of an <code>AsyncFile</code>) are split into. Streams
+     * that are smaller than a single part are uploaded in one PUT request; larger streams are uploaded as an S3
+     * multipart upload. Since S3 accepts at most 10,000 parts, the part size also limits the size of the largest
+     * object that can be streamed.
+     *
+     * @param aPartSize A part size in bytes
+     * @return The S3 client
+     * @throws ConfigurationException If the part size is smaller than {@link #MIN_PART_SIZE}
+     */
+    public S3Client setPartSize(final int aPartSize) {
+        if (aPartSize < MIN_PART_SIZE) {
+            throw new ConfigurationException(MessageCodes.VS3_018, MIN_PART_SIZE, aPartSize);
+        }
+
+        myPartSize = aPartSize;
+        return this;
+    }
+
+    /**
+     * Gets the size of the parts that streamed uploads are split into.
+     *
+     * @return The part size in bytes
+     */
+    public int getPartSize() {
+        return myPartSize;
+    }
+
+    /**
+     * Sets the number of parts a single streamed upload sends at one time. Parts are sent over the pooled connections
+     * of the client's <code>HttpClient</code>, so its maximum pool size should be large enough to accommodate them.
+     * Each part that's in flight is held in memory until S3 has acknowledged it.
+     *
+     * @param aPartCount The number of parts an upload sends at one time
+     * @return The S3 client
+     * @throws ConfigurationException If the supplied number is less than one
+     */
+    public S3Client setPartConcurrency(final int aPartCount) {
+        if (aPartCount < 1) {
+            throw new ConfigurationException(MessageCodes.VS3_024, aPartCount);
+        }
+
+        myPartConcurrency = aPartCount;
+        return this;
+    }
+
+    /**
+     * Gets the number of parts a single streamed upload sends at one time.
+     *
+     * @return The number of parts an upload sends at one time
+     */
+    public int getPartConcurrency() {
+        return myPartConcurrency;
+    }
+
+    /**
+     * Sets the number of parts the client sends at one time across all of its streamed uploads. Uploads that would
+     * exceed this limit wait for other parts to finish before sending more.
+     *
+     * @param aPartCount The number of parts the client sends at one time
+     * @return The S3 client
+     * @throws ConfigurationException If the supplied number is less than one
+     */
+    public S3Client setMaxPartsInFlight(final int aPartCount) {
+        if (aPartCount < 1) {
+            throw new ConfigurationException(MessageCodes.VS3_024, aPartCount);
+        }
+
+        myPartPermits.setLimit(aPartCount);
+        return this;
+    }
+
+    /**
+     * Gets the number of parts the client sends at one time across all of its streamed uploads.
+     *
+     * @return The number of parts the client sends at one time
+     */
+    public int getMaxPartsInFlight() {
+        return myPartPermits.getLimit();
+    }
+
+    /**
+     * Sets the number of shards a parallel listing reads at one time. Each shard that's being read has a list request
+     * in flight, sent over the pooled connections of the client's <code>HttpClient</code>.
+     *
+     * @param aShardCount The number of shards a parallel listing reads at one time
+     * @return The S3 client
+     * @throws ConfigurationException If the supplied number is less than one
+     */
+    public S3Client setListConcurrency(final int aShardCount) {
+        if (aShardCount < 1) {
+            throw new ConfigurationException(MessageCodes.VS3_026, aShardCount);
+        }
+
+        myListConcurrency = aShardCount;
+        return this;
+    }
+
+    /**
+     * Gets the number of shards a parallel listing reads at one time.
+     *
+     * @return The number of shards a parallel listing reads at one time
+     */
+    public int getListConcurrency() {
+        return myListConcurrency;
+    }
+
+    /**
+     * Sets the number of batches a bulk delete sends at one time. Each batch deletes up to a thousand keys with a
+     * single request.
+     *
+     * @param aBatchCount The number of batches a bulk delete sends at one time
+     * @return The S3 client
+     * @throws ConfigurationException If the supplied number is less than one
+     */
+    public S3Client setDeleteConcurrency(final int aBatchCount) {
+        if (aBatchCount < 1) {
+            throw new ConfigurationException(MessageCodes.VS3_038, aBatchCount);
+        }
+
+        myDeleteConcurrency = aBatchCount;
+        return this;
+    }
+
+    /**
+     * Gets the number of batches a bulk delete sends at one time.
+     *
+     * @return The number of batches a bulk delete sends at one time
+     */
+    public int getDeleteConcurrency() {
+        return myDeleteConcurrency;
+    }
+
     /**
      * Sets a connection handler for the client. This handler is called when a new connection is established.
      *
@@ -264,6 +456,39 @@ public class S3Client {
                 .end();
     }
 
+    /**
+     * Performs a HEAD request on an object in S3, with a range or conditions on the object's ETag or last modified
+     * date. A head whose conditions aren't met is answered with a <code>304 Not Modified</code> or a
+     * <code>412 Precondition Failed</code>. Logs any exceptions.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aOptions Options for the head
+     * @param aHandler A response handler
+     */
+    public void head(final String aBucket, final String aKey, final GetOptions aOptions,
+            final Handler<HttpClientResponse> aHandler) {
+        aOptions.addHeaders(createHeadRequest(aBucket, aKey, aHandler)).exceptionHandler(new ExceptionLogger())
+                .useV2Signature(hasV2Signature).end();
+    }
+
+    /**
+     * Performs a HEAD request on an object in S3, with a range or conditions on the object's ETag or last modified
+     * date. A head whose conditions aren't met is answered with a <code>304 Not Modified</code> or a
+     * <code>412 Precondition Failed</code>.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aOptions Options for the head
+     * @param aHandler A response handler
+     * @param aExceptionHandler An exception handler
+     */
+    public void head(final String aBucket, final String aKey, final GetOptions aOptions,
+            final Handler<HttpClientResponse> aHandler, final Handler<Throwable> aExceptionHandler) {
+        aOptions.addHeaders(createHeadRequest(aBucket, aKey, aHandler)).exceptionHandler(aExceptionHandler)
+                .useV2Signature(hasV2Signature).end();
+    }
+
     /**
      * Gets an object, represented by the supplied key, from an S3 bucket. Logs any exceptions.
      *
@@ -290,6 +515,95 @@ public class S3Client {
                 .end();
     }
 
+    /**
+     * Gets an object, or a range of its bytes, from an S3 bucket, if it meets the supplied conditions. A range is
+     * answered with a <code>206 Partial Content</code>, and a get whose conditions aren't met is answered with a
+     * <code>304 Not Modified</code> or a <code>412 Precondition Failed</code>. Logs any exceptions.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aOptions Options for the get
+     * @param aHandler A response handler
+     */
+    public void get(final String aBucket, final String aKey, final GetOptions aOptions,
+            final Handler<HttpClientResponse> aHandler) {
+        aOptions.addHeaders(createGetRequest(aBucket, aKey, aHandler)).exceptionHandler(new ExceptionLogger())
+                .useV2Signature(hasV2Signature).end();
+    }
+
+    /**
+     * Gets an object, or a range of its bytes, from an S3 bucket, if it meets the supplied conditions. A range is
+     * answered with a <code>206 Partial Content</code>, and a get whose conditions aren't met is answered with a
+     * <code>304 Not Modified</code> or a <code>412 Precondition Failed</code>.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aOptions Options for the get
+     * @param aHandler A response handler
+     * @param aExceptionHandler An exception handler
+     */
+    public void get(final String aBucket, final String aKey, final GetOptions aOptions,
+            final Handler<HttpClientResponse> aHandler, final Handler<Throwable> aExceptionHandler) {
+        aOptions.addHeaders(createGetRequest(aBucket, aKey, aHandler)).exceptionHandler(aExceptionHandler)
+                .useV2Signature(hasV2Signature).end();
+    }
+
+    /**
+     * Gets an object from an S3 bucket, piping its body into the supplied stream as it's received. The response is
+     * paused whenever the stream's write queue is full, so the object is never held in memory as a whole. The stream
+     * is ended once the whole object has been written to it. If S3 doesn't respond with the object, nothing is
+     * written to the stream, and if the object's body fails partway through, the stream isn't ended; either way, the
+     * stream is left for the handler to deal with. An <code>HttpServerResponse</code> that doesn't have its own
+     * length or content type is given the object's.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aStream A stream into which the object is written
+     * @param aHandler A handler that's notified once the object has been written or the get has failed
+     */
+    public void get(final String aBucket, final String aKey, final WriteStream<Buffer> aStream,
+            final Handler<AsyncResult<Void>> aHandler) {
+        get(aBucket, aKey, new GetOptions(), aStream, aHandler);
+    }
+
+    /**
+     * Gets an object, or a range of its bytes, from an S3 bucket, piping it into the supplied stream as it's received
+     * (see {@link #get(String, String, WriteStream, Handler)}). A get whose conditions aren't met, like one that's
+     * answered with a <code>304 Not Modified</code>, fails without writing anything to the stream.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aOptions Options for the get
+     * @param aStream A stream into which the object is written
+     * @param aHandler A handler that's notified once the object has been written or the get has failed
+     */
+    public void get(final String aBucket, final String aKey, final GetOptions aOptions,
+            final WriteStream<Buffer> aStream, final Handler<AsyncResult<Void>> aHandler) {
+        final Promise<Void> promise = Promise.promise();
+
+        promise.future().onComplete(aHandler);
+        aOptions.addHeaders(createGetRequest(aBucket, aKey, response -> pipe(aBucket, aKey, response, aStream,
+                promise))).exceptionHandler(promise::tryFail).useV2Signature(hasV2Signature).end();
+    }
+
+    /**
+     * Downloads an S3 object into a file, in ranges of the client's part size that are fetched several at a time
+     * (see {@link #setPartSize(int)} and {@link #setPartConcurrency(int)}). Each range is written at its offset in
+     * the file as it arrives, so only a buffer of each range in flight is held in memory. The ranges are fetched
+     * with an <code>If-Match</code> on the object's ETag, so the download fails if the object is replaced while it's
+     * being downloaded. The file should be empty, or opened to truncate an existing file, and it's flushed, but not
+     * closed, once the download has finished.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aFile The file into which the object is downloaded
+     * @param aHandler A handler that's notified once the download has finished
+     */
+    public void download(final String aBucket, final String aKey, final AsyncFile aFile,
+            final Handler<AsyncResult<Void>> aHandler) {
+        new RangedDownload(this, aBucket, aKey, aFile, aHandler).start();
+    }
+
     /**
      * Lists an S3 bucket. Logs any exceptions.
      *
@@ -340,6 +654,131 @@ public class S3Client {
                 .useV2Signature(hasV2Signature).end();
     }
 
+    /**
+     * Lists a page of an S3 bucket using the supplied options. With a delimiter, keys that share a prefix up to the
+     * delimiter are listed once, as a common prefix (see {@link BucketList#getCommonPrefixes()}), so a hierarchical
+     * keyspace can be browsed a level at a time. Logs any exceptions.
+     *
+     * @param aBucket An S3 bucket
+     * @param aOptions The options of the listing
+     * @param aHandler A response handler
+     */
+    public void list(final String aBucket, final ListOptions aOptions, final Handler<HttpClientResponse> aHandler) {
+        list(aBucket, aOptions, aHandler, new ExceptionLogger());
+    }
+
+    /**
+     * Lists a page of an S3 bucket using the supplied options. With a delimiter, keys that share a prefix up to the
+     * delimiter are listed once, as a common prefix (see {@link BucketList#getCommonPrefixes()}), so a hierarchical
+     * keyspace can be browsed a level at a time.
+     *
+     * @param aBucket An S3 bucket
+     * @param aOptions The options of the listing
+     * @param aHandler A response handler
+     * @param aExceptionHandler An exception handler
+     */
+    public void list(final String aBucket, final ListOptions aOptions, final Handler<HttpClientResponse> aHandler,
+            final Handler<Throwable> aExceptionHandler) {
+        createGetRequest(aBucket, new ListQuery(aOptions).toQueryString(null), aHandler).exceptionHandler(
+                aExceptionHandler).useV2Signature(hasV2Signature).end();
+    }
+
+    /**
+     * Lists all the objects in an S3 bucket as a stream. Unlike a single list request, which returns at most 1000
+     * objects, the stream follows the listing's continuation tokens until every object in the bucket has been read.
+     * Pages are requested as the stream is read, so the stream can be paused to keep the listing from getting ahead
+     * of whatever's consuming it. The listing starts when the stream's handler is set.
+     *
+     * @param aBucket A bucket from which to get a listing
+     * @return A stream of the bucket's objects
+     */
+    public ReadStream<ListObject> listObjects(final String aBucket) {
+        return new ObjectListStream(this, aBucket, new ListQuery(new ListOptions()));
+    }
+
+    /**
+     * Lists all the objects in an S3 bucket that have the supplied prefix as a stream. Unlike a single list request,
+     * which returns at most 1000 objects, the stream follows the listing's continuation tokens until every matching
+     * object has been read. The listing starts when the stream's handler is set.
+     *
+     * @param aBucket A bucket from which to get a listing
+     * @param aPrefix A prefix to use to limit which objects are listed
+     * @return A stream of the bucket's objects that have the supplied prefix
+     */
+    public ReadStream<ListObject> listObjects(final String aBucket, final String aPrefix) {
+        return new ObjectListStream(this, aBucket, new ListQuery(aPrefix));
+    }
+
+    /**
+     * Lists the objects in an S3 bucket that match the supplied options as a stream, following the listing's
+     * continuation tokens until every matching object has been read. The page size only changes how many objects are
+     * requested at a time. With a delimiter, only the objects directly below the prefix are passed on; the common
+     * prefixes are only in the pages returned by {@link #list(String, ListOptions, Handler)}. The listing starts
+     * when the stream's handler is set.
+     *
+     * @param aBucket A bucket from which to get a listing
+     * @param aOptions The options of the listing
+     * @return A stream of the bucket's objects that match the supplied options
+     */
+    public ReadStream<ListObject> listObjects(final String aBucket, final ListOptions aOptions) {
+        return new ObjectListStream(this, aBucket, new ListQuery(aOptions));
+    }
+
+    /**
+     * Lists the objects in an S3 bucket that have any of the supplied prefixes as a stream, listing the prefixes at
+     * the same time (see {@link #setListConcurrency(int)}). Each prefix is paged through on its own, so a bucket whose
+     * keys are spread across the prefixes is listed several pages at a time instead of one. Objects are passed on
+     * either as soon as they're listed or in key order; in key order, only the prefixes that are next in line read
+     * ahead while the current one is being passed on.
+     *
+     * @param aBucket A bucket from which to get a listing
+     * @param aPrefixes The prefixes of the objects to list
+     * @param aOrdered Whether the objects are passed on in key order
+     * @return A stream of the bucket's objects that have the supplied prefixes
+     */
+    public ReadStream<ListObject> listObjectsByPrefixes(final String aBucket, final Collection<String> aPrefixes,
+            final boolean aOrdered) {
+        final List<ListQuery> shards = ShardedListStream.getPrefixShards(aPrefixes);
+        return listShards(aBucket, handler -> handler.handle(Future.succeededFuture(shards)), aOrdered);
+    }
+
+    /**
+     * Lists the objects in an S3 bucket as a stream, splitting the listing into ranges of keys that are listed at the
+     * same time (see {@link #setListConcurrency(int)}). Each boundary is the last key of one range and the key after
+     * which the next range starts. Objects are passed on either as soon as they're listed or in key order.
+     *
+     * @param aBucket A bucket from which to get a listing
+     * @param aPrefix A prefix to limit which objects are listed (optional)
+     * @param aBoundaries The keys at which the listing is split into ranges
+     * @param aOrdered Whether the objects are passed on in key order
+     * @return A stream of the bucket's objects
+     */
+    public ReadStream<ListObject> listObjectsByRanges(final String aBucket, final String aPrefix,
+            final Collection<String> aBoundaries, final boolean aOrdered) {
+        final List<ListQuery> shards = ShardedListStream.getRangeShards(aPrefix, aBoundaries);
+        return listShards(aBucket, handler -> handler.handle(Future.succeededFuture(shards)), aOrdered);
+    }
+
+    /**
+     * Lists the objects in an S3 bucket as a stream, splitting the listing at the common prefixes that the supplied
+     * delimiter groups its keys into. The common prefixes are listed first; the objects under each of them, along
+     * with any objects that fall between them, are then listed at the same time (see
+     * {@link #setListConcurrency(int)}). For a hierarchical keyspace, like a Pairtree, this lists each of the top
+     * directories below the prefix in parallel. Objects are passed on either as soon as they're listed or in key
+     * order.
+     *
+     * @param aBucket A bucket from which to get a listing
+     * @param aPrefix A prefix to limit which objects are listed (optional)
+     * @param aDelimiter The delimiter that separates the levels of the keyspace, e.g. a slash
+     * @param aOrdered Whether the objects are passed on in key order
+     * @return A stream of the bucket's objects
+     */
+    public ReadStream<ListObject> listObjectsByDelimiter(final String aBucket, final String aPrefix,
+            final String aDelimiter, final boolean aOrdered) {
+        return listShards(aBucket, handler -> ShardedListStream.findDelimitedShards(this, aBucket, aPrefix,
+                aDelimiter, handler), aOrdered);
+    }
+
     /**
      * Uploads contents of the Buffer to S3. Logs any exceptions.
      *
@@ -442,7 +881,10 @@ public class S3Client {
     }
 
     /**
-     * Uploads the file contents to S3. Logs any exceptions.
+     * Uploads the file contents to S3. The file is read in parts of the client's part size, so the whole file is
+     * never held in memory; files larger than a single part are sent as an S3 multipart upload, with several parts
+     * sent at the same time (see {@link #setPartConcurrency(int)}). The response handler receives the response of
+     * the final request of the upload (or of the first request that failed).
      *
      * @param aBucket An S3 bucket
      * @param aKey An S3 key
@@ -453,30 +895,11 @@ public class S3Client {
      */
     public void put(final String aBucket, final String aKey, final AsyncFile aFile, final UserMetadata aMetadata,
             final Handler<HttpClientResponse> aHandler, final Handler<Throwable> aExceptionHandler) {
-        final S3ClientRequest request = createPutRequest(aBucket, aKey, aHandler);
-        final Buffer buffer = Buffer.buffer();
-
-        if (aMetadata != null) {
-            request.setUserMetadata(aMetadata);
-        }
-
-        request.useV2Signature(hasV2Signature);
-
-        aFile.handler(data -> {
-            buffer.appendBuffer(data);
-        });
-
-        aFile.endHandler(event -> {
-            request.putHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(buffer.length()));
-            request.end(buffer);
-        });
-
         // If we have an exception handler, use it; else, just log any exceptions
-        if (aExceptionHandler == null) {
-            request.exceptionHandler(new ExceptionLogger());
-        } else {
-            request.exceptionHandler(aExceptionHandler);
-        }
+        final Handler<Throwable> exceptionHandler = aExceptionHandler == null ? new ExceptionLogger()
+                : aExceptionHandler;
+
+        new MultipartUpload(this, aBucket, aKey, aMetadata, aHandler, exceptionHandler).upload(aFile);
     }
 
     /**
@@ -521,7 +944,10 @@ public class S3Client {
     }
 
     /**
-     * Uploads the file contents to S3.
+     * Uploads the file contents to S3. The upload is streamed through to S3 as it's received: uploads smaller than
+     * the client's part size are sent in a single PUT request and larger ones (or ones whose size isn't known until
+     * they end) are sent as an S3 multipart upload. The incoming upload is paused while its parts wait to be sent, so
+     * the browser's connection is slowed to the pace of S3 rather than the upload being held in memory.
      *
      * @param aBucket An S3 bucket
      * @param aKey An S3 key
@@ -533,29 +959,66 @@ public class S3Client {
     public void put(final String aBucket, final String aKey, final HttpServerFileUpload aUpload,
             final UserMetadata aMetadata, final Handler<HttpClientResponse> aHandler,
             final Handler<Throwable> aExceptionHandler) {
+        // If we have an exception handler, use it; else, just log any exceptions
+        final Handler<Throwable> exceptionHandler = aExceptionHandler == null ? new ExceptionLogger()
+                : aExceptionHandler;
+
+        new MultipartUpload(this, aBucket, aKey, aMetadata, aHandler, exceptionHandler).upload(aUpload);
+    }
+
+    /**
+     * Uploads the contents of a stream of known length to S3 in a single PUT request. The stream's data is sent as
+     * it's read, in chunks that are each signed as they're sent, so the stream doesn't need to be held in memory
+     * before the upload can start. The stream is paused whenever the connection to S3 can't keep up with it.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aStream A stream of data to upload
+     * @param aLength The length of the stream's data
+     * @param aHandler An upload response handler
+     * @param aExceptionHandler An upload exception handler
+     */
+    public void put(final String aBucket, final String aKey, final ReadStream<Buffer> aStream, final long aLength,
+            final Handler<HttpClientResponse> aHandler, final Handler<Throwable> aExceptionHandler) {
+        put(aBucket, aKey, aStream, aLength, null, aHandler, aExceptionHandler);
+    }
+
+    /**
+     * Uploads the contents of a stream of known length to S3 in a single PUT request. The stream's data is sent as
+     * it's read, in chunks that are each signed as they're sent, so the stream doesn't need to be held in memory
+     * before the upload can start. The stream is paused whenever the connection to S3 can't keep up with it.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aStream A stream of data to upload
+     * @param aLength The length of the stream's data
+     * @param aMetadata User metadata to set on the uploaded S3 object
+     * @param aHandler An upload response handler
+     * @param aExceptionHandler An upload exception handler
+     */
+    public void put(final String aBucket, final String aKey, final ReadStream<Buffer> aStream, final long aLength,
+            final UserMetadata aMetadata, final Handler<HttpClientResponse> aHandler,
+            final Handler<Throwable> aExceptionHandler) {
         final S3ClientRequest request = createPutRequest(aBucket, aKey, aHandler);
-        final Buffer buffer = Buffer.buffer();
+        final Handler<Throwable> exceptionHandler = aExceptionHandler == null ? new ExceptionLogger()
+                : aExceptionHandler;
 
         if (aMetadata != null) {
             request.setUserMetadata(aMetadata);
         }
 
-        request.useV2Signature(hasV2Signature);
+        request.exceptionHandler(exceptionHandler).useV2Signature(hasV2Signature).setStreamingPayload(aLength);
 
-        aUpload.handler(data -> {
-            buffer.appendBuffer(data);
-        });
-
-        aUpload.endHandler(event -> {
-            request.putHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(buffer.length()));
-            request.end(buffer);
+        // A failed stream can't be ended normally since the request promised S3 the full length of the stream
+        aStream.pipe().endOnFailure(false).to(request, pipe -> {
+            if (pipe.failed()) {
+                request.reset();
+                exceptionHandler.handle(pipe.cause());
+            } else {
+                // The pipe replaces the request's exception handler while it runs, so put ours back
+                request.exceptionHandler(exceptionHandler);
+            }
         });
-
-        if (aExceptionHandler == null) {
-            request.exceptionHandler(new ExceptionLogger());
-        } else {
-            request.exceptionHandler(aExceptionHandler);
-        }
     }
 
     /**
@@ -584,6 +1047,92 @@ public class S3Client {
                 hasV2Signature).end();
     }
 
+    /**
+     * Deletes many S3 objects, in batches of up to a thousand keys that are each deleted with a single request.
+     * Several batches are sent at a time (see {@link #setDeleteConcurrency(int)}), and the keys are read from the
+     * iterable as they're needed. Once every batch has finished, the handler is passed the keys that couldn't be
+     * deleted, which is an empty list if all the keys were deleted.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKeys The S3 keys to delete
+     * @param aHandler A handler for the keys that couldn't be deleted
+     */
+    public void deleteObjects(final String aBucket, final Iterable<String> aKeys,
+            final Handler<AsyncResult<List<DeleteError>>> aHandler) {
+        new BulkDelete(this, aBucket, aHandler).start(aKeys.iterator());
+    }
+
+    /**
+     * Deletes the S3 objects whose keys are read from a stream, in batches of up to a thousand keys that are each
+     * deleted with a single request. The stream is paused while filled batches are waiting to be sent. Once every
+     * batch has finished, the handler is passed the keys that couldn't be deleted; the handler fails if the stream
+     * fails.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKeys A stream of the S3 keys to delete
+     * @param aHandler A handler for the keys that couldn't be deleted
+     */
+    public void deleteObjects(final String aBucket, final ReadStream<String> aKeys,
+            final Handler<AsyncResult<List<DeleteError>>> aHandler) {
+        new BulkDelete(this, aBucket, aHandler).start(aKeys, Function.identity());
+    }
+
+    /**
+     * Deletes all the S3 objects whose keys start with the supplied prefix, deleting the objects in batches as
+     * they're listed. Once every batch has finished, the handler is passed the keys that couldn't be deleted; the
+     * handler fails if the listing fails.
+     *
+     * @param aBucket An S3 bucket
+     * @param aPrefix The prefix of the S3 keys to delete
+     * @param aHandler A handler for the keys that couldn't be deleted
+     */
+    public void deleteObjects(final String aBucket, final String aPrefix,
+            final Handler<AsyncResult<List<DeleteError>>> aHandler) {
+        new BulkDelete(this, aBucket, aHandler).start(listObjects(aBucket, aPrefix), ListObject::getKey);
+    }
+
+    /**
+     * Copies an S3 object within S3, without downloading and uploading its contents. Logs any exceptions.
+     *
+     * @param aSourceBucket The S3 bucket of the object to copy
+     * @param aSourceKey The S3 key of the object to copy
+     * @param aBucket The S3 bucket to copy the object into
+     * @param aKey The S3 key of the copy
+     * @param aHandler A response handler
+     */
+    public void copy(final String aSourceBucket, final String aSourceKey, final String aBucket, final String aKey,
+            final Handler<HttpClientResponse> aHandler) {
+        copy(aSourceBucket, aSourceKey, aBucket, aKey, aHandler, new ExceptionLogger());
+    }
+
+    /**
+     * Copies an S3 object within S3, without downloading and uploading its contents. S3 copies objects of up to 5 GB
+     * in a single request. A copy can fail after S3 has responded with a 200 OK status, in which case the body of the
+     * response is an error rather than the result of the copy.
+     *
+     * @param aSourceBucket The S3 bucket of the object to copy
+     * @param aSourceKey The S3 key of the object to copy
+     * @param aBucket The S3 bucket to copy the object into
+     * @param aKey The S3 key of the copy
+     * @param aHandler A response handler
+     * @param aExceptionHandler An exception handler
+     */
+    public void copy(final String aSourceBucket, final String aSourceKey, final String aBucket, final String aKey,
+            final Handler<HttpClientResponse> aHandler, final Handler<Throwable> aExceptionHandler) {
+        createPutRequest(aBucket, aKey, aHandler).putHeader(COPY_SOURCE, PATH_SEP + aSourceBucket + PATH_SEP +
+                RequestSigner.encode(aSourceKey)).exceptionHandler(aExceptionHandler).useV2Signature(hasV2Signature)
+                .end();
+    }
+
+    /**
+     * Gets the permits that limit how many upload parts the client has in flight.
+     *
+     * @return The client's part permits
+     */
+    PartPermits getPartPermits() {
+        return myPartPermits;
+    }
+
     /**
      * Creates an S3 PUT request.
      *
@@ -592,11 +1141,28 @@ public class S3Client {
      * @param aHandler A response handler
      * @return An S3 PUT request
      */
-    private S3ClientRequest createPutRequest(final String aBucket, final String aKey,
+    S3ClientRequest createPutRequest(final String aBucket, final String aKey,
             final Handler<HttpClientResponse> aHandler) {
         @SuppressWarnings({ "PMD.AvoidDuplicateLiterals", "deprecation" })
         final HttpClientRequest httpRequest = myHttpClient.put(PATH_SEP + aBucket + PATH_SEP + aKey, aHandler);
-        return new S3ClientRequest("PUT", aBucket, aKey, httpRequest, myAccessKey, mySecretKey, mySessionToken);
+        return new S3ClientRequest("PUT", aBucket, aKey, httpRequest, mySigner)
+                .useUnsignedPayload(hasUnsignedPayload);
+    }
+
+    /**
+     * Creates an S3 POST request.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aHandler A response handler
+     * @return An S3 POST request
+     */
+    S3ClientRequest createPostRequest(final String aBucket, final String aKey,
+            final Handler<HttpClientResponse> aHandler) {
+        @SuppressWarnings({ "PMD.AvoidDuplicateLiterals", "deprecation" })
+        final HttpClientRequest httpRequest = myHttpClient.post(PATH_SEP + aBucket + PATH_SEP + aKey, aHandler);
+        return new S3ClientRequest("POST", aBucket, aKey, httpRequest, mySigner)
+                .useUnsignedPayload(hasUnsignedPayload);
     }
 
     /**
@@ -607,11 +1173,11 @@ public class S3Client {
      * @param aHandler A response handler
      * @return A S3 client HEAD request
      */
-    private S3ClientRequest createHeadRequest(final String aBucket, final String aKey,
+    S3ClientRequest createHeadRequest(final String aBucket, final String aKey,
             final Handler<HttpClientResponse> aHandler) {
         @SuppressWarnings({ "PMD.AvoidDuplicateLiterals", "deprecation" })
         final HttpClientRequest httpRequest = myHttpClient.head(PATH_SEP + aBucket + PATH_SEP + aKey, aHandler);
-        return new S3ClientRequest("HEAD", aBucket, aKey, httpRequest, myAccessKey, mySecretKey, mySessionToken);
+        return new S3ClientRequest("HEAD", aBucket, aKey, httpRequest, mySigner);
     }
 
     /**
@@ -622,11 +1188,11 @@ public class S3Client {
      * @param aHandler A response handler
      * @return A S3 client GET request
      */
-    private S3ClientRequest createGetRequest(final String aBucket, final String aKey,
+    S3ClientRequest createGetRequest(final String aBucket, final String aKey,
             final Handler<HttpClientResponse> aHandler) {
         @SuppressWarnings({ "PMD.AvoidDuplicateLiterals", "deprecation" })
         final HttpClientRequest httpRequest = myHttpClient.get(PATH_SEP + aBucket + PATH_SEP + aKey, aHandler);
-        return new S3ClientRequest("GET", aBucket, aKey, httpRequest, myAccessKey, mySecretKey, mySessionToken);
+        return new S3ClientRequest("GET", aBucket, aKey, httpRequest, mySigner);
     }
 
     /**
@@ -637,11 +1203,81 @@ public class S3Client {
      * @param aHandler An S3 handler
      * @return An S3 client request
      */
-    private S3ClientRequest createDeleteRequest(final String aBucket, final String aKey,
+    S3ClientRequest createDeleteRequest(final String aBucket, final String aKey,
             final Handler<HttpClientResponse> aHandler) {
         @SuppressWarnings({ "PMD.AvoidDuplicateLiterals", "deprecation" })
         final HttpClientRequest httpRequest = myHttpClient.delete(PATH_SEP + aBucket + PATH_SEP + aKey, aHandler);
-        return new S3ClientRequest("DELETE", aBucket, aKey, httpRequest, myAccessKey, mySecretKey, mySessionToken);
+        return new S3ClientRequest("DELETE", aBucket, aKey, httpRequest, mySigner);
+    }
+
+    /**
+     * Pipes the body of an object, or of a range of its bytes, into a stream.
+     *
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aResponse The response to a request for the object
+     * @param aStream A stream into which the object is written
+     * @param aPromise A promise that the object will be written
+     */
+    static void pipe(final String aBucket, final String aKey, final HttpClientResponse aResponse,
+            final WriteStream<Buffer> aStream, final Promise<Void> aPromise) {
+        final int status = aResponse.statusCode();
+
+        if (status != HTTP.OK && status != HTTP.PARTIAL_CONTENT) {
+            aPromise.tryFail(new I18nRuntimeException(Constants.BUNDLE_NAME, MessageCodes.VS3_041, aBucket, aKey,
+                    status, aResponse.statusMessage()));
+        } else {
+            if (aStream instanceof HttpServerResponse) {
+                final HttpServerResponse serverResponse = (HttpServerResponse) aStream;
+                final MultiMap headers = serverResponse.headers();
+
+                if (!serverResponse.isChunked() && !headers.contains(HttpHeaders.CONTENT_LENGTH)) {
+                    copyHeader(aResponse, headers, HttpHeaders.CONTENT_LENGTH);
+                }
+
+                if (!headers.contains(HttpHeaders.CONTENT_TYPE)) {
+                    copyHeader(aResponse, headers, HttpHeaders.CONTENT_TYPE);
+                }
+            }
+
+            aResponse.pipe().endOnFailure(false).to(aStream, pipe -> {
+                if (pipe.succeeded()) {
+                    aPromise.tryComplete();
+                } else {
+                    aPromise.tryFail(pipe.cause());
+                }
+            });
+        }
+    }
+
+    /**
+     * Copies a header of a response from S3, if it has one, into the supplied headers.
+     *
+     * @param aResponse A response from S3
+     * @param aHeaders The headers of another message
+     * @param aName The name of the header to copy
+     */
+    private static void copyHeader(final HttpClientResponse aResponse, final MultiMap aHeaders,
+            final CharSequence aName) {
+        final String value = aResponse.getHeader(aName);
+
+        if (value != null) {
+            aHeaders.set(aName, value);
+        }
+    }
+
+    /**
+     * Lists the shards of a parallel listing.
+     *
+     * @param aBucket An S3 bucket
+     * @param aShardFinder Finds the shards of the listing
+     * @param aOrdered Whether the objects are passed on in key order
+     * @return A stream of the objects in the shards
+     */
+    private ReadStream<ListObject> listShards(final String aBucket,
+            final Consumer<Handler<AsyncResult<List<ListQuery>>>> aShardFinder, final boolean aOrdered) {
+        return new ShardedListStream(aShardFinder, shard -> new ObjectListStream(this, aBucket, shard),
+                myListConcurrency, aOrdered);
     }
 
     /**
@@ -721,7 +1357,7 @@ public class S3Client {
         }
 
         // An exception has been thrown if there is no protocol
-        if (protocol.equals(HTTP)) {
+        if (protocol.equals(HTTP_SCHEME)) {
             clientOptions.setSsl(false);
 
             if (port != -1) {
@@ -1,16 +1,14 @@
 
 package info.freelibrary.vertx.s3;
 
-import static info.freelibrary.vertx.s3.AwsSignatureFactory.Version.V2;
-
-import java.net.URI;
-import java.nio.charset.Charset;
 import java.util.Optional;
 
+import info.freelibrary.util.I18nRuntimeException;
 import info.freelibrary.util.Logger;
 import info.freelibrary.util.LoggerFactory;
 
 import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.MultiMap;
 import io.vertx.core.buffer.Buffer;
@@ -28,11 +26,26 @@ import io.vertx.core.http.StreamPriority;
 @SuppressWarnings({ "PMD.ExcessivePublicCount", "PMD.TooManyMethods", "PMD.AvoidDuplicateLiterals" })
 class S3ClientRequest implements HttpClientRequest {
 
+    /** The size of the signed chunks into which a streamed V4 payload is split */
+    static final int STREAMING_CHUNK_SIZE = 64 * 1024;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(S3ClientRequest.class, Constants.BUNDLE_NAME);
 
     /** Prefix for the AWS user metadata keys */
     private static final String AWS_NAME_PREFIX = "x-amz-meta-";
 
+    /** The authorization header */
+    private static final String AUTHORIZATION = "Authorization";
+
+    /** The payload of a request that doesn't have one; it's never written to */
+    private static final Buffer EMPTY_PAYLOAD = Buffer.buffer(0);
+
+    /** The separator between a URI's scheme and its host */
+    private static final String SCHEME_SEPARATOR = "://";
+
+    /** The scheme of a request that's sent over TLS */
+    private static final String HTTPS = "https:";
+
     /** The underlying S3 HTTP client request */
     private final HttpClientRequest myRequest;
 
@@ -45,12 +58,36 @@ class S3ClientRequest implements HttpClientRequest {
     /** The S3 key for the request */
     private final String myKey;
 
-    /** The AWS S3 credentials */
-    private final Optional<AwsCredentials> myCredentials;
+    /** The signer the request is signed with, or null if the request isn't signed */
+    private final RequestSigner mySigner;
 
     /** Whether to use the older v2 syntax */
     private boolean isV2Signature;
 
+    /** Whether to leave the payload out of the signature when the request is sent over TLS */
+    private boolean isUnsignedPayload;
+
+    /** The length of a streamed payload, or -1 if the payload is signed when the request ends */
+    private long myStreamLength = -1;
+
+    /** The number of bytes of a streamed payload that have been written so far */
+    private long myStreamedLength;
+
+    /** Whether the headers of a streamed request have been signed */
+    private boolean isStreaming;
+
+    /** A signer for the chunks of a streamed V4 payload */
+    private AwsChunkSigner myChunkSigner;
+
+    /** The chunk of a streamed V4 payload that's currently being filled */
+    private Buffer myChunk;
+
+    /** The handler of the request's exceptions, which is told when a streamed payload isn't the promised length */
+    private Handler<Throwable> myExceptionHandler;
+
+    /** The reason a streamed request failed, or null if it hasn't failed */
+    private Throwable myStreamError;
+
     /**
      * Creates a new S3 client request.
      *
@@ -78,28 +115,30 @@ class S3ClientRequest implements HttpClientRequest {
      */
     S3ClientRequest(final String aMethod, final String aBucket, final String aKey, final HttpClientRequest aRequest,
             final String aAccessKey, final String aSecretKey, final String aSessionToken) {
+        this(aMethod, aBucket, aKey, aRequest, RequestSigner.getSigner(aAccessKey, aSecretKey, aSessionToken));
+    }
+
+    /**
+     * Creates a new S3 client request that's signed by the supplied signer, which is usually shared by all the
+     * requests of an S3 client.
+     *
+     * @param aMethod An HTTP method
+     * @param aBucket An S3 bucket
+     * @param aKey An S3 key
+     * @param aRequest A HttpClientRequest
+     * @param aSigner A request signer, or null if the request isn't to be signed
+     */
+    S3ClientRequest(final String aMethod, final String aBucket, final String aKey, final HttpClientRequest aRequest,
+            final RequestSigner aSigner) {
         myMethod = aMethod;
         myBucket = aBucket;
         myKey = aKey;
         myRequest = aRequest;
-
-        if (aAccessKey != null && aSecretKey != null) {
-            if (aSessionToken != null) {
-                myCredentials = Optional.of(new AwsCredentials(aAccessKey, aSecretKey, aSessionToken));
-            } else {
-                myCredentials = Optional.of(new AwsCredentials(aAccessKey, aSecretKey));
-            }
-        } else {
-            if (aAccessKey != null || aSecretKey != null) {
-                LOGGER.warn(MessageCodes.VS3_009);
-            }
-
-            myCredentials = Optional.empty();
-        }
+        mySigner = aSigner;
     }
 
     public Optional<AwsCredentials> getCredentials() {
-        return myCredentials;
+        return mySigner == null ? Optional.empty() : Optional.of(mySigner.getCredentials());
     }
 
     @Override
@@ -140,6 +179,7 @@ class S3ClientRequest implements HttpClientRequest {
 
     @Override
     public S3ClientRequest exceptionHandler(final Handler<Throwable> aHandler) {
+        myExceptionHandler = aHandler;
         myRequest.exceptionHandler(aHandler);
         return this;
     }
@@ -226,19 +266,34 @@ class S3ClientRequest implements HttpClientRequest {
 
     @Override
     public S3ClientRequest write(final Buffer aChunk) {
-        myRequest.write(aChunk);
+        if (myStreamLength >= 0) {
+            writeStream(aChunk, null);
+        } else {
+            myRequest.write(aChunk);
+        }
+
         return this;
     }
 
     @Override
     public S3ClientRequest write(final String aChunk) {
-        myRequest.write(aChunk);
+        if (myStreamLength >= 0) {
+            writeStream(Buffer.buffer(aChunk), null);
+        } else {
+            myRequest.write(aChunk);
+        }
+
         return this;
     }
 
     @Override
     public S3ClientRequest write(final String aChunk, final String aEncoding) {
-        myRequest.write(aChunk, aEncoding);
+        if (myStreamLength >= 0) {
+            writeStream(Buffer.buffer(aChunk, aEncoding), null);
+        } else {
+            myRequest.write(aChunk, aEncoding);
+        }
+
         return this;
     }
 
@@ -250,26 +305,49 @@ class S3ClientRequest implements HttpClientRequest {
 
     @Override
     public void end(final String aChunk) {
-        addAuthorizationHeader(aChunk.getBytes());
-        myRequest.end(aChunk);
+        // Encode the string once, so the same bytes are signed and sent
+        end(Buffer.buffer(aChunk));
     }
 
     @Override
     public void end(final String aChunk, final String aEncoding) {
-        addAuthorizationHeader(aChunk.getBytes(Charset.forName(aEncoding)));
-        myRequest.end(aChunk, aEncoding);
+        end(Buffer.buffer(aChunk, aEncoding));
     }
 
     @Override
     public void end(final Buffer aChunk) {
-        addAuthorizationHeader(aChunk.getBytes());
-        myRequest.end(aChunk);
+        if (myStreamLength >= 0) {
+            writeStream(aChunk, null);
+            endStream(null);
+        } else {
+            addAuthorizationHeader(aChunk);
+            myRequest.end(aChunk);
+        }
     }
 
     @Override
     public void end() {
-        addAuthenticationHeader();
-        myRequest.end();
+        if (myStreamLength >= 0) {
+            endStream(null);
+        } else {
+            addAuthenticationHeader();
+            myRequest.end();
+        }
+    }
+
+    /**
+     * Streams the request's payload, which has the supplied length, to S3 as it's written instead of signing the
+     * whole payload when the request ends. With a V4 signature, the payload is sent using the
+     * <code>aws-chunked</code> content encoding, each chunk being signed as it's sent. A V2 signature doesn't cover
+     * the payload, so the payload is just sent as it's written. Either way, the request's headers are signed and sent
+     * with the first write, so its other headers must be set before then.
+     *
+     * @param aLength The length of the payload that will be written to the request
+     * @return The S3 client request
+     */
+    public S3ClientRequest setStreamingPayload(final long aLength) {
+        myStreamLength = aLength;
+        return this;
     }
 
     /**
@@ -283,45 +361,247 @@ class S3ClientRequest implements HttpClientRequest {
         return this;
     }
 
+    /**
+     * Tells the S3 request to leave its payload out of its V4 signature (using <code>UNSIGNED-PAYLOAD</code>) so the
+     * payload doesn't have to be hashed. This is only done when the request is sent over TLS; a request sent over
+     * plain HTTP still has its payload signed.
+     *
+     * @param aUnsignedPayload Whether to leave the payload out of the signature
+     * @return The S3 client request
+     */
+    public S3ClientRequest useUnsignedPayload(final boolean aUnsignedPayload) {
+        isUnsignedPayload = aUnsignedPayload;
+        return this;
+    }
+
     /**
      * Adds the authentication header.
      *
      * @return The S3 client request
      */
     protected S3ClientRequest addAuthenticationHeader() {
-        return addAuthorizationHeader(new byte[] {});
+        return addAuthorizationHeader(EMPTY_PAYLOAD);
     }
 
     /**
      * Adds the authentication header.
      *
+     * @param aBytes The request's payload
      * @return The S3 client request
      */
     protected S3ClientRequest addAuthorizationHeader(final byte[] aBytes) {
-        if (myCredentials.isPresent()) {
+        return addAuthorizationHeader(aBytes == null ? null : Buffer.buffer(aBytes));
+    }
+
+    /**
+     * Adds the authentication header. The payload is signed from the buffer's own memory, without first being copied
+     * into a byte array.
+     *
+     * @param aPayload The request's payload
+     * @return The S3 client request
+     */
+    protected S3ClientRequest addAuthorizationHeader(final Buffer aPayload) {
+        if (mySigner != null) {
             final MultiMap headers = headers();
-            final AwsSignatureFactory factory;
-            final AwsSignature signature;
 
-            // Get the signature we want; only the latest signature version requires a host
+            // Only the latest signature version requires the request's host, path, and query
             if (isV2Signature) {
-                factory = AwsSignatureFactory.getFactory(V2);
+                headers.add(AUTHORIZATION, mySigner.signV2(myMethod, headers, myBucket, myKey));
+            } else {
+                headers.add(AUTHORIZATION, mySigner.signV4(myMethod, getHostName(), path(), query(), headers,
+                        hasUnsignedPayload() ? null : aPayload));
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Checks whether the request's payload is left out of its signature: an unsigned payload must have been asked
+     * for, the request must use a V4 signature, and it must be sent over TLS.
+     *
+     * @return True if the request's payload isn't signed; else, false
+     */
+    private boolean hasUnsignedPayload() {
+        return isUnsignedPayload && !isV2Signature && absoluteURI().startsWith(HTTPS);
+    }
+
+    /**
+     * Gets the name of the host the request is sent to. Unless a host was set on the request itself, it's taken from
+     * the request's absolute URI, without the port.
+     *
+     * @return The request's host name
+     */
+    private String getHostName() {
+        final String host = getHost();
+
+        if (host != null) {
+            return host;
+        }
+
+        final String uri = absoluteURI();
+        final int start = uri.indexOf(SCHEME_SEPARATOR) + SCHEME_SEPARATOR.length();
+        int end = uri.charAt(start) == '[' ? uri.indexOf(']', start) + 1 : start;
+
+        while (end < uri.length() && uri.charAt(end) != ':' && uri.charAt(end) != '/') {
+            end++;
+        }
+
+        return uri.substring(start, end);
+    }
+
+    /**
+     * Signs the headers of a streamed request, setting the content length and, for a V4 signature, the headers that
+     * the <code>aws-chunked</code> content encoding requires.
+     */
+    private void startStream() {
+        final MultiMap headers = headers();
+
+        isStreaming = true;
+
+        // An unsigned payload doesn't need to be split into signed chunks
+        if (mySigner != null && !isV2Signature && !hasUnsignedPayload()) {
+            final long length = AwsChunkSigner.getEncodedLength(myStreamLength, STREAMING_CHUNK_SIZE);
+
+            headers.set(HttpHeaders.CONTENT_ENCODING, AwsChunkSigner.AWS_CHUNKED);
+            headers.set(AwsChunkSigner.X_AMZ_DECODED_CONTENT_LENGTH, Long.toString(myStreamLength));
+            headers.set(HttpHeaders.CONTENT_LENGTH, Long.toString(length));
+
+            myChunkSigner = mySigner.getChunkSigner(myMethod, getHostName(), path(), query(), headers);
+            myChunk = Buffer.buffer(STREAMING_CHUNK_SIZE);
+            headers.add(AUTHORIZATION, myChunkSigner.getAuthorization());
+        } else {
+            headers.set(HttpHeaders.CONTENT_LENGTH, Long.toString(myStreamLength));
+            addAuthenticationHeader();
+        }
+    }
+
+    /**
+     * Writes data to a streamed request. With a V4 signature, the data is sent in signed chunks as each chunk fills,
+     * and the handler is notified once the last of the chunks that the data filled has been written. Data that would
+     * take the payload past its promised length fails the request.
+     *
+     * @param aData Data to write to the request
+     * @param aHandler A handler to be notified once the data has been written (optional)
+     */
+    private void writeStream(final Buffer aData, final Handler<AsyncResult<Void>> aHandler) {
+        if (!isStreaming) {
+            startStream();
+        }
+
+        if (myStreamError != null || aData.length() > myStreamLength - myStreamedLength) {
+            failStream(new I18nRuntimeException(Constants.BUNDLE_NAME, MessageCodes.VS3_050, myBucket, myKey,
+                    myStreamLength), aHandler);
+            return;
+        }
+
+        myStreamedLength += aData.length();
+
+        if (myChunkSigner == null) {
+            if (aHandler == null) {
+                myRequest.write(aData);
+            } else {
+                myRequest.write(aData, aHandler);
+            }
+        } else {
+            final int length = aData.length();
+
+            // Each filled chunk is held back until the next one fills, so the last can carry the handler
+            Buffer encoded = null;
+            int offset = 0;
+
+            while (offset < length) {
+                final int count = Math.min(STREAMING_CHUNK_SIZE - myChunk.length(), length - offset);
+
+                myChunk.appendBuffer(aData, offset, count);
+                offset += count;
+
+                if (myChunk.length() == STREAMING_CHUNK_SIZE) {
+                    if (encoded != null) {
+                        myRequest.write(encoded);
+                    }
+
+                    encoded = myChunkSigner.encode(myChunk);
+                    myChunk = Buffer.buffer(STREAMING_CHUNK_SIZE);
+                }
+            }
+
+            if (encoded == null) {
+                // The data only went into the chunk that's being filled, so there's nothing to wait on
+                if (aHandler != null) {
+                    aHandler.handle(Future.succeededFuture());
+                }
+            } else if (aHandler == null) {
+                myRequest.write(encoded);
             } else {
-                factory = AwsSignatureFactory.getFactory().setHost(URI.create(absoluteURI()));
+                myRequest.write(encoded, aHandler);
             }
+        }
+    }
 
-            factory.setCredentials(myCredentials.get());
+    /**
+     * Ends a streamed request. With a V4 signature, any partly filled chunk is sent along with the final, empty, chunk.
+     * A payload that's shorter than its promised length fails the request instead.
+     *
+     * @param aHandler A handler to be notified once the request has been ended (optional)
+     */
+    private void endStream(final Handler<AsyncResult<Void>> aHandler) {
+        if (!isStreaming) {
+            startStream();
+        }
+
+        if (myStreamError != null || myStreamedLength < myStreamLength) {
+            failStream(new I18nRuntimeException(Constants.BUNDLE_NAME, MessageCodes.VS3_051, myBucket, myKey,
+                    myStreamedLength, myStreamLength), aHandler);
+            return;
+        }
 
-            // If the content-md5 header isn't already set, we can set it now using our supplied byte array
-            if (!headers.contains(HttpHeaders.CONTENT_MD5) && aBytes != null && aBytes.length > 0) {
+        // Vert.x doesn't notify the handler of a bodiless end that follows writes, so the request ends with a buffer
+        final Buffer last;
 
+        if (myChunkSigner == null) {
+            last = EMPTY_PAYLOAD;
+        } else {
+            if (myChunk.length() > 0) {
+                myRequest.write(myChunkSigner.encode(myChunk));
             }
 
-            signature = factory.getSignature();
-            headers.add("Authorization", signature.getAuthorization(headers, myMethod, myBucket, myKey, aBytes));
+            last = myChunkSigner.encode(Buffer.buffer());
         }
 
-        return this;
+        if (aHandler == null) {
+            myRequest.end(last);
+        } else {
+            myRequest.end(last, aHandler);
+        }
+    }
+
+    /**
+     * Fails a streamed request whose payload isn't the length that was promised to S3. The request is reset the first
+     * time, since S3 would otherwise wait on the bytes it was promised or reject the extra ones; any later writes fail
+     * with the same reason.
+     *
+     * @param aError The reason the request failed, unless it has already failed
+     * @param aHandler A handler to be notified of the failure, or null to notify the request's exception handler
+     */
+    private void failStream(final Throwable aError, final Handler<AsyncResult<Void>> aHandler) {
+        final boolean isFirstFailure = myStreamError == null;
+
+        if (isFirstFailure) {
+            myStreamError = aError;
+        }
+
+        if (aHandler != null) {
+            aHandler.handle(Future.failedFuture(myStreamError));
+        } else if (isFirstFailure && myExceptionHandler != null) {
+            myExceptionHandler.handle(myStreamError);
+        }
+
+        if (isFirstFailure) {
+            // The failure has been reported with its reason, so the reset isn't also reported as a bare stream reset
+            myRequest.exceptionHandler(null);
+            myRequest.reset();
+        }
     }
 
     /**
@@ -437,41 +717,56 @@ class S3ClientRequest implements HttpClientRequest {
 
     @Override
     public S3ClientRequest write(final Buffer aBuffer, final Handler<AsyncResult<Void>> aHandler) {
-        myRequest.write(aBuffer, aHandler);
+        if (myStreamLength >= 0) {
+            writeStream(aBuffer, aHandler);
+        } else {
+            myRequest.write(aBuffer, aHandler);
+        }
+
         return this;
     }
 
     @Override
     public S3ClientRequest write(final String aChunk, final Handler<AsyncResult<Void>> aHandler) {
-        myRequest.write(aChunk, aHandler);
-        return this;
+        return write(Buffer.buffer(aChunk), aHandler);
     }
 
     @Override
     public S3ClientRequest write(final String aChunk, final String aEncoding,
             final Handler<AsyncResult<Void>> aHandler) {
-        myRequest.write(aChunk, aEncoding, aHandler);
-        return this;
+        return write(Buffer.buffer(aChunk, aEncoding), aHandler);
     }
 
     @Override
     public void end(final String aChunk, final Handler<AsyncResult<Void>> aHandler) {
-        myRequest.end(aChunk, aHandler);
+        // Encode the string once, so the same bytes are signed and sent
+        end(Buffer.buffer(aChunk), aHandler);
     }
 
     @Override
     public void end(final String aChunk, final String aEncoding, final Handler<AsyncResult<Void>> aHandler) {
-        myRequest.end(aChunk, aEncoding, aHandler);
+        end(Buffer.buffer(aChunk, aEncoding), aHandler);
     }
 
     @Override
     public void end(final Buffer aBuffer, final Handler<AsyncResult<Void>> aHandler) {
-        myRequest.end(aBuffer, aHandler);
+        if (myStreamLength >= 0) {
+            writeStream(aBuffer, null);
+            endStream(aHandler);
+        } else {
+            addAuthorizationHeader(aBuffer);
+            myRequest.end(aBuffer, aHandler);
+        }
     }
 
     @Override
     public void end(final Handler<AsyncResult<Void>> aHandler) {
-        myRequest.end(aHandler);
+        if (myStreamLength >= 0) {
+            endStream(aHandler);
+        } else {
+            addAuthenticationHeader();
+            myRequest.end(aHandler);
+        }
     }
 
     @Override
@@ -0,0 +1,139 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import info.freelibrary.util.I18nRuntimeException;
+
+import io.netty.buffer.ByteBufInputStream;
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * The SAX parsers that S3's XML responses are parsed with. The parser factory is looked up once, and each thread
+ * keeps a parser that's reset and reused for each response it parses. Parsers are namespace aware and secured against
+ * XML entity attacks: document type declarations aren't allowed and external entities are never loaded.
+ */
+final class SaxParsers {
+
+    /** The feature that refuses documents with a document type declaration */
+    private static final String DISALLOW_DOCTYPE = "http://apache.org/xml/features/disallow-doctype-decl";
+
+    /** The feature that loads external general entities */
+    private static final String EXTERNAL_ENTITIES = "http://xml.org/sax/features/external-general-entities";
+
+    /** The feature that loads external parameter entities */
+    private static final String EXTERNAL_PARAMETERS = "http://xml.org/sax/features/external-parameter-entities";
+
+    /** The feature that loads an external DTD */
+    private static final String EXTERNAL_DTD = "http://apache.org/xml/features/nonvalidating/load-external-dtd";
+
+    private static final SAXParserFactory FACTORY = createFactory();
+
+    /** Each thread's idle parser, which is taken while it's in use so that a nested parse gets a parser of its own */
+    private static final ThreadLocal<SAXParser> PARSERS = new ThreadLocal<>();
+
+    /** An empty private constructor for this utility class */
+    private SaxParsers() {
+    }
+
+    /**
+     * Parses an XML response from its bytes, respecting the encoding in its XML declaration.
+     *
+     * @param aBuffer An XML response from S3
+     * @param aHandler A handler for the response's content
+     * @throws IOException If there is trouble reading the response
+     */
+    static void parse(final Buffer aBuffer, final ContentHandler aHandler) throws IOException {
+        parse(new InputSource(new ByteBufInputStream(aBuffer.getByteBuf())), aHandler);
+    }
+
+    /**
+     * Parses an XML response from a string.
+     *
+     * @param aString An XML response from S3
+     * @param aHandler A handler for the response's content
+     * @throws IOException If there is trouble reading the response
+     */
+    static void parse(final String aString, final ContentHandler aHandler) throws IOException {
+        parse(new InputSource(new StringReader(aString)), aHandler);
+    }
+
+    /**
+     * Parses an XML response with the current thread's parser.
+     *
+     * @param aSource The source of an XML response
+     * @param aHandler A handler for the response's content
+     * @throws IOException If there is trouble reading the response
+     */
+    private static void parse(final InputSource aSource, final ContentHandler aHandler) throws IOException {
+        SAXParser parser = PARSERS.get();
+
+        PARSERS.remove();
+
+        try {
+            if (parser == null) {
+                parser = newParser();
+            }
+
+            final XMLReader xmlReader = parser.getXMLReader();
+
+            xmlReader.setContentHandler(aHandler);
+            xmlReader.parse(aSource);
+        } catch (final ParserConfigurationException | SAXException details) {
+            throw new IOException(details);
+        } finally {
+            if (parser != null) {
+                parser.reset();
+                PARSERS.set(parser);
+            }
+        }
+    }
+
+    /**
+     * Creates a new parser. The factory isn't guaranteed to be thread-safe, so parsers are created one at a time.
+     *
+     * @return A new parser
+     * @throws ParserConfigurationException If the parser can't be configured
+     * @throws SAXException If the parser can't be created
+     */
+    private static SAXParser newParser() throws ParserConfigurationException, SAXException {
+        synchronized (FACTORY) {
+            return FACTORY.newSAXParser();
+        }
+    }
+
+    /**
+     * Creates the factory that all the parsers are created with.
+     *
+     * @return A secured, namespace aware SAX parser factory
+     */
+    private static SAXParserFactory createFactory() {
+        final SAXParserFactory factory = SAXParserFactory.newInstance();
+
+        factory.setNamespaceAware(true);
+        factory.setXIncludeAware(false);
+
+        try {
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature(DISALLOW_DOCTYPE, true);
+            factory.setFeature(EXTERNAL_ENTITIES, false);
+            factory.setFeature(EXTERNAL_PARAMETERS, false);
+            factory.setFeature(EXTERNAL_DTD, false);
+        } catch (final ParserConfigurationException | SAXException details) {
+            throw new I18nRuntimeException(details);
+        }
+
+        return factory;
+    }
+}
@@ -0,0 +1,394 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.streams.ReadStream;
+
+/**
+ * A stream of the objects in an S3 bucket that's read as several shards at the same time. Each shard is a listing of
+ * its own, of a prefix or a range of keys, that's paged through with continuation tokens; the shards are disjoint and
+ * are started in key order, with a limit on how many of them are read at once. Objects are either passed on as soon
+ * as any shard has them, or in key order, in which case the shards after the first are paused once they've read
+ * ahead, so that their first pages are ready when their turn comes.
+ */
+class ShardedListStream implements ReadStream<ListObject> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardedListStream.class, Constants.BUNDLE_NAME);
+
+    /** Finds the shards of the listing */
+    private final Consumer<Handler<AsyncResult<List<ListQuery>>>> myShardFinder;
+
+    /** Opens a stream of the objects in a shard */
+    private final Function<ListQuery, ReadStream<ListObject>> myShardOpener;
+
+    /** The shards that haven't been started yet, in key order */
+    private final Deque<ListQuery> myPendingShards = new ArrayDeque<>();
+
+    /** The streams of the shards that have been started, in key order */
+    private final List<ReadStream<ListObject>> myRunningShards = new ArrayList<>();
+
+    /** The number of shards that are read at the same time */
+    private final int myConcurrency;
+
+    /** Whether objects are passed on in key order */
+    private final boolean isOrdered;
+
+    private Handler<ListObject> myHandler;
+
+    private Handler<Void> myEndHandler;
+
+    private Handler<Throwable> myExceptionHandler;
+
+    /** The number of objects that can be passed to the stream's handler before it has to wait for more demand */
+    private long myDemand = Long.MAX_VALUE;
+
+    /** Whether the search for the listing's shards has started */
+    private boolean isStarted;
+
+    /** Whether the listing's shards have been found */
+    private boolean hasShards;
+
+    /** Whether the stream has ended, successfully or not */
+    private boolean isEnded;
+
+    /** Whether the shards are being resumed or paused */
+    private boolean isUpdating;
+
+    /** Whether the shards need to be resumed or paused again once the current update is done */
+    private boolean hasPendingUpdate;
+
+    /**
+     * Creates a stream of the objects in the shards of a listing.
+     *
+     * @param aShardFinder Finds the shards of the listing, which must be disjoint and in key order
+     * @param aShardOpener Opens a stream of the objects in a shard
+     * @param aConcurrency The number of shards that are read at the same time
+     * @param aOrdered Whether objects are passed on in key order
+     */
+    ShardedListStream(final Consumer<Handler<AsyncResult<List<ListQuery>>>> aShardFinder,
+            final Function<ListQuery, ReadStream<ListObject>> aShardOpener, final int aConcurrency,
+            final boolean aOrdered) {
+        myShardFinder = aShardFinder;
+        myShardOpener = aShardOpener;
+        myConcurrency = aConcurrency;
+        isOrdered = aOrdered;
+    }
+
+    @Override
+    public ShardedListStream exceptionHandler(final Handler<Throwable> aHandler) {
+        myExceptionHandler = aHandler;
+        return this;
+    }
+
+    @Override
+    public ShardedListStream handler(final Handler<ListObject> aHandler) {
+        myHandler = aHandler;
+
+        if (aHandler != null && !isStarted) {
+            isStarted = true;
+            myShardFinder.accept(this::handleShards);
+        } else {
+            updateFlow();
+        }
+
+        return this;
+    }
+
+    @Override
+    public ShardedListStream pause() {
+        myDemand = 0;
+        updateFlow();
+        return this;
+    }
+
+    @Override
+    public ShardedListStream resume() {
+        return fetch(Long.MAX_VALUE);
+    }
+
+    @Override
+    public ShardedListStream fetch(final long aAmount) {
+        if (aAmount > 0) {
+            myDemand += aAmount;
+
+            // Demand that overflows is treated as unbounded
+            if (myDemand < 0) {
+                myDemand = Long.MAX_VALUE;
+            }
+
+            updateFlow();
+        }
+
+        return this;
+    }
+
+    @Override
+    public ShardedListStream endHandler(final Handler<Void> aEndHandler) {
+        myEndHandler = aEndHandler;
+        return this;
+    }
+
+    /**
+     * Starts reading the listing's shards once they've been found.
+     *
+     * @param aResult The result of the search for the listing's shards
+     */
+    private void handleShards(final AsyncResult<List<ListQuery>> aResult) {
+        if (aResult.failed()) {
+            fail(aResult.cause());
+        } else {
+            hasShards = true;
+            myPendingShards.addAll(aResult.result());
+            startShards();
+        }
+    }
+
+    /**
+     * Starts as many shards as the concurrency limit allows, ending the stream if all the shards have been read.
+     */
+    private void startShards() {
+        while (!isEnded && myRunningShards.size() < myConcurrency && !myPendingShards.isEmpty()) {
+            final ReadStream<ListObject> shard = myShardOpener.apply(myPendingShards.poll());
+
+            myRunningShards.add(shard);
+
+            // A shard starts paused so that it reads ahead without passing on its objects out of turn
+            shard.pause();
+            shard.exceptionHandler(this::fail);
+            shard.endHandler(end -> handleShardEnd(shard));
+            shard.handler(this::handleObject);
+        }
+
+        if (!isEnded && myRunningShards.isEmpty() && myPendingShards.isEmpty()) {
+            end();
+        } else {
+            updateFlow();
+        }
+    }
+
+    /**
+     * Passes an object from one of the shards to the stream's handler.
+     *
+     * @param aObject An object from one of the shards
+     */
+    private void handleObject(final ListObject aObject) {
+        if (isEnded) {
+            return;
+        }
+
+        if (myDemand != Long.MAX_VALUE) {
+            myDemand -= 1;
+        }
+
+        myHandler.handle(aObject);
+
+        // The shards are paused right away, rather than through an update, since this may be part of one
+        if (myDemand == 0) {
+            for (final ReadStream<ListObject> shard : myRunningShards) {
+                shard.pause();
+            }
+        }
+    }
+
+    /**
+     * Replaces a shard that has been read with the next one.
+     *
+     * @param aShard A shard that has been read
+     */
+    private void handleShardEnd(final ReadStream<ListObject> aShard) {
+        myRunningShards.remove(aShard);
+        startShards();
+    }
+
+    /**
+     * Resumes the shards whose objects can be passed on, if there's demand for them, and pauses the rest.
+     */
+    private void updateFlow() {
+        if (!hasShards || isEnded) {
+            return;
+        }
+
+        // Resuming a shard can end it and start another, which calls for another update once this one is done
+        if (isUpdating) {
+            hasPendingUpdate = true;
+            return;
+        }
+
+        isUpdating = true;
+
+        try {
+            do {
+                hasPendingUpdate = false;
+
+                for (final ReadStream<ListObject> shard : new ArrayList<>(myRunningShards)) {
+                    if (!myRunningShards.contains(shard)) {
+                        continue;
+                    }
+
+                    if (myDemand > 0 && myHandler != null && (!isOrdered || shard == myRunningShards.get(0))) {
+                        shard.resume();
+                    } else {
+                        shard.pause();
+                    }
+                }
+            } while (hasPendingUpdate && !isEnded);
+        } finally {
+            isUpdating = false;
+        }
+    }
+
+    /**
+     * Ends the stream once all its shards have been read.
+     */
+    private void end() {
+        isEnded = true;
+
+        if (myEndHandler != null) {
+            myEndHandler.handle(null);
+        }
+    }
+
+    /**
+     * Ends the stream with an exception, stopping the shards that are still being read.
+     *
+     * @param aThrowable The cause of the failure
+     */
+    private void fail(final Throwable aThrowable) {
+        if (isEnded) {
+            return;
+        }
+
+        isEnded = true;
+        myPendingShards.clear();
+
+        for (final ReadStream<ListObject> shard : myRunningShards) {
+            shard.pause();
+        }
+
+        myRunningShards.clear();
+
+        if (myExceptionHandler != null) {
+            myExceptionHandler.handle(aThrowable);
+        } else {
+            LOGGER.error(aThrowable, aThrowable.getMessage());
+        }
+    }
+
+    /**
+     * Gets the shards of a listing of the supplied prefixes. Prefixes are sorted into key order, and those that
+     * start with another of the supplied prefixes are dropped, since their keys are already in the other's shard.
+     *
+     * @param aPrefixes The prefixes to list
+     * @return The shards of the listing, in key order
+     */
+    static List<ListQuery> getPrefixShards(final Collection<String> aPrefixes) {
+        final List<String> prefixes = new ArrayList<>(aPrefixes);
+        final List<ListQuery> shards = new ArrayList<>(prefixes.size());
+
+        String lastPrefix = null;
+
+        prefixes.sort(ListQuery::compareKeys);
+
+        for (final String prefix : prefixes) {
+            if (lastPrefix == null || !prefix.startsWith(lastPrefix)) {
+                shards.add(new ListQuery(prefix));
+                lastPrefix = prefix;
+            }
+        }
+
+        return shards;
+    }
+
+    /**
+     * Gets the shards of a listing that's split into ranges of keys at the supplied boundaries. Each boundary is the
+     * last key of one range, and the key after which the next range starts.
+     *
+     * @param aPrefix A prefix to limit which objects are listed (optional)
+     * @param aBoundaries The keys at which the listing is split
+     * @return The shards of the listing, in key order
+     */
+    static List<ListQuery> getRangeShards(final String aPrefix, final Collection<String> aBoundaries) {
+        final List<String> boundaries = new ArrayList<>(aBoundaries);
+        final List<ListQuery> shards = new ArrayList<>(boundaries.size() + 1);
+
+        String startAfter = null;
+
+        boundaries.sort(ListQuery::compareKeys);
+
+        for (final String boundary : boundaries) {
+            if (startAfter == null || !boundary.equals(startAfter)) {
+                shards.add(new ListQuery(aPrefix, null, startAfter, boundary));
+                startAfter = boundary;
+            }
+        }
+
+        shards.add(new ListQuery(aPrefix, null, startAfter, null));
+        return shards;
+    }
+
+    /**
+     * Finds the shards of a listing by listing its common prefixes. The listing is split into ranges of keys at each
+     * of the common prefixes, so that each range holds the keys of one of them along with any keys that fall between
+     * it and the next.
+     *
+     * @param aClient The client through which the common prefixes are listed
+     * @param aBucket An S3 bucket
+     * @param aPrefix A prefix to limit which objects are listed (optional)
+     * @param aDelimiter The delimiter that's used to find the common prefixes
+     * @param aHandler A handler for the shards of the listing
+     */
+    static void findDelimitedShards(final S3Client aClient, final String aBucket, final String aPrefix,
+            final String aDelimiter, final Handler<AsyncResult<List<ListQuery>>> aHandler) {
+        final ListQuery query = new ListQuery(aPrefix, aDelimiter, null, null);
+
+        findCommonPrefixes(aClient, aBucket, query, null, new ArrayList<>(), result -> {
+            if (result.failed()) {
+                aHandler.handle(Future.failedFuture(result.cause()));
+            } else {
+                aHandler.handle(Future.succeededFuture(getRangeShards(aPrefix, result.result())));
+            }
+        });
+    }
+
+    /**
+     * Pages through a delimited listing, collecting its common prefixes.
+     *
+     * @param aClient The client through which the listing is requested
+     * @param aBucket An S3 bucket
+     * @param aQuery The parameters of a delimited listing
+     * @param aToken The continuation token of the page to request, or null for the first page
+     * @param aPrefixes The common prefixes that have been collected so far
+     * @param aHandler A handler for the common prefixes
+     */
+    private static void findCommonPrefixes(final S3Client aClient, final String aBucket, final ListQuery aQuery,
+            final String aToken, final List<String> aPrefixes, final Handler<AsyncResult<List<String>>> aHandler) {
+        ObjectListStream.requestPage(aClient, aBucket, aQuery, aToken, null, result -> {
+            if (result.failed()) {
+                aHandler.handle(Future.failedFuture(result.cause()));
+            } else {
+                final BucketList page = result.result();
+
+                aPrefixes.addAll(page.getCommonPrefixes());
+
+                if (page.isTruncated() && page.getContinuationToken() != null) {
+                    findCommonPrefixes(aClient, aBucket, aQuery, page.getContinuationToken(), aPrefixes, aHandler);
+                } else {
+                    aHandler.handle(Future.succeededFuture(aPrefixes));
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,143 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import info.freelibrary.util.I18nRuntimeException;
+
+/**
+ * A cache of derived AWS V4 signing keys. A signing key is the end of a chain of four HMACs (over the date, region,
+ * service, and terminator) that only changes when one of its inputs does, which for a given set of credentials is
+ * once a day. Caching the key leaves a single HMAC, over the string to sign, to be done for each request.
+ */
+final class SigningKeyCache {
+
+    /** The V4 signing algorithm */
+    static final String HMAC_SHA256 = "HmacSHA256";
+
+    /** The string that ends a V4 credential scope */
+    static final String TERMINATOR = "aws4_request";
+
+    /** The number of keys after which the cache is cleared; keys only go stale when the date changes */
+    private static final int MAX_SIZE = 64;
+
+    private static final String AWS4 = "AWS4";
+
+    private final Map<Key, SecretKeySpec> myKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the signing key for the supplied credentials, date, region and service, deriving it if it's not already
+     * cached.
+     *
+     * @param aCredentials AWS credentials
+     * @param aDate A date in the <code>yyyyMMdd</code> format
+     * @param aRegion An AWS region
+     * @param aService An AWS service
+     * @return The signing key, ready to initialize a <code>Mac</code> with
+     */
+    SecretKeySpec getSigningKey(final AwsCredentials aCredentials, final String aDate, final String aRegion,
+            final String aService) {
+        final Key key = new Key(aCredentials.getAccessKey(), aCredentials.getSecretKey(), aDate, aRegion, aService);
+        final SecretKeySpec signingKey = myKeys.get(key);
+
+        if (signingKey != null) {
+            return signingKey;
+        }
+
+        if (myKeys.size() >= MAX_SIZE) {
+            myKeys.clear();
+        }
+
+        return myKeys.computeIfAbsent(key, k -> new SecretKeySpec(deriveSigningKey(k.mySecretKey, k.myDate,
+                k.myRegion, k.myService), HMAC_SHA256));
+    }
+
+    /**
+     * Derives a V4 signing key.
+     *
+     * @param aSecretKey An AWS secret key
+     * @param aDate A date in the <code>yyyyMMdd</code> format
+     * @param aRegion An AWS region
+     * @param aService An AWS service
+     * @return The signing key
+     */
+    static byte[] deriveSigningKey(final String aSecretKey, final String aDate, final String aRegion,
+            final String aService) {
+        try {
+            final Mac mac = Mac.getInstance(HMAC_SHA256);
+            final byte[] dateKey = hmac(mac, (AWS4 + aSecretKey).getBytes(StandardCharsets.UTF_8), aDate);
+
+            return hmac(mac, hmac(mac, hmac(mac, dateKey, aRegion), aService), TERMINATOR);
+        } catch (final NoSuchAlgorithmException | InvalidKeyException details) {
+            throw new I18nRuntimeException(details);
+        }
+    }
+
+    /**
+     * Computes an HMAC-SHA256 of the supplied value.
+     *
+     * @param aMac A MAC instance to use
+     * @param aKey The key to sign with
+     * @param aValue The value to sign
+     * @return The HMAC of the value
+     * @throws InvalidKeyException If the key is invalid
+     */
+    private static byte[] hmac(final Mac aMac, final byte[] aKey, final String aValue) throws InvalidKeyException {
+        aMac.init(new SecretKeySpec(aKey, HMAC_SHA256));
+        return aMac.doFinal(aValue.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The inputs from which a signing key is derived.
+     */
+    private static final class Key {
+
+        private final String myAccessKey;
+
+        private final String mySecretKey;
+
+        private final String myDate;
+
+        private final String myRegion;
+
+        private final String myService;
+
+        private Key(final String aAccessKey, final String aSecretKey, final String aDate, final String aRegion,
+                final String aService) {
+            myAccessKey = aAccessKey;
+            mySecretKey = aSecretKey;
+            myDate = aDate;
+            myRegion = aRegion;
+            myService = aService;
+        }
+
+        @Override
+        public boolean equals(final Object aObject) {
+            if (this == aObject) {
+                return true;
+            }
+
+            if (!(aObject instanceof Key)) {
+                return false;
+            }
+
+            final Key other = (Key) aObject;
+
+            return myDate.equals(other.myDate) && myAccessKey.equals(other.myAccessKey) && mySecretKey.equals(
+                    other.mySecretKey) && myRegion.equals(other.myRegion) && myService.equals(other.myService);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(myAccessKey, mySecretKey, myDate, myRegion, myService);
+        }
+    }
+}
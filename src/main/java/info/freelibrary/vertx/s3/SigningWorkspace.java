@@ -0,0 +1,216 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+
+import info.freelibrary.util.I18nRuntimeException;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * The per-thread objects used to sign a request. Creating a <code>MessageDigest</code> or <code>Mac</code>, and the
+ * buffers the canonical request and string to sign are built in, costs more than the hashing itself for a typical
+ * request, so each thread keeps its own set and reuses them for every request it signs.
+ */
+final class SigningWorkspace {
+
+    /** The algorithm used to hash canonical requests and payloads */
+    static final String SHA256 = "SHA-256";
+
+    private static final ThreadLocal<SigningWorkspace> WORKSPACE = ThreadLocal.withInitial(SigningWorkspace::new);
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** The size of a SHA-256 hash */
+    private static final int HASH_SIZE = 32;
+
+    /** The initial size of the text and byte buffers; they grow if a request needs more */
+    private static final int BUFFER_SIZE = 1024;
+
+    /** The largest buffer that's kept for reuse; anything bigger is dropped once it's been used */
+    private static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+    private final MessageDigest myDigest;
+
+    private final Mac myMac;
+
+    private final CharsetEncoder myEncoder;
+
+    private final char[] myHex = new char[HASH_SIZE * 2];
+
+    /** A buffer that's reused for each request; it's replaced if a request grows it past the maximum size */
+    @SuppressWarnings("PMD.AvoidStringBufferField")
+    private StringBuilder myText = new StringBuilder(BUFFER_SIZE);
+
+    private ByteBuffer myBytes = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private SigningWorkspace() {
+        try {
+            myDigest = MessageDigest.getInstance(SHA256);
+            myMac = Mac.getInstance(SigningKeyCache.HMAC_SHA256);
+        } catch (final NoSuchAlgorithmException details) {
+            throw new I18nRuntimeException(details);
+        }
+
+        myEncoder = StandardCharsets.UTF_8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Gets the current thread's signing workspace.
+     *
+     * @return The signing workspace
+     */
+    static SigningWorkspace get() {
+        return WORKSPACE.get();
+    }
+
+    /**
+     * Gets the workspace's text buffer, emptied so that it's ready to be written to.
+     *
+     * @return An empty text buffer
+     */
+    StringBuilder getText() {
+        if (myText.capacity() > MAX_BUFFER_SIZE) {
+            myText = new StringBuilder(BUFFER_SIZE);
+        } else {
+            myText.setLength(0);
+        }
+
+        return myText;
+    }
+
+    /**
+     * Gets the workspace's message digest, reset so that it's ready to be used.
+     *
+     * @return A SHA-256 message digest
+     */
+    MessageDigest getDigest() {
+        myDigest.reset();
+        return myDigest;
+    }
+
+    /**
+     * Hashes the UTF-8 encoding of the supplied text.
+     *
+     * @param aText The text to hash
+     * @return The hex-encoded SHA-256 hash of the text
+     */
+    String sha256Hex(final CharSequence aText) {
+        final MessageDigest digest = getDigest();
+
+        digest.update(encode(aText));
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Hashes the supplied payload, reading it from the buffer's own memory instead of copying it into a byte array.
+     *
+     * @param aPayload The payload to hash
+     * @return The hex-encoded SHA-256 hash of the payload
+     */
+    String sha256Hex(final Buffer aPayload) {
+        return toHex(digest(getDigest(), aPayload));
+    }
+
+    /**
+     * Finishes a digest of the supplied payload, reading it through the NIO views of the buffer's memory.
+     *
+     * @param aDigest A message digest
+     * @param aPayload The payload to digest
+     * @return The payload's digest
+     */
+    static byte[] digest(final MessageDigest aDigest, final Buffer aPayload) {
+        final ByteBuf byteBuf = aPayload.getByteBuf();
+
+        for (final ByteBuffer nioBuffer : byteBuf.nioBuffers(byteBuf.readerIndex(), byteBuf.readableBytes())) {
+            aDigest.update(nioBuffer);
+        }
+
+        return aDigest.digest();
+    }
+
+    /**
+     * Signs the UTF-8 encoding of the supplied text.
+     *
+     * @param aKey The key to sign with
+     * @param aText The text to sign
+     * @return The hex-encoded HMAC-SHA256 of the text
+     */
+    String hmacSha256Hex(final Key aKey, final CharSequence aText) {
+        try {
+            myMac.init(aKey);
+        } catch (final InvalidKeyException details) {
+            throw new I18nRuntimeException(details);
+        }
+
+        myMac.update(encode(aText));
+        return toHex(myMac.doFinal());
+    }
+
+    /**
+     * Converts the supplied bytes to lower-case hex.
+     *
+     * @param aBytes The bytes to convert
+     * @return The bytes in hex format
+     */
+    String toHex(final byte[] aBytes) {
+        final char[] hex = aBytes.length <= HASH_SIZE ? myHex : new char[aBytes.length * 2];
+
+        for (int index = 0; index < aBytes.length; index++) {
+            hex[index * 2] = HEX_DIGITS[aBytes[index] >> 4 & 0xf];
+            hex[index * 2 + 1] = HEX_DIGITS[aBytes[index] & 0xf];
+        }
+
+        return new String(hex, 0, aBytes.length * 2);
+    }
+
+    /**
+     * Encodes the supplied text as UTF-8 into the workspace's byte buffer.
+     *
+     * @param aText The text to encode
+     * @return The byte buffer, ready to be read
+     */
+    private ByteBuffer encode(final CharSequence aText) {
+        final CharBuffer chars = CharBuffer.wrap(aText);
+
+        if (myBytes.capacity() > MAX_BUFFER_SIZE) {
+            myBytes = ByteBuffer.allocate(BUFFER_SIZE);
+        }
+
+        myBytes.clear();
+        myEncoder.reset();
+
+        CoderResult result = myEncoder.encode(chars, myBytes, true);
+
+        while (result.isOverflow()) {
+            final ByteBuffer bytes = ByteBuffer.allocate(myBytes.capacity() * 2);
+
+            myBytes.flip();
+            myBytes = bytes.put(myBytes);
+            result = myEncoder.encode(chars, myBytes, true);
+        }
+
+        while (myEncoder.flush(myBytes).isOverflow()) {
+            final ByteBuffer bytes = ByteBuffer.allocate(myBytes.capacity() * 2);
+
+            myBytes.flip();
+            myBytes = bytes.put(myBytes);
+        }
+
+        myBytes.flip();
+        return myBytes;
+    }
+}
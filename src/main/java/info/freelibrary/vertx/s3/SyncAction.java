@@ -0,0 +1,118 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.nio.file.Path;
+
+/**
+ * An action that a sync takes to bring an object in the target bucket up to date with its source (see
+ * {@link BucketSync}).
+ */
+public class SyncAction {
+
+    private final Type myType;
+
+    private final String myKey;
+
+    private final ListObject mySource;
+
+    private final Path myFile;
+
+    private final String mySourceBucket;
+
+    private final String mySourceKey;
+
+    /**
+     * Creates a new sync action.
+     *
+     * @param aType The type of action
+     * @param aKey The S3 key of the object in the target bucket that the action changes
+     * @param aSource The source of the object, or null if the object is deleted
+     * @param aFile The local file that's uploaded, or null if the object isn't uploaded
+     * @param aSourceBucket The bucket the object is copied from, or null if the object isn't copied
+     * @param aSourceKey The S3 key of the object that's copied, or null if the object isn't copied
+     */
+    SyncAction(final Type aType, final String aKey, final ListObject aSource, final Path aFile,
+            final String aSourceBucket, final String aSourceKey) {
+        myType = aType;
+        myKey = aKey;
+        mySource = aSource;
+        myFile = aFile;
+        mySourceBucket = aSourceBucket;
+        mySourceKey = aSourceKey;
+    }
+
+    /**
+     * Gets the type of the action.
+     *
+     * @return The type of the action
+     */
+    public Type getType() {
+        return myType;
+    }
+
+    /**
+     * Gets the S3 key of the object in the target bucket that the action changes.
+     *
+     * @return The S3 key of the object in the target bucket
+     */
+    public String getKey() {
+        return myKey;
+    }
+
+    /**
+     * Gets the source of the object: a local file or an object in the source bucket, with its key relative to the
+     * synced directory or prefix.
+     *
+     * @return The source of the object, or null if the object is deleted
+     */
+    public ListObject getSource() {
+        return mySource;
+    }
+
+    /**
+     * Gets the local file that's uploaded.
+     *
+     * @return The local file, or null if the action doesn't upload a file
+     */
+    public Path getFile() {
+        return myFile;
+    }
+
+    /**
+     * Gets the bucket the object is copied from.
+     *
+     * @return The source bucket, or null if the action doesn't copy an object
+     */
+    public String getSourceBucket() {
+        return mySourceBucket;
+    }
+
+    /**
+     * Gets the S3 key of the object that's copied.
+     *
+     * @return The source object's S3 key, or null if the action doesn't copy an object
+     */
+    public String getSourceKey() {
+        return mySourceKey;
+    }
+
+    @Override
+    public String toString() {
+        return myType + " " + myKey;
+    }
+
+    /**
+     * The types of sync action.
+     */
+    public enum Type {
+
+        /** Uploads a local file that's new or has changed */
+        PUT,
+
+        /** Copies an object from the source bucket that's new or has changed */
+        COPY,
+
+        /** Deletes an object that's no longer in the source */
+        DELETE
+    }
+}
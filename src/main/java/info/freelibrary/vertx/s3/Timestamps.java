@@ -0,0 +1,290 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.text.ParseException;
+
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
+/**
+ * A parser of the ISO-8601 timestamps in S3's responses, like <code>2020-04-26T04:34:02.920Z</code>. Timestamps are
+ * read straight from the characters a SAX handler has collected, into milliseconds since the epoch, without creating
+ * any intermediate objects. Unlike a shared <code>SimpleDateFormat</code>, the parser is safe to use from any number
+ * of threads at once.
+ */
+final class Timestamps {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Timestamps.class, Constants.BUNDLE_NAME);
+
+    /** The length of the shortest timestamp, which has seconds but no fraction of a second */
+    private static final int MIN_LENGTH = "yyyy-MM-ddTHH:mm:ssZ".length();
+
+    /** The number of days from 0000-03-01 to the epoch, in the proleptic Gregorian calendar */
+    private static final long EPOCH_OFFSET = 719_468;
+
+    /** The number of days in a 400 year cycle of the Gregorian calendar */
+    private static final int DAYS_PER_ERA = 146_097;
+
+    private static final int YEARS_PER_ERA = 400;
+
+    private static final int HOURS_PER_DAY = 24;
+
+    private static final int MINUTES_PER_HOUR = 60;
+
+    private static final int SECONDS_PER_MINUTE = 60;
+
+    private static final int MILLIS_PER_SECOND = 1000;
+
+    private static final int MONTHS_PER_YEAR = 12;
+
+    /** The days in each month of a leap year */
+    private static final int[] DAYS_PER_MONTH = { 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+    private static final int FEBRUARY = 2;
+
+    private static final int DECIMAL = 10;
+
+    /** The position of the fraction of a second that may follow a timestamp's seconds */
+    private static final int FRACTION = 19;
+
+    /** An empty private constructor for this utility class */
+    private Timestamps() {
+    }
+
+    /**
+     * Parses an ISO-8601 timestamp into milliseconds since the epoch. The timestamp must have a date, a time with
+     * seconds, and either a <code>Z</code> or an offset from UTC; any fraction of a second beyond milliseconds is
+     * dropped.
+     *
+     * @param aTimestamp An ISO-8601 timestamp
+     * @return The number of milliseconds since 1970-01-01T00:00:00Z
+     * @throws ParseException If the supplied text isn't an ISO-8601 timestamp
+     */
+    static long parse(final CharSequence aTimestamp) throws ParseException {
+        final int length = aTimestamp.length();
+
+        if (length < MIN_LENGTH) {
+            throw error(aTimestamp, length);
+        }
+
+        final int end = getFractionEnd(aTimestamp);
+
+        return ((toEpochDay(aTimestamp) * HOURS_PER_DAY * MINUTES_PER_HOUR - toOffset(aTimestamp, end)) *
+                SECONDS_PER_MINUTE + toSecondOfDay(aTimestamp)) * MILLIS_PER_SECOND + toMillis(aTimestamp, end);
+    }
+
+    /**
+     * Parses the date of a timestamp into the number of days from the epoch to the date, in the proleptic Gregorian
+     * calendar.
+     *
+     * @param aTimestamp An ISO-8601 timestamp
+     * @return The number of days since 1970-01-01
+     * @throws ParseException If the timestamp doesn't start with a date
+     */
+    private static long toEpochDay(final CharSequence aTimestamp) throws ParseException {
+        final int year = digits(aTimestamp, 0, 4);
+        final int month = digits(aTimestamp, expect(aTimestamp, 4, '-'), 2);
+        final int day = digits(aTimestamp, expect(aTimestamp, 7, '-'), 2);
+
+        if (month < 1 || month > MONTHS_PER_YEAR || day < 1 || day > getLengthOfMonth(year, month)) {
+            throw error(aTimestamp, 5);
+        }
+
+        return toEpochDay(year, month, day);
+    }
+
+    /**
+     * Parses the time of a timestamp, without any fraction of a second, into the number of seconds since midnight.
+     *
+     * @param aTimestamp An ISO-8601 timestamp
+     * @return The number of seconds since midnight
+     * @throws ParseException If the timestamp doesn't have a time after its date
+     */
+    private static int toSecondOfDay(final CharSequence aTimestamp) throws ParseException {
+        final int hour = digits(aTimestamp, expect(aTimestamp, 10, 'T'), 2);
+        final int minute = digits(aTimestamp, expect(aTimestamp, 13, ':'), 2);
+        final int second = digits(aTimestamp, expect(aTimestamp, 16, ':'), 2);
+
+        if (hour >= HOURS_PER_DAY || minute >= MINUTES_PER_HOUR || second >= SECONDS_PER_MINUTE) {
+            throw error(aTimestamp, 11);
+        }
+
+        return (hour * MINUTES_PER_HOUR + minute) * SECONDS_PER_MINUTE + second;
+    }
+
+    /**
+     * Finds the end of the fraction of a second that may follow a timestamp's seconds.
+     *
+     * @param aTimestamp An ISO-8601 timestamp
+     * @return The position after the fraction of a second, or after the seconds if there's no fraction
+     * @throws ParseException If the timestamp has a decimal point without any digits after it
+     */
+    private static int getFractionEnd(final CharSequence aTimestamp) throws ParseException {
+        final int length = aTimestamp.length();
+        int position = FRACTION;
+
+        if (aTimestamp.charAt(position) == '.') {
+            position += 1;
+
+            while (position < length && isDigit(aTimestamp.charAt(position))) {
+                position += 1;
+            }
+
+            if (position == FRACTION + 1) {
+                throw error(aTimestamp, position);
+            }
+        }
+
+        return position;
+    }
+
+    /**
+     * Parses the milliseconds in the fraction of a second that may follow a timestamp's seconds; any more precise
+     * digits are dropped.
+     *
+     * @param aTimestamp An ISO-8601 timestamp
+     * @param aEnd The position after the fraction of a second
+     * @return The number of milliseconds
+     */
+    private static int toMillis(final CharSequence aTimestamp, final int aEnd) {
+        int millis = 0;
+        int scale = MILLIS_PER_SECOND;
+
+        for (int index = FRACTION + 1; index < aEnd && scale > 1; index++) {
+            scale /= DECIMAL;
+            millis += (aTimestamp.charAt(index) - '0') * scale;
+        }
+
+        return millis;
+    }
+
+    /**
+     * Gets the number of days from the epoch to the supplied date, in the proleptic Gregorian calendar.
+     *
+     * @param aYear A year
+     * @param aMonth A month, from 1 to 12
+     * @param aDay A day of the month
+     * @return The number of days since 1970-01-01
+     */
+    private static long toEpochDay(final int aYear, final int aMonth, final int aDay) {
+        // Years are counted from March, so that a leap day is the last day of its year
+        final int year = aMonth <= FEBRUARY ? aYear - 1 : aYear;
+        final int era = Math.floorDiv(year, YEARS_PER_ERA);
+        final int yearOfEra = year - era * YEARS_PER_ERA;
+        final int dayOfYear = (153 * (aMonth + (aMonth > FEBRUARY ? -3 : 9)) + 2) / 5 + aDay - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return (long) era * DAYS_PER_ERA + dayOfEra - EPOCH_OFFSET;
+    }
+
+    /**
+     * Parses the end of a timestamp, which is either a <code>Z</code> or an offset from UTC like <code>+01:00</code>.
+     *
+     * @param aTimestamp An ISO-8601 timestamp
+     * @param aPosition The position of the end of the timestamp
+     * @return The offset from UTC in minutes
+     * @throws ParseException If the end of the timestamp isn't a <code>Z</code> or an offset from UTC
+     */
+    private static int toOffset(final CharSequence aTimestamp, final int aPosition) throws ParseException {
+        final int length = aTimestamp.length();
+
+        if (aPosition < length && aTimestamp.charAt(aPosition) == 'Z' && aPosition + 1 == length) {
+            return 0;
+        } else if (aPosition + 6 != length || aTimestamp.charAt(aPosition) != '+' && aTimestamp.charAt(
+                aPosition) != '-') {
+            throw error(aTimestamp, aPosition);
+        }
+
+        final int hours = digits(aTimestamp, aPosition + 1, 2);
+        final int minutes = digits(aTimestamp, expect(aTimestamp, aPosition + 3, ':'), 2);
+        final int offset = hours * MINUTES_PER_HOUR + minutes;
+
+        return aTimestamp.charAt(aPosition) == '-' ? -offset : offset;
+    }
+
+    /**
+     * Parses a fixed number of decimal digits.
+     *
+     * @param aTimestamp An ISO-8601 timestamp
+     * @param aPosition The position of the first digit
+     * @param aCount The number of digits
+     * @return The value of the digits
+     * @throws ParseException If any of the characters isn't a digit
+     */
+    private static int digits(final CharSequence aTimestamp, final int aPosition, final int aCount)
+            throws ParseException {
+        int value = 0;
+
+        for (int index = aPosition; index < aPosition + aCount; index++) {
+            final char digit = aTimestamp.charAt(index);
+
+            if (!isDigit(digit)) {
+                throw error(aTimestamp, index);
+            }
+
+            value = value * DECIMAL + digit - '0';
+        }
+
+        return value;
+    }
+
+    /**
+     * Checks that a timestamp has the expected separator at the supplied position.
+     *
+     * @param aTimestamp An ISO-8601 timestamp
+     * @param aPosition The position of a separator
+     * @param aSeparator The expected separator
+     * @return The position after the separator
+     * @throws ParseException If the timestamp has a different character at the position
+     */
+    private static int expect(final CharSequence aTimestamp, final int aPosition, final char aSeparator)
+            throws ParseException {
+        if (aTimestamp.charAt(aPosition) != aSeparator) {
+            throw error(aTimestamp, aPosition);
+        }
+
+        return aPosition + 1;
+    }
+
+    /**
+     * Checks whether a character is an ASCII digit.
+     *
+     * @param aChar A character
+     * @return True if the character is an ASCII digit; else, false
+     */
+    private static boolean isDigit(final char aChar) {
+        return aChar >= '0' && aChar <= '9';
+    }
+
+    /**
+     * Gets the number of days in a month.
+     *
+     * @param aYear A year
+     * @param aMonth A month, from 1 to 12
+     * @return The number of days in the month
+     */
+    private static int getLengthOfMonth(final int aYear, final int aMonth) {
+        return aMonth == FEBRUARY && !isLeapYear(aYear) ? DAYS_PER_MONTH[1] - 1 : DAYS_PER_MONTH[aMonth - 1];
+    }
+
+    /**
+     * Checks whether a year is a leap year in the Gregorian calendar.
+     *
+     * @param aYear A year
+     * @return True if the year is a leap year; else, false
+     */
+    private static boolean isLeapYear(final int aYear) {
+        return aYear % 4 == 0 && (aYear % 100 != 0 || aYear % YEARS_PER_ERA == 0);
+    }
+
+    /**
+     * Creates an exception for a timestamp that can't be parsed.
+     *
+     * @param aTimestamp The text that was being parsed
+     * @param aPosition The position at which the text couldn't be parsed
+     * @return An exception to throw
+     */
+    private static ParseException error(final CharSequence aTimestamp, final int aPosition) {
+        return new ParseException(LOGGER.getMessage(MessageCodes.VS3_034, aTimestamp), aPosition);
+    }
+}
@@ -0,0 +1,81 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.net.MalformedURLException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Support for tests that run an S3 client against a local HTTP server that stands in for S3.
+ */
+@RunWith(VertxUnitRunner.class)
+public abstract class AbstractMockS3Test {
+
+    /** The bucket that the tests use */
+    protected static final String BUCKET = "bucket";
+
+    private static final String LOCALHOST = "localhost";
+
+    /** The Vert.x instance that runs both the client and the server */
+    protected Vertx myVertx;
+
+    /** A client connected to the local server */
+    protected S3Client myClient;
+
+    private HttpServer myServer;
+
+    /**
+     * Starts the local server and connects a client to it.
+     *
+     * @param aContext A test context
+     */
+    @Before
+    public void startServer(final TestContext aContext) {
+        myVertx = Vertx.vertx();
+        myServer = myVertx.createHttpServer().requestHandler(this::handle);
+        myServer.listen(0, LOCALHOST, aContext.asyncAssertSuccess(server -> {
+            try {
+                myClient = new S3Client(myVertx, "access-key", "secret-key", "http://" + LOCALHOST + ':' + server
+                        .actualPort());
+            } catch (final MalformedURLException details) {
+                aContext.fail(details);
+            }
+        }));
+    }
+
+    /**
+     * Stops the client and the local server.
+     *
+     * @param aContext A test context
+     */
+    @After
+    public void stopServer(final TestContext aContext) {
+        myClient.close();
+        myVertx.close(aContext.asyncAssertSuccess());
+    }
+
+    /**
+     * Gets the path of an object in the test bucket, as it's requested from the local server.
+     *
+     * @param aKey An S3 key
+     * @return The path of the object
+     */
+    protected static String getPath(final String aKey) {
+        return '/' + BUCKET + '/' + aKey;
+    }
+
+    /**
+     * Answers a request that the client sent to the local server.
+     *
+     * @param aRequest A request from the client
+     */
+    protected abstract void handle(HttpServerRequest aRequest);
+}
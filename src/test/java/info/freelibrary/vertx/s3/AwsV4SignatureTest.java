@@ -0,0 +1,224 @@
+package info.freelibrary.vertx.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.http.HttpHeaders;
+import uk.co.lucasweb.aws.v4.signer.HttpRequest;
+import uk.co.lucasweb.aws.v4.signer.Signer;
+
+/**
+ * Tests of the AwsV4Signature, checking its signatures against those of the external V4 signer it replaced.
+ */
+public class AwsV4SignatureTest {
+
+    private static final String TIMESTAMP = "20130524T000000Z";
+
+    private static final String CONTENT_SHA256 = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+
+    private static final String HOST = "https://s3.amazonaws.com";
+
+    private static final String OBJECT = HOST + "/bucket/key";
+
+    private static final String META_HEADER = "x-amz-meta-note";
+
+    private static final String HOST_HEADER = "Host";
+
+    private static final String DATE_HEADER = "X-Amz-Date";
+
+    private static final String SHA256_HEADER = "x-amz-content-sha256";
+
+    private static final String GET = "GET";
+
+    private static final String PUT = "PUT";
+
+    private AwsCredentials myCredentials;
+
+    @Before
+    public void setUp() {
+        myCredentials = new AwsCredentials(UUID.randomUUID().toString(), UUID.randomUUID().toString());
+    }
+
+    /**
+     * Tests signing a request for an object.
+     */
+    @Test
+    public final void testSignObject() {
+        assertSignature(GET, HOST + "/bucket/key.txt", MultiMap.caseInsensitiveMultiMap());
+    }
+
+    /**
+     * Tests signing a request for an object whose key needs to be encoded.
+     */
+    @Test
+    public final void testSignEncodedKey() {
+        assertSignature(PUT, HOST + "/bucket/a+key=with~odd(chars)!", MultiMap.caseInsensitiveMultiMap());
+    }
+
+    /**
+     * Tests that a key that's already percent-encoded isn't encoded again when it's signed.
+     */
+    @Test
+    public final void testSignPercentEncodedKey() {
+        final String key = HOST + "/bucket/(a+key)";
+
+        assertSignature(PUT, key, MultiMap.caseInsensitiveMultiMap());
+        assertEquals(sign(PUT, key), sign(PUT, HOST + "/bucket/%28a%2Bkey%29"));
+        assertEquals(sign(PUT, key), sign(PUT, HOST + "/bucket/%28a%2bkey%29"));
+    }
+
+    /**
+     * Tests signing a request with a query string.
+     */
+    @Test
+    public final void testSignQuery() {
+        assertSignature(GET, HOST + "/bucket?prefix=a/b&list-type=2&delimiter=/", MultiMap
+                .caseInsensitiveMultiMap());
+    }
+
+    /**
+     * Tests that query values that are already percent-encoded aren't encoded again when they're signed.
+     */
+    @Test
+    public final void testSignPercentEncodedQuery() {
+        final String query = HOST + "/bucket?continuation-token=a/b+c=&list-type=2";
+
+        assertSignature(GET, query, MultiMap.caseInsensitiveMultiMap());
+        assertEquals(sign(GET, query), sign(GET, HOST + "/bucket?continuation-token=a%2Fb%2Bc%3D&list-type=2"));
+        assertEquals(sign(GET, query), sign(GET, HOST + "/bucket?continuation-token=" + RequestSigner.encode(
+                "a/b+c=") + "&list-type=2"));
+    }
+
+    /**
+     * Tests that a query value is fully encoded, including any percent signs in it.
+     */
+    @Test
+    public final void testEncode() {
+        assertEquals("a%2Fb%2Bc%3D%2520~%E2%82%AC", RequestSigner.encode("a/b+c=%20~\u20AC"));
+    }
+
+    /**
+     * Tests signing a request with query parameters that don't have values.
+     */
+    @Test
+    public final void testSignValuelessQuery() {
+        assertSignature("POST", HOST + "/bucket/key?uploads", MultiMap.caseInsensitiveMultiMap());
+    }
+
+    /**
+     * Tests signing a request with user metadata and a content type.
+     */
+    @Test
+    public final void testSignHeaders() {
+        final MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+
+        headers.add(META_HEADER, "  some   spaced  value ");
+        headers.add(HttpHeaders.CONTENT_TYPE.toString(), "text/plain");
+        assertSignature(PUT, HOST + "/bucket/key?partNumber=1&uploadId=abc", headers);
+    }
+
+    /**
+     * Tests that signing a request adds the headers the signature requires.
+     */
+    @Test
+    public final void testSignAddsHeaders() {
+        final MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+
+        new AwsV4Signature(URI.create(OBJECT), myCredentials).sign(headers, GET, CONTENT_SHA256,
+                TIMESTAMP);
+
+        assertEquals("s3.amazonaws.com", headers.get(HOST_HEADER));
+        assertEquals(TIMESTAMP, headers.get(DATE_HEADER));
+        assertEquals(CONTENT_SHA256, headers.get(SHA256_HEADER));
+    }
+
+    /**
+     * Tests that a session token is signed and added to the request's headers.
+     */
+    @Test
+    public final void testSignSessionToken() {
+        final MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+        final AwsCredentials credentials = new AwsCredentials(myCredentials.getAccessKey(), myCredentials
+                .getSecretKey(), UUID.randomUUID().toString());
+        final String authorization = new AwsV4Signature(URI.create(OBJECT), credentials,
+                new SigningKeyCache()).sign(headers, GET, CONTENT_SHA256, TIMESTAMP);
+
+        assertEquals(credentials.getSessionToken(), headers.get("X-Amz-Security-Token"));
+        assertTrue(authorization.contains("x-amz-security-token"));
+    }
+
+    /**
+     * Tests signing a request with header values that need to be normalized.
+     */
+    @Test
+    public final void testSignMultilineHeader() {
+        final MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+
+        headers.add(META_HEADER, " first  line \n  second line");
+        headers.add(META_HEADER, "another value");
+        assertSignature(PUT, OBJECT, headers);
+    }
+
+    /**
+     * Tests signing a request for an object whose key has non-ASCII characters.
+     */
+    @Test
+    public final void testSignUnicodeKey() {
+        assertSignature(GET, HOST + "/bucket/\u20AC/caf\u00E9", MultiMap.caseInsensitiveMultiMap());
+    }
+
+    /**
+     * Tests the format of a request's timestamp.
+     */
+    @Test
+    public final void testGetTimestamp() {
+        assertTrue(AwsV4Signature.getTimestamp().matches("\\d{8}T\\d{6}Z"));
+    }
+
+    /**
+     * Tests converting a hash to hex.
+     */
+    @Test
+    public final void testHashToHex() {
+        assertEquals("00017f80ff", AwsV4Signature.hashToHex(new byte[] { 0, 1, 127, -128, -1 }));
+    }
+
+    /**
+     * Asserts that a request is signed just as the external signer would have signed it.
+     *
+     * @param aMethod A request method
+     * @param aURI A request URI
+     * @param aHeaders The request's headers
+     */
+    private void assertSignature(final String aMethod, final String aURI, final MultiMap aHeaders) {
+        final URI uri = URI.create(aURI);
+        final Signer.Builder signer = Signer.builder().awsCredentials(myCredentials);
+        final String host = uri.getHost();
+
+        aHeaders.forEach(header -> signer.header(header.getKey(), header.getValue()));
+        signer.header(HOST_HEADER, host).header(DATE_HEADER, TIMESTAMP).header(SHA256_HEADER, CONTENT_SHA256);
+
+        assertEquals(signer.buildS3(new HttpRequest(aMethod, uri), CONTENT_SHA256).getSignature(),
+                new AwsV4Signature(uri, myCredentials, new SigningKeyCache()).sign(aHeaders, aMethod, CONTENT_SHA256,
+                        TIMESTAMP));
+    }
+
+    /**
+     * Signs a request for the supplied URI.
+     *
+     * @param aMethod An HTTP method
+     * @param aURI A request URI
+     * @return The request's authorization value
+     */
+    private String sign(final String aMethod, final String aURI) {
+        return new AwsV4Signature(URI.create(aURI), myCredentials, new SigningKeyCache()).sign(MultiMap
+                .caseInsensitiveMultiMap(), aMethod, CONTENT_SHA256, TIMESTAMP);
+    }
+}
@@ -4,6 +4,7 @@ package info.freelibrary.vertx.s3;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.UUID;
 
@@ -13,6 +14,8 @@ import org.junit.runner.RunWith;
 
 import info.freelibrary.util.StringUtils;
 
+import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
 
@@ -26,6 +29,24 @@ public class BucketListTest {
 
     private static final String STANDARD_KEY = "e48af1f0-b745-4d11-ad8c-3b024ecde959";
 
+    private static final String LIST = "src/test/resources/list.xml";
+
+    private static final String DELIMITED_LIST = "src/test/resources/list-delimited.xml";
+
+    private static final String OWNER_NAME = "webfile";
+
+    private static final String PHOTOS = "photos/";
+
+    private static final String PHOTOS_2020 = "photos/2020/";
+
+    private static final String PHOTOS_0 = "photos0";
+
+    private static final String LAST = "z";
+
+    /** Keys in the order S3 lists them, which isn't UTF-16 order for a supplementary character */
+    private static final String[] SORTED_KEYS = { "a", PHOTOS, PHOTOS_2020 + "a.jpg", PHOTOS_2020 + "b.jpg",
+        "photos/\uFFFD", "photos/\uD83D\uDE00", PHOTOS_0, "videos/a.mp4" };
+
     private BucketList myBucketList;
 
     /**
@@ -36,8 +57,7 @@ public class BucketListTest {
      */
     @Before
     public final void setUp(final TestContext aContext) throws IOException {
-        myBucketList = new BucketList(StringUtils.read(new File("src/test/resources/list.xml"),
-                StandardCharsets.UTF_8));
+        myBucketList = new BucketList(StringUtils.read(new File(LIST), StandardCharsets.UTF_8));
     }
 
     /**
@@ -197,4 +217,200 @@ public class BucketListTest {
     public final void testIndexOfKeyFalse(final TestContext aContext) {
         aContext.assertEquals(-1, myBucketList.indexOfKey(UUID.randomUUID().toString()));
     }
+
+    /**
+     * Tests that a complete listing isn't truncated and has no continuation token.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testIsTruncatedFalse(final TestContext aContext) {
+        aContext.assertFalse(myBucketList.isTruncated());
+        aContext.assertNull(myBucketList.getContinuationToken());
+    }
+
+    /**
+     * Tests reading the continuation token of a truncated listing.
+     *
+     * @param aContext A test context
+     * @throws IOException If there is trouble reading the XML list test fixture
+     */
+    @Test
+    public final void testIsTruncatedTrue(final TestContext aContext) throws IOException {
+        final BucketList bucketList = new BucketList(StringUtils.read(new File(
+                "src/test/resources/list-truncated.xml"), StandardCharsets.UTF_8));
+
+        aContext.assertTrue(bucketList.isTruncated());
+        aContext.assertEquals("1ueGcxLPRx1Tr/XYExHnhbYLgveDs2J/wm36Hy4vbOwN=", bucketList.getContinuationToken());
+        aContext.assertEquals(1, bucketList.size());
+    }
+
+    /**
+     * Tests reading the common prefixes of a delimited listing, which aren't included in its objects.
+     *
+     * @param aContext A test context
+     * @throws IOException If there is trouble reading the XML list test fixture
+     */
+    @Test
+    public final void testGetCommonPrefixes(final TestContext aContext) throws IOException {
+        final BucketList bucketList = new BucketList(StringUtils.read(new File(DELIMITED_LIST),
+                StandardCharsets.UTF_8));
+
+        aContext.assertEquals(Arrays.asList(PHOTOS, "videos/"), bucketList.getCommonPrefixes());
+        aContext.assertEquals(1, bucketList.size());
+        aContext.assertEquals(STANDARD_KEY, bucketList.get(0).getKey());
+        aContext.assertTrue(myBucketList.getCommonPrefixes().isEmpty());
+    }
+
+    /**
+     * Tests reading the owners of the objects in a listing.
+     *
+     * @param aContext A test context
+     * @throws IOException If there is trouble reading the XML list test fixture
+     */
+    @Test
+    public final void testOwner(final TestContext aContext) throws IOException {
+        final ListObject listObject = new BucketList(StringUtils.read(new File(DELIMITED_LIST),
+                StandardCharsets.UTF_8)).get(0);
+
+        aContext.assertEquals("75aa57f09aa0c8caeab4f8c24e99d10f8e7faeebf76c078efc7c6caea54ba06a", listObject
+                .getOwnerID());
+        aContext.assertEquals(OWNER_NAME, listObject.getOwnerDisplayName());
+        aContext.assertEquals("STANDARD", listObject.getStorageClass());
+        aContext.assertNull(myBucketList.get(0).getOwnerID());
+    }
+
+    /**
+     * Tests that a compact copy of a bucket list has the same contents.
+     *
+     * @param aContext A test context
+     * @throws IOException If there is trouble reading the XML list test fixture
+     */
+    @Test
+    public final void testToCompact(final TestContext aContext) throws IOException {
+        final BucketList compactList = new BucketList(StringUtils.read(new File(DELIMITED_LIST),
+                StandardCharsets.UTF_8)).toCompact();
+
+        aContext.assertTrue(compactList.isCompact());
+        aContext.assertFalse(myBucketList.isCompact());
+        aContext.assertEquals(compactList, compactList.toCompact());
+        aContext.assertEquals(1, compactList.size());
+        aContext.assertEquals(STANDARD_KEY, compactList.get(0).getKey());
+        aContext.assertEquals(OWNER_NAME, compactList.get(0).getOwnerDisplayName());
+        aContext.assertEquals(0, compactList.indexOfKey(STANDARD_KEY));
+        aContext.assertEquals(2, compactList.getCommonPrefixes().size());
+    }
+
+    /**
+     * Tests parsing a list response straight into compact form.
+     *
+     * @param aContext A test context
+     * @throws IOException If there is trouble reading the XML list test fixture
+     */
+    @Test
+    public final void testCompactBuffer(final TestContext aContext) throws IOException {
+        final BucketList compactList = new BucketList(Buffer.buffer(StringUtils.read(new File(LIST),
+                StandardCharsets.UTF_8)), true);
+
+        aContext.assertTrue(compactList.isCompact());
+        aContext.assertEquals(myBucketList.size(), compactList.size());
+
+        for (int index = 0; index < compactList.size(); index++) {
+            final ListObject expected = myBucketList.get(index);
+            final ListObject found = compactList.get(index);
+
+            aContext.assertEquals(expected.getKey(), found.getKey());
+            aContext.assertEquals(expected.getETag(), found.getETag());
+            aContext.assertEquals(expected.getSize(), found.getSize());
+            aContext.assertEquals(expected.getLastUpdated(), found.getLastUpdated());
+            aContext.assertEquals(expected.getStorageClass(), found.getStorageClass());
+        }
+
+        aContext.assertTrue(compactList.containsKey(PREFIXED_KEY));
+    }
+
+    /**
+     * Tests reading a listing's stream into a single compact bucket list.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testCollect(final TestContext aContext) {
+        final ObjectListStream stream = new ObjectListStream((token, objects, handler) -> handler.handle(Future
+                .succeededFuture(myBucketList)), new ListQuery(new ListOptions()));
+
+        BucketList.collect(stream, true, result -> {
+            aContext.assertTrue(result.succeeded());
+            aContext.assertTrue(result.result().isCompact());
+            aContext.assertEquals(2, result.result().size());
+            aContext.assertEquals(STANDARD_KEY, result.result().get(1).getKey());
+            aContext.assertFalse(result.result().isTruncated());
+        });
+    }
+
+    /**
+     * Tests looking up keys in a sorted listing, whether it's searched, indexed or compact.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testSortedIndexOfKey(final TestContext aContext) {
+        final BucketList bucketList = getSortedList();
+
+        aContext.assertTrue(bucketList.isSorted());
+        aContext.assertFalse(bucketList.isKeyIndexed());
+        aContext.assertFalse(myBucketList.isSorted());
+        aContext.assertTrue(myBucketList.isKeyIndexed());
+
+        for (final BucketList list : Arrays.asList(bucketList, bucketList.toCompact(), getSortedList().setKeyIndexed(
+                true))) {
+            for (int index = 0; index < SORTED_KEYS.length; index++) {
+                aContext.assertEquals(index, list.indexOfKey(SORTED_KEYS[index]));
+            }
+
+            aContext.assertEquals(-1, list.indexOfKey("photos"));
+            aContext.assertEquals(-1, list.indexOfKey(LAST));
+            aContext.assertFalse(list.containsKey(""));
+        }
+    }
+
+    /**
+     * Tests getting ranges of a listing by key and by prefix.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testSubList(final TestContext aContext) {
+        final BucketList bucketList = getSortedList();
+
+        for (final BucketList list : Arrays.asList(bucketList, bucketList.toCompact())) {
+            aContext.assertEquals(5, list.subList(PHOTOS).size());
+            aContext.assertEquals(SORTED_KEYS[5], list.subList(PHOTOS).get(4).getKey());
+            aContext.assertEquals(2, list.subList(PHOTOS_2020).size());
+            aContext.assertEquals(0, list.subList("b").size());
+            aContext.assertEquals(SORTED_KEYS.length, list.subList("").size());
+            aContext.assertEquals(4, list.subList("photos/2", PHOTOS_0).size());
+            aContext.assertEquals(2, list.subList(null, PHOTOS_2020).size());
+            aContext.assertEquals(3, list.subList("photos/\uFFFF", null).size());
+            aContext.assertEquals(0, list.subList(LAST, null).size());
+        }
+
+        aContext.assertEquals(1, myBucketList.subList("prefix").size());
+        aContext.assertEquals(1, myBucketList.subList(null, "f").size());
+    }
+
+    /**
+     * Gets a sorted listing of the sorted test keys.
+     *
+     * @return A sorted listing
+     */
+    private static BucketList getSortedList() {
+        final ObjectListHandler handler = new ObjectListHandler();
+
+        for (final String key : SORTED_KEYS) {
+            handler.getList().add(new ListObject().setKey(key));
+        }
+
+        return new BucketList(handler);
+    }
 }
@@ -0,0 +1,228 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Tests of the BucketSync, which sync a local directory to listings that are supplied without an S3 connection.
+ */
+@RunWith(VertxUnitRunner.class)
+public class BucketSyncTest {
+
+    private static final String PREFIX = "p/";
+
+    private static final String UNCHANGED = "a.txt";
+
+    private static final String NEW = "b-e.txt";
+
+    private static final String RESIZED = "b/c.txt";
+
+    private static final String MODIFIED = "b/d.txt";
+
+    private static final String REMOVED = "b/x.txt";
+
+    private static final String CHECKED = "f.txt";
+
+    private static final String REMOVED_LAST = "g.txt";
+
+    private static final String CONTENT = "content";
+
+    /** The MD5 digest of the test content, as an ETag */
+    private static final String CONTENT_ETAG = "\"9a0364b9e99bb480dd25e1f0284c8555\"";
+
+    private static final String PUT = "PUT ";
+
+    private static final String DELETE = "DELETE ";
+
+    private static final Instant MODIFIED_TIME = Instant.parse("2020-04-26T04:34:02Z");
+
+    private Vertx myVertx;
+
+    private Path myDirectory;
+
+    /**
+     * Creates a local directory to sync.
+     *
+     * @throws IOException If the directory can't be created
+     */
+    @Before
+    public void setUp() throws IOException {
+        myVertx = Vertx.vertx();
+        myDirectory = Files.createTempDirectory(BucketSyncTest.class.getSimpleName());
+
+        for (final String file : Arrays.asList(UNCHANGED, NEW, RESIZED, MODIFIED, CHECKED)) {
+            final Path path = myDirectory.resolve(file);
+
+            Files.createDirectories(path.getParent());
+            Files.write(path, CONTENT.getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(path, FileTime.from(MODIFIED_TIME));
+        }
+    }
+
+    /**
+     * Removes the local directory.
+     *
+     * @param aContext A test context
+     * @throws IOException If the directory can't be removed
+     */
+    @After
+    public void tearDown(final TestContext aContext) throws IOException {
+        try (Stream<Path> paths = Files.walk(myDirectory)) {
+            paths.sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+
+        myVertx.close(aContext.asyncAssertSuccess());
+    }
+
+    /**
+     * Tests that the local files are walked in the order S3 lists keys.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testWalkOrder(final TestContext aContext) {
+        final List<String> keys = new ArrayList<>();
+
+        new LocalFileWalker(myDirectory).forEachRemaining(file -> keys.add(file.getKey()));
+
+        aContext.assertEquals(Arrays.asList(UNCHANGED, NEW, RESIZED, MODIFIED, CHECKED), keys);
+    }
+
+    /**
+     * Tests the actions of a sync that deletes objects and compares files by their digests.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testSyncWithChecksums(final TestContext aContext) {
+        final BucketSync sync = getSync().setDeleting(true).setChecksums(true);
+
+        sync(aContext, sync, Arrays.asList(PUT + PREFIX + NEW, PUT + PREFIX + RESIZED, PUT + PREFIX + MODIFIED,
+                DELETE + PREFIX + REMOVED, DELETE + PREFIX + REMOVED_LAST));
+    }
+
+    /**
+     * Tests the actions of a sync that keeps objects without a source and compares files by when they were modified.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testSyncByModifiedTime(final TestContext aContext) {
+        sync(aContext, getSync().setConcurrency(1), Arrays.asList(PUT + PREFIX + NEW, PUT + PREFIX + RESIZED, PUT +
+                PREFIX + MODIFIED, PUT + PREFIX + CHECKED));
+    }
+
+    /**
+     * Tests comparing objects in two buckets.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testIsChanged(final TestContext aContext) {
+        final ListObject source = new ListObject().setKey(UNCHANGED).setSize(1).setETag(CONTENT_ETAG)
+                .setLastUpdated(MODIFIED_TIME.plusSeconds(1));
+        final ListObject target = new ListObject().setKey(UNCHANGED).setSize(1).setETag(CONTENT_ETAG)
+                .setLastUpdated(MODIFIED_TIME);
+
+        // Objects with the same digest are the same, however recently the source was updated
+        aContext.assertFalse(BucketSync.isChanged(source, target));
+        aContext.assertTrue(BucketSync.isChanged(source.setETag("\"0a0364b9e99bb480dd25e1f0284c8555\""), target));
+        // Multipart ETags aren't digests, so the objects are compared by when they were updated
+        aContext.assertTrue(BucketSync.isChanged(source.setETag("\"0a0364b9e99bb480dd25e1f0284c8555-2\""), target));
+        aContext.assertFalse(BucketSync.isChanged(target, source));
+        aContext.assertTrue(BucketSync.isChanged(source.setSize(2), target));
+    }
+
+    /**
+     * Tests that a sync must have at least one action in flight.
+     */
+    @Test(expected = ConfigurationException.class)
+    public final void testConcurrency() {
+        getSync().setConcurrency(0);
+    }
+
+    /**
+     * Gets a dry run of a sync to the test prefix.
+     *
+     * @return A sync
+     */
+    private BucketSync getSync() {
+        return new BucketSync(myVertx, null, null).setPrefix(PREFIX).setDryRun(true);
+    }
+
+    /**
+     * Syncs the local directory to the test listing, checking the sync's actions.
+     *
+     * @param aContext A test context
+     * @param aSync A sync
+     * @param aExpected The expected actions
+     */
+    private void sync(final TestContext aContext, final BucketSync aSync, final List<String> aExpected) {
+        final List<String> actions = new ArrayList<>();
+        final Async async = aContext.async();
+        final List<ListObject> target = Arrays.asList(getObject(UNCHANGED, CONTENT.length(), 1), getObject(RESIZED,
+                1, -1), getObject(MODIFIED, CONTENT.length(), -1), getObject(REMOVED, 1, -1), getObject(CHECKED,
+                        CONTENT.length(), -1).setETag(CONTENT_ETAG), getObject(REMOVED_LAST, 1, -1));
+
+        aSync.actionHandler(action -> actions.add(action.toString()));
+        aSync.sync(getCursor(new LocalFileWalker(myDirectory)), getCursor(target.iterator()), myDirectory, result -> {
+            aContext.assertTrue(result.succeeded());
+            aContext.assertEquals(new TreeSet<>(aExpected), new TreeSet<>(actions));
+            aContext.assertEquals(aExpected.size(), actions.size());
+            async.complete();
+        });
+    }
+
+    /**
+     * Gets an object in the test listing.
+     *
+     * @param aKey The object's key, relative to the test prefix
+     * @param aSize The object's size
+     * @param aHours The hours between when the object was last updated and when the local files were modified
+     * @return An object
+     */
+    private static ListObject getObject(final String aKey, final int aSize, final int aHours) {
+        return new ListObject().setKey(aKey).setSize(aSize).setLastUpdated(MODIFIED_TIME.plusSeconds(aHours * 3600));
+    }
+
+    /**
+     * Gets a cursor that reads objects two at a time.
+     *
+     * @param aObjects The objects to read
+     * @return A cursor
+     */
+    private static BucketSync.Cursor getCursor(final Iterator<ListObject> aObjects) {
+        return handler -> {
+            final List<ListObject> batch = new ArrayList<>();
+
+            while (batch.size() < 2 && aObjects.hasNext()) {
+                batch.add(aObjects.next());
+            }
+
+            handler.handle(Future.succeededFuture(batch.iterator()));
+        };
+    }
+}
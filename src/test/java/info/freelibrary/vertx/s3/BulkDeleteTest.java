@@ -0,0 +1,442 @@
+
+package info.freelibrary.vertx.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.unit.TestContext;
+
+/**
+ * Tests of the BulkDelete's requests, of the parsing of S3's responses to them, and of deletes from a local server
+ * that stands in for S3.
+ */
+public class BulkDeleteTest extends AbstractMockS3Test {
+
+    private static final String KEY_A = "a/b.txt";
+
+    private static final String KEY_B = "a&b <c>\r\n.txt";
+
+    private static final String ACCESS_DENIED = "AccessDenied";
+
+    /** The start of an error in a response, up to its key */
+    private static final String ERROR_START = "<Error><Key>";
+
+    /** The part of an error in a response between its key and its code */
+    private static final String ERROR_CODE = "</Key><Code>";
+
+    /** The prefix of the keys that the local server won't delete */
+    private static final String DENIED = "denied/";
+
+    /** The prefix of the keys whose batches the local server fails as a whole */
+    private static final String FAILED = "failed/";
+
+    private static final Pattern KEY = Pattern.compile("<Key>(.*?)</Key>", Pattern.DOTALL);
+
+    /** The sizes of the batches the local server has received, in the order they were received */
+    private final List<Integer> myBatchSizes = new CopyOnWriteArrayList<>();
+
+    /** The number of batches that are being answered */
+    private final AtomicInteger myBatchesInFlight = new AtomicInteger();
+
+    /** The largest number of batches that were answered at the same time */
+    private final AtomicInteger myMaxBatchesInFlight = new AtomicInteger();
+
+    /** The number of keys that had been read from the iterator when each batch was received */
+    private final List<Integer> myKeysRead = new CopyOnWriteArrayList<>();
+
+    /** The number of keys that have been read from the test's iterator */
+    private final AtomicInteger myKeyCount = new AtomicInteger();
+
+    /** The release of the batches the local server holds before answering them */
+    private final Promise<Void> myRelease = Promise.promise();
+
+    /** The number of batches in flight at which the local server starts answering batches */
+    private int myHoldCount = 1;
+
+    /**
+     * Tests that a batch's keys are listed in quiet mode, with the characters XML reserves escaped.
+     */
+    @Test
+    public final void testDeleteXML() {
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Delete><Quiet>true</Quiet><Object><Key>" + KEY_A +
+                "</Key></Object><Object><Key>a&amp;b &lt;c&gt;&#13;\n.txt</Key></Object></Delete>", BulkDelete
+                        .getDeleteXML(Arrays.asList(KEY_A, KEY_B)));
+    }
+
+    /**
+     * Tests that escaped keys are read back as they were sent.
+     *
+     * @throws IOException If the test request can't be parsed
+     */
+    @Test
+    public final void testEscapedKeys() throws IOException {
+        final DeleteResultHandler handler = new DeleteResultHandler();
+        final String xml = BulkDelete.getDeleteXML(Arrays.asList(KEY_A, KEY_B));
+
+        // The request has the same structure as a response's errors, so its keys can be read back with the handler
+        SaxParsers.parse(xml.replace("Object>", "Error>"), handler);
+
+        assertEquals(2, handler.getErrors().size());
+        assertEquals(KEY_A, handler.getErrors().get(0).getKey());
+        assertEquals(KEY_B, handler.getErrors().get(1).getKey());
+    }
+
+    /**
+     * Tests reading the keys that couldn't be deleted from a response.
+     *
+     * @throws IOException If the test response can't be parsed
+     */
+    @Test
+    public final void testDeleteResult() throws IOException {
+        final DeleteResultHandler handler = new DeleteResultHandler();
+        final List<DeleteError> errors;
+
+        SaxParsers.parse("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                "<DeleteResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">" + ERROR_START + KEY_A +
+                ERROR_CODE + ACCESS_DENIED + "</Code><Message>Access Denied</Message></Error>" +
+                "<Error><Key>c</Key><Code>InternalError</Code></Error></DeleteResult>", handler);
+        errors = handler.getErrors();
+
+        assertEquals(2, errors.size());
+        assertEquals(KEY_A, errors.get(0).getKey());
+        assertEquals(ACCESS_DENIED, errors.get(0).getCode());
+        assertEquals("Access Denied", errors.get(0).getMessage());
+        assertEquals("c", errors.get(1).getKey());
+        assertNull(errors.get(1).getMessage());
+    }
+
+    /**
+     * Tests that a response without errors, from a delete in which every key was deleted, is read as such.
+     *
+     * @throws IOException If the test response can't be parsed
+     */
+    @Test
+    public final void testEmptyDeleteResult() throws IOException {
+        final DeleteResultHandler handler = new DeleteResultHandler();
+
+        SaxParsers.parse("<DeleteResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\"/>", handler);
+
+        assertEquals(0, handler.getErrors().size());
+    }
+
+    /**
+     * Tests that keys are split into batches of up to a thousand keys.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testBatches(final TestContext aContext) {
+        final List<String> keys = getKeys(KEY_A, BulkDelete.MAX_BATCH_SIZE * 2 + 1);
+
+        delete(keys).onComplete(aContext.asyncAssertSuccess(errors -> {
+            final List<Integer> sizes = new ArrayList<>(myBatchSizes);
+
+            Collections.sort(sizes);
+            aContext.assertEquals(Arrays.asList(1, BulkDelete.MAX_BATCH_SIZE, BulkDelete.MAX_BATCH_SIZE), sizes);
+            aContext.assertTrue(errors.isEmpty());
+        }));
+    }
+
+    /**
+     * Tests that the client sends as many batches at one time as its delete concurrency allows, but no more.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testConcurrency(final TestContext aContext) {
+        final int concurrency = 3;
+
+        // The local server holds the batches it's sent until the client's delete concurrency has been reached
+        myClient.setDeleteConcurrency(concurrency);
+        myHoldCount = concurrency;
+
+        delete(getKeys(KEY_A, BulkDelete.MAX_BATCH_SIZE * 10)).onComplete(aContext.asyncAssertSuccess(errors -> {
+            aContext.assertEquals(10, myBatchSizes.size());
+            aContext.assertTrue(myMaxBatchesInFlight.get() <= concurrency);
+            aContext.assertEquals(concurrency, myMaxBatchesInFlight.get());
+        }));
+    }
+
+    /**
+     * Tests that keys that couldn't be deleted, and the keys of a batch that failed as a whole, are reported.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testErrors(final TestContext aContext) {
+        final List<String> keys = new ArrayList<>(getKeys(KEY_A, BulkDelete.MAX_BATCH_SIZE - 2));
+
+        keys.add(DENIED + KEY_A);
+        keys.add(DENIED + KEY_B);
+        keys.addAll(getKeys(FAILED, 2));
+
+        delete(keys).onComplete(aContext.asyncAssertSuccess(errors -> {
+            final Map<String, String> codes = new HashMap<>();
+
+            // The batches can finish in either order, so the errors are checked by key
+            errors.forEach(error -> codes.put(error.getKey(), error.getCode()));
+
+            aContext.assertEquals(4, codes.size());
+            aContext.assertEquals(ACCESS_DENIED, codes.get(DENIED + KEY_A));
+            aContext.assertEquals(ACCESS_DENIED, codes.get(DENIED + KEY_B));
+            aContext.assertEquals(String.valueOf(HTTP.INTERNAL_SERVER_ERROR), codes.get(FAILED + 0));
+            aContext.assertEquals(String.valueOf(HTTP.INTERNAL_SERVER_ERROR), codes.get(FAILED + 1));
+        }));
+    }
+
+    /**
+     * Tests that keys are read from an iterator only as batches are needed.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testIterator(final TestContext aContext) {
+        final List<String> keys = getKeys(KEY_A, BulkDelete.MAX_BATCH_SIZE * 5);
+        final Iterator<String> iterator = keys.iterator();
+        final Iterator<String> countingIterator = new Iterator<String>() {
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public String next() {
+                myKeyCount.incrementAndGet();
+                return iterator.next();
+            }
+        };
+        final Promise<List<DeleteError>> promise = Promise.promise();
+
+        myClient.setDeleteConcurrency(2);
+        myHoldCount = 2;
+        myClient.deleteObjects(BUCKET, () -> countingIterator, promise);
+        promise.future().onComplete(aContext.asyncAssertSuccess(errors -> {
+            aContext.assertEquals(5, myBatchSizes.size());
+            aContext.assertEquals(keys.size(), myKeyCount.get());
+
+            // Only the batches that can be in flight are filled before the first is answered
+            aContext.assertEquals(BulkDelete.MAX_BATCH_SIZE * 2, myKeysRead.get(0));
+        }));
+    }
+
+    /**
+     * Tests that a stream of keys is paused while its batches wait to be sent, and resumed once they've been sent.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testStream(final TestContext aContext) {
+        final KeyStream stream = new KeyStream(BulkDelete.MAX_BATCH_SIZE * 5);
+        final Promise<List<DeleteError>> promise = Promise.promise();
+
+        myClient.setDeleteConcurrency(1);
+        myClient.deleteObjects(BUCKET, stream, promise);
+        promise.future().onComplete(aContext.asyncAssertSuccess(errors -> {
+            aContext.assertEquals(Collections.nCopies(5, BulkDelete.MAX_BATCH_SIZE), myBatchSizes);
+            aContext.assertTrue(stream.myPauseCount > 0);
+            aContext.assertFalse(stream.isPaused);
+            aContext.assertTrue(errors.isEmpty());
+        }));
+    }
+
+    /**
+     * Answers a batch, checking its Content-MD5, once the local server has stopped holding batches.
+     */
+    @Override
+    protected void handle(final HttpServerRequest aRequest) {
+        final int count = myBatchesInFlight.incrementAndGet();
+
+        myKeysRead.add(myKeyCount.get());
+        myMaxBatchesInFlight.accumulateAndGet(count, Math::max);
+
+        if (count >= myHoldCount) {
+            myRelease.tryComplete();
+        }
+
+        aRequest.bodyHandler(body -> myRelease.future().onComplete(release -> sendResult(aRequest, body)));
+    }
+
+    /**
+     * Answers a batch, failing the keys that the server won't delete.
+     *
+     * @param aRequest A delete request
+     * @param aBody The body of the request
+     */
+    private void sendResult(final HttpServerRequest aRequest, final Buffer aBody) {
+        final Matcher matcher = KEY.matcher(aBody.toString());
+        final StringBuilder result = new StringBuilder("<DeleteResult>");
+        int count = 0;
+
+        myBatchesInFlight.decrementAndGet();
+
+        while (matcher.find()) {
+            count += 1;
+
+            if (matcher.group(1).startsWith(DENIED)) {
+                result.append(ERROR_START).append(matcher.group(1)).append(ERROR_CODE).append(ACCESS_DENIED).append(
+                        "</Code></Error>");
+            }
+        }
+
+        myBatchSizes.add(count);
+
+        if (!getContentMD5(aBody).equals(aRequest.getHeader(HttpHeaders.CONTENT_MD5))) {
+            aRequest.response().setStatusCode(HttpResponseStatus.BAD_REQUEST.code()).end();
+        } else if (aBody.toString().contains(FAILED)) {
+            aRequest.response().setStatusCode(HTTP.INTERNAL_SERVER_ERROR).end();
+        } else {
+            aRequest.response().end(result.append("</DeleteResult>").toString());
+        }
+    }
+
+    /**
+     * Deletes keys through the client.
+     *
+     * @param aKeys The keys to delete
+     * @return The future keys that couldn't be deleted
+     */
+    private Future<List<DeleteError>> delete(final List<String> aKeys) {
+        final Promise<List<DeleteError>> promise = Promise.promise();
+
+        myClient.deleteObjects(BUCKET, aKeys, promise);
+        return promise.future();
+    }
+
+    /**
+     * Gets a number of numbered keys.
+     *
+     * @param aPrefix The prefix of the keys
+     * @param aCount The number of keys
+     * @return The keys
+     */
+    private static List<String> getKeys(final String aPrefix, final int aCount) {
+        final List<String> keys = new ArrayList<>(aCount);
+
+        for (int index = 0; index < aCount; index++) {
+            keys.add(aPrefix + index);
+        }
+
+        return keys;
+    }
+
+    /**
+     * Gets the Base64 encoded MD5 digest of a request's body.
+     *
+     * @param aBody The body of a request
+     * @return The body's digest
+     */
+    private static String getContentMD5(final Buffer aBody) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(aBody.getBytes()));
+        } catch (final NoSuchAlgorithmException details) {
+            throw new IllegalStateException(details);
+        }
+    }
+
+    /**
+     * A stream of numbered keys that are sent as long as the stream isn't paused.
+     */
+    private final class KeyStream implements ReadStream<String> {
+
+        private final int myCount;
+
+        /** The context on which the stream sends its keys */
+        private final Context myContext = myVertx.getOrCreateContext();
+
+        private Handler<String> myHandler;
+
+        private Handler<Void> myEndHandler;
+
+        private int myIndex;
+
+        private int myPauseCount;
+
+        private boolean isPaused;
+
+        private boolean isEnded;
+
+        private KeyStream(final int aCount) {
+            myCount = aCount;
+        }
+
+        @Override
+        public ReadStream<String> exceptionHandler(final Handler<Throwable> aHandler) {
+            return this;
+        }
+
+        @Override
+        public ReadStream<String> handler(final Handler<String> aHandler) {
+            myHandler = aHandler;
+            myContext.runOnContext(send -> send());
+            return this;
+        }
+
+        @Override
+        public ReadStream<String> pause() {
+            isPaused = true;
+            myPauseCount += 1;
+            return this;
+        }
+
+        @Override
+        public ReadStream<String> resume() {
+            isPaused = false;
+            myContext.runOnContext(send -> send());
+            return this;
+        }
+
+        @Override
+        public ReadStream<String> fetch(final long aAmount) {
+            return resume();
+        }
+
+        @Override
+        public ReadStream<String> endHandler(final Handler<Void> aEndHandler) {
+            myEndHandler = aEndHandler;
+            return this;
+        }
+
+        /**
+         * Sends keys until the stream is paused or has run out of keys, ending the stream once all its keys have been
+         * sent and it isn't paused.
+         */
+        private void send() {
+            while (!isPaused && myIndex < myCount) {
+                myHandler.handle(KEY_A + myIndex++);
+            }
+
+            if (!isPaused && myIndex == myCount && !isEnded) {
+                isEnded = true;
+                myEndHandler.handle(null);
+            }
+        }
+    }
+}
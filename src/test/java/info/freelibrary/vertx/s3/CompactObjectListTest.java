@@ -0,0 +1,158 @@
+
+package info.freelibrary.vertx.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the CompactObjectList.
+ */
+public class CompactObjectListTest {
+
+    private static final String KEY = "a/caf\u00E9/\uD83D\uDE00";
+
+    private static final String SHORT_KEY = "a";
+
+    private static final String ETAG = "\"618a996c65e02322bd5b5932c9b05714\"";
+
+    private static final String MULTIPART_ETAG = "\"618a996c65e02322bd5b5932c9b05714-12\"";
+
+    private static final String UPPER_CASE_ETAG = "\"618A996C65E02322BD5B5932C9B05714\"";
+
+    private static final String TIMESTAMP = "2020-04-26T04:34:02.920Z";
+
+    private static final String STANDARD = "STANDARD";
+
+    private static final String GLACIER = "GLACIER";
+
+    private static final String OWNER_ID = "75aa57f09aa0c8caeab4f8c24e99d10f8e7faeebf76c078efc7c6caea54ba06a";
+
+    private static final String OWNER_NAME = "webfile";
+
+    private CompactObjectList myList;
+
+    @Before
+    public void setUp() {
+        myList = new CompactObjectList();
+    }
+
+    /**
+     * Tests that an object's values are read back from the list as they were added.
+     *
+     * @throws ParseException If the test timestamp can't be parsed
+     */
+    @Test
+    public final void testAppend() throws ParseException {
+        myList.append(new ListObject().setKey(KEY).setETag(ETAG).setSize("85").setLastUpdated(TIMESTAMP)
+                .setStorageClass(STANDARD).setOwnerID(OWNER_ID).setOwnerDisplayName(OWNER_NAME));
+
+        final ListObject object = myList.get(0);
+
+        assertEquals(1, myList.size());
+        assertEquals(KEY, object.getKey());
+        assertEquals(ETAG, object.getETag());
+        assertEquals(85, object.getSize());
+        assertEquals(TIMESTAMP, object.getLastUpdated().toString());
+        assertEquals(STANDARD, object.getStorageClass());
+        assertEquals(OWNER_ID, object.getOwnerID());
+        assertEquals(OWNER_NAME, object.getOwnerDisplayName());
+    }
+
+    /**
+     * Tests that ETags that can't be stored as plain digests, and missing values, are read back as they were added.
+     */
+    @Test
+    public final void testAppendOtherValues() {
+        myList.append(new ListObject().setKey(KEY).setETag(MULTIPART_ETAG));
+        myList.append(new ListObject().setKey(KEY).setETag(UPPER_CASE_ETAG).setStorageClass(GLACIER));
+        myList.append(new ListObject().setKey(KEY).setStorageClass(STANDARD).setOwnerID(OWNER_ID));
+        myList.append(new ListObject().setKey(KEY).setStorageClass(GLACIER));
+
+        assertEquals(MULTIPART_ETAG, myList.get(0).getETag());
+        assertNull(myList.get(0).getLastUpdated());
+        assertNull(myList.get(0).getStorageClass());
+        assertNull(myList.get(0).getOwnerID());
+        assertEquals(UPPER_CASE_ETAG, myList.get(1).getETag());
+        assertEquals(GLACIER, myList.get(1).getStorageClass());
+        assertNull(myList.get(2).getETag());
+        assertEquals(STANDARD, myList.get(2).getStorageClass());
+        assertEquals(OWNER_ID, myList.get(2).getOwnerID());
+        assertNull(myList.get(2).getOwnerDisplayName());
+        assertEquals(GLACIER, myList.get(3).getStorageClass());
+        assertNull(myList.get(3).getOwnerID());
+    }
+
+    /**
+     * Tests that the list grows to hold more objects than it starts with room for, and can be trimmed afterwards.
+     */
+    @Test
+    public final void testGrow() {
+        final int count = 1000;
+
+        for (int index = 0; index < count; index++) {
+            myList.append(new ListObject().setKey(Integer.toString(index)).setSize(Integer.toString(index)));
+        }
+
+        myList.trimToSize();
+
+        assertEquals(count, myList.size());
+
+        for (int index = 0; index < count; index++) {
+            assertEquals(Integer.toString(index), myList.get(index).getKey());
+            assertEquals(index, myList.get(index).getSize());
+        }
+
+        assertEquals(0, myList.compareKey(count - 1, Integer.toString(count - 1).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Tests comparing objects' keys in the order of their UTF-8 bytes.
+     */
+    @Test
+    public final void testCompareKeys() {
+        myList.append(new ListObject().setKey(SHORT_KEY));
+        myList.append(new ListObject().setKey(KEY));
+        myList.append(new ListObject().setKey("a/caf\u00E9/\uFFFD"));
+
+        assertEquals(0, myList.compareKey(1, KEY.getBytes(StandardCharsets.UTF_8)));
+        assertTrue(myList.compareKeys(0, 1) < 0);
+        // A supplementary character's UTF-8 bytes sort after those of U+FFFD, though its UTF-16 chars sort before
+        assertTrue(myList.compareKeys(1, 2) > 0);
+        assertTrue(myList.startsWith(1, "a/caf\u00E9".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(myList.startsWith(0, KEY.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Tests that the list's objects can't be changed.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public final void testReadOnlyView() {
+        myList.append(new ListObject().setKey(KEY));
+        myList.get(0).setKey(SHORT_KEY);
+    }
+
+    /**
+     * Tests that the list can't be changed other than by appending to it.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public final void testReadOnlyList() {
+        myList.add(new ListObject().setKey(KEY));
+    }
+
+    /**
+     * Tests that an index outside the list is rejected.
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public final void testGetOutOfBounds() {
+        myList.append(new ListObject().setKey(KEY));
+        myList.get(1);
+    }
+}
@@ -0,0 +1,74 @@
+
+package info.freelibrary.vertx.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.time.Instant;
+
+import org.junit.Test;
+
+/**
+ * Tests of the GetOptions.
+ */
+public class GetOptionsTest {
+
+    /**
+     * Tests setting a range with a start and an end.
+     */
+    @Test
+    public final void testSetRange() {
+        assertNull(new GetOptions().getRange());
+        assertEquals("bytes=0-1023", new GetOptions().setRange(0, 1023).getRange());
+        assertEquals("bytes=5-5", new GetOptions().setRange(5, 5).getRange());
+    }
+
+    /**
+     * Tests setting a range that runs to the end of the object.
+     */
+    @Test
+    public final void testSetOpenRange() {
+        assertEquals("bytes=1024-", new GetOptions().setRange(1024).getRange());
+    }
+
+    /**
+     * Tests setting a range of the last bytes of the object.
+     */
+    @Test
+    public final void testSetLastBytes() {
+        assertEquals("bytes=-500", new GetOptions().setLastBytes(500).getRange());
+    }
+
+    /**
+     * Tests that a range can't end before it starts.
+     */
+    @Test(expected = ConfigurationException.class)
+    public final void testSetRangeBackwards() {
+        new GetOptions().setRange(10, 9);
+    }
+
+    /**
+     * Tests that a range can't start before the object does.
+     */
+    @Test(expected = ConfigurationException.class)
+    public final void testSetRangeNegative() {
+        new GetOptions().setRange(-1);
+    }
+
+    /**
+     * Tests that a range of the last bytes can't be empty.
+     */
+    @Test(expected = ConfigurationException.class)
+    public final void testSetLastBytesEmpty() {
+        new GetOptions().setLastBytes(0);
+    }
+
+    /**
+     * Tests the format of the dates in conditional headers.
+     */
+    @Test
+    public final void testToHttpDate() {
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", GetOptions.toHttpDate(Instant.parse(
+                "2015-10-21T07:28:00.750Z")));
+    }
+}
@@ -0,0 +1,174 @@
+
+package info.freelibrary.vertx.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import info.freelibrary.util.StringUtils;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Tests of the IncrementalXmlParser.
+ */
+public class IncrementalXmlParserTest {
+
+    private static final String START = "<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">";
+
+    private static final String END = "</ListBucketResult>";
+
+    private static final String CONTENTS = "<Contents><Key>";
+
+    private static final String END_CONTENTS = "</Key></Contents>";
+
+    /** A key with a two byte character, an escaped ampersand and a supplementary character reference */
+    private static final String KEY = "café & 😀";
+
+    /**
+     * Tests that a listing that's fed a byte at a time is parsed the same as one that's parsed all at once.
+     *
+     * @throws IOException If the test listing can't be read
+     * @throws SAXException If the test listing can't be parsed
+     */
+    @Test
+    public final void testParseByteAtATime() throws IOException, SAXException {
+        final String xml = StringUtils.read(new File("src/test/resources/list.xml"), StandardCharsets.UTF_8);
+        final BucketList expected = new BucketList(xml);
+        final ObjectListHandler handler = parse(xml, 1);
+        final List<ListObject> objects = handler.getList();
+
+        assertEquals(expected.size(), objects.size());
+
+        for (int index = 0; index < objects.size(); index++) {
+            assertEquals(expected.get(index).getKey(), objects.get(index).getKey());
+            assertEquals(expected.get(index).getETag(), objects.get(index).getETag());
+            assertEquals(expected.get(index).getSize(), objects.get(index).getSize());
+            assertEquals(expected.get(index).getLastUpdated(), objects.get(index).getLastUpdated());
+        }
+
+        assertFalse(handler.isTruncated());
+    }
+
+    /**
+     * Tests that characters split across chunks, and entity and character references, are decoded.
+     *
+     * @throws SAXException If the test listing can't be parsed
+     */
+    @Test
+    public final void testParseReferences() throws SAXException {
+        final String xml = START + CONTENTS + "café &amp; &#x1F600;" + END_CONTENTS + END;
+
+        for (int chunkSize = 1; chunkSize <= xml.length(); chunkSize++) {
+            assertEquals(KEY, parse(xml, chunkSize).getList().get(0).getKey());
+        }
+    }
+
+    /**
+     * Tests that an XML declaration, comments and CDATA sections are understood.
+     *
+     * @throws SAXException If the test listing can't be parsed
+     */
+    @Test
+    public final void testParseMarkup() throws SAXException {
+        final String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!-- a -> comment -->" + START + CONTENTS +
+                "<![CDATA[café & ]]>&#128512;" + END_CONTENTS + "<CommonPrefixes><Prefix>a/</Prefix>" +
+                "</CommonPrefixes><Empty/>" + END + "\n";
+        final ObjectListHandler handler = parse(xml, 3);
+
+        assertEquals(KEY, handler.getList().get(0).getKey());
+        assertEquals(Arrays.asList("a/"), handler.getCommonPrefixes());
+    }
+
+    /**
+     * Tests that a greater-than sign in an attribute value doesn't end its tag.
+     *
+     * @throws SAXException If the test listing can't be parsed
+     */
+    @Test
+    public final void testParseAttribute() throws SAXException {
+        final String xml = "<s3:ListBucketResult a=\"x>y\" b='\"'>" + CONTENTS + KEY.replace("&", "&amp;") +
+                END_CONTENTS + "</s3:ListBucketResult>";
+
+        assertEquals(KEY, parse(xml, 2).getList().get(0).getKey());
+    }
+
+    /**
+     * Tests that an end tag that doesn't match its start tag is rejected.
+     *
+     * @throws SAXException If the test listing isn't well-formed
+     */
+    @Test(expected = SAXException.class)
+    public final void testMismatchedEndTag() throws SAXException {
+        parse(START + CONTENTS + "a</Contents></Key>" + END, 1);
+    }
+
+    /**
+     * Tests that a document type declaration is rejected.
+     *
+     * @throws SAXException If the test listing isn't allowed
+     */
+    @Test(expected = SAXException.class)
+    public final void testDoctype() throws SAXException {
+        parse("<!DOCTYPE a [<!ENTITY b SYSTEM \"file:///etc/passwd\">]>" + START + END, 4);
+    }
+
+    /**
+     * Tests that an unknown entity is rejected.
+     *
+     * @throws SAXException If the test listing isn't well-formed
+     */
+    @Test(expected = SAXException.class)
+    public final void testUnknownEntity() throws SAXException {
+        parse(START + CONTENTS + "&b;" + END_CONTENTS + END, 4);
+    }
+
+    /**
+     * Tests that a document that ends before its root element is closed is rejected.
+     *
+     * @throws SAXException If the test listing is incomplete
+     */
+    @Test(expected = SAXException.class)
+    public final void testIncomplete() throws SAXException {
+        parse(START + CONTENTS, 4);
+    }
+
+    /**
+     * Tests that a second root element is rejected.
+     *
+     * @throws SAXException If the test listing isn't well-formed
+     */
+    @Test(expected = SAXException.class)
+    public final void testSecondRoot() throws SAXException {
+        parse(START + END + START + END, 4);
+    }
+
+    /**
+     * Parses a listing, feeding it to the parser in chunks.
+     *
+     * @param aXml A listing
+     * @param aChunkSize The number of bytes in each chunk
+     * @return A handler that has parsed the listing
+     * @throws SAXException If the listing can't be parsed
+     */
+    private static ObjectListHandler parse(final String aXml, final int aChunkSize) throws SAXException {
+        final ObjectListHandler handler = new ObjectListHandler();
+        final IncrementalXmlParser parser = new IncrementalXmlParser(handler);
+        final byte[] bytes = aXml.getBytes(StandardCharsets.UTF_8);
+
+        for (int index = 0; index < bytes.length; index += aChunkSize) {
+            parser.parse(Buffer.buffer().appendBytes(bytes, index, Math.min(aChunkSize, bytes.length - index)));
+        }
+
+        parser.end();
+        return handler;
+    }
+}
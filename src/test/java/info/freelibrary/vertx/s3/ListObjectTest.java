@@ -58,8 +58,8 @@ public class ListObjectTest {
      */
     @Test
     public final void testSetSize(final TestContext aContext) throws NumberFormatException {
-        final int size = 80;
-        aContext.assertEquals(size, new ListObject().setSize(Integer.toString(size)).getSize());
+        final long size = 5_368_709_120L;
+        aContext.assertEquals(size, new ListObject().setSize(Long.toString(size)).getSize());
     }
 
     /**
@@ -0,0 +1,37 @@
+
+package info.freelibrary.vertx.s3;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests of the ListOptions.
+ */
+public class ListOptionsTest {
+
+    /**
+     * Tests setting the most keys in a page of a listing.
+     */
+    @Test
+    public final void testSetMaxKeys() {
+        assertEquals(0, new ListOptions().getMaxKeys());
+        assertEquals(ListOptions.MAX_KEYS, new ListOptions().setMaxKeys(ListOptions.MAX_KEYS).getMaxKeys());
+    }
+
+    /**
+     * Tests that a page can't be limited to no keys at all.
+     */
+    @Test(expected = ConfigurationException.class)
+    public final void testSetMaxKeysTooSmall() {
+        new ListOptions().setMaxKeys(0);
+    }
+
+    /**
+     * Tests that a page can't be larger than S3 allows.
+     */
+    @Test(expected = ConfigurationException.class)
+    public final void testSetMaxKeysTooLarge() {
+        new ListOptions().setMaxKeys(ListOptions.MAX_KEYS + 1);
+    }
+}
@@ -0,0 +1,91 @@
+
+package info.freelibrary.vertx.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of the ListQuery.
+ */
+public class ListQueryTest {
+
+    private static final String PREFIX = "a b/";
+
+    private static final String LAST_KEY = "a b/m";
+
+    private static final String START_AFTER = "a b/c";
+
+    private static final String A = "a";
+
+    private static final String SLASH = "/";
+
+    private static final String TOKEN = "x+y=";
+
+    /** A character above the surrogates */
+    private static final String FULLWIDTH_A = "\uFF21";
+
+    /** A supplementary character, which is encoded as a pair of surrogates */
+    private static final String EMOJI = "\uD83D\uDE00";
+
+    /**
+     * Tests the query string of a listing's first page.
+     */
+    @Test
+    public final void testToQueryString() {
+        assertEquals("?list-type=2&prefix=a%20b%2F&delimiter=%2F&start-after=a%20b%2Fc", new ListQuery(PREFIX, SLASH,
+                START_AFTER, LAST_KEY).toQueryString(null));
+    }
+
+    /**
+     * Tests that a continuation token replaces the key a listing starts after.
+     */
+    @Test
+    public final void testToQueryStringToken() {
+        assertEquals("?list-type=2&prefix=a%20b%2F&continuation-token=x%2By%3D", new ListQuery(PREFIX, null,
+                START_AFTER, LAST_KEY).toQueryString(TOKEN));
+    }
+
+    /**
+     * Tests the query string of a listing's options.
+     */
+    @Test
+    public final void testToQueryStringOptions() {
+        final ListOptions options = new ListOptions().setPrefix(PREFIX).setDelimiter(SLASH).setMaxKeys(100)
+                .setFetchOwner(true).setStartAfter(START_AFTER);
+
+        assertEquals("?list-type=2&prefix=a%20b%2F&delimiter=%2F&max-keys=100&fetch-owner=true&start-after=" +
+                "a%20b%2Fc", new ListQuery(options).toQueryString(null));
+        assertEquals("?list-type=2&continuation-token=x%2By%3D", new ListQuery(new ListOptions().setStartAfter(
+                START_AFTER).setContinuationToken(TOKEN)).toQueryString(null));
+    }
+
+    /**
+     * Tests checking whether keys come after a listing's last key.
+     */
+    @Test
+    public final void testIsPastEnd() {
+        final ListQuery query = new ListQuery(PREFIX, null, null, LAST_KEY);
+
+        assertFalse(query.isPastEnd("a b/l"));
+        assertFalse(query.isPastEnd(LAST_KEY));
+        assertTrue(query.isPastEnd("a b/m0"));
+        assertFalse(new ListQuery(PREFIX).isPastEnd("z"));
+    }
+
+    /**
+     * Tests that keys are compared in the order of their UTF-8 bytes, which S3 lists them in.
+     */
+    @Test
+    public final void testCompareKeys() {
+        assertTrue(ListQuery.compareKeys(A, "b") < 0);
+        assertTrue(ListQuery.compareKeys("ab", A) > 0);
+        assertEquals(0, ListQuery.compareKeys(A, A));
+
+        // A character above the surrogates sorts before a supplementary character in UTF-8 but not in UTF-16
+        assertTrue(ListQuery.compareKeys(FULLWIDTH_A, EMOJI) < 0);
+        assertTrue(FULLWIDTH_A.compareTo(EMOJI) > 0);
+    }
+}
@@ -0,0 +1,391 @@
+
+package info.freelibrary.vertx.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.unit.TestContext;
+
+/**
+ * Tests of the MemoryObjectCache, which reads objects from a local server that stands in for S3.
+ */
+public class MemoryObjectCacheTest extends AbstractMockS3Test {
+
+    private static final long MAX_SIZE = 1024;
+
+    /** A bucket whose objects are sent by the local server from the cache */
+    private static final String FRONT = "front";
+
+    private static final String KEY_A = "a.txt";
+
+    private static final String KEY_B = "b.txt";
+
+    private static final String KEY_C = "c.txt";
+
+    /** The contents of a small test object */
+    private static final String TEXT = "0123456789";
+
+    /** A maximum age that keeps objects from being revalidated during a test */
+    private static final long NO_REVALIDATION = 60_000;
+
+    /** The objects the local server holds, by path */
+    private final Map<String, Buffer> myObjects = new ConcurrentHashMap<>();
+
+    /** The number of gets the local server has answered */
+    private final AtomicInteger myGetCount = new AtomicInteger();
+
+    /** The number of gets the local server has answered with a 304 */
+    private final AtomicInteger myNotModifiedCount = new AtomicInteger();
+
+    /** The cache through which the local server sends the objects of the front bucket */
+    private MemoryObjectCache myCache;
+
+    /** A promise that's completed when the cache has sent an object of the front bucket */
+    private Promise<Void> mySent;
+
+    /** Whether the local server invalidates an object as soon as it has started sending it from the cache */
+    private boolean isInvalidatingOnSend;
+
+    /**
+     * Tests that a new cache starts empty.
+     */
+    @Test
+    public final void testNewCache() {
+        final MemoryObjectCache cache = new MemoryObjectCache(myClient, MAX_SIZE);
+
+        assertEquals(0, cache.getObjectCount());
+        assertEquals(0, cache.getSize());
+        assertEquals(MAX_SIZE, cache.getMaxSize());
+        assertEquals(MemoryObjectCache.DEFAULT_MAX_OBJECT_SIZE, cache.getMaxObjectSize());
+    }
+
+    /**
+     * Tests that a cache can't be created without room for any objects.
+     */
+    @Test(expected = ConfigurationException.class)
+    public final void testNewCacheTooSmall() {
+        new MemoryObjectCache(myClient, 0);
+    }
+
+    /**
+     * Tests setting the maximum size of a cached object.
+     */
+    @Test
+    public final void testSetMaxObjectSize() {
+        assertEquals(1, new MemoryObjectCache(myClient, MAX_SIZE).setMaxObjectSize(1).getMaxObjectSize());
+    }
+
+    /**
+     * Tests that the maximum size of a cached object can't be zero.
+     */
+    @Test(expected = ConfigurationException.class)
+    public final void testSetMaxObjectSizeTooSmall() {
+        new MemoryObjectCache(myClient, MAX_SIZE).setMaxObjectSize(0);
+    }
+
+    /**
+     * Tests that the maximum age of a revalidation can't be negative.
+     */
+    @Test(expected = ConfigurationException.class)
+    public final void testSetMaxAgeNegative() {
+        new MemoryObjectCache(myClient, MAX_SIZE).setMaxAge(-1);
+    }
+
+    /**
+     * Tests that a cache is shared, rather than copied, through Vert.x's local shared data.
+     */
+    @Test
+    public final void testShared() {
+        final MemoryObjectCache cache = new MemoryObjectCache(myClient, MAX_SIZE);
+
+        myVertx.sharedData().getLocalMap(MemoryObjectCacheTest.class.getName()).put(MAX_SIZE, cache);
+        assertSame(cache, myVertx.sharedData().getLocalMap(MemoryObjectCacheTest.class.getName()).get(MAX_SIZE));
+    }
+
+    /**
+     * Tests that a cached object is read from the cache, without a request to S3, while it's fresh.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testGetCached(final TestContext aContext) {
+        final MemoryObjectCache cache = new MemoryObjectCache(myClient, MAX_SIZE).setMaxAge(NO_REVALIDATION);
+
+        putObject(KEY_A, TEXT);
+        get(cache, KEY_A).compose(body -> get(cache, KEY_A)).onComplete(aContext.asyncAssertSuccess(body -> {
+            aContext.assertEquals(TEXT, body.toString());
+            aContext.assertEquals(1, myGetCount.get());
+            aContext.assertEquals(1, cache.getObjectCount());
+            aContext.assertEquals((long) TEXT.length(), cache.getSize());
+        }));
+    }
+
+    /**
+     * Tests that a cached object is revalidated, rather than read again, once it isn't fresh.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testGetRevalidated(final TestContext aContext) {
+        final MemoryObjectCache cache = new MemoryObjectCache(myClient, MAX_SIZE);
+
+        putObject(KEY_A, TEXT);
+        get(cache, KEY_A).compose(body -> get(cache, KEY_A)).onComplete(aContext.asyncAssertSuccess(body -> {
+            aContext.assertEquals(TEXT, body.toString());
+            aContext.assertEquals(2, myGetCount.get());
+            aContext.assertEquals(1, myNotModifiedCount.get());
+            aContext.assertEquals(1, cache.getObjectCount());
+        }));
+    }
+
+    /**
+     * Tests that a get gives back its reference to a cached object, so the object is freed once it's invalidated.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testGetReleases(final TestContext aContext) {
+        final MemoryObjectCache cache = new MemoryObjectCache(myClient, MAX_SIZE).setMaxAge(NO_REVALIDATION);
+
+        putObject(KEY_A, TEXT);
+        get(cache, KEY_A).compose(body -> get(cache, KEY_A)).onComplete(aContext.asyncAssertSuccess(body -> {
+            final ByteBuf buffer = cache.getBuffer(BUCKET, KEY_A);
+
+            aContext.assertEquals(1, buffer.refCnt());
+            cache.invalidate(BUCKET, KEY_A);
+            aContext.assertEquals(0, buffer.refCnt());
+            aContext.assertEquals(0, cache.getObjectCount());
+            aContext.assertEquals(0L, cache.getSize());
+        }));
+    }
+
+    /**
+     * Tests that a send gives back its reference to a cached object once the object has been written.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testSendReleases(final TestContext aContext) {
+        myCache = new MemoryObjectCache(myClient, MAX_SIZE).setMaxAge(NO_REVALIDATION);
+
+        putObject(KEY_A, TEXT);
+        getFront(KEY_A).compose(body -> getFront(KEY_A)).onComplete(aContext.asyncAssertSuccess(body -> {
+            final ByteBuf buffer = myCache.getBuffer(BUCKET, KEY_A);
+
+            aContext.assertEquals(TEXT, body.toString());
+            aContext.assertEquals(1, myGetCount.get());
+            aContext.assertEquals(1, buffer.refCnt());
+            myCache.clear();
+            aContext.assertEquals(0, buffer.refCnt());
+        }));
+    }
+
+    /**
+     * Tests that an object that's invalidated while it's being sent is only freed once the send has finished.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testInvalidateWhileSending(final TestContext aContext) {
+        final MemoryObjectCache cache = new MemoryObjectCache(myClient, MAX_SIZE).setMaxAge(NO_REVALIDATION);
+
+        putObject(KEY_A, TEXT);
+        get(cache, KEY_A).onComplete(aContext.asyncAssertSuccess(body -> {
+            final ByteBuf buffer = cache.getBuffer(BUCKET, KEY_A);
+
+            myCache = cache;
+            isInvalidatingOnSend = true;
+            getFront(KEY_A).onComplete(aContext.asyncAssertSuccess(sent -> {
+                aContext.assertEquals(TEXT, sent.toString());
+                aContext.assertEquals(0, buffer.refCnt());
+            }));
+        }));
+    }
+
+    /**
+     * Tests that the least recently used objects are evicted once the cache is full.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testEviction(final TestContext aContext) {
+        final MemoryObjectCache cache = new MemoryObjectCache(myClient, TEXT.length() * 2).setMaxAge(
+                NO_REVALIDATION);
+
+        putObject(KEY_A, TEXT);
+        putObject(KEY_B, TEXT);
+        putObject(KEY_C, TEXT);
+
+        // A is read again after B, so B is the least recently used object when C is cached
+        final Future<Buffer> gets = get(cache, KEY_A).compose(body -> get(cache, KEY_B)).compose(body -> get(cache,
+                KEY_A)).compose(body -> get(cache, KEY_C)).compose(body -> get(cache, KEY_A));
+
+        gets.onComplete(aContext.asyncAssertSuccess(body -> {
+            aContext.assertEquals(3, myGetCount.get());
+            aContext.assertEquals(2, cache.getObjectCount());
+            aContext.assertEquals((long) TEXT.length() * 2, cache.getSize());
+            aContext.assertNull(cache.getBuffer(BUCKET, KEY_B));
+        }));
+    }
+
+    /**
+     * Tests that an object that's larger than the maximum object size is read but not cached.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testObjectTooLarge(final TestContext aContext) {
+        final MemoryObjectCache cache = new MemoryObjectCache(myClient, MAX_SIZE).setMaxObjectSize(TEXT.length() - 1)
+                .setMaxAge(NO_REVALIDATION);
+
+        putObject(KEY_A, TEXT);
+        get(cache, KEY_A).compose(body -> get(cache, KEY_A)).onComplete(aContext.asyncAssertSuccess(body -> {
+            aContext.assertEquals(TEXT, body.toString());
+            aContext.assertEquals(2, myGetCount.get());
+            aContext.assertEquals(0, cache.getObjectCount());
+            aContext.assertEquals(0L, cache.getSize());
+        }));
+    }
+
+    /**
+     * Tests that a cached object is dropped when its new version is too large to cache.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testNewVersionTooLarge(final TestContext aContext) {
+        final MemoryObjectCache cache = new MemoryObjectCache(myClient, MAX_SIZE).setMaxObjectSize(TEXT.length());
+        final String largerText = TEXT + TEXT;
+
+        putObject(KEY_A, TEXT);
+        get(cache, KEY_A).onComplete(aContext.asyncAssertSuccess(body -> {
+            final ByteBuf buffer = cache.getBuffer(BUCKET, KEY_A);
+
+            putObject(KEY_A, largerText);
+            get(cache, KEY_A).onComplete(aContext.asyncAssertSuccess(larger -> {
+                aContext.assertEquals(largerText, larger.toString());
+                aContext.assertEquals(0, buffer.refCnt());
+                aContext.assertEquals(0, cache.getObjectCount());
+                aContext.assertEquals(0L, cache.getSize());
+            }));
+        }));
+    }
+
+    /**
+     * Tests that a cached object is dropped once it has been deleted from S3.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testDeleted(final TestContext aContext) {
+        final MemoryObjectCache cache = new MemoryObjectCache(myClient, MAX_SIZE);
+
+        putObject(KEY_A, TEXT);
+        get(cache, KEY_A).onComplete(aContext.asyncAssertSuccess(body -> {
+            myObjects.clear();
+            get(cache, KEY_A).onComplete(aContext.asyncAssertFailure(error -> {
+                aContext.assertEquals(0, cache.getObjectCount());
+                aContext.assertEquals(0L, cache.getSize());
+            }));
+        }));
+    }
+
+    /**
+     * Answers gets of the test objects, honoring <code>If-None-Match</code>, and sends the objects of the front
+     * bucket from the test's cache.
+     */
+    @Override
+    protected void handle(final HttpServerRequest aRequest) {
+        final String frontPrefix = '/' + FRONT + '/';
+
+        if (aRequest.path().startsWith(frontPrefix)) {
+            final String key = aRequest.path().substring(frontPrefix.length());
+
+            mySent = Promise.promise();
+            myCache.send(BUCKET, key, aRequest.response(), mySent);
+
+            // Invalidating the object right away leaves the send holding the only reference to it
+            if (isInvalidatingOnSend) {
+                myCache.invalidate(BUCKET, key);
+            }
+        } else {
+            sendObject(aRequest, myObjects.get(aRequest.path()));
+        }
+    }
+
+    /**
+     * Answers a get of a test object.
+     *
+     * @param aRequest A get request
+     * @param aBody The body of the object, or null if the object doesn't exist
+     */
+    private void sendObject(final HttpServerRequest aRequest, final Buffer aBody) {
+        final HttpServerResponse response = aRequest.response();
+
+        myGetCount.incrementAndGet();
+
+        if (aBody == null) {
+            response.setStatusCode(HTTP.NOT_FOUND).end();
+        } else {
+            final String etag = '"' + Integer.toHexString(aBody.hashCode()) + '"';
+
+            if (etag.equals(aRequest.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+                myNotModifiedCount.incrementAndGet();
+                response.setStatusCode(HTTP.NOT_MODIFIED).end();
+            } else {
+                response.putHeader(HttpHeaders.ETAG, etag).end(aBody);
+            }
+        }
+    }
+
+    /**
+     * Puts a test object on the local server.
+     *
+     * @param aKey An S3 key
+     * @param aText The contents of the object
+     */
+    private void putObject(final String aKey, final String aText) {
+        myObjects.put(getPath(aKey), Buffer.buffer(aText));
+    }
+
+    /**
+     * Gets an object through a cache.
+     *
+     * @param aCache An object cache
+     * @param aKey An S3 key
+     * @return A future body of the object
+     */
+    private static Future<Buffer> get(final MemoryObjectCache aCache, final String aKey) {
+        final Promise<Buffer> promise = Promise.promise();
+
+        aCache.get(BUCKET, aKey, promise);
+        return promise.future();
+    }
+
+    /**
+     * Gets an object that the local server sends from the test's cache, once the send has finished.
+     *
+     * @param aKey An S3 key
+     * @return A future body of the object
+     */
+    private Future<Buffer> getFront(final String aKey) {
+        final Promise<Buffer> promise = Promise.promise();
+
+        myClient.get(FRONT, aKey, response -> response.exceptionHandler(promise::tryFail).bodyHandler(body -> mySent
+                .future().onComplete(sent -> promise.handle(sent.map(body)))), promise::tryFail);
+        return promise.future();
+    }
+}
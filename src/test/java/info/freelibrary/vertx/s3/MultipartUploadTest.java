@@ -0,0 +1,468 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+
+/**
+ * Tests of the MultipartUpload, which uploads streams to a local server that stands in for S3.
+ */
+public class MultipartUploadTest extends AbstractMockS3Test {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MultipartUploadTest.class, Constants.BUNDLE_NAME);
+
+    private static final String KEY = "upload.bin";
+
+    /** The key of a second upload that runs alongside the first */
+    private static final String OTHER_KEY = "other.bin";
+
+    private static final int PART_SIZE = S3Client.MIN_PART_SIZE;
+
+    /** The size of the chunks the test streams are read in */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final String UPLOAD_ID = "upload-id";
+
+    private static final String PART_NUMBER = "partNumber";
+
+    private static final int INTERNAL_SERVER_ERROR = HttpResponseStatus.INTERNAL_SERVER_ERROR.code();
+
+    /** The body of a completion that failed after S3 had sent a <code>200 OK</code> */
+    private static final String COMPLETION_ERROR = "<Error><Code>InternalError</Code></Error>";
+
+    /** The parts the local server has been sent, by their part numbers */
+    private final Map<Integer, Buffer> myParts = new ConcurrentHashMap<>();
+
+    /** The body of the request that completed the upload */
+    private final Promise<String> myCompletion = Promise.promise();
+
+    /** The abort of the upload */
+    private final Promise<Void> myAbort = Promise.promise();
+
+    /** The release of the parts the local server holds before answering them */
+    private final Promise<Void> myRelease = Promise.promise();
+
+    /** The number of parts the local server is answering, by the paths of their uploads */
+    private final Map<String, Integer> myPartsInFlight = new ConcurrentHashMap<>();
+
+    /** The largest number of parts the local server answered at the same time, by the paths of their uploads */
+    private final Map<String, Integer> myMaxPartsInFlight = new ConcurrentHashMap<>();
+
+    /** The number of parts the local server is answering across all uploads */
+    private final AtomicInteger myTotalInFlight = new AtomicInteger();
+
+    /** The largest number of parts the local server answered at the same time across all uploads */
+    private final AtomicInteger myMaxTotalInFlight = new AtomicInteger();
+
+    /** The number of parts in flight at which the local server starts answering parts, or 0 to answer them at once */
+    private int myHoldCount;
+
+    /** The body of an object that was uploaded in a single PUT request */
+    private Buffer myObject;
+
+    /** The number of a part that the local server fails, or 0 if it doesn't fail any */
+    private int myFailedPart;
+
+    /** Whether the local server answers the completion with an error after sending a <code>200 OK</code> */
+    private boolean isCompletionFailing;
+
+    /**
+     * Sets the size of the parts the tests' streams are split into.
+     */
+    @Before
+    public void setPartSize() {
+        myClient.setPartSize(PART_SIZE);
+    }
+
+    /**
+     * Tests that a stream that's larger than a part is split into numbered parts of the client's part size, which
+     * are listed in order, with their ETags, when the upload is completed.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testParts(final TestContext aContext) {
+        final DataStream stream = new DataStream(PART_SIZE * 2 + PART_SIZE / 2);
+
+        upload(stream).onComplete(aContext.asyncAssertSuccess(response -> {
+            final Buffer parts = Buffer.buffer();
+
+            aContext.assertEquals(HTTP.OK, response.statusCode());
+            aContext.assertEquals(3, myParts.size());
+            aContext.assertEquals(PART_SIZE, myParts.get(1).length());
+            aContext.assertEquals(PART_SIZE, myParts.get(2).length());
+            aContext.assertEquals(PART_SIZE / 2, myParts.get(3).length());
+
+            for (int number = 1; number <= myParts.size(); number++) {
+                parts.appendBuffer(myParts.get(number));
+            }
+
+            aContext.assertEquals(stream.myData, parts);
+            aContext.assertEquals(getCompletionXML(3), myCompletion.future().result());
+            aContext.assertNull(myObject);
+        }));
+    }
+
+    /**
+     * Tests that the stream is paused while filled parts are waiting to be sent and is resumed once they've been
+     * sent.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testPauseAndResume(final TestContext aContext) {
+        final DataStream stream = new DataStream(PART_SIZE * 4);
+
+        upload(stream).onComplete(aContext.asyncAssertSuccess(response -> {
+            aContext.assertEquals(HTTP.OK, response.statusCode());
+            aContext.assertEquals(4, myParts.size());
+            aContext.assertTrue(stream.myPauseCount > 0);
+            aContext.assertEquals(stream.myPauseCount, stream.myResumeCount);
+            aContext.assertFalse(stream.isPaused);
+        }));
+    }
+
+    /**
+     * Tests that a stream that ends before its first part is filled is uploaded in a single PUT request.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testSmallUpload(final TestContext aContext) {
+        final DataStream stream = new DataStream(PART_SIZE / 2);
+
+        upload(stream).onComplete(aContext.asyncAssertSuccess(response -> {
+            aContext.assertEquals(HTTP.OK, response.statusCode());
+            aContext.assertEquals(stream.myData, myObject);
+            aContext.assertTrue(myParts.isEmpty());
+            aContext.assertFalse(myCompletion.future().isComplete());
+        }));
+    }
+
+    /**
+     * Tests that an upload with a part that fails is aborted, and ends with the part's response.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testFailedPart(final TestContext aContext) {
+        final Future<HttpClientResponse> upload;
+
+        myFailedPart = 2;
+        upload = upload(new DataStream(PART_SIZE * 3));
+
+        upload.compose(response -> myAbort.future()).onComplete(aContext.asyncAssertSuccess(abort -> {
+            aContext.assertEquals(INTERNAL_SERVER_ERROR, upload.result().statusCode());
+            aContext.assertFalse(myCompletion.future().isComplete());
+        }));
+    }
+
+    /**
+     * Tests that a completion that fails after S3 has sent a <code>200 OK</code> fails the upload and aborts it.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testFailedCompletion(final TestContext aContext) {
+        final String message = LOGGER.getMessage(MessageCodes.VS3_049, UPLOAD_ID, BUCKET, KEY, COMPLETION_ERROR);
+        final Future<HttpClientResponse> upload;
+
+        isCompletionFailing = true;
+        upload = upload(new DataStream(PART_SIZE + 1));
+
+        upload.onComplete(aContext.asyncAssertFailure(error -> {
+            aContext.assertEquals(message, error.getMessage());
+            myAbort.future().onComplete(aContext.asyncAssertSuccess());
+        }));
+    }
+
+    /**
+     * Tests that two uploads that run at the same time each keep within the number of parts an upload sends at once,
+     * and together keep within the client-wide limit.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testPartLimits(final TestContext aContext) {
+        final DataStream first = new DataStream(PART_SIZE * 4);
+        final DataStream second = new DataStream(PART_SIZE * 4);
+        final CompositeFuture uploads;
+
+        // The local server holds the parts it's sent until the client-wide limit has been reached
+        myClient.setPartConcurrency(2).setMaxPartsInFlight(3);
+        myHoldCount = 3;
+
+        uploads = CompositeFuture.all(upload(KEY, first), upload(OTHER_KEY, second));
+        uploads.onComplete(aContext.asyncAssertSuccess(all -> {
+            aContext.assertEquals(3, myMaxTotalInFlight.get());
+            aContext.assertTrue(myMaxPartsInFlight.get(getPath(KEY)) <= 2);
+            aContext.assertTrue(myMaxPartsInFlight.get(getPath(OTHER_KEY)) <= 2);
+        }));
+    }
+
+    /**
+     * Tests that a wait for a client-wide permit, which is ended by a part of another upload finishing, resumes on
+     * the context of the upload that was waiting.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testPermitWaiterContext(final TestContext aContext) {
+        final PartPermits permits = new PartPermits(1);
+        final Context holder = myVertx.getOrCreateContext();
+        final Context waiter = myVertx.getOrCreateContext();
+        final Async async = aContext.async();
+        final Handler<Void> acquired = permit -> {
+            aContext.assertEquals(waiter, Vertx.currentContext());
+            async.complete();
+        };
+
+        aContext.assertNotEquals(holder, waiter);
+
+        // The holder gives back its permit, from its own context, once the waiter has started waiting for it
+        holder.runOnContext(hold -> permits.acquire(held -> waiter.runOnContext(wait -> {
+            permits.acquire(acquired);
+            holder.runOnContext(release -> permits.release());
+        })));
+    }
+
+    /**
+     * Answers the requests of a multipart upload, or of an upload in a single PUT request, once their bodies have
+     * been read, keeping track of the parts in flight.
+     */
+    @Override
+    protected void handle(final HttpServerRequest aRequest) {
+        if (aRequest.getParam(PART_NUMBER) != null) {
+            final int total = myTotalInFlight.incrementAndGet();
+            final int count = myPartsInFlight.merge(aRequest.path(), 1, Integer::sum);
+
+            myMaxTotalInFlight.accumulateAndGet(total, Math::max);
+            myMaxPartsInFlight.merge(aRequest.path(), count, Math::max);
+
+            if (total >= myHoldCount) {
+                myRelease.tryComplete();
+            }
+        }
+
+        aRequest.bodyHandler(body -> answer(aRequest, body));
+    }
+
+    /**
+     * Answers a request of an upload.
+     *
+     * @param aRequest A request from the client
+     * @param aBody The body of the request
+     */
+    private void answer(final HttpServerRequest aRequest, final Buffer aBody) {
+        final HttpServerResponse response = aRequest.response();
+        final String partNumber = aRequest.getParam(PART_NUMBER);
+
+        if (partNumber != null) {
+            answerPart(aRequest, Integer.parseInt(partNumber), aBody);
+        } else if (aRequest.params().contains("uploads")) {
+            response.end("<InitiateMultipartUploadResult><UploadId>" + UPLOAD_ID +
+                    "</UploadId></InitiateMultipartUploadResult>");
+        } else if (aRequest.method() == HttpMethod.POST) {
+            myCompletion.tryComplete(aBody.toString());
+            response.end(isCompletionFailing ? COMPLETION_ERROR : "<CompleteMultipartUploadResult/>");
+        } else if (aRequest.method() == HttpMethod.DELETE) {
+            myAbort.tryComplete();
+            response.setStatusCode(HTTP.NO_CONTENT).end();
+        } else {
+            myObject = aBody;
+            response.end();
+        }
+    }
+
+    /**
+     * Answers the upload of a part, once parts are no longer being held, giving the part an ETag that's made from its
+     * part number.
+     *
+     * @param aRequest The request that uploads the part
+     * @param aNumber The part's number
+     * @param aBody The contents of the part
+     */
+    private void answerPart(final HttpServerRequest aRequest, final int aNumber, final Buffer aBody) {
+        myRelease.future().onComplete(release -> {
+            myTotalInFlight.decrementAndGet();
+            myPartsInFlight.merge(aRequest.path(), -1, Integer::sum);
+            myParts.put(aNumber, aBody);
+
+            if (aNumber == myFailedPart) {
+                aRequest.response().setStatusCode(INTERNAL_SERVER_ERROR).end();
+            } else {
+                aRequest.response().putHeader(HttpHeaders.ETAG, getETag(aNumber)).end();
+            }
+        });
+    }
+
+    /**
+     * Uploads a stream to the test key.
+     *
+     * @param aStream A stream of data
+     * @return A future final response of the upload
+     */
+    private Future<HttpClientResponse> upload(final ReadStream<Buffer> aStream) {
+        return upload(KEY, aStream);
+    }
+
+    /**
+     * Uploads a stream.
+     *
+     * @param aKey An S3 key
+     * @param aStream A stream of data
+     * @return A future final response of the upload
+     */
+    private Future<HttpClientResponse> upload(final String aKey, final ReadStream<Buffer> aStream) {
+        final Promise<HttpClientResponse> promise = Promise.promise();
+
+        new MultipartUpload(myClient, BUCKET, aKey, null, promise::complete, promise::fail).upload(aStream);
+        return promise.future();
+    }
+
+    /**
+     * Gets the XML that completes an upload of a number of parts.
+     *
+     * @param aPartCount The number of parts that were uploaded
+     * @return The XML that completes the upload
+     */
+    private static String getCompletionXML(final int aPartCount) {
+        final StringBuilder xml = new StringBuilder("<CompleteMultipartUpload>");
+
+        for (int number = 1; number <= aPartCount; number++) {
+            xml.append("<Part><PartNumber>").append(number).append("</PartNumber><ETag>").append(getETag(number));
+            xml.append("</ETag></Part>");
+        }
+
+        return xml.append("</CompleteMultipartUpload>").toString();
+    }
+
+    /**
+     * Gets the ETag the local server gives a part.
+     *
+     * @param aNumber The part's number
+     * @return The part's ETag
+     */
+    private static String getETag(final int aNumber) {
+        return "\"etag-" + aNumber + '"';
+    }
+
+    /**
+     * A stream of random bytes that's read in chunks on the context it was created on, and that keeps track of how
+     * often it's paused and resumed.
+     */
+    private final class DataStream implements ReadStream<Buffer> {
+
+        private final Buffer myData;
+
+        private final Context myContext;
+
+        private Handler<Buffer> myHandler;
+
+        private Handler<Void> myEndHandler;
+
+        private int myOffset;
+
+        private int myPauseCount;
+
+        private int myResumeCount;
+
+        private boolean isPaused;
+
+        private boolean isEnded;
+
+        /**
+         * Creates a stream of random bytes.
+         *
+         * @param aLength The number of bytes in the stream
+         */
+        private DataStream(final int aLength) {
+            final byte[] bytes = new byte[aLength];
+
+            new Random(aLength).nextBytes(bytes);
+            myData = Buffer.buffer(bytes);
+            myContext = myVertx.getOrCreateContext();
+        }
+
+        @Override
+        public DataStream exceptionHandler(final Handler<Throwable> aHandler) {
+            return this;
+        }
+
+        @Override
+        public DataStream handler(final Handler<Buffer> aHandler) {
+            myHandler = aHandler;
+            myContext.runOnContext(start -> read());
+            return this;
+        }
+
+        @Override
+        public DataStream pause() {
+            isPaused = true;
+            myPauseCount += 1;
+            return this;
+        }
+
+        @Override
+        public DataStream resume() {
+            isPaused = false;
+            myResumeCount += 1;
+            myContext.runOnContext(resume -> read());
+            return this;
+        }
+
+        @Override
+        public DataStream fetch(final long aAmount) {
+            return resume();
+        }
+
+        @Override
+        public DataStream endHandler(final Handler<Void> aEndHandler) {
+            myEndHandler = aEndHandler;
+            return this;
+        }
+
+        /**
+         * Reads chunks of the stream until it's paused or has ended.
+         */
+        private void read() {
+            while (!isPaused && myOffset < myData.length()) {
+                final int end = Math.min(myOffset + CHUNK_SIZE, myData.length());
+                final Buffer chunk = myData.slice(myOffset, end);
+
+                myOffset = end;
+                myHandler.handle(chunk);
+            }
+
+            if (!isPaused && !isEnded) {
+                isEnded = true;
+                myEndHandler.handle(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,362 @@
+
+package info.freelibrary.vertx.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+
+/**
+ * Tests of the ObjectCache, which reads objects from a local server that stands in for S3.
+ */
+public class ObjectCacheTest extends AbstractMockS3Test {
+
+    private static final long MAX_SIZE = 1024;
+
+    private static final String KEY = "a.txt";
+
+    /** The contents of the test object */
+    private static final String TEXT = "0123456789";
+
+    /** A maximum age that keeps objects from being revalidated during a test */
+    private static final long NO_REVALIDATION = 60_000;
+
+    /** How long the local server waits before it answers a get */
+    private static final long DELAY = 100;
+
+    /** The objects the local server holds, by path */
+    private final Map<String, Buffer> myObjects = new ConcurrentHashMap<>();
+
+    /** The number of gets the local server has answered */
+    private final AtomicInteger myGetCount = new AtomicInteger();
+
+    private Path myDirectory;
+
+    /** Whether the local server fails the gets it's sent */
+    private boolean isFailing;
+
+    /** Whether the local server closes its connection partway through sending an object */
+    private boolean isTruncating;
+
+    /**
+     * Creates a directory for the cache.
+     *
+     * @throws IOException If the directory can't be created
+     */
+    @Before
+    public void createDirectory() throws IOException {
+        myDirectory = Files.createTempDirectory(ObjectCacheTest.class.getSimpleName());
+    }
+
+    /**
+     * Removes the cache's directory.
+     *
+     * @throws IOException If the directory can't be removed
+     */
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> paths = Files.walk(myDirectory)) {
+            paths.sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * Tests that a new cache starts empty, deleting the files a previous cache left in its directory but leaving any
+     * other files alone.
+     *
+     * @throws IOException If the test files can't be written
+     */
+    @Test
+    public final void testNewCache() throws IOException {
+        final Path oldFile = Files.write(myDirectory.resolve("old.cached"), new byte[] { 1 });
+        final Path otherFile = Files.write(myDirectory.resolve("other.txt"), new byte[] { 1 });
+        final ObjectCache cache = new ObjectCache(myVertx, myClient, myDirectory.toString(), MAX_SIZE);
+
+        assertEquals(0, cache.getObjectCount());
+        assertEquals(0, cache.getSize());
+        assertEquals(MAX_SIZE, cache.getMaxSize());
+        assertFalse(Files.exists(oldFile));
+        assertTrue(Files.exists(otherFile));
+    }
+
+    /**
+     * Tests that a cache's directory is created if it doesn't exist.
+     */
+    @Test
+    public final void testNewCacheDirectory() {
+        final Path directory = myDirectory.resolve("a/b");
+
+        new ObjectCache(myVertx, myClient, directory.toString(), MAX_SIZE);
+        assertTrue(Files.isDirectory(directory));
+    }
+
+    /**
+     * Tests that a cache can't be created without room for any objects.
+     */
+    @Test(expected = ConfigurationException.class)
+    public final void testNewCacheTooSmall() {
+        new ObjectCache(myVertx, myClient, myDirectory.toString(), 0);
+    }
+
+    /**
+     * Tests setting the maximum age of a revalidation.
+     */
+    @Test
+    public final void testSetMaxAge() {
+        final ObjectCache cache = new ObjectCache(myVertx, myClient, myDirectory.toString(), MAX_SIZE);
+
+        assertEquals(0, cache.getMaxAge());
+        assertEquals(MAX_SIZE, cache.setMaxAge(MAX_SIZE).getMaxAge());
+    }
+
+    /**
+     * Tests that the maximum age of a revalidation can't be negative.
+     */
+    @Test(expected = ConfigurationException.class)
+    public final void testSetMaxAgeNegative() {
+        new ObjectCache(myVertx, myClient, myDirectory.toString(), MAX_SIZE).setMaxAge(-1);
+    }
+
+    /**
+     * Tests that an object that isn't cached is downloaded into a file in the cache's directory.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testMiss(final TestContext aContext) {
+        final ObjectCache cache = new ObjectCache(myVertx, myClient, myDirectory.toString(), MAX_SIZE);
+
+        putObject(KEY, TEXT);
+        get(cache).onComplete(aContext.asyncAssertSuccess(body -> {
+            aContext.assertEquals(TEXT, body.toString());
+            aContext.assertEquals(1, myGetCount.get());
+            aContext.assertEquals(1, cache.getObjectCount());
+            aContext.assertEquals((long) TEXT.length(), cache.getSize());
+            aContext.assertEquals(1L, countFiles());
+        }));
+    }
+
+    /**
+     * Tests that a cached object is read from its file, without a request to S3, while it's fresh.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testHit(final TestContext aContext) {
+        final ObjectCache cache = new ObjectCache(myVertx, myClient, myDirectory.toString(), MAX_SIZE).setMaxAge(
+                NO_REVALIDATION);
+
+        putObject(KEY, TEXT);
+        get(cache).compose(body -> get(cache)).onComplete(aContext.asyncAssertSuccess(body -> {
+            aContext.assertEquals(TEXT, body.toString());
+            aContext.assertEquals(1, myGetCount.get());
+            aContext.assertEquals(1, cache.getObjectCount());
+            aContext.assertEquals(1L, countFiles());
+        }));
+    }
+
+    /**
+     * Tests that reads of an object that start while it's being downloaded wait on that download rather than
+     * starting their own.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testConcurrentMiss(final TestContext aContext) {
+        final ObjectCache cache = new ObjectCache(myVertx, myClient, myDirectory.toString(), MAX_SIZE);
+        final Future<Buffer> first;
+        final Future<Buffer> second;
+
+        putObject(KEY, TEXT);
+        first = get(cache);
+        second = get(cache);
+        CompositeFuture.all(first, second).onComplete(aContext.asyncAssertSuccess(all -> {
+            aContext.assertEquals(TEXT, first.result().toString());
+            aContext.assertEquals(TEXT, second.result().toString());
+            aContext.assertEquals(1, myGetCount.get());
+            aContext.assertEquals(1, cache.getObjectCount());
+            aContext.assertEquals(1L, countFiles());
+        }));
+    }
+
+    /**
+     * Tests that a failed download leaves nothing behind, so the next read of the object tries again.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testFailedDownload(final TestContext aContext) {
+        final ObjectCache cache = new ObjectCache(myVertx, myClient, myDirectory.toString(), MAX_SIZE);
+
+        isFailing = true;
+        putObject(KEY, TEXT);
+        get(cache).onComplete(aContext.asyncAssertFailure(error -> {
+            aContext.assertEquals(0, cache.getObjectCount());
+            aContext.assertEquals(0L, countFiles());
+
+            isFailing = false;
+            get(cache).onComplete(aContext.asyncAssertSuccess(body -> {
+                aContext.assertEquals(TEXT, body.toString());
+                aContext.assertEquals(2, myGetCount.get());
+            }));
+        }));
+    }
+
+    /**
+     * Tests that the file of a download that's cut off is deleted.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testTruncatedDownload(final TestContext aContext) {
+        final ObjectCache cache = new ObjectCache(myVertx, myClient, myDirectory.toString(), MAX_SIZE);
+
+        isTruncating = true;
+        putObject(KEY, TEXT);
+        get(cache).onComplete(aContext.asyncAssertFailure(error -> {
+            aContext.assertEquals(0, cache.getObjectCount());
+            aContext.assertEquals(0L, cache.getSize());
+            aContext.assertEquals(0L, countFiles());
+        }));
+    }
+
+    /**
+     * Tests that a failed revalidation gives back its hold on the cached object, so the object's file is deleted
+     * once it's invalidated.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testFailedRevalidation(final TestContext aContext) {
+        final ObjectCache cache = new ObjectCache(myVertx, myClient, myDirectory.toString(), MAX_SIZE);
+
+        putObject(KEY, TEXT);
+        get(cache).onComplete(aContext.asyncAssertSuccess(body -> {
+            isFailing = true;
+            get(cache).onComplete(aContext.asyncAssertFailure(error -> {
+                cache.invalidate(BUCKET, KEY);
+                aContext.assertEquals(0, cache.getObjectCount());
+                awaitFileCount(aContext, 0);
+            }));
+        }));
+    }
+
+    /**
+     * Answers gets of the test objects after a short delay, honoring <code>If-None-Match</code>.
+     */
+    @Override
+    protected void handle(final HttpServerRequest aRequest) {
+        myVertx.setTimer(DELAY, timer -> sendObject(aRequest, myObjects.get(aRequest.path())));
+    }
+
+    /**
+     * Answers a get of a test object.
+     *
+     * @param aRequest A get request
+     * @param aBody The body of the object, or null if the object doesn't exist
+     */
+    private void sendObject(final HttpServerRequest aRequest, final Buffer aBody) {
+        final HttpServerResponse response = aRequest.response();
+
+        myGetCount.incrementAndGet();
+
+        if (isFailing) {
+            response.setStatusCode(HTTP.INTERNAL_SERVER_ERROR).end();
+        } else if (aBody == null) {
+            response.setStatusCode(HTTP.NOT_FOUND).end();
+        } else {
+            final String etag = '"' + Integer.toHexString(aBody.hashCode()) + '"';
+
+            if (etag.equals(aRequest.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+                response.setStatusCode(HTTP.NOT_MODIFIED).end();
+            } else if (isTruncating) {
+                response.putHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(aBody.length() * 2));
+                response.write(aBody);
+                aRequest.connection().close();
+            } else {
+                response.putHeader(HttpHeaders.ETAG, etag).end(aBody);
+            }
+        }
+    }
+
+    /**
+     * Puts a test object on the local server.
+     *
+     * @param aKey An S3 key
+     * @param aText The contents of the object
+     */
+    private void putObject(final String aKey, final String aText) {
+        myObjects.put(getPath(aKey), Buffer.buffer(aText));
+    }
+
+    /**
+     * Counts the files in the cache's directory.
+     *
+     * @return The number of files in the directory
+     */
+    private long countFiles() {
+        try (Stream<Path> paths = Files.list(myDirectory)) {
+            return paths.count();
+        } catch (final IOException details) {
+            throw new UncheckedIOException(details);
+        }
+    }
+
+    /**
+     * Waits for the number of files in the cache's directory to reach a count, since the cache deletes the files of
+     * the objects it removes in the background.
+     *
+     * @param aContext A test context
+     * @param aCount The expected number of files
+     */
+    private void awaitFileCount(final TestContext aContext, final long aCount) {
+        final Async async = aContext.async();
+        final long deadline = System.currentTimeMillis() + DELAY * 10;
+
+        myVertx.setPeriodic(DELAY / 10, timer -> {
+            final long count = countFiles();
+
+            if (count == aCount || System.currentTimeMillis() > deadline) {
+                myVertx.cancelTimer(timer);
+                aContext.assertEquals(aCount, count);
+                async.complete();
+            }
+        });
+    }
+
+    /**
+     * Gets the test object through a cache.
+     *
+     * @param aCache An object cache
+     * @return A future body of the object
+     */
+    private static Future<Buffer> get(final ObjectCache aCache) {
+        final Promise<Buffer> promise = Promise.promise();
+
+        aCache.get(BUCKET, KEY, promise);
+        return promise.future();
+    }
+}
@@ -0,0 +1,244 @@
+
+package info.freelibrary.vertx.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+
+/**
+ * Tests of the ObjectListStream, using pages that are supplied without an S3 connection.
+ */
+public class ObjectListStreamTest {
+
+    private static final String TOKEN_1 = "token/1+=";
+
+    private static final String TOKEN_2 = "token/2+=";
+
+    private static final String KEY_A = "a";
+
+    private static final String KEY_B = "b";
+
+    private static final String KEY_C = "c";
+
+    private static final String KEY_D = "d";
+
+    private static final String KEY_E = "e";
+
+    /** The continuation tokens that pages have been requested with */
+    private final List<String> myTokens = new ArrayList<>();
+
+    /** The handlers of the page requests that haven't been answered yet */
+    private final List<Handler<AsyncResult<BucketList>>> myRequests = new ArrayList<>();
+
+    /** The handlers that the page requests' objects can be passed to as they're parsed */
+    private final List<Handler<ListObject>> myObjectHandlers = new ArrayList<>();
+
+    private final List<String> myKeys = new ArrayList<>();
+
+    private ObjectListStream myStream;
+
+    @Before
+    public void setUp() {
+        myStream = new ObjectListStream((token, objectHandler, handler) -> {
+            myTokens.add(token);
+            myObjectHandlers.add(objectHandler);
+            myRequests.add(handler);
+        }, new ListQuery(new ListOptions()));
+    }
+
+    /**
+     * Tests that the stream reads every page of a listing, following its continuation tokens.
+     *
+     * @throws IOException If a test page can't be parsed
+     */
+    @Test
+    public final void testPages() throws IOException {
+        final AtomicInteger ends = new AtomicInteger();
+
+        myStream.endHandler(end -> ends.incrementAndGet()).handler(object -> myKeys.add(object.getKey()));
+
+        answer(0, getPage(TOKEN_1, KEY_A, KEY_B));
+        answer(1, getPage(TOKEN_2, KEY_C, KEY_D));
+        answer(2, getPage(null, KEY_E));
+
+        assertEquals(Arrays.asList(null, TOKEN_1, TOKEN_2), myTokens);
+        assertEquals(Arrays.asList(KEY_A, KEY_B, KEY_C, KEY_D, KEY_E), myKeys);
+        assertEquals(1, ends.get());
+    }
+
+    /**
+     * Tests that the next page is requested while the current one is being read, but no further ahead than that.
+     *
+     * @throws IOException If a test page can't be parsed
+     */
+    @Test
+    public final void testPrefetch() throws IOException {
+        myStream.handler(object -> myKeys.add(object.getKey())).pause();
+        myStream.fetch(1);
+
+        answer(0, getPage(TOKEN_1, KEY_A, KEY_B));
+
+        assertEquals(Arrays.asList(KEY_A), myKeys);
+        assertEquals(2, myRequests.size());
+
+        answer(1, getPage(TOKEN_2, KEY_C, KEY_D));
+
+        // Three objects are waiting to be read, more than a page, so the third page isn't requested yet
+        assertEquals(2, myRequests.size());
+
+        myStream.fetch(2);
+
+        assertEquals(Arrays.asList(KEY_A, KEY_B, KEY_C), myKeys);
+        assertEquals(3, myRequests.size());
+    }
+
+    /**
+     * Tests that objects are passed on as soon as they're parsed, before the rest of their page has been received.
+     *
+     * @throws IOException If a test page can't be parsed
+     */
+    @Test
+    public final void testStreamedObjects() throws IOException {
+        final AtomicInteger ends = new AtomicInteger();
+
+        myStream.endHandler(end -> ends.incrementAndGet()).handler(object -> myKeys.add(object.getKey()));
+
+        myObjectHandlers.get(0).handle(new ListObject().setKey(KEY_A));
+        assertEquals(Arrays.asList(KEY_A), myKeys);
+
+        myObjectHandlers.get(0).handle(new ListObject().setKey(KEY_B));
+        assertEquals(Arrays.asList(KEY_A, KEY_B), myKeys);
+        assertEquals(0, ends.get());
+
+        answer(0, getPage(null));
+
+        assertEquals(Arrays.asList(KEY_A, KEY_B), myKeys);
+        assertEquals(1, ends.get());
+    }
+
+    /**
+     * Tests that a paused stream doesn't pass objects to its handler until it's resumed.
+     *
+     * @throws IOException If a test page can't be parsed
+     */
+    @Test
+    public final void testPauseResume() throws IOException {
+        final AtomicInteger ends = new AtomicInteger();
+
+        myStream.endHandler(end -> ends.incrementAndGet()).handler(object -> {
+            myKeys.add(object.getKey());
+            myStream.pause();
+        });
+
+        answer(0, getPage(null, KEY_A, KEY_B));
+
+        assertEquals(Arrays.asList(KEY_A), myKeys);
+        assertEquals(0, ends.get());
+
+        myStream.resume();
+
+        assertEquals(Arrays.asList(KEY_A, KEY_B), myKeys);
+        assertEquals(1, ends.get());
+    }
+
+    /**
+     * Tests that the listing isn't started until the stream's handler is set.
+     */
+    @Test
+    public final void testLazyStart() {
+        assertTrue(myRequests.isEmpty());
+        myStream.handler(object -> myKeys.add(object.getKey()));
+        assertEquals(1, myRequests.size());
+        assertNull(myTokens.get(0));
+    }
+
+    /**
+     * Tests that a failed page request ends the stream with an exception.
+     *
+     * @throws IOException If a test page can't be parsed
+     */
+    @Test
+    public final void testFailure() throws IOException {
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final AtomicInteger ends = new AtomicInteger();
+        final Throwable cause = new IOException();
+
+        myStream.exceptionHandler(error::set).endHandler(end -> ends.incrementAndGet());
+        myStream.handler(object -> myKeys.add(object.getKey()));
+
+        answer(0, getPage(TOKEN_1, KEY_A));
+        myRequests.get(1).handle(Future.failedFuture(cause));
+
+        assertSame(cause, error.get());
+        assertEquals(Arrays.asList(KEY_A), myKeys);
+        assertEquals(0, ends.get());
+    }
+
+    /**
+     * Tests that an empty listing ends the stream without passing anything to its handler.
+     *
+     * @throws IOException If a test page can't be parsed
+     */
+    @Test
+    public final void testEmpty() throws IOException {
+        final AtomicInteger ends = new AtomicInteger();
+
+        myStream.endHandler(end -> ends.incrementAndGet()).handler(object -> myKeys.add(object.getKey()));
+        answer(0, getPage(null));
+
+        assertTrue(myKeys.isEmpty());
+        assertEquals(1, ends.get());
+        assertFalse(myRequests.size() > 1);
+    }
+
+    /**
+     * Answers a page request.
+     *
+     * @param aIndex The index of the page request
+     * @param aPage The page to answer it with
+     */
+    private void answer(final int aIndex, final BucketList aPage) {
+        myRequests.get(aIndex).handle(Future.succeededFuture(aPage));
+    }
+
+    /**
+     * Gets a page of a listing.
+     *
+     * @param aToken The continuation token of the next page, or null if this is the last page
+     * @param aKeys The keys of the objects in the page
+     * @return A page of a listing
+     * @throws IOException If the page can't be parsed
+     */
+    private static BucketList getPage(final String aToken, final String... aKeys) throws IOException {
+        final StringBuilder xml = new StringBuilder("<ListBucketResult>");
+
+        for (final String key : aKeys) {
+            xml.append("<Contents><Key>").append(key).append("</Key><Size>1</Size></Contents>");
+        }
+
+        if (aToken != null) {
+            xml.append("<IsTruncated>true</IsTruncated><NextContinuationToken>").append(aToken)
+                    .append("</NextContinuationToken>");
+        } else {
+            xml.append("<IsTruncated>false</IsTruncated>");
+        }
+
+        return new BucketList(xml.append("</ListBucketResult>").toString());
+    }
+}
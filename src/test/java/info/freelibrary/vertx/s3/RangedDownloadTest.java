@@ -0,0 +1,336 @@
+
+package info.freelibrary.vertx.s3;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+
+/**
+ * Tests of the RangedDownload, which downloads an object from a local server that stands in for S3.
+ */
+public class RangedDownloadTest extends AbstractMockS3Test {
+
+    private static final String KEY = "object.bin";
+
+    /** The size of the ranges the object is downloaded in */
+    private static final int RANGE_SIZE = S3Client.MIN_PART_SIZE;
+
+    /** The size of an object that's downloaded in three ranges and a bit */
+    private static final int OBJECT_SIZE = RANGE_SIZE * 3 + RANGE_SIZE / 2;
+
+    private static final String ETAG = "\"etag\"";
+
+    private static final String BYTES = "bytes=";
+
+    private static final int PRECONDITION_FAILED = HttpResponseStatus.PRECONDITION_FAILED.code();
+
+    /** How long the local server waits before it answers a delayed range */
+    private static final long DELAY = 200;
+
+    /** The ranges the local server has been asked for, in the order they were asked for */
+    private final List<String> myRanges = new CopyOnWriteArrayList<>();
+
+    /** The <code>If-Match</code> headers of the range requests, in the order the ranges were asked for */
+    private final List<String> myIfMatches = new CopyOnWriteArrayList<>();
+
+    /** How long the local server waits to answer ranges, by the offsets at which they start */
+    private final Map<Integer, Long> myDelays = new ConcurrentHashMap<>();
+
+    /** The number of ranges that are being answered */
+    private final AtomicInteger myRangesInFlight = new AtomicInteger();
+
+    /** The largest number of ranges that were answered at the same time */
+    private final AtomicInteger myMaxRangesInFlight = new AtomicInteger();
+
+    /** The number of ranges that have been answered */
+    private final AtomicInteger myRangesSent = new AtomicInteger();
+
+    /** The body of the object on the local server */
+    private Buffer myObject;
+
+    /** The ETag of the object on the local server */
+    private String myETag = ETAG;
+
+    /** The offset of a range that the local server fails, or -1 if it doesn't fail any */
+    private int myFailedStart = -1;
+
+    /** Whether the object on the local server is replaced once its first range has been sent */
+    private boolean isReplacing;
+
+    private Path myFile;
+
+    /**
+     * Creates the file into which the object is downloaded.
+     *
+     * @throws IOException If the file can't be created
+     */
+    @Before
+    public void createFile() throws IOException {
+        myFile = Files.createTempFile(RangedDownloadTest.class.getSimpleName(), ".bin");
+        myClient.setPartSize(RANGE_SIZE).setPartConcurrency(2);
+        setObject(OBJECT_SIZE);
+    }
+
+    /**
+     * Deletes the file into which the object was downloaded.
+     *
+     * @throws IOException If the file can't be deleted
+     */
+    @After
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(myFile);
+    }
+
+    /**
+     * Tests getting the size of an object from the response to its first range.
+     */
+    @Test
+    public final void testGetObjectSize() {
+        assertEquals(5_368_709_120L, RangedDownload.getObjectSize("bytes 0-8388607/5368709120"));
+        assertEquals(0, RangedDownload.getObjectSize("bytes */0"));
+        assertEquals(42, RangedDownload.getObjectSize("42"));
+    }
+
+    /**
+     * Tests that a response that doesn't give the size of its object is recognized.
+     */
+    @Test
+    public final void testUnknownObjectSize() {
+        assertEquals(-1, RangedDownload.getObjectSize(null));
+        assertEquals(-1, RangedDownload.getObjectSize("bytes 0-8388607/*"));
+    }
+
+    /**
+     * Tests that an object is split into ranges of the client's part size, the first of which is fetched on its own
+     * and the rest of which must match the first's ETag.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testRanges(final TestContext aContext) {
+        // The ranges are answered slowly enough that the limit of two in flight is always reached
+        myDelays.put(RANGE_SIZE, DELAY / 4);
+        myDelays.put(RANGE_SIZE * 2, DELAY / 4);
+        myDelays.put(RANGE_SIZE * 3, DELAY / 4);
+
+        download().onComplete(aContext.asyncAssertSuccess(download -> {
+            aContext.assertEquals(Arrays.asList(getRange(0, RANGE_SIZE), getRange(RANGE_SIZE, RANGE_SIZE * 2),
+                    getRange(RANGE_SIZE * 2, RANGE_SIZE * 3), getRange(RANGE_SIZE * 3, OBJECT_SIZE)), myRanges);
+            aContext.assertEquals(Arrays.asList(null, ETAG, ETAG, ETAG), myIfMatches);
+            aContext.assertEquals(2, myMaxRangesInFlight.get());
+        }));
+    }
+
+    /**
+     * Tests that ranges that arrive out of order are each written at their own offsets in the file.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testOffsets(final TestContext aContext) {
+        // The second range is answered after the third and fourth
+        myDelays.put(RANGE_SIZE, DELAY);
+
+        download().onComplete(aContext.asyncAssertSuccess(download -> {
+            aContext.assertTrue(Arrays.equals(myObject.getBytes(), readFile()));
+        }));
+    }
+
+    /**
+     * Tests downloading an object that's smaller than a single range.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testSmallObject(final TestContext aContext) {
+        setObject(RANGE_SIZE / 2);
+
+        download().onComplete(aContext.asyncAssertSuccess(download -> {
+            aContext.assertEquals(1, myRanges.size());
+            aContext.assertTrue(Arrays.equals(myObject.getBytes(), readFile()));
+        }));
+    }
+
+    /**
+     * Tests that an object that's replaced while it's being downloaded fails the download.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testReplacedObject(final TestContext aContext) {
+        isReplacing = true;
+
+        download().onComplete(aContext.asyncAssertFailure(error -> {
+            aContext.assertTrue(error.getMessage().contains(Integer.toString(PRECONDITION_FAILED)));
+        }));
+    }
+
+    /**
+     * Tests that once a range fails, no more ranges are fetched and the ranges that are still in flight are read
+     * without being written.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testFailedRange(final TestContext aContext) {
+        // The second and third ranges are fetched together, and the third is answered after the second has failed
+        myClient.setPartConcurrency(3);
+        myFailedStart = RANGE_SIZE;
+        myDelays.put(RANGE_SIZE * 2, DELAY);
+
+        download().onComplete(aContext.asyncAssertFailure(error -> awaitRangesSent(aContext, 3)));
+    }
+
+    /**
+     * Answers a request for a range of the object, after a delay if the range is to be delayed.
+     */
+    @Override
+    protected void handle(final HttpServerRequest aRequest) {
+        final String range = aRequest.getHeader(HTTP.RANGE);
+        final int start = Integer.parseInt(range.substring(BYTES.length(), range.indexOf('-')));
+        final long delay = myDelays.getOrDefault(start, 0L);
+
+        myRanges.add(range);
+        myIfMatches.add(aRequest.getHeader(HttpHeaders.IF_MATCH));
+        myMaxRangesInFlight.accumulateAndGet(myRangesInFlight.incrementAndGet(), Math::max);
+
+        if (delay > 0) {
+            myVertx.setTimer(delay, timer -> sendRange(aRequest, start));
+        } else {
+            sendRange(aRequest, start);
+        }
+    }
+
+    /**
+     * Sends a range of the object.
+     *
+     * @param aRequest A range request
+     * @param aStart The offset at which the range starts
+     */
+    private void sendRange(final HttpServerRequest aRequest, final int aStart) {
+        final String range = aRequest.getHeader(HTTP.RANGE);
+        final int end = Math.min(Integer.parseInt(range.substring(range.indexOf('-') + 1)) + 1, myObject.length());
+        final String ifMatch = aRequest.getHeader(HttpHeaders.IF_MATCH);
+        final HttpServerResponse response = aRequest.response();
+        final Handler<AsyncResult<Void>> sentHandler = sent -> {
+            myRangesInFlight.decrementAndGet();
+            myRangesSent.incrementAndGet();
+        };
+
+        if (aStart == myFailedStart) {
+            response.setStatusCode(HTTP.INTERNAL_SERVER_ERROR).end(sentHandler);
+        } else if (ifMatch != null && !ifMatch.equals(myETag)) {
+            response.setStatusCode(PRECONDITION_FAILED).end(sentHandler);
+        } else {
+            response.setStatusCode(HTTP.PARTIAL_CONTENT).putHeader(HttpHeaders.ETAG, myETag);
+            response.putHeader(HttpHeaders.CONTENT_RANGE, "bytes " + aStart + '-' + (end - 1) + '/' + myObject
+                    .length());
+            response.end(myObject.slice(aStart, end), sentHandler);
+
+            if (isReplacing) {
+                myETag = "\"replaced\"";
+            }
+        }
+    }
+
+    /**
+     * Puts an object of random bytes on the local server.
+     *
+     * @param aSize The size of the object
+     */
+    private void setObject(final int aSize) {
+        final byte[] bytes = new byte[aSize];
+
+        new Random(aSize).nextBytes(bytes);
+        myObject = Buffer.buffer(bytes);
+    }
+
+    /**
+     * Downloads the object into the test file, closing the file once the download has finished.
+     *
+     * @return A future download
+     */
+    private Future<Void> download() {
+        final Promise<AsyncFile> open = Promise.promise();
+
+        myVertx.fileSystem().open(myFile.toString(), new OpenOptions().setWrite(true), open);
+
+        return open.future().compose(file -> {
+            final Promise<Void> download = Promise.promise();
+
+            myClient.download(BUCKET, KEY, file, result -> file.close(close -> download.handle(result)));
+            return download.future();
+        });
+    }
+
+    /**
+     * Waits for the local server to have sent a number of ranges, checking that no more ranges were asked for and
+     * that nothing after the first range was written into the file.
+     *
+     * @param aContext A test context
+     * @param aCount The expected number of ranges
+     */
+    private void awaitRangesSent(final TestContext aContext, final int aCount) {
+        final Async async = aContext.async();
+
+        myVertx.setPeriodic(DELAY / 10, timer -> {
+            if (myRangesSent.get() >= aCount) {
+                myVertx.cancelTimer(timer);
+
+                // The ranges that are still in flight are given time to be read before the file is checked
+                myVertx.setTimer(DELAY, delay -> {
+                    aContext.assertEquals(aCount, myRanges.size());
+                    aContext.assertTrue(readFile().length <= RANGE_SIZE);
+                    async.complete();
+                });
+            }
+        });
+    }
+
+    /**
+     * Reads the test file.
+     *
+     * @return The contents of the file
+     */
+    private byte[] readFile() {
+        return myVertx.fileSystem().readFileBlocking(myFile.toString()).getBytes();
+    }
+
+    /**
+     * Gets a range header.
+     *
+     * @param aStart The offset of the first byte of the range
+     * @param aEnd The offset after the last byte of the range
+     * @return The range header
+     */
+    private static String getRange(final int aStart, final int aEnd) {
+        return BYTES + aStart + '-' + (aEnd - 1);
+    }
+}
@@ -5,6 +5,11 @@ import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import java.util.UUID;
 
 import org.junit.Before;
@@ -23,6 +28,8 @@ import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.file.AsyncFile;
 import io.vertx.core.file.OpenOptions;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServer;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.RunTestOnContext;
@@ -38,12 +45,22 @@ public class S3ClientFT extends AbstractS3FT {
 
     private static final String TEST_FILE = "src/test/resources/green.gif";
 
+    private static final String GIF_EXT = ".gif";
+
     private static final String CONTENT_LENGTH = "Content-Length";
 
     private static final Vertx VERTX = Vertx.vertx();
 
     private static final String PREFIX = "prefix_";
 
+    private static final String CONTENT_TYPE = "Content-Type";
+
+    private static final String MULTIPART_FORM = "multipart/form-data; boundary=";
+
+    private static final String BOUNDARY = "vertx-s3-boundary";
+
+    private static final String SLASH = "/";
+
     @Rule
     public final RunTestOnContext myContext = new RunTestOnContext();
 
@@ -299,6 +316,113 @@ public class S3ClientFT extends AbstractS3FT {
         });
     }
 
+    /**
+     * Tests listing a bucket a level at a time, using a delimiter.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testListBucketDelimiterWithHandler(final TestContext aContext) throws MalformedURLException {
+        final S3Client s3Client = new S3Client(VERTX, myAccessKey, mySecretKey, myEndpoint);
+        final Async asyncTask = aContext.async();
+        final String pKey = PREFIX + SLASH + myKey;
+        final ListOptions options = new ListOptions().setDelimiter(SLASH).setFetchOwner(true);
+
+        storeGIF(pKey);
+        storeGIF(myKey);
+
+        s3Client.list(myBucket, options, list -> {
+            if (list.statusCode() == HTTP.OK) {
+                list.bodyHandler(body -> {
+                    try {
+                        final BucketList bucketList = new BucketList(body);
+
+                        aContext.assertEquals(1, bucketList.size());
+                        aContext.assertTrue(bucketList.containsKey(myKey));
+                        aContext.assertNotNull(bucketList.get(0).getOwnerID());
+                        aContext.assertEquals(Arrays.asList(PREFIX + SLASH), bucketList.getCommonPrefixes());
+
+                        complete(asyncTask);
+                    } catch (final IOException details) {
+                        aContext.fail(details);
+                    } finally {
+                        removeGIF(pKey);
+                        removeGIF(myKey);
+                    }
+                });
+            } else {
+                aContext.fail(LOGGER.getMessage(MessageCodes.VS3_017, list.statusCode(), list.statusMessage()));
+                removeGIF(pKey);
+                removeGIF(myKey);
+            }
+        });
+    }
+
+    /**
+     * Tests streaming the listing of a bucket using a prefix.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testListObjectsPrefix(final TestContext aContext) throws MalformedURLException {
+        final S3Client s3Client = new S3Client(VERTX, myAccessKey, mySecretKey, myEndpoint);
+        final Async asyncTask = aContext.async();
+        final String pKey2 = PREFIX + UUID.randomUUID().toString();
+        final String pKey1 = PREFIX + myKey;
+        final List<String> keys = new ArrayList<>();
+
+        storeGIF(pKey1);
+        storeGIF(pKey2);
+        storeGIF(myKey);
+
+        s3Client.listObjects(myBucket, PREFIX).exceptionHandler(error -> {
+            aContext.fail(error);
+            removeGIF(pKey1);
+            removeGIF(pKey2);
+            removeGIF(myKey);
+        }).endHandler(end -> {
+            aContext.assertEquals(2, keys.size());
+            aContext.assertTrue(keys.contains(pKey1));
+            aContext.assertTrue(keys.contains(pKey2));
+
+            removeGIF(pKey1);
+            removeGIF(pKey2);
+            removeGIF(myKey);
+            complete(asyncTask);
+        }).handler(listObject -> keys.add(listObject.getKey()));
+    }
+
+    /**
+     * Tests listing a bucket in parallel, split at the common prefixes of its keys.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testListObjectsByDelimiter(final TestContext aContext) throws MalformedURLException {
+        final S3Client s3Client = new S3Client(VERTX, myAccessKey, mySecretKey, myEndpoint);
+        final Async asyncTask = aContext.async();
+        final List<String> expected = new ArrayList<>();
+        final List<String> keys = new ArrayList<>();
+
+        for (final String directory : new String[] { "a/", "b/", "c/" }) {
+            expected.add(directory + myKey);
+            expected.add(directory + UUID.randomUUID().toString());
+        }
+
+        expected.add(myKey);
+        expected.sort(ListQuery::compareKeys);
+        expected.forEach(this::storeGIF);
+
+        s3Client.setListConcurrency(2).listObjectsByDelimiter(myBucket, null, SLASH, true).exceptionHandler(error -> {
+            aContext.fail(error);
+            expected.forEach(this::removeGIF);
+        }).endHandler(end -> {
+            aContext.assertEquals(expected, keys);
+            expected.forEach(this::removeGIF);
+            complete(asyncTask);
+        }).handler(listObject -> keys.add(listObject.getKey()));
+    }
+
     /**
      * Tests listing a bucket using a prefix, with an exception handler.
      *
@@ -580,6 +704,119 @@ public class S3ClientFT extends AbstractS3FT {
         });
     }
 
+    /**
+     * Tests putting an AsyncFile that's large enough to be sent as a multipart upload.
+     *
+     * @param aContext A test context
+     * @throws IOException If the large test file cannot be created
+     */
+    @Test
+    @SuppressWarnings("checkstyle:indentation")
+    public final void testPutBucketKeyLargeAsyncFileHandler(final TestContext aContext) throws IOException {
+        final S3Client s3Client = new S3Client(VERTX, myAccessKey, mySecretKey, myEndpoint);
+        final File largeFile = getLargeFile(S3Client.MIN_PART_SIZE * 2 + 1);
+        final AsyncFile file = myContext.vertx().fileSystem().openBlocking(largeFile.getPath(), new OpenOptions());
+        final Async asyncTask = aContext.async();
+
+        myAwsS3Client.createBucket(myBucket);
+
+        s3Client.setPartSize(S3Client.MIN_PART_SIZE).put(myBucket, myKey, file, put -> {
+            if (put.statusCode() == HTTP.OK) {
+                aContext.assertEquals(largeFile.length(), myAwsS3Client.getObjectMetadata(myBucket, myKey)
+                        .getContentLength());
+                complete(asyncTask);
+            } else {
+                aContext.fail(LOGGER.getMessage(MessageCodes.VS3_017, put.statusCode(), put.statusMessage()));
+            }
+
+            removeGIF(myKey);
+        }, error -> {
+            removeGIF(myKey);
+            aContext.fail(error);
+        });
+    }
+
+    /**
+     * Tests streaming a stream of known length, which is sent with a chunked payload signature.
+     *
+     * @param aContext A test context
+     * @throws IOException If the large test file cannot be created
+     */
+    @Test
+    @SuppressWarnings("checkstyle:indentation")
+    public final void testPutBucketKeyReadStreamLengthHandler(final TestContext aContext) throws IOException {
+        final S3Client s3Client = new S3Client(VERTX, myAccessKey, mySecretKey, myEndpoint);
+        final File largeFile = getLargeFile(S3ClientRequest.STREAMING_CHUNK_SIZE * 3 + 1);
+        final AsyncFile file = myContext.vertx().fileSystem().openBlocking(largeFile.getPath(), new OpenOptions());
+        final Async asyncTask = aContext.async();
+
+        myAwsS3Client.createBucket(myBucket);
+
+        s3Client.put(myBucket, myKey, file, largeFile.length(), put -> {
+            if (put.statusCode() == HTTP.OK) {
+                aContext.assertEquals(largeFile.length(), myAwsS3Client.getObjectMetadata(myBucket, myKey)
+                        .getContentLength());
+                complete(asyncTask);
+            } else {
+                aContext.fail(LOGGER.getMessage(MessageCodes.VS3_017, put.statusCode(), put.statusMessage()));
+            }
+
+            removeGIF(myKey);
+        }, error -> {
+            removeGIF(myKey);
+            aContext.fail(error);
+        });
+    }
+
+    /**
+     * Tests streaming an HttpServerFileUpload that's large enough to be sent as a multipart upload.
+     *
+     * @param aContext A test context
+     * @throws IOException If the large test file cannot be created
+     */
+    @Test
+    @SuppressWarnings("checkstyle:indentation")
+    public final void testPutBucketKeyHttpServerFileUploadHandler(final TestContext aContext) throws IOException {
+        final S3Client s3Client = new S3Client(VERTX, myAccessKey, mySecretKey, myEndpoint);
+        final File largeFile = getLargeFile(S3Client.MIN_PART_SIZE * 2 + 1);
+        final Buffer form = getMultipartForm(largeFile);
+        final HttpServer server = myContext.vertx().createHttpServer();
+        final Async asyncTask = aContext.async();
+
+        myAwsS3Client.createBucket(myBucket);
+
+        server.requestHandler(request -> {
+            request.setExpectMultipart(true);
+            request.uploadHandler(upload -> {
+                s3Client.setPartSize(S3Client.MIN_PART_SIZE).put(myBucket, myKey, upload, put -> {
+                    request.response().setStatusCode(put.statusCode()).end();
+                }, error -> {
+                    request.response().setStatusCode(HTTP.INTERNAL_SERVER_ERROR).end();
+                    aContext.fail(error);
+                });
+            });
+        }).listen(0, listen -> {
+            if (listen.failed()) {
+                aContext.fail(listen.cause());
+                return;
+            }
+
+            myContext.vertx().createHttpClient().post(listen.result().actualPort(), "localhost", SLASH, post -> {
+                if (post.statusCode() == HTTP.OK) {
+                    aContext.assertEquals(largeFile.length(), myAwsS3Client.getObjectMetadata(myBucket, myKey)
+                            .getContentLength());
+                    complete(asyncTask);
+                } else {
+                    aContext.fail(LOGGER.getMessage(MessageCodes.VS3_017, post.statusCode(), post
+                            .statusMessage()));
+                }
+
+                removeGIF(myKey);
+                server.close();
+            }).putHeader(CONTENT_TYPE, MULTIPART_FORM + BOUNDARY).end(form);
+        });
+    }
+
     /**
      * Tests deleting an object.
      *
@@ -631,6 +868,251 @@ public class S3ClientFT extends AbstractS3FT {
         });
     }
 
+    /**
+     * Tests getting an object into a write stream.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testGetBucketKeyWriteStream(final TestContext aContext) throws IOException {
+        final S3Client s3Client = new S3Client(VERTX, myAccessKey, mySecretKey, myEndpoint);
+        final File download = File.createTempFile(myKey, GIF_EXT);
+        final AsyncFile file = myContext.vertx().fileSystem().openBlocking(download.getPath(), new OpenOptions()
+                .setTruncateExisting(true));
+        final Async asyncTask = aContext.async();
+
+        download.deleteOnExit();
+        storeGIF(myKey);
+
+        // The file is closed when the stream ends
+        s3Client.get(myBucket, myKey, file, get -> {
+            if (get.succeeded()) {
+                aContext.assertEquals(myContext.vertx().fileSystem().readFileBlocking(TEST_FILE), myContext.vertx()
+                        .fileSystem().readFileBlocking(download.getPath()));
+                complete(asyncTask);
+            } else {
+                aContext.fail(get.cause());
+            }
+
+            removeGIF(myKey);
+        });
+    }
+
+    /**
+     * Tests getting a range of an object's bytes.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testGetBucketKeyRange(final TestContext aContext) throws MalformedURLException {
+        final S3Client s3Client = new S3Client(VERTX, myAccessKey, mySecretKey, myEndpoint);
+        final Async asyncTask = aContext.async();
+
+        storeGIF(myKey);
+
+        s3Client.get(myBucket, myKey, new GetOptions().setRange(10, 19), get -> {
+            if (get.statusCode() == HTTP.PARTIAL_CONTENT) {
+                get.bodyHandler(body -> {
+                    aContext.assertEquals(myContext.vertx().fileSystem().readFileBlocking(TEST_FILE).getBuffer(10,
+                            20), body);
+                    complete(asyncTask);
+                });
+            } else {
+                aContext.fail(LOGGER.getMessage(MessageCodes.VS3_017, get.statusCode(), get.statusMessage()));
+            }
+
+            removeGIF(myKey);
+        });
+    }
+
+    /**
+     * Tests revalidating an object with its ETag.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testHeadBucketKeyIfNoneMatch(final TestContext aContext) throws MalformedURLException {
+        final S3Client s3Client = new S3Client(VERTX, myAccessKey, mySecretKey, myEndpoint);
+        final Async asyncTask = aContext.async();
+
+        storeGIF(myKey);
+
+        s3Client.head(myBucket, myKey, head -> {
+            final GetOptions options = new GetOptions().setIfNoneMatch(head.getHeader(HttpHeaders.ETAG));
+
+            s3Client.head(myBucket, myKey, options, revalidation -> {
+                if (revalidation.statusCode() == HTTP.NOT_MODIFIED) {
+                    complete(asyncTask);
+                } else {
+                    aContext.fail(LOGGER.getMessage(MessageCodes.VS3_017, revalidation.statusCode(), revalidation
+                            .statusMessage()));
+                }
+
+                removeGIF(myKey);
+            });
+        });
+    }
+
+    /**
+     * Tests reading an object through a cache, which downloads it once and then revalidates it.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testObjectCacheGet(final TestContext aContext) throws IOException {
+        final S3Client s3Client = new S3Client(VERTX, myAccessKey, mySecretKey, myEndpoint);
+        final File directory = Files.createTempDirectory(myKey).toFile();
+        final ObjectCache cache = new ObjectCache(myContext.vertx(), s3Client, directory.getPath(), 1024);
+        final Buffer gif = myContext.vertx().fileSystem().readFileBlocking(TEST_FILE);
+        final Async asyncTask = aContext.async();
+
+        directory.deleteOnExit();
+        storeGIF(myKey);
+
+        cache.get(myBucket, myKey, download -> {
+            if (download.succeeded()) {
+                aContext.assertEquals(gif, download.result());
+
+                cache.get(myBucket, myKey, revalidation -> {
+                    if (revalidation.succeeded()) {
+                        aContext.assertEquals(gif, revalidation.result());
+                        aContext.assertEquals(1, cache.getObjectCount());
+                        aContext.assertEquals((long) gif.length(), cache.getSize());
+                        complete(asyncTask);
+                    } else {
+                        aContext.fail(revalidation.cause());
+                    }
+
+                    removeGIF(myKey);
+                });
+            } else {
+                removeGIF(myKey);
+                aContext.fail(download.cause());
+            }
+        });
+    }
+
+    /**
+     * Tests reading an object through an off-heap cache, which reads it once and then revalidates it.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testMemoryObjectCacheGet(final TestContext aContext) throws MalformedURLException {
+        final S3Client s3Client = new S3Client(VERTX, myAccessKey, mySecretKey, myEndpoint);
+        final MemoryObjectCache cache = new MemoryObjectCache(s3Client, 1024);
+        final Buffer gif = myContext.vertx().fileSystem().readFileBlocking(TEST_FILE);
+        final Async asyncTask = aContext.async();
+
+        storeGIF(myKey);
+
+        cache.get(myBucket, myKey, read -> {
+            if (read.succeeded()) {
+                aContext.assertEquals(gif, read.result());
+
+                cache.get(myBucket, myKey, revalidation -> {
+                    if (revalidation.succeeded()) {
+                        aContext.assertEquals(gif, revalidation.result());
+                        aContext.assertEquals(1, cache.getObjectCount());
+                        cache.clear();
+                        complete(asyncTask);
+                    } else {
+                        aContext.fail(revalidation.cause());
+                    }
+
+                    removeGIF(myKey);
+                });
+            } else {
+                removeGIF(myKey);
+                aContext.fail(read.cause());
+            }
+        });
+    }
+
+    /**
+     * Tests downloading an object into a file.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testDownloadBucketKeyAsyncFile(final TestContext aContext) throws IOException {
+        final S3Client s3Client = new S3Client(VERTX, myAccessKey, mySecretKey, myEndpoint);
+        final File download = File.createTempFile(myKey, GIF_EXT);
+        final AsyncFile file = myContext.vertx().fileSystem().openBlocking(download.getPath(), new OpenOptions()
+                .setTruncateExisting(true));
+        final Async asyncTask = aContext.async();
+
+        download.deleteOnExit();
+        storeGIF(myKey);
+
+        s3Client.download(myBucket, myKey, file, get -> {
+            file.close();
+
+            if (get.succeeded()) {
+                aContext.assertEquals(myContext.vertx().fileSystem().readFileBlocking(TEST_FILE), myContext.vertx()
+                        .fileSystem().readFileBlocking(download.getPath()));
+                complete(asyncTask);
+            } else {
+                aContext.fail(get.cause());
+            }
+
+            removeGIF(myKey);
+        });
+    }
+
+    /**
+     * Tests deleting many objects with a single request.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testDeleteObjectsBucketKeys(final TestContext aContext) throws MalformedURLException {
+        final S3Client s3Client = new S3Client(VERTX, myAccessKey, mySecretKey, myEndpoint);
+        final String otherKey = UUID.randomUUID().toString();
+        final Async asyncTask = aContext.async();
+
+        storeGIF(myKey);
+        storeGIF(otherKey);
+
+        s3Client.deleteObjects(myBucket, Arrays.asList(myKey, otherKey), delete -> {
+            if (delete.succeeded() && delete.result().isEmpty()) {
+                aContext.assertFalse(gifIsFound(myKey));
+                aContext.assertFalse(gifIsFound(otherKey));
+                complete(asyncTask);
+            } else {
+                aContext.fail(delete.succeeded() ? delete.result().toString() : delete.cause().getMessage());
+                removeGIF(myKey);
+                removeGIF(otherKey);
+            }
+        });
+    }
+
+    /**
+     * Tests copying an object within a bucket.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testCopyBucketKeyHandler(final TestContext aContext) throws MalformedURLException {
+        final S3Client s3Client = new S3Client(VERTX, myAccessKey, mySecretKey, myEndpoint);
+        final String copyKey = myKey + "-copy";
+        final Async asyncTask = aContext.async();
+
+        storeGIF(myKey);
+
+        s3Client.copy(myBucket, myKey, myBucket, copyKey, copy -> {
+            if (copy.statusCode() == HTTP.OK) {
+                aContext.assertTrue(gifIsFound(copyKey));
+                removeGIF(copyKey);
+                removeGIF(myKey);
+                complete(asyncTask);
+            } else {
+                aContext.fail(LOGGER.getMessage(MessageCodes.VS3_017, copy.statusCode(), copy.statusMessage()));
+                removeGIF(myKey);
+            }
+        });
+    }
+
     /**
      * Stores a test GIF in our S3 compatible test environment.
      */
@@ -665,6 +1147,39 @@ public class S3ClientFT extends AbstractS3FT {
         return myAwsS3Client.doesObjectExist(myBucket, aKey);
     }
 
+    /**
+     * Creates a temporary file of the supplied size.
+     *
+     * @param aSize The size of the file in bytes
+     * @return A temporary file
+     * @throws IOException If the file cannot be written
+     */
+    private File getLargeFile(final int aSize) throws IOException {
+        final File file = File.createTempFile(PREFIX, ".bin");
+        final byte[] bytes = new byte[aSize];
+
+        new Random().nextBytes(bytes);
+        Files.write(file.toPath(), bytes);
+        file.deleteOnExit();
+
+        return file;
+    }
+
+    /**
+     * Wraps the contents of a file in a multipart form, as a browser would when uploading it.
+     *
+     * @param aFile A file to upload
+     * @return A multipart form containing the file
+     * @throws IOException If the file cannot be read
+     */
+    private Buffer getMultipartForm(final File aFile) throws IOException {
+        final String header = "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"" +
+                aFile.getName() + "\"\r\nContent-Type: application/octet-stream\r\n\r\n";
+
+        return Buffer.buffer(header).appendBytes(Files.readAllBytes(aFile.toPath())).appendString("\r\n--" +
+                BOUNDARY + "--\r\n");
+    }
+
     /**
      * Gets fake user metadata for testing.
      *
@@ -0,0 +1,116 @@
+
+package info.freelibrary.vertx.s3;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+
+/**
+ * Tests of streamed S3 client requests, which are sent to a local server that stands in for S3.
+ */
+public class S3ClientRequestTest extends AbstractMockS3Test {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(S3ClientRequestTest.class, Constants.BUNDLE_NAME);
+
+    private static final String KEY = "streamed.bin";
+
+    private static final int CHUNK_SIZE = S3ClientRequest.STREAMING_CHUNK_SIZE;
+
+    /** The number of payload bytes the local server has received */
+    private final AtomicInteger myBodyLength = new AtomicInteger();
+
+    /** The promised length of the payload the local server was sent */
+    private String myDecodedLength;
+
+    /**
+     * Tests that the handler of a streamed write is notified once the chunks that the write filled have been written,
+     * and that the whole payload reaches S3 in signed chunks.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testStreamedChunks(final TestContext aContext) {
+        final Async async = aContext.async();
+        final long length = CHUNK_SIZE * 2 + 2;
+        final S3ClientRequest request = myClient.createPutRequest(BUCKET, KEY, response -> {
+            aContext.assertEquals(HTTP.OK, response.statusCode());
+            aContext.assertEquals(Long.toString(length), myDecodedLength);
+            aContext.assertEquals(AwsChunkSigner.getEncodedLength(length, CHUNK_SIZE), (long) myBodyLength.get());
+            async.complete();
+        });
+
+        request.exceptionHandler(aContext::fail).setStreamingPayload(length);
+        request.write(Buffer.buffer(new byte[CHUNK_SIZE + 1]), aContext.asyncAssertSuccess());
+        request.write(Buffer.buffer(new byte[CHUNK_SIZE + 1]), aContext.asyncAssertSuccess());
+        request.end(aContext.asyncAssertSuccess());
+    }
+
+    /**
+     * Tests that a write that takes a streamed payload past its promised length fails the request.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testStreamTooLong(final TestContext aContext) {
+        final S3ClientRequest request = myClient.createPutRequest(BUCKET, KEY, response -> aContext.fail());
+        final String message = LOGGER.getMessage(MessageCodes.VS3_050, BUCKET, KEY, CHUNK_SIZE);
+
+        request.setStreamingPayload(CHUNK_SIZE);
+        request.write(Buffer.buffer(new byte[CHUNK_SIZE + 1]), aContext.asyncAssertFailure(error -> {
+            aContext.assertEquals(message, error.getMessage());
+        }));
+    }
+
+    /**
+     * Tests that a write without a handler that takes a streamed payload past its promised length notifies the
+     * request's exception handler, and that the request's later writes fail for the same reason.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testStreamTooLongWithoutHandler(final TestContext aContext) {
+        final Async async = aContext.async();
+        final S3ClientRequest request = myClient.createPutRequest(BUCKET, KEY, response -> aContext.fail());
+        final String message = LOGGER.getMessage(MessageCodes.VS3_050, BUCKET, KEY, 1);
+
+        request.setStreamingPayload(1).exceptionHandler(error -> {
+            aContext.assertEquals(message, error.getMessage());
+            async.complete();
+        });
+        request.write(Buffer.buffer(new byte[2]));
+        request.end(aContext.asyncAssertFailure(error -> aContext.assertEquals(message, error.getMessage())));
+    }
+
+    /**
+     * Tests that ending a streamed request before its payload reaches its promised length fails the request.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public final void testStreamTooShort(final TestContext aContext) {
+        final S3ClientRequest request = myClient.createPutRequest(BUCKET, KEY, response -> aContext.fail());
+        final String message = LOGGER.getMessage(MessageCodes.VS3_051, BUCKET, KEY, CHUNK_SIZE, CHUNK_SIZE * 2);
+
+        request.setStreamingPayload(CHUNK_SIZE * 2);
+        request.write(Buffer.buffer(new byte[CHUNK_SIZE]));
+        request.end(aContext.asyncAssertFailure(error -> aContext.assertEquals(message, error.getMessage())));
+    }
+
+    /**
+     * Reads the body of a streamed put, answering once the whole body has arrived.
+     */
+    @Override
+    protected void handle(final HttpServerRequest aRequest) {
+        myDecodedLength = aRequest.getHeader(AwsChunkSigner.X_AMZ_DECODED_CONTENT_LENGTH);
+        aRequest.handler(data -> myBodyLength.addAndGet(data.length()));
+        aRequest.endHandler(end -> aRequest.response().setStatusCode(HTTP.OK).end());
+    }
+}
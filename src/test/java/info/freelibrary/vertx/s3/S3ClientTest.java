@@ -1,7 +1,9 @@
 
 package info.freelibrary.vertx.s3;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.net.MalformedURLException;
@@ -11,6 +13,7 @@ import org.junit.Test;
 
 import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientResponse;
 
 /**
  * Tests of S3Client that don't need an actual S3 connection.
@@ -19,6 +22,14 @@ public class S3ClientTest {
 
     private static final Vertx VERTX = Vertx.vertx();
 
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+
+    private static final String X_AMZ_CONTENT_SHA256 = "x-amz-content-sha256";
+
+    private static final String HOST = "Host";
+
+    private static final String LOCAL_ENDPOINT = "http://localhost:9000";
+
     private final HttpClientOptions myClientOptions = new HttpClientOptions();
 
     /**
@@ -118,6 +129,148 @@ public class S3ClientTest {
         assertFalse(new S3Client(VERTX).useV2Signature(false).usesV2Signature());
     }
 
+    /**
+     * Tests that the default part size is used when one hasn't been set.
+     */
+    @Test
+    public final void testGetPartSizeDefault() {
+        assertEquals(S3Client.DEFAULT_PART_SIZE, new S3Client(VERTX).getPartSize());
+    }
+
+    /**
+     * Tests setting the part size used for streamed uploads.
+     */
+    @Test
+    public final void testSetPartSize() {
+        assertEquals(S3Client.MIN_PART_SIZE, new S3Client(VERTX).setPartSize(S3Client.MIN_PART_SIZE).getPartSize());
+    }
+
+    /**
+     * Tests setting a part size that's smaller than S3 allows.
+     */
+    @Test(expected = ConfigurationException.class)
+    public final void testSetPartSizeTooSmall() {
+        new S3Client(VERTX).setPartSize(S3Client.MIN_PART_SIZE - 1);
+    }
+
+    /**
+     * Tests the default limits on parts that are uploaded concurrently.
+     */
+    @Test
+    public final void testGetPartConcurrencyDefaults() {
+        final S3Client client = new S3Client(VERTX);
+
+        assertEquals(S3Client.DEFAULT_PART_CONCURRENCY, client.getPartConcurrency());
+        assertEquals(S3Client.DEFAULT_MAX_PARTS_IN_FLIGHT, client.getMaxPartsInFlight());
+    }
+
+    /**
+     * Tests setting the limits on parts that are uploaded concurrently.
+     */
+    @Test
+    public final void testSetPartConcurrency() {
+        final S3Client client = new S3Client(VERTX).setPartConcurrency(2).setMaxPartsInFlight(3);
+
+        assertEquals(2, client.getPartConcurrency());
+        assertEquals(3, client.getMaxPartsInFlight());
+    }
+
+    /**
+     * Tests setting a per-upload part concurrency that's too low.
+     */
+    @Test(expected = ConfigurationException.class)
+    public final void testSetPartConcurrencyTooLow() {
+        new S3Client(VERTX).setPartConcurrency(0);
+    }
+
+    /**
+     * Tests setting a client-wide limit on parts in flight that's too low.
+     */
+    @Test(expected = ConfigurationException.class)
+    public final void testSetMaxPartsInFlightTooLow() {
+        new S3Client(VERTX).setMaxPartsInFlight(0);
+    }
+
+    /**
+     * Tests that the client doesn't leave payloads unsigned by default.
+     */
+    @Test
+    public final void testUsesUnsignedPayloadDefault() {
+        assertFalse(new S3Client(VERTX).usesUnsignedPayload());
+    }
+
+    /**
+     * Tests that an unsigned payload is used for requests sent over HTTPS.
+     *
+     * @throws MalformedURLException If the test endpoint isn't a valid URL
+     */
+    @Test
+    public final void testUseUnsignedPayloadHttps() throws MalformedURLException {
+        final S3Client client = new S3Client(VERTX, getUUID(), getUUID(), S3Client.DEFAULT_ENDPOINT);
+        final S3ClientRequest request = client.useUnsignedPayload(true).createPutRequest(getUUID(), getUUID(),
+                S3ClientTest::ignore);
+
+        request.addAuthorizationHeader(new byte[] { 1 });
+        assertEquals(UNSIGNED_PAYLOAD, request.headers().get(X_AMZ_CONTENT_SHA256));
+        client.close();
+    }
+
+    /**
+     * Tests that an unsigned payload isn't used for requests sent over plain HTTP.
+     *
+     * @throws MalformedURLException If the test endpoint isn't a valid URL
+     */
+    @Test
+    public final void testUseUnsignedPayloadHttp() throws MalformedURLException {
+        final S3Client client = new S3Client(VERTX, getUUID(), getUUID(), LOCAL_ENDPOINT);
+        final S3ClientRequest request = client.useUnsignedPayload(true).createPutRequest(getUUID(), getUUID(),
+                S3ClientTest::ignore);
+
+        request.addAuthorizationHeader(new byte[] { 1 });
+        assertNotEquals(UNSIGNED_PAYLOAD, request.headers().get(X_AMZ_CONTENT_SHA256));
+        client.close();
+    }
+
+    /**
+     * Tests that a request without a payload is signed with the hash of an empty payload.
+     *
+     * @throws MalformedURLException If the test endpoint isn't a valid URL
+     */
+    @Test
+    public final void testEmptyPayloadSignature() throws MalformedURLException {
+        final S3Client client = new S3Client(VERTX, getUUID(), getUUID(), S3Client.DEFAULT_ENDPOINT);
+        final S3ClientRequest request = client.createGetRequest(getUUID(), getUUID(), S3ClientTest::ignore);
+
+        request.addAuthenticationHeader();
+        assertEquals(AwsV4Signature.EMPTY_PAYLOAD_HASH, request.headers().get(X_AMZ_CONTENT_SHA256));
+        assertEquals("s3.amazonaws.com", request.headers().get(HOST));
+        client.close();
+    }
+
+    /**
+     * Tests that the host that's signed doesn't include the endpoint's port.
+     *
+     * @throws MalformedURLException If the test endpoint isn't a valid URL
+     */
+    @Test
+    public final void testSignatureHostWithPort() throws MalformedURLException {
+        final S3Client client = new S3Client(VERTX, getUUID(), getUUID(), LOCAL_ENDPOINT);
+        final S3ClientRequest request = client.createHeadRequest(getUUID(), getUUID(), S3ClientTest::ignore);
+
+        request.addAuthenticationHeader();
+        assertEquals("localhost", request.headers().get(HOST));
+        client.close();
+    }
+
+    /**
+     * A response handler for requests that are created but never sent.
+     *
+     * @param aResponse A response that's never received
+     */
+    private static void ignore(final HttpClientResponse aResponse) {
+        // The requests these tests create are never sent
+    }
+
     /**
      * Gets a string to use for access key, secret key, and session key.
      *
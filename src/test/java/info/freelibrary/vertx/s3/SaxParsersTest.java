@@ -0,0 +1,91 @@
+
+package info.freelibrary.vertx.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Tests of the SaxParsers.
+ */
+public class SaxParsersTest {
+
+    /** An upload ID with a two byte character */
+    private static final String UPLOAD_ID = "upload-\u00E9";
+
+    private static final String RESPONSE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><InitiateMultipartUploadResult>" +
+            "<UploadId>" + UPLOAD_ID + "</UploadId></InitiateMultipartUploadResult>";
+
+    /**
+     * Tests parsing a response from its bytes.
+     *
+     * @throws IOException If the response can't be parsed
+     */
+    @Test
+    public final void testParseBuffer() throws IOException {
+        final InitiateUploadHandler handler = new InitiateUploadHandler();
+
+        SaxParsers.parse(Buffer.buffer(RESPONSE), handler);
+        assertEquals(UPLOAD_ID, handler.getUploadId());
+    }
+
+    /**
+     * Tests that a response with a document type declaration is refused, and that the thread's parser can still be
+     * used afterwards.
+     *
+     * @throws IOException If the second response can't be parsed
+     */
+    @Test
+    public final void testDoctype() throws IOException {
+        final InitiateUploadHandler handler = new InitiateUploadHandler();
+
+        try {
+            SaxParsers.parse("<!DOCTYPE a [<!ENTITY b SYSTEM \"file:///etc/passwd\">]><a>&b;</a>", handler);
+            fail();
+        } catch (final IOException details) {
+            SaxParsers.parse(RESPONSE, handler);
+            assertEquals(UPLOAD_ID, handler.getUploadId());
+        }
+    }
+
+    /**
+     * Tests that a response can be parsed while another is being parsed on the same thread.
+     *
+     * @throws IOException If the responses can't be parsed
+     */
+    @Test
+    public final void testNestedParse() throws IOException {
+        final InitiateUploadHandler innerHandler = new InitiateUploadHandler();
+        final AtomicReference<IOException> error = new AtomicReference<>();
+        final InitiateUploadHandler outerHandler = new InitiateUploadHandler() {
+
+            @Override
+            public void startElement(final String aURI, final String aLocalName, final String aQName,
+                    final Attributes aAttributes) throws SAXException {
+                super.startElement(aURI, aLocalName, aQName, aAttributes);
+
+                if (innerHandler.getUploadId() == null) {
+                    try {
+                        SaxParsers.parse(RESPONSE, innerHandler);
+                    } catch (final IOException details) {
+                        error.set(details);
+                    }
+                }
+            }
+        };
+
+        SaxParsers.parse(RESPONSE, outerHandler);
+
+        assertEquals(null, error.get());
+        assertEquals(UPLOAD_ID, innerHandler.getUploadId());
+        assertEquals(UPLOAD_ID, outerHandler.getUploadId());
+    }
+}
@@ -0,0 +1,223 @@
+
+package info.freelibrary.vertx.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+
+/**
+ * Tests of the ShardedListStream, using shards whose pages are supplied without an S3 connection.
+ */
+public class ShardedListStreamTest {
+
+    private static final String PREFIX_A = "a/";
+
+    private static final String PREFIX_B = "b/";
+
+    private static final String PREFIX_C = "c/";
+
+    private static final String KEY_A1 = "a/1";
+
+    private static final String KEY_A2 = "a/2";
+
+    private static final String KEY_B1 = "b/1";
+
+    private static final String KEY_C1 = "c/1";
+
+    /** The handlers of each shard's page requests that haven't been answered yet, by the shard's prefix */
+    private final Map<String, Handler<AsyncResult<BucketList>>> myRequests = new LinkedHashMap<>();
+
+    private final List<String> myKeys = new ArrayList<>();
+
+    private final AtomicInteger myEnds = new AtomicInteger();
+
+    /**
+     * Tests that objects are passed on as soon as any shard has them when the listing isn't ordered.
+     *
+     * @throws IOException If a test page can't be parsed
+     */
+    @Test
+    public final void testUnordered() throws IOException {
+        getStream(2, false, PREFIX_A, PREFIX_B);
+
+        answer(PREFIX_B, KEY_B1);
+        answer(PREFIX_A, KEY_A1, KEY_A2);
+
+        assertEquals(Arrays.asList(KEY_B1, KEY_A1, KEY_A2), myKeys);
+        assertEquals(1, myEnds.get());
+    }
+
+    /**
+     * Tests that objects are passed on in key order when the listing is ordered, even when later shards are read
+     * first.
+     *
+     * @throws IOException If a test page can't be parsed
+     */
+    @Test
+    public final void testOrdered() throws IOException {
+        getStream(2, true, PREFIX_A, PREFIX_B);
+
+        answer(PREFIX_B, KEY_B1);
+        assertTrue(myKeys.isEmpty());
+
+        answer(PREFIX_A, KEY_A1, KEY_A2);
+
+        assertEquals(Arrays.asList(KEY_A1, KEY_A2, KEY_B1), myKeys);
+        assertEquals(1, myEnds.get());
+    }
+
+    /**
+     * Tests that no more shards are read at one time than the concurrency limit allows.
+     *
+     * @throws IOException If a test page can't be parsed
+     */
+    @Test
+    public final void testConcurrency() throws IOException {
+        getStream(2, false, PREFIX_A, PREFIX_B, PREFIX_C);
+
+        assertEquals(Arrays.asList(PREFIX_A, PREFIX_B), new ArrayList<>(myRequests.keySet()));
+
+        answer(PREFIX_A, KEY_A1);
+
+        assertTrue(myRequests.containsKey(PREFIX_C));
+
+        answer(PREFIX_C, KEY_C1);
+        answer(PREFIX_B, KEY_B1);
+
+        assertEquals(Arrays.asList(KEY_A1, KEY_C1, KEY_B1), myKeys);
+        assertEquals(1, myEnds.get());
+    }
+
+    /**
+     * Tests that the stream passes on no more objects than have been asked for.
+     *
+     * @throws IOException If a test page can't be parsed
+     */
+    @Test
+    public final void testFetch() throws IOException {
+        final ShardedListStream stream = getStream(2, false, PREFIX_A, PREFIX_B);
+
+        stream.pause();
+        answer(PREFIX_A, KEY_A1, KEY_A2);
+        answer(PREFIX_B, KEY_B1);
+
+        assertTrue(myKeys.isEmpty());
+
+        stream.fetch(2);
+        assertEquals(2, myKeys.size());
+        assertEquals(0, myEnds.get());
+
+        stream.resume();
+        assertEquals(3, myKeys.size());
+        assertEquals(1, myEnds.get());
+    }
+
+    /**
+     * Tests that a failed shard ends the stream with an exception.
+     *
+     * @throws IOException If a test page can't be parsed
+     */
+    @Test
+    public final void testFailure() throws IOException {
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Throwable cause = new IOException();
+
+        getStream(2, false, PREFIX_A, PREFIX_B).exceptionHandler(error::set);
+
+        myRequests.remove(PREFIX_A).handle(Future.failedFuture(cause));
+        answer(PREFIX_B, KEY_B1);
+
+        assertSame(cause, error.get());
+        assertTrue(myKeys.isEmpty());
+        assertEquals(0, myEnds.get());
+    }
+
+    /**
+     * Tests that a listing without any shards ends right away.
+     */
+    @Test
+    public final void testNoShards() {
+        getStream(2, true);
+        assertEquals(1, myEnds.get());
+    }
+
+    /**
+     * Tests that prefix shards are sorted and that prefixes covered by another prefix are dropped.
+     */
+    @Test
+    public final void testGetPrefixShards() {
+        final List<ListQuery> shards = ShardedListStream.getPrefixShards(Arrays.asList(PREFIX_B, "a/b", PREFIX_A));
+
+        assertEquals(2, shards.size());
+        assertEquals(PREFIX_A, shards.get(0).getPrefix());
+        assertEquals(PREFIX_B, shards.get(1).getPrefix());
+    }
+
+    /**
+     * Tests that range shards cover the whole listing, each one starting after the last key of the one before it.
+     */
+    @Test
+    public final void testGetRangeShards() {
+        final List<ListQuery> shards = ShardedListStream.getRangeShards(null, Arrays.asList(PREFIX_B, PREFIX_A,
+                PREFIX_B));
+
+        assertEquals(3, shards.size());
+        assertEquals("?list-type=2", shards.get(0).toQueryString(null));
+        assertTrue(shards.get(0).isPastEnd(KEY_A1));
+        assertEquals("?list-type=2&start-after=a%2F", shards.get(1).toQueryString(null));
+        assertTrue(shards.get(1).isPastEnd(KEY_B1));
+        assertEquals("?list-type=2&start-after=b%2F", shards.get(2).toQueryString(null));
+        assertTrue(!shards.get(2).isPastEnd(KEY_C1));
+    }
+
+    /**
+     * Gets a stream of the supplied prefix shards and starts reading it.
+     *
+     * @param aConcurrency The number of shards that are read at the same time
+     * @param aOrdered Whether objects are passed on in key order
+     * @param aPrefixes The prefixes of the shards
+     * @return A stream of the shards
+     */
+    private ShardedListStream getStream(final int aConcurrency, final boolean aOrdered, final String... aPrefixes) {
+        final List<ListQuery> shards = ShardedListStream.getPrefixShards(Arrays.asList(aPrefixes));
+        final ShardedListStream stream = new ShardedListStream(handler -> handler.handle(Future.succeededFuture(
+                shards)), shard -> new ObjectListStream((token, objects, handler) -> myRequests.put(shard
+                        .getPrefix(), handler), shard), aConcurrency, aOrdered);
+
+        stream.endHandler(end -> myEnds.incrementAndGet()).handler(object -> myKeys.add(object.getKey()));
+        return stream;
+    }
+
+    /**
+     * Answers a shard's page request with a page that ends its listing.
+     *
+     * @param aPrefix The prefix of a shard
+     * @param aKeys The keys of the objects in the page
+     * @throws IOException If the page can't be parsed
+     */
+    private void answer(final String aPrefix, final String... aKeys) throws IOException {
+        final StringBuilder xml = new StringBuilder("<ListBucketResult><IsTruncated>false</IsTruncated>");
+
+        for (final String key : aKeys) {
+            xml.append("<Contents><Key>").append(key).append("</Key><Size>1</Size></Contents>");
+        }
+
+        myRequests.remove(aPrefix).handle(Future.succeededFuture(new BucketList(xml.append("</ListBucketResult>")
+                .toString())));
+    }
+}
@@ -0,0 +1,75 @@
+
+package info.freelibrary.vertx.s3;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Tests of the SigningWorkspace.
+ */
+public class SigningWorkspaceTest {
+
+    private static final String ABC = "abc";
+
+    private static final String ABC_HASH = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    /**
+     * Tests hashing text.
+     */
+    @Test
+    public final void testSha256HexText() {
+        assertEquals(ABC_HASH, SigningWorkspace.get().sha256Hex(ABC));
+    }
+
+    /**
+     * Tests hashing text that's larger than the workspace's initial buffer.
+     */
+    @Test
+    public final void testSha256HexLargeText() {
+        final String text = new String(new char[100_000]).replace('\0', '\u00E9');
+        final Buffer buffer = Buffer.buffer(text.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(SigningWorkspace.get().sha256Hex(buffer), SigningWorkspace.get().sha256Hex(text));
+    }
+
+    /**
+     * Tests hashing a buffer.
+     */
+    @Test
+    public final void testSha256HexBuffer() {
+        assertEquals(ABC_HASH, SigningWorkspace.get().sha256Hex(Buffer.buffer(ABC)));
+    }
+
+    /**
+     * Tests that hashing an empty buffer gives the constant that's used for requests without a payload.
+     */
+    @Test
+    public final void testSha256HexEmptyBuffer() {
+        assertEquals(AwsV4Signature.EMPTY_PAYLOAD_HASH, SigningWorkspace.get().sha256Hex(Buffer.buffer()));
+    }
+
+    /**
+     * Tests hashing a buffer whose memory is split across more than one NIO buffer.
+     */
+    @Test
+    public final void testSha256HexCompositeBuffer() {
+        final Buffer buffer = Buffer.buffer(Unpooled.wrappedBuffer(Unpooled.copiedBuffer("a", StandardCharsets.UTF_8),
+                Unpooled.directBuffer().writeBytes("bc".getBytes(StandardCharsets.UTF_8))));
+
+        assertEquals(ABC_HASH, SigningWorkspace.get().sha256Hex(buffer));
+    }
+
+    /**
+     * Tests hashing a slice of a buffer.
+     */
+    @Test
+    public final void testSha256HexSlicedBuffer() {
+        assertEquals(ABC_HASH, SigningWorkspace.get().sha256Hex(Buffer.buffer("xabcx").slice(1, 4)));
+    }
+}
@@ -0,0 +1,90 @@
+
+package info.freelibrary.vertx.s3;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.ParseException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+
+import org.junit.Test;
+
+/**
+ * Tests of the ISO-8601 timestamp parser.
+ */
+public class TimestampsTest {
+
+    private static final String TIMESTAMP = "2020-04-26T04:34:02.920Z";
+
+    /**
+     * Tests parsing an S3 timestamp.
+     *
+     * @throws ParseException If the timestamp can't be parsed
+     */
+    @Test
+    public final void testParse() throws ParseException {
+        assertEquals(Instant.parse(TIMESTAMP).toEpochMilli(), Timestamps.parse(TIMESTAMP));
+        assertEquals(Instant.parse(TIMESTAMP).toEpochMilli(), Timestamps.parse(new StringBuilder(TIMESTAMP)));
+    }
+
+    /**
+     * Tests parsing timestamps without a fraction of a second, with more precision than milliseconds, and with an
+     * offset from UTC.
+     *
+     * @throws ParseException If a timestamp can't be parsed
+     */
+    @Test
+    public final void testParseVariants() throws ParseException {
+        final String[] timestamps = { "2020-04-26T04:34:02Z", "2020-04-26T04:34:02.9Z", "2020-04-26T04:34:02.920512Z",
+            "2020-04-26T06:34:02.920+02:00", "2020-04-25T23:04:02.920-05:30", "1969-12-31T23:59:59.999Z",
+            "2000-02-29T00:00:00Z", "1900-03-01T00:00:00Z", "2400-02-29T12:00:00Z" };
+
+        for (final String timestamp : timestamps) {
+            final long expected = OffsetDateTime.parse(timestamp).toInstant().toEpochMilli();
+            assertEquals(timestamp, expected, Timestamps.parse(timestamp));
+        }
+    }
+
+    /**
+     * Tests that every day of several years, including leap years, is parsed to the right instant.
+     *
+     * @throws ParseException If a timestamp can't be parsed
+     */
+    @Test
+    public final void testParseEveryDay() throws ParseException {
+        for (Instant day = Instant.parse("1999-01-01T00:00:00Z"); day.isBefore(Instant.parse(
+                "2005-01-01T00:00:00Z")); day = day.plusSeconds(86_400 + 3_661)) {
+            assertEquals(day.toEpochMilli(), Timestamps.parse(day.toString()));
+        }
+    }
+
+    /**
+     * Tests that a timestamp with the wrong separator is rejected.
+     *
+     * @throws ParseException If the timestamp isn't ISO-8601
+     */
+    @Test(expected = ParseException.class)
+    public final void testParseBadSeparator() throws ParseException {
+        Timestamps.parse("2020-04-26 04:34:02.920Z");
+    }
+
+    /**
+     * Tests that a date that doesn't exist is rejected.
+     *
+     * @throws ParseException If the timestamp isn't a real date
+     */
+    @Test(expected = ParseException.class)
+    public final void testParseBadDate() throws ParseException {
+        Timestamps.parse("2019-02-29T04:34:02.920Z");
+    }
+
+    /**
+     * Tests that a timestamp without a time zone is rejected.
+     *
+     * @throws ParseException If the timestamp has no time zone
+     */
+    @Test(expected = ParseException.class)
+    public final void testParseNoZone() throws ParseException {
+        Timestamps.parse("2020-04-26T04:34:02.920");
+    }
+}